@@ -0,0 +1,124 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import engine_components.WorkerPool;
+import math_components.Quaternion;
+import math_components.Vector3;
+import opengl_components.AnimationClip;
+import opengl_components.AnimationTrack;
+import opengl_components.Animator;
+import opengl_components.GraphicEntity;
+import opengl_components.SceneGraph;
+import opengl_components.TransformStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A frame of entities spinning and bobbing, each with a position and a
+ * rotation track, followed by the transform update. eulerScript is the way
+ * the demo animates: Euler angles are advanced and converted to a quaternion
+ * through the entity every frame. The animator runs sample the tracks into
+ * the store, serially and across the shared WorkerPool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AnimationBenchmark {
+
+	static final float FRAME = 1/60f;
+
+	@Param({"1000", "10000"})
+	int entityCount;
+
+	@Param({"false", "true"})
+	boolean spherical;
+
+	TransformStore store;
+	SceneGraph sceneGraph;
+	GraphicEntity [] entities;
+	Animator serial;
+	Animator parallel;
+	Vector3 position = new Vector3(0, 0, 0);
+	float time;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		store = new TransformStore(entityCount);
+		sceneGraph = new SceneGraph(store, null);
+		entities = new GraphicEntity[entityCount];
+
+		// a turn around z in 4 seconds with a key every quarter turn
+		final float [] rotationTimes = {0, 1, 2, 3, 4};
+		final float [] rotations = new float[rotationTimes.length*4];
+		final Quaternion q = new Quaternion(0, 0, 0, 1);
+		for(int i = 0; i < rotationTimes.length; i++) {
+			q.setEulerAngles(new Vector3(0, 0, 90*i));
+			rotations[i*4] = q.x;
+			rotations[i*4 + 1] = q.y;
+			rotations[i*4 + 2] = q.z;
+			rotations[i*4 + 3] = q.w;
+		}
+		final AnimationClip clip = new AnimationClip(true)
+				.addTrack(new AnimationTrack(AnimationTrack.ROTATION,
+						spherical? AnimationTrack.SPHERICAL : AnimationTrack.LINEAR, rotationTimes, rotations))
+				.addTrack(new AnimationTrack(AnimationTrack.POSITION, AnimationTrack.LINEAR,
+						new float[] {0, 2, 4}, new float[] {0, 0, 0, 0, 1, 0, 0, 0, 0}));
+
+		serial = new Animator(store, null);
+		parallel = new Animator(store, WorkerPool.getShared());
+		for(int i = 0; i < entityCount; i++) {
+			entities[i] = new GraphicEntity(store);
+			serial.play(entities[i], clip, 1);
+			parallel.play(entities[i], clip, 1);
+			// players out of phase
+			serial.setTime(entities[i], (i % 240)*FRAME);
+			parallel.setTime(entities[i], (i % 240)*FRAME);
+		}
+		sceneGraph.updateTransforms();
+	}
+
+	@Benchmark
+	public float eulerScript() {
+		time += FRAME;
+		final float bob = 1 - Math.abs(time % 4 - 2)/2;
+		for(int i = 0; i < entityCount; i++) {
+			final GraphicEntity entity = entities[i];
+			final Vector3 angles = entity.getLocalEulerAngles();
+			angles.z += 90*FRAME;
+			entity.setLocalEulerAngles(angles);
+			position.set(0, bob, 0);
+			entity.setLocalPosition(position);
+		}
+		sceneGraph.updateTransforms();
+		return store.worldMatrices()[12];
+	}
+
+	@Benchmark
+	public float animatorSerial() {
+		serial.update(FRAME);
+		sceneGraph.updateTransforms();
+		return store.worldMatrices()[12];
+	}
+
+	@Benchmark
+	public float animatorParallel() {
+		parallel.update(FRAME);
+		sceneGraph.updateTransforms();
+		return store.worldMatrices()[12];
+	}
+}
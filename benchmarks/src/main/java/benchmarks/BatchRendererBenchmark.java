@@ -0,0 +1,137 @@
+package benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import math_components.Matrix4x4;
+import math_components.Vector3;
+import opengl_components.BatchRenderer;
+import opengl_components.GraphicEntity;
+import opengl_components.GraphicsDevice;
+import opengl_components.HeadlessGraphicsDevice;
+import opengl_components.SceneGraph;
+import opengl_components.TransformStore;
+import opengl_components.VertexLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One frame of N entity driven triangles on the headless device, drawn the
+ * way LessonOneRenderer.drawTriangle used to (pointers, uniform and a draw per
+ * triangle) and through the BatchRenderer. The device counters are the
+ * FrameCounters secondary results.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchRendererBenchmark {
+
+	static final int STRIDE = 7;
+
+	static final float [] TRIANGLE = {
+		-0.5f, -0.25f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f,
+		0.5f, -0.25f, 0.0f, 0.0f, 0.0f, 1.0f, 1.0f,
+		0.0f, 0.559016994f, 0.0f, 0.0f, 1.0f, 0.0f, 1.0f };
+
+	@Param({"100", "1000"})
+	int entityCount;
+
+	HeadlessGraphicsDevice device;
+	GraphicEntity [] entities;
+	SceneGraph sceneGraph;
+	FloatBuffer triangleBuffer;
+	BatchRenderer batch;
+	Matrix4x4 matrix;
+	float [] viewProjection;
+	float [] mvp;
+	int program;
+	int matrixLocation;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		device = new HeadlessGraphicsDevice();
+		device.setRecording(false);
+
+		final int vertex = device.glCreateShader(GraphicsDevice.GL_VERTEX_SHADER);
+		device.glShaderSource(vertex, "vertex");
+		device.glCompileShader(vertex);
+		final int fragment = device.glCreateShader(GraphicsDevice.GL_FRAGMENT_SHADER);
+		device.glShaderSource(fragment, "fragment");
+		device.glCompileShader(fragment);
+		program = device.glCreateProgram();
+		device.glAttachShader(program, vertex);
+		device.glAttachShader(program, fragment);
+		device.glBindAttribLocation(program, 0, "a_Position");
+		device.glBindAttribLocation(program, 1, "a_Color");
+		device.glLinkProgram(program);
+		matrixLocation = device.glGetUniformLocation(program, "u_MVPMatrix");
+		device.glUseProgram(program);
+
+		final TransformStore store = new TransformStore();
+		entities = new GraphicEntity[entityCount];
+		for(int i = 0; i < entityCount; i++) {
+			entities[i] = new GraphicEntity(store);
+			entities[i].setLocalPosition(new Vector3(i % 32, i / 32, 0));
+			entities[i].setLocalEulerAngles(new Vector3(0, 0, i));
+		}
+		sceneGraph = new SceneGraph(store, null);
+		sceneGraph.updateTransforms();
+
+		triangleBuffer = ByteBuffer.allocateDirect(TRIANGLE.length*4)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		triangleBuffer.put(TRIANGLE).position(0);
+
+		final VertexLayout layout = new VertexLayout(STRIDE).add(0, 3, 0).add(1, 4, 3);
+		batch = new BatchRenderer(device, layout, 3*256);
+		matrix = new Matrix4x4();
+		viewProjection = Matrix4x4.identity().matrix();
+		mvp = new float[16];
+	}
+
+	@Benchmark
+	public HeadlessGraphicsDevice perEntity(FrameCounters counters) {
+		device.resetStats();
+		for(int i = 0; i < entityCount; i++) {
+			triangleBuffer.position(0);
+			device.glVertexAttribPointer(0, 3, GraphicsDevice.GL_FLOAT, false, STRIDE*4, triangleBuffer);
+			device.glEnableVertexAttribArray(0);
+			triangleBuffer.position(3);
+			device.glVertexAttribPointer(1, 4, GraphicsDevice.GL_FLOAT, false, STRIDE*4, triangleBuffer);
+			device.glEnableVertexAttribArray(1);
+
+			Matrix4x4.mult(entities[i].getWorldTransformationMatrix(matrix).matrix(), 0, viewProjection, 0, mvp, 0);
+			device.glUniformMatrix4fv(matrixLocation, 1, false, mvp, 0);
+			device.glDrawArrays(GraphicsDevice.GL_TRIANGLES, 0, 3);
+		}
+		counters.record(device);
+		return device;
+	}
+
+	@Benchmark
+	public HeadlessGraphicsDevice batched(FrameCounters counters) {
+		device.resetStats();
+		batch.begin(program, matrixLocation, viewProjection, 0);
+		for(int i = 0; i < entityCount; i++) {
+			batch.draw(entities[i], TRIANGLE, 0, 3);
+		}
+		batch.end();
+		counters.record(device);
+		return device;
+	}
+}
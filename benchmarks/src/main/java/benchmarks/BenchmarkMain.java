@@ -0,0 +1,35 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Same command line as org.openjdk.jmh.Main, but the gc profiler is on by
+ * default and the results are written as JSON so ns/op and bytes/op
+ * (gc.alloc.rate.norm) can be compared between releases.
+ *
+ *   java -jar target/benchmarks.jar [jmh options] [benchmark regexp]
+ */
+public class BenchmarkMain {
+
+	public static final String DEFAULT_RESULT = "target/jmh-result.json";
+
+	public static void main(String [] args) throws Exception {
+		final CommandLineOptions cmd = new CommandLineOptions(args);
+		final ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmd);
+
+		if(cmd.getProfilers().isEmpty()) {
+			builder.addProfiler(GCProfiler.class);
+		}
+		if(!cmd.getResultFormat().hasValue()) {
+			builder.resultFormat(ResultFormatType.JSON);
+			builder.result(cmd.getResult().orElse(DEFAULT_RESULT));
+		}
+
+		new Runner(builder.build()).run();
+	}
+}
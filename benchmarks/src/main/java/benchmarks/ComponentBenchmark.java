@@ -0,0 +1,149 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import opengl_components.ComponentStore;
+import opengl_components.ComponentType;
+import opengl_components.GraphicEntity;
+import opengl_components.TransformStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every entity has four scripts, the Spin one last. The list runs find and
+ * update the Spin scripts the way GraphicEntity used to hold them, through a
+ * script list per entity scanned with instanceof. The other runs look them
+ * up by class in the ComponentStore, and walk their ComponentArray without
+ * touching the entities.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ComponentBenchmark {
+
+	static final int SPIN = ComponentType.of(Spin.class);
+
+	static class Spin implements GraphicEntity.Scriptable {
+		float angle;
+
+		@Override
+		public void Update() {
+			angle += 1;
+		}
+
+		@Override
+		public void Start() {
+		}
+	}
+
+	static class Tag implements GraphicEntity.Scriptable {
+		@Override
+		public void Update() {
+		}
+
+		@Override
+		public void Start() {
+		}
+	}
+
+	static class Health extends Tag {
+	}
+
+	static class Score extends Tag {
+	}
+
+	@Param({"1000", "10000"})
+	int entityCount;
+
+	TransformStore store;
+	ComponentStore components;
+	GraphicEntity [] entities;
+	List<List<GraphicEntity.Scriptable>> lists;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		store = new TransformStore(entityCount);
+		components = store.getComponents();
+		entities = new GraphicEntity[entityCount];
+		lists = new ArrayList<List<GraphicEntity.Scriptable>>();
+		for(int i = 0; i < entityCount; i++) {
+			final GraphicEntity entity = entities[i] = new GraphicEntity(store);
+			final List<GraphicEntity.Scriptable> list = new ArrayList<GraphicEntity.Scriptable>();
+			list.add(new Tag());
+			list.add(new Health());
+			list.add(new Score());
+			list.add(new Spin());
+			for(GraphicEntity.Scriptable script : list) {
+				entity.addScript(script);
+			}
+			lists.add(list);
+		}
+	}
+
+	@Benchmark
+	public float listLookup() {
+		float sum = 0;
+		for(int i = 0; i < entityCount; i++) {
+			for(GraphicEntity.Scriptable script : lists.get(i)) {
+				if(script instanceof Spin) {
+					final Spin spin = (Spin)script;
+					spin.Update();
+					sum += spin.angle;
+					break;
+				}
+			}
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public float entityLookup() {
+		float sum = 0;
+		for(int i = 0; i < entityCount; i++) {
+			final Spin spin = entities[i].getScript(Spin.class);
+			spin.Update();
+			sum += spin.angle;
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public float storeLookup() {
+		float sum = 0;
+		for(int i = 0; i < entityCount; i++) {
+			final Spin spin = (Spin)components.get(SPIN, entities[i].getId());
+			spin.Update();
+			sum += spin.angle;
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public float arrayIteration() {
+		final ComponentStore.ComponentArray array = components.getArray(SPIN);
+		final GraphicEntity.Scriptable [] spins = array.components();
+		float sum = 0;
+		for(int i = 0, count = array.size(); i < count; i++) {
+			final Spin spin = (Spin)spins[i];
+			spin.Update();
+			sum += spin.angle;
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,142 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import math_components.Frustum;
+import math_components.Vector3;
+import opengl_components.CachingGraphicsDevice;
+import opengl_components.GraphicEntity;
+import opengl_components.GraphicsDevice;
+import opengl_components.HeadlessGraphicsDevice;
+import opengl_components.Mesh;
+import opengl_components.MeshCommand;
+import opengl_components.SceneGraph;
+import opengl_components.ShaderCache;
+import opengl_components.ShaderProgram;
+import opengl_components.TransformStore;
+import opengl_components.VertexLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Groups of small meshes scattered around a camera with a 90 degree view,
+ * drawn all every frame and drawn after SceneGraph.cull. Groups have no
+ * bounds of their own, their subtree boxes let the cull reject them whole.
+ * The device counters are the FrameCounters secondary results, the draw calls
+ * per frame show what the cull rejected.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CullingBenchmark {
+
+	static final float [] TRIANGLE = {
+		-0.5f, -0.25f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f,
+		0.5f, -0.25f, 0.0f, 0.0f, 0.0f, 1.0f, 1.0f,
+		0.0f, 0.559016994f, 0.0f, 0.0f, 1.0f, 0.0f, 1.0f };
+
+	static final int GROUPS = 64;
+
+	@Param({"16", "128"})
+	int entitiesPerGroup;
+
+	HeadlessGraphicsDevice device;
+	CachingGraphicsDevice cache;
+	SceneGraph sceneGraph;
+	Frustum frustum;
+	GraphicEntity [] entities;
+	MeshCommand [] commands;
+	float [] viewProjection;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		device = new HeadlessGraphicsDevice();
+		device.setRecording(false);
+		cache = new CachingGraphicsDevice(device);
+
+		final ShaderProgram program = new ShaderCache(cache).get("vertex", "fragment",
+				new String[] { "a_Position", "a_Color" }, new String[] { "u_MVPMatrix" });
+		final VertexLayout layout = new VertexLayout(7).add(0, 3, 0).add(1, 4, 3);
+		final Mesh mesh = new Mesh(cache, layout, GraphicsDevice.GL_STATIC_DRAW);
+		mesh.setVertices(TRIANGLE, 0, 3);
+
+		final Random random = new Random(42);
+		final TransformStore store = new TransformStore();
+		final Vector3 center = new Vector3(0.0f, 0.1545f, 0.0f);
+		final Vector3 extents = new Vector3(0.5f, 0.4045f, 0.0f);
+		entities = new GraphicEntity[GROUPS*entitiesPerGroup];
+		commands = new MeshCommand[entities.length];
+		for(int g = 0, e = 0; g < GROUPS; g++) {
+			// groups all around the camera, about a quarter of them in view
+			final double angle = random.nextDouble()*Math.PI*2;
+			final float distance = 5 + random.nextFloat()*45;
+			final GraphicEntity group = new GraphicEntity(store);
+			group.setLocalPosition(new Vector3((float)Math.cos(angle)*distance, 0, (float)Math.sin(angle)*distance));
+
+			for(int i = 0; i < entitiesPerGroup; i++, e++) {
+				final GraphicEntity entity = new GraphicEntity(store);
+				entity.setParent(group);
+				entity.setLocalPosition(new Vector3(random.nextFloat()*4 - 2, random.nextFloat()*4 - 2, random.nextFloat()*4 - 2));
+				entity.setLocalBounds(center, extents);
+				entities[e] = entity;
+				commands[e] = new MeshCommand(entity, mesh, program, 0);
+			}
+		}
+		sceneGraph = new SceneGraph(store, null);
+		sceneGraph.updateTransforms();
+
+		// camera at the origin looking down -z, like Matrix.frustumM(-1, 1, -1, 1, 1, 100)
+		final float near = 1, far = 100;
+		viewProjection = new float[16];
+		viewProjection[0] = near;
+		viewProjection[5] = near;
+		viewProjection[10] = -(far + near)/(far - near);
+		viewProjection[11] = -1;
+		viewProjection[14] = -2*far*near/(far - near);
+		frustum = new Frustum().set(viewProjection, 0);
+	}
+
+	@Benchmark
+	public HeadlessGraphicsDevice drawAll(FrameCounters counters) {
+		device.resetStats();
+		for(int i = 0; i < commands.length; i++) {
+			commands[i].execute(cache, viewProjection);
+		}
+		counters.record(device);
+		return device;
+	}
+
+	@Benchmark
+	public HeadlessGraphicsDevice culled(FrameCounters counters) {
+		device.resetStats();
+		sceneGraph.cull(frustum);
+		device.recordCulling(sceneGraph.getBoundedCount(), sceneGraph.getCulledCount());
+		for(int i = 0; i < commands.length; i++) {
+			if(sceneGraph.isVisible(entities[i])) {
+				commands[i].execute(cache, viewProjection);
+			}
+		}
+		counters.record(device);
+		return device;
+	}
+
+	@Benchmark
+	public int cullOnly() {
+		return sceneGraph.cull(frustum);
+	}
+}
@@ -0,0 +1,104 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import math_components.Matrix4x4;
+import math_components.Vector3;
+import opengl_components.GraphicEntity;
+import opengl_components.TransformStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single entity transform paths: recalculateMatrix and the global getters
+ * scripts call every frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EntityBenchmark {
+
+	/** Exposes the protected recalculation */
+	static class BenchmarkEntity extends GraphicEntity {
+		BenchmarkEntity(TransformStore store) {
+			super(store);
+		}
+
+		void forceRecalculate() {
+			markDirty();
+			recalculateMatrix();
+		}
+	}
+
+	BenchmarkEntity parent;
+	BenchmarkEntity child;
+	Matrix4x4 matrix;
+	Vector3 vector;
+	Vector3 delta;
+	Vector3 axis;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		final TransformStore store = new TransformStore();
+		parent = new BenchmarkEntity(store);
+		child = new BenchmarkEntity(store);
+		child.setParent(parent);
+		parent.setLocalPosition(new Vector3(1, 2, 3));
+		child.setLocalEulerAngles(new Vector3(10, 20, 30));
+		child.setLocalScale(new Vector3(2, 2, 2));
+		matrix = new Matrix4x4();
+		vector = new Vector3(0, 0, 0);
+		delta = new Vector3(0, 0, 1);
+		axis = new Vector3(0, 0, 1);
+	}
+
+	@Benchmark
+	public BenchmarkEntity recalculateMatrix() {
+		child.forceRecalculate();
+		return child;
+	}
+
+	@Benchmark
+	public Matrix4x4 getWorldTransformationMatrix() {
+		return child.getWorldTransformationMatrix(matrix);
+	}
+
+	@Benchmark
+	public Vector3 getPosition() {
+		return child.getPosition(vector);
+	}
+
+	/** What the demo script does every frame */
+	@Benchmark
+	public Vector3 eulerRoundTrip() {
+		child.getEulerAngles(vector);
+		child.setEulerAngles(Vector3.add(vector, delta, vector));
+		return vector;
+	}
+
+	/** The same step without Euler angles */
+	@Benchmark
+	public BenchmarkEntity rotateEuler() {
+		child.rotateEuler(delta);
+		return child;
+	}
+
+	@Benchmark
+	public BenchmarkEntity rotateLocal() {
+		child.rotateLocal(axis, 1);
+		return child;
+	}
+}
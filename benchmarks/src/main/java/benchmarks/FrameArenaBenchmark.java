@@ -0,0 +1,113 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import engine_components.FrameArena;
+import engine_components.ObjectPool;
+import math_components.Quaternion;
+import math_components.Vector3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.CompilerControl;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A frame of scripts that each need a few vector and quaternion
+ * temporaries, taking them with new, from the FrameArena and from pools.
+ * Compare the gc.alloc.rate.norm secondary results. The script is not
+ * inlined, otherwise HotSpot escape analysis removes the allocations, which
+ * the Android runtimes do not do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameArenaBenchmark {
+
+	@Param({"1000"})
+	int scriptCount;
+
+	@Param({"false", "true"})
+	boolean debug;
+
+	FrameArena arena;
+	ObjectPool<Vector3> vectors;
+	ObjectPool<Quaternion> quaternions;
+	Vector3 delta = new Vector3(0, 0, 1);
+	float sink;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		arena = new FrameArena(64);
+		arena.setDebug(debug);
+		vectors = new ObjectPool<Vector3>(new ObjectPool.Factory<Vector3>() {
+			@Override
+			public Vector3 create() {
+				return new Vector3(0, 0, 0);
+			}
+		}, 64);
+		vectors.setDebug(debug);
+		quaternions = new ObjectPool<Quaternion>(new ObjectPool.Factory<Quaternion>() {
+			@Override
+			public Quaternion create() {
+				return new Quaternion(0, 0, 0, 1);
+			}
+		}, 64);
+		quaternions.setDebug(debug);
+	}
+
+	/** what a script does with its temporaries */
+	@CompilerControl(CompilerControl.Mode.DONT_INLINE)
+	private float script(int i, Vector3 a, Vector3 b, Quaternion q) {
+		a.set(i, i + 1, i + 2);
+		Vector3.add(a, delta, b);
+		q.setEulerAngles(b);
+		return q.w + b.x;
+	}
+
+	@Benchmark
+	public float allocate() {
+		float sum = 0;
+		for(int i = 0; i < scriptCount; i++) {
+			sum += script(i, new Vector3(0, 0, 0), new Vector3(0, 0, 0), new Quaternion(0, 0, 0, 1));
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public float arena() {
+		final FrameArena arena = this.arena;
+		arena.reset();
+		float sum = 0;
+		for(int i = 0; i < scriptCount; i++) {
+			sum += script(i, arena.vector3(), arena.vector3(), arena.quaternion());
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public float pools() {
+		float sum = 0;
+		for(int i = 0; i < scriptCount; i++) {
+			final Vector3 a = vectors.obtain(), b = vectors.obtain();
+			final Quaternion q = quaternions.obtain();
+			sum += script(i, a, b, q);
+			quaternions.free(q);
+			vectors.free(b);
+			vectors.free(a);
+		}
+		return sum;
+	}
+}
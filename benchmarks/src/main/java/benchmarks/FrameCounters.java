@@ -0,0 +1,44 @@
+package benchmarks;
+
+import opengl_components.HeadlessGraphicsDevice;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Headless device counters added up over the frames of an iteration, shown
+ * by JMH as secondary results. JMH sums events over the iterations too, so
+ * divide them by frames for the numbers of one frame.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class FrameCounters {
+
+	public long frames;
+	public long calls;
+	public long drawCalls;
+	public long vertices;
+	public long stateChanges;
+	public long redundantStateChanges;
+	public long bytesUploaded;
+
+	@Setup(Level.Iteration)
+	public void clear() {
+		frames = calls = drawCalls = vertices = 0;
+		stateChanges = redundantStateChanges = bytesUploaded = 0;
+	}
+
+	/** adds the counters of the frame just drawn, the device is reset at the start of each frame */
+	public void record(HeadlessGraphicsDevice device) {
+		frames++;
+		calls += device.getCallCount();
+		drawCalls += device.getDrawCalls();
+		vertices += device.getVertexCount();
+		stateChanges += device.getStateChanges();
+		redundantStateChanges += device.getRedundantStateChanges();
+		bytesUploaded += device.getBytesUploaded();
+	}
+}
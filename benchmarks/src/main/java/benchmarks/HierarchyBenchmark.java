@@ -0,0 +1,92 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import math_components.Vector3;
+import opengl_components.GraphicEntity;
+import opengl_components.TransformStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hierarchy edits on a wide scene, every entity a child of one of two
+ * roots. reparentAll moves every child to the other root, in the order they
+ * were added, like a level swapping its containers. moveRoot flags both
+ * wide subtrees dirty through the entity. buildAndDestroy creates a chain
+ * and destroys it from its root.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HierarchyBenchmark {
+
+	@Param({"1000", "10000"})
+	int entityCount;
+
+	TransformStore store;
+	GraphicEntity [] roots;
+	GraphicEntity [] entities;
+	final Vector3 position = new Vector3(0, 0, 0);
+	int flip;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		store = new TransformStore(entityCount + 2);
+		roots = new GraphicEntity[] {new GraphicEntity(store), new GraphicEntity(store)};
+		entities = new GraphicEntity[entityCount];
+		for(int i = 0; i < entityCount; i++) {
+			entities[i] = new GraphicEntity(store);
+			entities[i].setParent(roots[0]);
+		}
+		store.updateAll();
+	}
+
+	@Benchmark
+	public int reparentAll() {
+		flip ^= 1;
+		final GraphicEntity root = roots[flip];
+		for(int i = 0; i < entityCount; i++) {
+			entities[i].setParent(root);
+		}
+		store.updateAll();
+		return store.size();
+	}
+
+	@Benchmark
+	public int moveRoot() {
+		for(int r = 0; r < roots.length; r++) {
+			position.set(flip++ & 7, 0, 0);
+			roots[r].setLocalPosition(position);
+		}
+		store.updateAll();
+		return store.size();
+	}
+
+	@Benchmark
+	public int buildAndDestroy() {
+		final TransformStore chainStore = new TransformStore(entityCount);
+		final GraphicEntity root = new GraphicEntity(chainStore);
+		GraphicEntity parent = root;
+		for(int i = 1; i < entityCount; i++) {
+			final GraphicEntity entity = new GraphicEntity(chainStore);
+			entity.setParent(parent);
+			parent = entity;
+		}
+		root.destroy();
+		return chainStore.size();
+	}
+}
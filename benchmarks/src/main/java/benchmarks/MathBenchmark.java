@@ -0,0 +1,109 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import math_components.Matrix4x4;
+import math_components.Quaternion;
+import math_components.Vector3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hot paths of math_components, every operation is measured in its
+ * allocating form and in its destination parameter form so the gc profiler
+ * shows the bytes/op difference.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MathBenchmark {
+
+	Matrix4x4 a;
+	Matrix4x4 b;
+	Matrix4x4 out;
+	Vector3 eulerAngles;
+	Vector3 vector;
+	Vector3 vectorOut;
+	Quaternion rotation;
+	Quaternion rotationOut;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		eulerAngles = new Vector3(30, 45, 60);
+		vector = new Vector3(1, 2, 3);
+		vectorOut = new Vector3(0, 0, 0);
+		rotation = new Quaternion(eulerAngles);
+		rotationOut = new Quaternion(0, 0, 0, 1);
+		a = Matrix4x4.createTransformMatrix(new Vector3(1, 2, 3), rotation, vector, new Matrix4x4());
+		b = Matrix4x4.createRigidbodyMatrix(new Quaternion(new Vector3(10, 0, 5)), new Vector3(4, 5, 6));
+		out = new Matrix4x4();
+	}
+
+	@Benchmark
+	public Matrix4x4 matrixMult() {
+		return Matrix4x4.mult(a, b);
+	}
+
+	@Benchmark
+	public Matrix4x4 matrixMultInto() {
+		return Matrix4x4.mult(a, b, out);
+	}
+
+	@Benchmark
+	public Vector3 matrixMultiplyVector3() {
+		return Matrix4x4.multiplyVector3(vector, a);
+	}
+
+	@Benchmark
+	public Vector3 matrixMultiplyVector3Into() {
+		return Matrix4x4.multiplyVector3(vector, a, vectorOut);
+	}
+
+	@Benchmark
+	public Quaternion quaternionFromEuler() {
+		return new Quaternion(eulerAngles);
+	}
+
+	@Benchmark
+	public Quaternion quaternionFromEulerInto() {
+		return rotationOut.setEulerAngles(eulerAngles);
+	}
+
+	@Benchmark
+	public Vector3 quaternionToEuler() {
+		return rotation.toEulerAngles();
+	}
+
+	@Benchmark
+	public Vector3 rotateVectorByQuaternion() {
+		return Quaternion.rotateVectorByQuaternion(vector, rotation);
+	}
+
+	@Benchmark
+	public Vector3 rotateVectorByQuaternionInto() {
+		return Quaternion.rotateVectorByQuaternion(vector, rotation, vectorOut);
+	}
+
+	@Benchmark
+	public Quaternion quaternionMult() {
+		return Quaternion.mult(rotation, rotation);
+	}
+
+	@Benchmark
+	public Quaternion quaternionMultInto() {
+		return Quaternion.mult(rotation, rotation, rotationOut);
+	}
+}
@@ -0,0 +1,129 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import math_components.Matrix4x4;
+import math_components.Quaternion;
+import math_components.Vector3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Unrolled Matrix4x4 kernels against the get/set loops they replaced, and
+ * the general, affine and rigid inverses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MatrixKernelBenchmark {
+
+	@Param({"1024"})
+	int pointCount;
+
+	Matrix4x4 a;
+	Matrix4x4 b;
+	Matrix4x4 out;
+	float [] points;
+	float [] transformed;
+	Vector3 [] vectors;
+	Vector3 vectorOut;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		a = Matrix4x4.createTransformMatrix(new Vector3(1, 2, 3), new Quaternion(new Vector3(30, 45, 60)), new Vector3(1, 2, 3), new Matrix4x4());
+		b = Matrix4x4.createTransformMatrix(new Vector3(2, 2, 2), new Quaternion(new Vector3(10, 0, 5)), new Vector3(4, 5, 6), new Matrix4x4());
+		out = new Matrix4x4();
+
+		final Random random = new Random(42);
+		points = new float[pointCount*3];
+		transformed = new float[pointCount*3];
+		vectors = new Vector3[pointCount];
+		for(int i = 0; i < pointCount; i++) {
+			vectors[i] = new Vector3(random.nextFloat(), random.nextFloat(), random.nextFloat());
+			points[i*3] = vectors[i].x;
+			points[i*3 + 1] = vectors[i].y;
+			points[i*3 + 2] = vectors[i].z;
+		}
+		vectorOut = new Vector3(0, 0, 0);
+	}
+
+	/** The original triple loop through get/set */
+	static Matrix4x4 loopMult(Matrix4x4 a, Matrix4x4 b, Matrix4x4 res) {
+		float sum;
+		for(int i = 0; i < 4; i++) {
+			for(int j = 0; j < 4; j++) {
+				sum = 0;
+				for(int k = 0; k < 4; k++) {
+					sum += a.get(i, k)*b.get(k, j);
+				}
+				res.set(i, j, sum);
+			}
+		}
+		return res;
+	}
+
+	@Benchmark
+	public Matrix4x4 multLoop() {
+		return loopMult(a, b, out);
+	}
+
+	@Benchmark
+	public Matrix4x4 multUnrolled() {
+		return Matrix4x4.mult(a, b, out);
+	}
+
+	@Benchmark
+	public Matrix4x4 multAffine() {
+		return Matrix4x4.multAffine(a, b, out);
+	}
+
+	/** One multiplyVector3 call per point, like the code did before the batch kernel */
+	@Benchmark
+	public Vector3 pointsOneByOne() {
+		for(int i = 0; i < pointCount; i++) {
+			Matrix4x4.multiplyVector3(vectors[i], a, vectorOut);
+		}
+		return vectorOut;
+	}
+
+	@Benchmark
+	public Matrix4x4 invertGeneral() {
+		return Matrix4x4.invert(a, out);
+	}
+
+	@Benchmark
+	public Matrix4x4 invertAffine() {
+		return Matrix4x4.invertAffine(a, out);
+	}
+
+	@Benchmark
+	public Matrix4x4 invertRigid() {
+		return Matrix4x4.invertRigid(a, out);
+	}
+
+	@Benchmark
+	public Matrix4x4 inverseTranspose() {
+		return Matrix4x4.inverseTranspose(a, out);
+	}
+
+	@Benchmark
+	public float [] pointsBatch() {
+		Matrix4x4.transformPoints(a, points, 0, transformed, 0, pointCount);
+		return transformed;
+	}
+}
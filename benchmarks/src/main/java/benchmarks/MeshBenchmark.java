@@ -0,0 +1,116 @@
+package benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import opengl_components.GraphicsDevice;
+import opengl_components.HeadlessGraphicsDevice;
+import opengl_components.Mesh;
+import opengl_components.VertexLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Drawing the same position/colour geometry every frame on the headless
+ * device from client side arrays, from a static Mesh and from a stream Mesh
+ * updated every frame. The device counters are the FrameCounters secondary
+ * results, bytes uploaded is 0 for the static mesh.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MeshBenchmark {
+
+	static final int STRIDE = 7;
+
+	@Param({"300", "30000"})
+	int vertexCount;
+
+	HeadlessGraphicsDevice device;
+	VertexLayout layout;
+	float [] vertices;
+	FloatBuffer clientBuffer;
+	Mesh staticMesh;
+	Mesh streamMesh;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		device = new HeadlessGraphicsDevice();
+		device.setRecording(false);
+
+		final int vertex = device.glCreateShader(GraphicsDevice.GL_VERTEX_SHADER);
+		device.glShaderSource(vertex, "vertex");
+		device.glCompileShader(vertex);
+		final int fragment = device.glCreateShader(GraphicsDevice.GL_FRAGMENT_SHADER);
+		device.glShaderSource(fragment, "fragment");
+		device.glCompileShader(fragment);
+		final int program = device.glCreateProgram();
+		device.glAttachShader(program, vertex);
+		device.glAttachShader(program, fragment);
+		device.glLinkProgram(program);
+		device.glUseProgram(program);
+
+		final Random random = new Random(42);
+		vertices = new float[vertexCount*STRIDE];
+		for(int i = 0; i < vertices.length; i++) {
+			vertices[i] = random.nextFloat();
+		}
+		clientBuffer = ByteBuffer.allocateDirect(vertices.length*4)
+				.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		clientBuffer.put(vertices).position(0);
+
+		layout = new VertexLayout(STRIDE).add(0, 3, 0).add(1, 4, 3);
+		staticMesh = new Mesh(device, layout, GraphicsDevice.GL_STATIC_DRAW);
+		staticMesh.setVertices(vertices, 0, vertexCount);
+		staticMesh.unbind();
+		streamMesh = new Mesh(device, layout, GraphicsDevice.GL_STREAM_DRAW);
+	}
+
+	@Benchmark
+	public HeadlessGraphicsDevice clientArrays(FrameCounters counters) {
+		device.resetStats();
+		layout.bind(device, clientBuffer);
+		device.glDrawArrays(GraphicsDevice.GL_TRIANGLES, 0, vertexCount);
+		layout.unbind(device);
+		counters.record(device);
+		return device;
+	}
+
+	@Benchmark
+	public HeadlessGraphicsDevice staticMesh(FrameCounters counters) {
+		device.resetStats();
+		staticMesh.bind();
+		staticMesh.draw();
+		staticMesh.unbind();
+		counters.record(device);
+		return device;
+	}
+
+	@Benchmark
+	public HeadlessGraphicsDevice streamMesh(FrameCounters counters) {
+		device.resetStats();
+		streamMesh.setVertices(vertices, 0, vertexCount);
+		streamMesh.bind();
+		streamMesh.draw();
+		streamMesh.unbind();
+		counters.record(device);
+		return device;
+	}
+}
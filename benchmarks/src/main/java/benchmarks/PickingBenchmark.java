@@ -0,0 +1,134 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import math_components.Matrix4x4;
+import math_components.Quaternion;
+import math_components.Vector3;
+import opengl_components.GraphicEntity;
+import opengl_components.Picker;
+import opengl_components.SceneIndex;
+import opengl_components.TransformStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Picks random screen points in a dense field of rotated triangles in front
+ * of the camera, with the Picker and by transforming every triangle to world
+ * space with Matrix4x4.transformPoints and testing them all.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PickingBenchmark {
+
+	static final float [] TRIANGLE = {
+		-0.5f, -0.25f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f,
+		0.5f, -0.25f, 0.0f, 0.0f, 0.0f, 1.0f, 1.0f,
+		0.0f, 0.559016994f, 0.0f, 0.0f, 1.0f, 0.0f, 1.0f };
+
+	static final int WIDTH = 1080;
+	static final int HEIGHT = 1920;
+
+	@Param({"1000", "10000"})
+	int entityCount;
+
+	TransformStore store;
+	Picker picker;
+	Random random;
+	Matrix4x4 world = new Matrix4x4();
+	float [] positions = new float[9];
+	float [] worldPositions = new float[9];
+	Vector3 origin = new Vector3(0, 0, 0);
+	Vector3 direction = new Vector3(0, 0, 0);
+
+	@Setup(Level.Trial)
+	public void setup() {
+		random = new Random(42);
+		store = new TransformStore(entityCount);
+		final Vector3 center = new Vector3(0.0f, 0.1545f, 0.0f);
+		final Vector3 extents = new Vector3(0.5f, 0.4045f, 0.0f);
+		picker = new Picker(new SceneIndex(store, 0.1f));
+		for(int i = 0; i < entityCount; i++) {
+			final GraphicEntity entity = new GraphicEntity(store);
+			entity.setLocalPosition(new Vector3(random.nextFloat()*20 - 10, random.nextFloat()*30 - 15, -2 - random.nextFloat()*40));
+			entity.setLocalRotation(new Quaternion(new Vector3(random.nextFloat()*360, random.nextFloat()*360, 0)));
+			entity.setLocalBounds(center, extents);
+			picker.setGeometry(entity, TRIANGLE, 0, 7, 3, null);
+		}
+
+		// camera at the origin looking down -z, like Matrix.frustumM
+		final float ratio = (float)WIDTH/HEIGHT, near = 1, far = 100;
+		final float [] viewProjection = new float[16];
+		viewProjection[0] = near/ratio;
+		viewProjection[5] = near;
+		viewProjection[10] = -(far + near)/(far - near);
+		viewProjection[11] = -1;
+		viewProjection[14] = -2*far*near/(far - near);
+		picker.setCamera(viewProjection, 0, 0, 0, WIDTH, HEIGHT);
+		picker.pick(0, 0);
+
+		for(int v = 0; v < 3; v++) {
+			System.arraycopy(TRIANGLE, v*7, positions, v*3, 3);
+		}
+	}
+
+	@Benchmark
+	public GraphicEntity picker() {
+		return picker.pick(random.nextFloat()*WIDTH, random.nextFloat()*HEIGHT);
+	}
+
+	@Benchmark
+	public GraphicEntity bruteForce() {
+		picker.getRay(random.nextFloat()*WIDTH, random.nextFloat()*HEIGHT, origin, direction);
+		store.updateAll();
+		final float [] matrices = store.worldMatrices();
+		final float [] p = worldPositions;
+		GraphicEntity closest = null;
+		float best = Float.MAX_VALUE;
+		for(int i = 0, count = store.size(); i < count; i++) {
+			world.set(matrices, i*TransformStore.MATRIX_SIZE);
+			Matrix4x4.transformPoints(world, positions, 0, p, 0, 3);
+
+			final float e1x = p[3] - p[0], e1y = p[4] - p[1], e1z = p[5] - p[2];
+			final float e2x = p[6] - p[0], e2y = p[7] - p[1], e2z = p[8] - p[2];
+			final float px = direction.y*e2z - direction.z*e2y, py = direction.z*e2x - direction.x*e2z, pz = direction.x*e2y - direction.y*e2x;
+			final float det = e1x*px + e1y*py + e1z*pz;
+			if(det == 0) {
+				continue;
+			}
+			final float inv = 1/det;
+			final float sx = origin.x - p[0], sy = origin.y - p[1], sz = origin.z - p[2];
+			final float u = (sx*px + sy*py + sz*pz)*inv;
+			if(u < 0 || u > 1) {
+				continue;
+			}
+			final float qx = sy*e1z - sz*e1y, qy = sz*e1x - sx*e1z, qz = sx*e1y - sy*e1x;
+			final float w = (direction.x*qx + direction.y*qy + direction.z*qz)*inv;
+			if(w < 0 || u + w > 1) {
+				continue;
+			}
+			final float t = (e2x*qx + e2y*qy + e2z*qz)*inv;
+			if(t >= 0 && t < best) {
+				best = t;
+				closest = store.entityAt(i);
+			}
+		}
+		return closest;
+	}
+}
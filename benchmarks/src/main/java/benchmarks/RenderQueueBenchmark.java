@@ -0,0 +1,144 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import math_components.Matrix4x4;
+import math_components.Vector3;
+import opengl_components.CachingGraphicsDevice;
+import opengl_components.GraphicEntity;
+import opengl_components.GraphicsDevice;
+import opengl_components.HeadlessGraphicsDevice;
+import opengl_components.Mesh;
+import opengl_components.MeshCommand;
+import opengl_components.RenderQueue;
+import opengl_components.SceneGraph;
+import opengl_components.ShaderCache;
+import opengl_components.ShaderProgram;
+import opengl_components.TransformStore;
+import opengl_components.VertexLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A frame of mesh draws spread randomly over several programs, a quarter of
+ * them translucent, submitted through a CachingGraphicsDevice in creation
+ * order and through a RenderQueue. The device counters are the FrameCounters
+ * secondary results. sortOnly times queue filling and sorting.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderQueueBenchmark {
+
+	static final int PROGRAMS = 8;
+	static final int MATERIALS = 8;
+
+	static final float [] TRIANGLE = {
+		-0.5f, -0.25f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f,
+		0.5f, -0.25f, 0.0f, 0.0f, 0.0f, 1.0f, 1.0f,
+		0.0f, 0.559016994f, 0.0f, 0.0f, 1.0f, 0.0f, 1.0f };
+
+	@Param({"1000", "10000"})
+	int drawCount;
+
+	HeadlessGraphicsDevice device;
+	CachingGraphicsDevice cache;
+	MeshCommand [] commands;
+	boolean [] translucent;
+	int [] materials;
+	float [] depths;
+	RenderQueue queue;
+	float [] viewProjection;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		device = new HeadlessGraphicsDevice();
+		device.setRecording(false);
+		cache = new CachingGraphicsDevice(device);
+
+		final ShaderCache shaders = new ShaderCache(cache);
+		final ShaderProgram [] programs = new ShaderProgram[PROGRAMS];
+		for(int i = 0; i < PROGRAMS; i++) {
+			programs[i] = shaders.get("vertex", "fragment", new String[] { "a_Position", "a_Color" },
+					new String[] { "u_MVPMatrix" }, "VARIANT " + i);
+		}
+
+		final VertexLayout layout = new VertexLayout(7).add(0, 3, 0).add(1, 4, 3);
+		final Mesh mesh = new Mesh(cache, layout, GraphicsDevice.GL_STATIC_DRAW);
+		mesh.setVertices(TRIANGLE, 0, 3);
+
+		final Random random = new Random(42);
+		final TransformStore store = new TransformStore();
+		commands = new MeshCommand[drawCount];
+		translucent = new boolean[drawCount];
+		materials = new int[drawCount];
+		depths = new float[drawCount];
+		for(int i = 0; i < drawCount; i++) {
+			final GraphicEntity entity = new GraphicEntity(store);
+			depths[i] = 1 + random.nextFloat()*99;
+			entity.setLocalPosition(new Vector3(random.nextFloat(), random.nextFloat(), depths[i]));
+			commands[i] = new MeshCommand(entity, mesh, programs[random.nextInt(PROGRAMS)], 0);
+			translucent[i] = random.nextInt(4) == 0;
+			materials[i] = random.nextInt(MATERIALS);
+		}
+		new SceneGraph(store, null).updateTransforms();
+
+		queue = new RenderQueue(drawCount);
+		queue.setDepthRange(1, 100);
+		viewProjection = Matrix4x4.identity().matrix();
+	}
+
+	private void fill() {
+		queue.clear();
+		for(int i = 0; i < drawCount; i++) {
+			queue.add(commands[i], 0, translucent[i], commands[i].getProgram().getId(), materials[i], depths[i]);
+		}
+	}
+
+	@Benchmark
+	public HeadlessGraphicsDevice unsorted(FrameCounters counters) {
+		device.resetStats();
+		for(int i = 0; i < drawCount; i++) {
+			if(translucent[i]) {
+				cache.glEnable(GraphicsDevice.GL_BLEND);
+				cache.glBlendFunc(GraphicsDevice.GL_SRC_ALPHA, GraphicsDevice.GL_ONE_MINUS_SRC_ALPHA);
+			} else {
+				cache.glDisable(GraphicsDevice.GL_BLEND);
+			}
+			commands[i].execute(cache, viewProjection);
+		}
+		counters.record(device);
+		return device;
+	}
+
+	@Benchmark
+	public HeadlessGraphicsDevice queued(FrameCounters counters) {
+		device.resetStats();
+		fill();
+		queue.submit(cache, viewProjection);
+		counters.record(device);
+		return device;
+	}
+
+	@Benchmark
+	public RenderQueue sortOnly() {
+		fill();
+		queue.sort();
+		return queue;
+	}
+}
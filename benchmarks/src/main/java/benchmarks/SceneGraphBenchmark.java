@@ -0,0 +1,99 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import math_components.Vector3;
+import opengl_components.GraphicEntity;
+import opengl_components.SceneGraph;
+import opengl_components.TransformStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import engine_components.WorkerPool;
+
+/**
+ * Full frame world matrix update of a tree whose root moves, so the
+ * whole graph is dirty each frame. Compares the serial pass with the level
+ * parallel pass.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SceneGraphBenchmark {
+
+	@Param({"10000", "100000"})
+	int entityCount;
+
+	/** Children per node, the tree depth follows from it */
+	@Param({"8"})
+	int branching;
+
+	TransformStore store;
+	GraphicEntity root;
+	SceneGraph serial;
+	SceneGraph parallel;
+	WorkerPool pool;
+	final Vector3 position = new Vector3(0,0,0);
+	int frame;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		store = new TransformStore(entityCount);
+		pool = new WorkerPool(Runtime.getRuntime().availableProcessors() - 1);
+		serial = new SceneGraph(store, null);
+		parallel = new SceneGraph(store, pool);
+
+		final Random random = new Random(42);
+		final GraphicEntity [] entities = new GraphicEntity[entityCount];
+		for(int i = 0; i < entityCount; i++) {
+			entities[i] = new GraphicEntity(store);
+			entities[i].setLocalPosition(new Vector3(random.nextFloat(), random.nextFloat(), random.nextFloat()));
+			entities[i].setLocalEulerAngles(new Vector3(random.nextFloat()*360, random.nextFloat()*360, 0));
+			if(i > 0) {
+				entities[i].setParent(entities[(i - 1)/branching]);
+			}
+		}
+		root = entities[0];
+		serial.updateTransforms();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	private void moveRoot() {
+		position.set(frame++ & 1, 0, 0);
+		root.setLocalPosition(position);
+	}
+
+	@Benchmark
+	public TransformStore updateSerial() {
+		moveRoot();
+		serial.updateTransforms();
+		return store;
+	}
+
+	@Benchmark
+	public TransformStore updateParallel() {
+		moveRoot();
+		parallel.updateTransforms();
+		return store;
+	}
+}
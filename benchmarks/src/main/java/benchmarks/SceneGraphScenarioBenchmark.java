@@ -0,0 +1,108 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import math_components.Vector3;
+import opengl_components.GraphicEntity;
+import opengl_components.SceneGraph;
+import opengl_components.TransformStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Frame update cost of differently shaped scene graphs:
+ * wide   one root with every other entity as a direct child
+ * deep   a single parent/child chain
+ * mutate a balanced tree where a share of the entities moves every frame and
+ *        a few are reparented, like a busy game frame
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SceneGraphScenarioBenchmark {
+
+	@Param({"wide", "deep", "mutate"})
+	String shape;
+
+	@Param({"1000", "10000"})
+	int entityCount;
+
+	/** Entities moved per frame in the mutate shape, in percent */
+	@Param({"10"})
+	int mutationPercent;
+
+	GraphicEntity [] entities;
+	SceneGraph sceneGraph;
+	Random random;
+	final Vector3 position = new Vector3(0, 0, 0);
+
+	@Setup(Level.Trial)
+	public void setup() {
+		final TransformStore store = new TransformStore(entityCount);
+		sceneGraph = new SceneGraph(store, null);
+		random = new Random(42);
+		entities = new GraphicEntity[entityCount];
+
+		for(int i = 0; i < entityCount; i++) {
+			entities[i] = new GraphicEntity(store);
+			entities[i].setLocalPosition(new Vector3(random.nextFloat(), random.nextFloat(), random.nextFloat()));
+			entities[i].setLocalEulerAngles(new Vector3(random.nextFloat()*360, 0, random.nextFloat()*360));
+			if(i == 0) {
+				continue;
+			}
+
+			if("wide".equals(shape)) {
+				entities[i].setParent(entities[0]);
+			} else if("deep".equals(shape)) {
+				entities[i].setParent(entities[i - 1]);
+			} else {
+				entities[i].setParent(entities[(i - 1)/4]);
+			}
+		}
+		sceneGraph.updateTransforms();
+	}
+
+	/** Moves the root so every world matrix has to be recalculated */
+	@Benchmark
+	public SceneGraph moveRoot() {
+		position.set(random.nextFloat(), 0, 0);
+		entities[0].setLocalPosition(position);
+		sceneGraph.updateTransforms();
+		return sceneGraph;
+	}
+
+	/** Moves a share of the entities and reparents a few leaves */
+	@Benchmark
+	public SceneGraph mutateFrame() {
+		final int moves = Math.max(1, entityCount*mutationPercent/100);
+		for(int i = 0; i < moves; i++) {
+			position.set(random.nextFloat(), random.nextFloat(), random.nextFloat());
+			entities[1 + random.nextInt(entityCount - 1)].setLocalPosition(position);
+		}
+
+		if(!"deep".equals(shape)) {
+			// the last entities are leaves in the wide and mutate shapes
+			for(int i = 0; i < 4; i++) {
+				final int leaf = entityCount - 1 - random.nextInt(entityCount/8);
+				entities[leaf].setParent(entities[random.nextInt(entityCount/8)]);
+			}
+		}
+		sceneGraph.updateTransforms();
+		return sceneGraph;
+	}
+}
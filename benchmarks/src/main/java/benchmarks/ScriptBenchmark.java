@@ -0,0 +1,117 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import engine_components.FrameArena;
+import engine_components.WorkerPool;
+import math_components.Vector3;
+import opengl_components.GraphicEntity;
+import opengl_components.ScriptSystem;
+import opengl_components.TransformStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every entity has a local script that turns it and reads its world
+ * position, one in a hundred also has a shared script. entityUpdate calls
+ * GraphicEntity.update() on every entity by hand, the way the demo used to;
+ * the other runs go through a ScriptSystem, serially, across the shared
+ * WorkerPool, and with profiling on.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScriptBenchmark {
+
+	@Param({"1000", "10000"})
+	int entityCount;
+
+	TransformStore store;
+	GraphicEntity [] entities;
+	ScriptSystem serial;
+	ScriptSystem parallel;
+	ScriptSystem profiled;
+	final Vector3 delta = new Vector3(0, 0, 1);
+	float sharedSum;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		store = new TransformStore(entityCount);
+		entities = new GraphicEntity[entityCount];
+		for(int i = 0; i < entityCount; i++) {
+			final GraphicEntity entity = entities[i] = new GraphicEntity(store);
+			entity.setLocalPosition(new Vector3(i, 0, 0));
+			entity.addScript(new GraphicEntity.LocalScriptable() {
+				@Override
+				public void Update() {
+					entity.rotateEuler(delta);
+					entity.getPosition(FrameArena.get().vector3());
+				}
+
+				@Override
+				public void Start() {
+				}
+			});
+			if(i % 100 == 0) {
+				entity.addScript(new GraphicEntity.Scriptable() {
+					@Override
+					public void Update() {
+						sharedSum += entity.getPosition(FrameArena.get().vector3()).x;
+					}
+
+					@Override
+					public void Start() {
+					}
+				});
+			}
+		}
+		serial = new ScriptSystem(store, null);
+		parallel = new ScriptSystem(store, WorkerPool.getShared());
+		profiled = new ScriptSystem(store, null);
+		profiled.setProfiling(true);
+	}
+
+	@Benchmark
+	public float entityUpdate() {
+		FrameArena.get().reset();
+		for(int i = 0; i < entityCount; i++) {
+			entities[i].update();
+		}
+		return sharedSum;
+	}
+
+	@Benchmark
+	public float systemSerial() {
+		FrameArena.get().reset();
+		serial.update();
+		return sharedSum;
+	}
+
+	@Benchmark
+	public float systemParallel() {
+		FrameArena.get().reset();
+		parallel.update();
+		return sharedSum;
+	}
+
+	@Benchmark
+	public float systemProfiled() {
+		FrameArena.get().reset();
+		profiled.update();
+		return sharedSum;
+	}
+}
@@ -0,0 +1,111 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import math_components.Matrix4x4;
+import math_components.Vector3;
+import opengl_components.GraphicEntity;
+import opengl_components.SceneGraph;
+import opengl_components.SnapshotBuffer;
+import opengl_components.TransformSnapshot;
+import opengl_components.TransformStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What the fixed step pipeline adds to a frame: the simulation capturing
+ * and publishing the world transforms after a step, and the renderer
+ * acquiring them and building every world matrix between the last two
+ * snapshots instead of reading them from the store. publishAcquire is the
+ * lock free handoff alone, single threaded so without contention.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotBenchmark {
+
+	@Param({"1000", "10000"})
+	int entityCount;
+
+	TransformStore store;
+	SnapshotBuffer snapshots;
+	GraphicEntity [] entities;
+	Matrix4x4 world = new Matrix4x4();
+	long time;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		final Random random = new Random(42);
+		store = new TransformStore(entityCount);
+		snapshots = new SnapshotBuffer();
+		entities = new GraphicEntity[entityCount];
+		for(int i = 0; i < entityCount; i++) {
+			entities[i] = new GraphicEntity(store);
+			// a few levels of hierarchy
+			if(i >= 8) {
+				entities[i].setParent(entities[random.nextInt(i)]);
+			}
+			entities[i].setLocalPosition(new Vector3(random.nextFloat(), random.nextFloat(), random.nextFloat()));
+			entities[i].setLocalEulerAngles(new Vector3(0, 0, random.nextFloat()*360));
+		}
+		new SceneGraph(store, null).updateTransforms();
+		for(int i = 0; i < 2; i++) {
+			capture();
+			snapshots.acquire();
+		}
+	}
+
+	@Benchmark
+	public TransformSnapshot capture() {
+		time += 16666667;
+		snapshots.getBack().capture(store, time);
+		snapshots.publish();
+		return snapshots.getBack();
+	}
+
+	/** the handoff alone, an empty publish and acquire */
+	@Benchmark
+	public boolean publishAcquire() {
+		snapshots.publish();
+		return snapshots.acquire();
+	}
+
+	@Benchmark
+	public float interpolateAll() {
+		final TransformSnapshot previous = snapshots.getPrevious(), current = snapshots.getCurrent();
+		final float [] m = world.matrix();
+		float sum = 0;
+		for(int i = 0; i < entityCount; i++) {
+			TransformSnapshot.interpolate(previous, current, entities[i].getId(), 0.5f, world);
+			sum += m[12];
+		}
+		return sum;
+	}
+
+	/** drawing straight from the store, without interpolation */
+	@Benchmark
+	public float readStore() {
+		final float [] m = world.matrix();
+		float sum = 0;
+		for(int i = 0; i < entityCount; i++) {
+			entities[i].getWorldTransformationMatrix(world);
+			sum += m[12];
+		}
+		return sum;
+	}
+}
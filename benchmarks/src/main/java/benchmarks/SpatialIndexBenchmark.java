@@ -0,0 +1,175 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import math_components.AabbTree;
+import math_components.Frustum;
+import math_components.Vector3;
+import opengl_components.GraphicEntity;
+import opengl_components.SceneIndex;
+import opengl_components.TransformStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Queries over entities scattered in a cube, through a SceneIndex and by
+ * testing every world box of the store. The update benchmarks move 1% of
+ * the entities a frame, through the whole store and index update and
+ * directly on the tree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SpatialIndexBenchmark {
+
+	static final float SIZE = 1000;
+
+	@Param({"10000", "100000"})
+	int entityCount;
+
+	TransformStore store;
+	SceneIndex index;
+	GraphicEntity [] entities;
+	Frustum frustum;
+	Random random;
+	Vector3 position = new Vector3(0, 0, 0);
+	Vector3 origin = new Vector3(-SIZE, 0, 0);
+	Vector3 direction = new Vector3(1, 0, 0);
+	int [] proxies;
+	int next;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		random = new Random(42);
+		store = new TransformStore(entityCount);
+		entities = new GraphicEntity[entityCount];
+		final Vector3 center = new Vector3(0, 0, 0);
+		final Vector3 extents = new Vector3(1, 1, 1);
+		for(int i = 0; i < entityCount; i++) {
+			entities[i] = new GraphicEntity(store);
+			entities[i].setLocalPosition(randomPosition(position));
+			entities[i].setLocalBounds(center, extents);
+		}
+		index = new SceneIndex(store, 1);
+		index.update();
+
+		// a view of about 1% of the cube
+		final float [] m = new float[16];
+		m[0] = m[5] = m[10] = 10/SIZE;
+		m[15] = 1;
+		frustum = new Frustum().set(m, 0);
+
+		proxies = new int[entityCount];
+		final AabbTree tree = new AabbTree(entityCount, 1);
+		for(int i = 0; i < entityCount; i++) {
+			randomPosition(position);
+			proxies[i] = tree.createProxy(position.x - 1, position.y - 1, position.z - 1,
+					position.x + 1, position.y + 1, position.z + 1, i);
+		}
+		treeForMoves = tree;
+	}
+
+	AabbTree treeForMoves;
+
+	private Vector3 randomPosition(Vector3 out) {
+		out.set((random.nextFloat() - 0.5f)*SIZE, (random.nextFloat() - 0.5f)*SIZE, (random.nextFloat() - 0.5f)*SIZE);
+		return out;
+	}
+
+	@Benchmark
+	public int frustumBruteForce() {
+		store.updateBounds();
+		final float [] wb = store.worldBounds();
+		int found = 0;
+		for(int i = 0, count = store.size(); i < count; i++) {
+			if(frustum.testAabb(wb, i*TransformStore.BOUNDS_SIZE) != Frustum.OUTSIDE) {
+				found++;
+			}
+		}
+		return found;
+	}
+
+	@Benchmark
+	public int frustumIndexed() {
+		return index.queryFrustum(frustum);
+	}
+
+	@Benchmark
+	public float raycastBruteForce() {
+		store.updateBounds();
+		final float [] wb = store.worldBounds();
+		final float y = (random.nextFloat() - 0.5f)*SIZE, z = (random.nextFloat() - 0.5f)*SIZE;
+		float best = Float.MAX_VALUE;
+		for(int i = 0, count = store.size(); i < count; i++) {
+			final int b = i*TransformStore.BOUNDS_SIZE;
+			if(y >= wb[b + 1] && y <= wb[b + 4] && z >= wb[b + 2] && z <= wb[b + 5] && wb[b] < best) {
+				best = wb[b];
+			}
+		}
+		return best;
+	}
+
+	@Benchmark
+	public GraphicEntity raycastIndexed() {
+		origin.y = (random.nextFloat() - 0.5f)*SIZE;
+		origin.z = (random.nextFloat() - 0.5f)*SIZE;
+		return index.raycast(origin, direction, SIZE*2);
+	}
+
+	@Benchmark
+	public int sphereIndexed() {
+		return index.querySphere(randomPosition(position), 20);
+	}
+
+	@Benchmark
+	public int nearestIndexed() {
+		return index.queryNearest(randomPosition(position), 8, Float.MAX_VALUE);
+	}
+
+	/** moves 1% of the entities then updates the store bounds and the index */
+	@Benchmark
+	public int updateMoving() {
+		for(int i = 0, moves = entityCount/100; i < moves; i++) {
+			final GraphicEntity entity = entities[next];
+			next = (next + 1)%entityCount;
+			entity.getLocalPosition(position);
+			position.x += random.nextFloat()*4 - 2;
+			entity.setLocalPosition(position);
+		}
+		index.update();
+		return index.getReinsertedCount();
+	}
+
+	/** moves 1% of the proxies of a bare tree, the cost of the tree updates alone */
+	@Benchmark
+	public int treeMoves() {
+		final AabbTree tree = treeForMoves;
+		final float [] tight = tree.tightBounds();
+		int reinserted = 0;
+		for(int i = 0, moves = entityCount/100; i < moves; i++) {
+			final int proxy = proxies[next];
+			next = (next + 1)%entityCount;
+			final int b = proxy*AabbTree.BOUNDS_SIZE;
+			final float dx = random.nextFloat()*4 - 2;
+			if(tree.moveProxy(proxy, tight[b] + dx, tight[b + 1], tight[b + 2], tight[b + 3] + dx, tight[b + 4], tight[b + 5])) {
+				reinserted++;
+			}
+		}
+		return reinserted;
+	}
+}
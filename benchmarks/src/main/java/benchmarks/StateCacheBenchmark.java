@@ -0,0 +1,142 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import math_components.Matrix4x4;
+import math_components.Vector3;
+import opengl_components.CachingGraphicsDevice;
+import opengl_components.GraphicEntity;
+import opengl_components.GraphicsDevice;
+import opengl_components.HeadlessGraphicsDevice;
+import opengl_components.Mesh;
+import opengl_components.SceneGraph;
+import opengl_components.TransformStore;
+import opengl_components.VertexLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A frame of static meshes spread over a few materials, each draw setting
+ * its full state (program, blend, mesh, view projection and model uniforms)
+ * the way a naive renderer does. Submitted straight to the headless device and
+ * through a CachingGraphicsDevice, the calls that reach the device are the
+ * FrameCounters secondary results.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StateCacheBenchmark {
+
+	static final int MATERIALS = 4;
+
+	static final float [] TRIANGLE = {
+		-0.5f, -0.25f, 0.0f, 1.0f, 0.0f, 0.0f, 1.0f,
+		0.5f, -0.25f, 0.0f, 0.0f, 0.0f, 1.0f, 1.0f,
+		0.0f, 0.559016994f, 0.0f, 0.0f, 1.0f, 0.0f, 1.0f };
+
+	@Param({"1000"})
+	int drawCount;
+
+	HeadlessGraphicsDevice device;
+	CachingGraphicsDevice cache;
+	int [] programs;
+	int [] viewProjectionLocations;
+	int [] modelLocations;
+	Mesh directMesh;
+	Mesh cachedMesh;
+	GraphicEntity [] entities;
+	Matrix4x4 model;
+	float [] viewProjection;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		device = new HeadlessGraphicsDevice();
+		device.setRecording(false);
+		cache = new CachingGraphicsDevice(device);
+
+		programs = new int[MATERIALS];
+		viewProjectionLocations = new int[MATERIALS];
+		modelLocations = new int[MATERIALS];
+		for(int i = 0; i < MATERIALS; i++) {
+			final int vertex = device.glCreateShader(GraphicsDevice.GL_VERTEX_SHADER);
+			device.glShaderSource(vertex, "vertex");
+			device.glCompileShader(vertex);
+			final int fragment = device.glCreateShader(GraphicsDevice.GL_FRAGMENT_SHADER);
+			device.glShaderSource(fragment, "fragment " + i);
+			device.glCompileShader(fragment);
+			programs[i] = device.glCreateProgram();
+			device.glAttachShader(programs[i], vertex);
+			device.glAttachShader(programs[i], fragment);
+			device.glBindAttribLocation(programs[i], 0, "a_Position");
+			device.glBindAttribLocation(programs[i], 1, "a_Color");
+			device.glLinkProgram(programs[i]);
+			viewProjectionLocations[i] = device.glGetUniformLocation(programs[i], "u_ViewProjection");
+			modelLocations[i] = device.glGetUniformLocation(programs[i], "u_Model");
+		}
+
+		final VertexLayout layout = new VertexLayout(7).add(0, 3, 0).add(1, 4, 3);
+		directMesh = new Mesh(device, layout, GraphicsDevice.GL_STATIC_DRAW);
+		directMesh.setVertices(TRIANGLE, 0, 3);
+		cachedMesh = new Mesh(cache, layout, GraphicsDevice.GL_STATIC_DRAW);
+		cachedMesh.setVertices(TRIANGLE, 0, 3);
+
+		final TransformStore store = new TransformStore();
+		entities = new GraphicEntity[drawCount];
+		for(int i = 0; i < drawCount; i++) {
+			entities[i] = new GraphicEntity(store);
+			entities[i].setLocalPosition(new Vector3(i % 32, i / 32, 0));
+		}
+		new SceneGraph(store, null).updateTransforms();
+
+		model = new Matrix4x4();
+		viewProjection = Matrix4x4.identity().matrix();
+	}
+
+	private void frame(GraphicsDevice target, Mesh mesh) {
+		for(int i = 0; i < drawCount; i++) {
+			// draws are sorted by material
+			final int material = i*MATERIALS/drawCount;
+			target.glUseProgram(programs[material]);
+			if(material % 2 == 0) {
+				target.glDisable(GraphicsDevice.GL_BLEND);
+			} else {
+				target.glEnable(GraphicsDevice.GL_BLEND);
+				target.glBlendFunc(GraphicsDevice.GL_SRC_ALPHA, GraphicsDevice.GL_ONE_MINUS_SRC_ALPHA);
+			}
+			mesh.bind();
+			target.glUniformMatrix4fv(viewProjectionLocations[material], 1, false, viewProjection, 0);
+			target.glUniformMatrix4fv(modelLocations[material], 1, false, entities[i].getWorldTransformationMatrix(model).matrix(), 0);
+			mesh.draw();
+		}
+	}
+
+	@Benchmark
+	public HeadlessGraphicsDevice direct(FrameCounters counters) {
+		device.resetStats();
+		frame(device, directMesh);
+		counters.record(device);
+		return device;
+	}
+
+	@Benchmark
+	public HeadlessGraphicsDevice cached(FrameCounters counters) {
+		device.resetStats();
+		frame(cache, cachedMesh);
+		counters.record(device);
+		return device;
+	}
+}
@@ -0,0 +1,103 @@
+package benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import math_components.Matrix4x4;
+import math_components.Quaternion;
+import math_components.Vector3;
+import opengl_components.VertexTransformer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import engine_components.WorkerPool;
+
+/**
+ * Transforming the positions of an interleaved position/colour vertex stream
+ * (7 floats per vertex, the LessonOneRenderer layout) held in a float array
+ * and in a direct FloatBuffer, serially and across the worker pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VertexTransformerBenchmark {
+
+	static final int STRIDE = 7;
+
+	@Param({"1000", "100000"})
+	int vertexCount;
+
+	Matrix4x4 matrix;
+	float [] srcArray;
+	float [] dstArray;
+	FloatBuffer srcBuffer;
+	FloatBuffer dstBuffer;
+	WorkerPool pool;
+	VertexTransformer parallel;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		matrix = Matrix4x4.createTransformMatrix(new Vector3(1, 2, 3), new Quaternion(new Vector3(30, 45, 60)), new Vector3(1, 2, 3), new Matrix4x4());
+
+		final Random random = new Random(42);
+		srcArray = new float[vertexCount*STRIDE];
+		for(int i = 0; i < srcArray.length; i++) {
+			srcArray[i] = random.nextFloat();
+		}
+		dstArray = new float[srcArray.length];
+
+		srcBuffer = ByteBuffer.allocateDirect(srcArray.length*4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		srcBuffer.put(srcArray).position(0);
+		dstBuffer = ByteBuffer.allocateDirect(srcArray.length*4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+		pool = new WorkerPool(Runtime.getRuntime().availableProcessors() - 1);
+		parallel = new VertexTransformer(pool);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public float [] arraySerial() {
+		VertexTransformer.transformPoints(matrix, srcArray, 0, STRIDE, dstArray, 0, STRIDE, vertexCount);
+		return dstArray;
+	}
+
+	@Benchmark
+	public float [] arrayParallel() {
+		parallel.transform(matrix, srcArray, 0, STRIDE, dstArray, 0, STRIDE, vertexCount);
+		return dstArray;
+	}
+
+	@Benchmark
+	public FloatBuffer directBufferSerial() {
+		VertexTransformer.transformPoints(matrix, srcBuffer, 0, STRIDE, dstBuffer, 0, STRIDE, vertexCount);
+		return dstBuffer;
+	}
+
+	@Benchmark
+	public FloatBuffer directBufferParallel() {
+		parallel.transform(matrix, srcBuffer, 0, STRIDE, dstBuffer, 0, STRIDE, vertexCount);
+		return dstBuffer;
+	}
+}
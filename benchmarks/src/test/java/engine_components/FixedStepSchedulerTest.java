@@ -0,0 +1,107 @@
+package engine_components;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Drives the scheduler with a made up clock: steps due, the catch up cap,
+ * the interpolation alpha and resets, also one requested by a step.
+ */
+public class FixedStepSchedulerTest {
+
+	static class Counter implements FixedStepScheduler.Simulation {
+		int steps;
+		FixedStepScheduler resetDuringStep;
+
+		@Override
+		public void step(float deltaTime) {
+			steps++;
+			if(resetDuringStep != null) {
+				resetDuringStep.resetClock();
+				resetDuringStep = null;
+			}
+		}
+	}
+
+	final Counter counter = new Counter();
+	final FixedStepScheduler scheduler = new FixedStepScheduler(counter, 0.01f, 4);
+	final long step = scheduler.getStepNanos();
+	final long start = 1000000000L;
+
+	@Test
+	public void runsTheStepsDue() {
+		assertEquals(0, scheduler.advance(start));
+		assertEquals(start, scheduler.getSimulationTime());
+
+		assertEquals(0, scheduler.advance(start + step - 1));
+		assertEquals(1, scheduler.advance(start + step));
+		assertEquals(2, scheduler.advance(start + 3*step + step/2));
+		assertEquals(3, counter.steps);
+		assertEquals(start + 3*step, scheduler.getSimulationTime());
+		assertEquals(0, scheduler.getDroppedSteps());
+	}
+
+	@Test
+	public void capsTheCatchUp() {
+		scheduler.advance(start);
+		// a hitch of ten steps only runs four, the rest is dropped
+		assertEquals(4, scheduler.advance(start + 10*step + step/4));
+		assertEquals(4, counter.steps);
+		assertEquals(6, scheduler.getDroppedSteps());
+		// the dropped time is skipped, not owed to later frames
+		assertEquals(start + 10*step, scheduler.getSimulationTime());
+		assertEquals(1, scheduler.advance(start + 11*step));
+
+		scheduler.setMaxStepsPerAdvance(1);
+		assertEquals(1, scheduler.advance(start + 14*step));
+		assertEquals(8, scheduler.getDroppedSteps());
+	}
+
+	@Test
+	public void alpha() {
+		assertEquals(1, scheduler.getAlpha(start), 0);
+		scheduler.advance(start);
+		assertEquals(0, scheduler.getAlpha(start), 0);
+		assertEquals(0.25f, scheduler.getAlpha(start + step/4), 1e-6f);
+		assertEquals(0.5f, scheduler.getAlpha(start + step/2), 1e-6f);
+		scheduler.advance(start + step + step/2);
+		assertEquals(0.5f, scheduler.getAlpha(start + step + step/2), 1e-6f);
+		// clamped on both sides
+		assertEquals(0, scheduler.getAlpha(start), 0);
+		assertEquals(1, scheduler.getAlpha(start + 5*step), 0);
+	}
+
+	@Test
+	public void resetRestartsTheClock() {
+		scheduler.advance(start);
+		scheduler.advance(start + 2*step);
+		assertEquals(2, counter.steps);
+
+		// a pause of an hour is neither simulated nor dropped
+		final long resumed = start + 3600*1000000000L;
+		scheduler.resetClock();
+		assertEquals(0, scheduler.advance(resumed));
+		assertEquals(resumed, scheduler.getSimulationTime());
+		assertEquals(2, counter.steps);
+		assertEquals(0, scheduler.getDroppedSteps());
+		assertEquals(1, scheduler.advance(resumed + step));
+	}
+
+	@Test
+	public void resetDuringAdvanceAppliesToTheNextOne() {
+		scheduler.advance(start);
+		counter.resetDuringStep = scheduler;
+		// the advance that was running finishes its steps
+		assertEquals(3, scheduler.advance(start + 3*step));
+		assertEquals(start + 3*step, scheduler.getSimulationTime());
+
+		// and the next one restarts the clock instead of stepping
+		final long later = start + 100*step;
+		assertEquals(0, scheduler.advance(later));
+		assertEquals(later, scheduler.getSimulationTime());
+		assertEquals(3, counter.steps);
+		assertEquals(0, scheduler.getDroppedSteps());
+		assertEquals(1, scheduler.advance(later + step));
+	}
+}
@@ -0,0 +1,86 @@
+package engine_components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+/**
+ * Checks that every item of a range is run exactly once, also after the
+ * workers or the caller were interrupted.
+ */
+public class WorkerPoolTest {
+
+	static final int COUNT = 10000;
+
+	static class Counting implements WorkerPool.RangeTask {
+		final AtomicIntegerArray runs = new AtomicIntegerArray(COUNT);
+
+		@Override
+		public void run(int start, int end) {
+			for(int i = start; i < end; i++) {
+				runs.incrementAndGet(i);
+			}
+		}
+
+		void assertOnce() {
+			for(int i = 0; i < COUNT; i++) {
+				assertEquals("item " + i, 1, runs.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void runsEveryItemOnce() {
+		final WorkerPool pool = new WorkerPool(3);
+		for(int repeat = 0; repeat < 100; repeat++) {
+			final Counting task = new Counting();
+			pool.parallelFor(COUNT, 1 + repeat, task);
+			task.assertOnce();
+		}
+		pool.shutdown();
+	}
+
+	// a lost worker hangs the next job instead of failing it
+	@Test(timeout = 20000)
+	public void interruptedWorkersKeepWorking() throws InterruptedException {
+		final WorkerPool pool = new WorkerPool(3);
+		pool.parallelFor(COUNT, 16, new Counting());
+		for(Thread thread : Thread.getAllStackTraces().keySet()) {
+			if(thread.getName().startsWith("WorkerPool-") && thread.getClass().getEnclosingClass() == WorkerPool.class) {
+				thread.interrupt();
+			}
+		}
+		Thread.sleep(50);
+		for(int repeat = 0; repeat < 20; repeat++) {
+			final Counting task = new Counting();
+			pool.parallelFor(COUNT, 16, task);
+			task.assertOnce();
+		}
+		pool.shutdown();
+	}
+
+	@Test(timeout = 20000)
+	public void interruptedCallerWaitsForTheJob() {
+		final WorkerPool pool = new WorkerPool(3);
+		for(int repeat = 0; repeat < 20; repeat++) {
+			final Counting task = new Counting();
+			Thread.currentThread().interrupt();
+			pool.parallelFor(COUNT, 16, new WorkerPool.RangeTask() {
+				@Override
+				public void run(int start, int end) {
+					// slow enough that the caller waits for the workers
+					for(long t = System.nanoTime(); System.nanoTime() - t < 20000; ) {
+					}
+					task.run(start, end);
+				}
+			});
+			// the job is complete and the interrupt is passed on
+			assertTrue(Thread.interrupted());
+			task.assertOnce();
+		}
+		pool.shutdown();
+	}
+}
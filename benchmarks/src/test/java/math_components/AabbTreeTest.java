@@ -0,0 +1,280 @@
+package math_components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks every query of the tree against a brute force scan of the exact
+ * boxes, after random creates, moves and destroys.
+ */
+public class AabbTreeTest {
+
+	static final int OBJECTS = 600;
+	static final float EPSILON = 1e-3f;
+
+	final Random random = new Random(15);
+	final AabbTree tree = new AabbTree(16, AabbTree.DEFAULT_MARGIN);
+
+	// Model, indexed by user data
+	final int [] proxies = new int[OBJECTS];
+	final boolean [] alive = new boolean[OBJECTS];
+	final float [] boxes = new float[OBJECTS*AabbTree.BOUNDS_SIZE];
+	int aliveCount;
+
+	@Test
+	public void queriesMatchBruteForce() {
+		for(int round = 0; round < 40; round++) {
+			edit(200);
+			checkStructure();
+			for(int q = 0; q < 20; q++) {
+				checkAabb();
+				checkSphere();
+				checkNearest();
+				checkRaycast();
+				checkFrustum();
+			}
+		}
+	}
+
+	@Test
+	public void clearEmptiesTheTree() {
+		edit(300);
+		tree.clear();
+		Arrays.fill(alive, false);
+		aliveCount = 0;
+		assertEquals(0, tree.getProxyCount());
+		assertEquals(-1, tree.getHeight());
+		assertEquals(0, tree.queryAabb(-1000, -1000, -1000, 1000, 1000, 1000));
+		assertEquals(AabbTree.NULL, tree.raycast(0, 0, 0, 1, 1, 1, 1000, null));
+
+		// the freed nodes are handed out again
+		edit(300);
+		checkStructure();
+		checkAabb();
+	}
+
+	private void edit(int count) {
+		for(int i = 0; i < count; i++) {
+			final int object = random.nextInt(OBJECTS);
+			final int action = random.nextInt(4);
+			if(!alive[object]) {
+				randomBox(object);
+				final int o = object*AabbTree.BOUNDS_SIZE;
+				proxies[object] = tree.createProxy(boxes[o], boxes[o + 1], boxes[o + 2],
+						boxes[o + 3], boxes[o + 4], boxes[o + 5], object);
+				alive[object] = true;
+				aliveCount++;
+			} else if(action == 0) {
+				tree.destroyProxy(proxies[object]);
+				alive[object] = false;
+				aliveCount--;
+			} else {
+				// small moves stay in the fat box, large ones reinsert
+				final int o = object*AabbTree.BOUNDS_SIZE;
+				if(action == 1) {
+					final float dx = (random.nextFloat() - 0.5f)*0.05f;
+					for(int k = 0; k < 6; k++) {
+						boxes[o + k] += k % 3 == 0? dx : 0;
+					}
+				} else {
+					randomBox(object);
+				}
+				tree.moveProxy(proxies[object], boxes[o], boxes[o + 1], boxes[o + 2],
+						boxes[o + 3], boxes[o + 4], boxes[o + 5]);
+			}
+		}
+	}
+
+	private void randomBox(int object) {
+		final int o = object*AabbTree.BOUNDS_SIZE;
+		for(int k = 0; k < 3; k++) {
+			final float min = (random.nextFloat() - 0.5f)*100;
+			boxes[o + k] = min;
+			boxes[o + k + 3] = min + random.nextFloat()*4;
+		}
+	}
+
+	private void checkStructure() {
+		assertEquals(aliveCount, tree.getProxyCount());
+		assertEquals(aliveCount > 0? 2*aliveCount - 1 : 0, tree.getNodeCount());
+		for(int object = 0; object < OBJECTS; object++) {
+			if(alive[object]) {
+				assertEquals(object, tree.getUserData(proxies[object]));
+				final float [] tight = tree.tightBounds();
+				final float [] fat = tree.fatBounds();
+				final int p = proxies[object]*AabbTree.BOUNDS_SIZE, o = object*AabbTree.BOUNDS_SIZE;
+				for(int k = 0; k < 6; k++) {
+					assertEquals(boxes[o + k], tight[p + k], 0);
+				}
+				for(int k = 0; k < 3; k++) {
+					assertTrue(fat[p + k] <= tight[p + k] && fat[p + k + 3] >= tight[p + k + 3]);
+				}
+			}
+		}
+		if(aliveCount > 0) {
+			// balanced, far from a list
+			assertTrue(tree.getHeight() <= 3*(32 - Integer.numberOfLeadingZeros(aliveCount)));
+		}
+	}
+
+	private void checkAabb() {
+		final float x = (random.nextFloat() - 0.5f)*100, y = (random.nextFloat() - 0.5f)*100, z = (random.nextFloat() - 0.5f)*100;
+		final float size = random.nextFloat()*30;
+		tree.queryAabb(x, y, z, x + size, y + size, z + size);
+
+		final boolean [] expected = new boolean[OBJECTS];
+		for(int object = 0; object < OBJECTS; object++) {
+			final int o = object*AabbTree.BOUNDS_SIZE;
+			expected[object] = alive[object]
+					&& boxes[o] <= x + size && boxes[o + 1] <= y + size && boxes[o + 2] <= z + size
+					&& boxes[o + 3] >= x && boxes[o + 4] >= y && boxes[o + 5] >= z;
+		}
+		assertResults(expected);
+	}
+
+	private void checkSphere() {
+		final float x = (random.nextFloat() - 0.5f)*100, y = (random.nextFloat() - 0.5f)*100, z = (random.nextFloat() - 0.5f)*100;
+		final float radius = random.nextFloat()*20;
+		tree.querySphere(x, y, z, radius);
+
+		final boolean [] expected = new boolean[OBJECTS];
+		for(int object = 0; object < OBJECTS; object++) {
+			expected[object] = alive[object] && distanceSq(object, x, y, z) <= radius*radius;
+		}
+		assertResults(expected);
+	}
+
+	private void checkNearest() {
+		final float x = (random.nextFloat() - 0.5f)*100, y = (random.nextFloat() - 0.5f)*100, z = (random.nextFloat() - 0.5f)*100;
+		final int count = 1 + random.nextInt(12);
+		final float maxDistance = 5 + random.nextFloat()*40;
+		final int found = tree.queryNearest(x, y, z, count, maxDistance);
+
+		final float [] distances = new float[aliveCount];
+		int n = 0;
+		for(int object = 0; object < OBJECTS; object++) {
+			if(alive[object]) {
+				final float distance = (float)Math.sqrt(distanceSq(object, x, y, z));
+				if(distance <= maxDistance) {
+					distances[n++] = distance;
+				}
+			}
+		}
+		Arrays.sort(distances, 0, n);
+		assertEquals(Math.min(count, n), found);
+		for(int i = 0; i < found; i++) {
+			final int object = tree.getResult(i);
+			assertTrue(alive[object]);
+			// ties can come in any order, the distances can not
+			assertEquals(distances[i], tree.getResultDistance(i), EPSILON);
+			assertEquals((float)Math.sqrt(distanceSq(object, x, y, z)), tree.getResultDistance(i), EPSILON);
+		}
+	}
+
+	private void checkRaycast() {
+		final float ox = (random.nextFloat() - 0.5f)*120, oy = (random.nextFloat() - 0.5f)*120, oz = (random.nextFloat() - 0.5f)*120;
+		final float dx = nonZero(), dy = nonZero(), dz = nonZero();
+		final float maxDistance = 20 + random.nextFloat()*200;
+		final int hit = tree.raycast(ox, oy, oz, dx, dy, dz, maxDistance, null);
+
+		float best = maxDistance;
+		int closest = AabbTree.NULL;
+		for(int object = 0; object < OBJECTS; object++) {
+			if(alive[object]) {
+				final float distance = rayEnter(object, ox, oy, oz, dx, dy, dz, best);
+				if(distance >= 0 && distance <= best) {
+					best = distance;
+					closest = object;
+				}
+			}
+		}
+		if(closest == AabbTree.NULL) {
+			assertEquals(AabbTree.NULL, hit);
+			return;
+		}
+		assertTrue(hit != AabbTree.NULL);
+		assertEquals(best, tree.getRayDistance(), EPSILON);
+		// another box entered at the same distance is as good
+		assertEquals(best, rayEnter(hit, ox, oy, oz, dx, dy, dz, maxDistance), EPSILON);
+	}
+
+	private void checkFrustum() {
+		final Frustum frustum = new Frustum();
+		frustum.set(perspective(0.5f + random.nextFloat(), 1, 0.5f, 10 + random.nextFloat()*60,
+				(random.nextFloat() - 0.5f)*40, (random.nextFloat() - 0.5f)*40), 0);
+		tree.queryFrustum(frustum);
+
+		final boolean [] expected = new boolean[OBJECTS];
+		for(int object = 0; object < OBJECTS; object++) {
+			expected[object] = alive[object] && frustum.testAabb(boxes, object*AabbTree.BOUNDS_SIZE) != Frustum.OUTSIDE;
+		}
+		assertResults(expected);
+	}
+
+	/** every result must be expected and found once */
+	private void assertResults(boolean [] expected) {
+		final boolean [] seen = new boolean[OBJECTS];
+		for(int i = 0; i < tree.getResultCount(); i++) {
+			final int object = tree.getResult(i);
+			assertTrue("unexpected " + object, expected[object]);
+			assertTrue("duplicate " + object, !seen[object]);
+			seen[object] = true;
+		}
+		for(int object = 0; object < OBJECTS; object++) {
+			assertEquals("object " + object, expected[object], seen[object]);
+		}
+	}
+
+	private float distanceSq(int object, float x, float y, float z) {
+		final int o = object*AabbTree.BOUNDS_SIZE;
+		final float dx = Math.max(0, Math.max(boxes[o] - x, x - boxes[o + 3]));
+		final float dy = Math.max(0, Math.max(boxes[o + 1] - y, y - boxes[o + 4]));
+		final float dz = Math.max(0, Math.max(boxes[o + 2] - z, z - boxes[o + 5]));
+		return dx*dx + dy*dy + dz*dz;
+	}
+
+	/** slab test in double, returns where the ray enters the box or -1 */
+	private float rayEnter(int object, float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+		final int o = object*AabbTree.BOUNDS_SIZE;
+		final float [] origin = {ox, oy, oz}, direction = {dx, dy, dz};
+		double near = 0, far = maxDistance;
+		for(int k = 0; k < 3; k++) {
+			double t1 = (boxes[o + k] - origin[k])/(double)direction[k];
+			double t2 = (boxes[o + k + 3] - origin[k])/(double)direction[k];
+			if(t1 > t2) {
+				final double t = t1; t1 = t2; t2 = t;
+			}
+			near = Math.max(near, t1);
+			far = Math.min(far, t2);
+			if(near > far) {
+				return -1;
+			}
+		}
+		return (float)near;
+	}
+
+	private float nonZero() {
+		final float value = random.nextFloat() - 0.5f;
+		return Math.abs(value) < 0.01f? 0.01f : value;
+	}
+
+	/** column major perspective looking down -z from a camera moved by x, y */
+	private static float [] perspective(float fovY, float aspect, float near, float far, float x, float y) {
+		final float f = (float)(1/Math.tan(fovY/2));
+		final float [] m = new float[16];
+		m[0] = f/aspect;
+		m[5] = f;
+		m[10] = (far + near)/(near - far);
+		m[11] = -1;
+		m[14] = 2*far*near/(near - far);
+		// view translation by -x, -y folded into the last column
+		m[12] = -x*m[0];
+		m[13] = -y*m[5];
+		return m;
+	}
+}
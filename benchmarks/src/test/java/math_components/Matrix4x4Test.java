@@ -0,0 +1,171 @@
+package math_components;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import opengl_components.TransformStore;
+
+import org.junit.Test;
+
+/**
+ * Checks M*inverse(M) against the identity for random general, affine and
+ * rigid matrices, and that singular matrices are reported and leave the
+ * output alone.
+ */
+public class Matrix4x4Test {
+
+	static final float EPSILON = 1e-4f;
+	static final float [] IDENTITY = {1, 0, 0, 0,  0, 1, 0, 0,  0, 0, 1, 0,  0, 0, 0, 1};
+
+	final Random random = new Random(17);
+
+	@Test
+	public void invertGeneral() {
+		final float [] m = new float[16], inv = new float[16];
+		for(int i = 0; i < 1000; i++) {
+			for(int k = 0; k < 16; k++) {
+				m[k] = random.nextFloat()*2 - 1;
+			}
+			// keeps the random matrices well conditioned
+			for(int k = 0; k < 16; k += 5) {
+				m[k] += 4;
+			}
+			assertTrue(Matrix4x4.invert(m, 0, inv, 0));
+			assertIdentity(m, inv);
+		}
+	}
+
+	@Test
+	public void invertAffine() {
+		final float [] m = new float[16], inv = new float[16], general = new float[16];
+		for(int i = 0; i < 1000; i++) {
+			randomTransform(m, false);
+			assertTrue(Matrix4x4.invertAffine(m, 0, inv, 0));
+			assertIdentity(m, inv);
+			assertTrue(Matrix4x4.invert(m, 0, general, 0));
+			assertClose(general, inv, 1e-3f);
+		}
+	}
+
+	@Test
+	public void invertRigid() {
+		final float [] m = new float[16], inv = new float[16];
+		for(int i = 0; i < 1000; i++) {
+			randomTransform(m, true);
+			Matrix4x4.invertRigid(m, 0, inv, 0);
+			assertIdentity(m, inv);
+		}
+	}
+
+	@Test
+	public void inverseTranspose() {
+		final float [] m = new float[16], inv = new float[16], normal = new float[16];
+		for(int i = 0; i < 1000; i++) {
+			randomTransform(m, false);
+			assertTrue(Matrix4x4.invertAffine(m, 0, inv, 0));
+			assertTrue(Matrix4x4.inverseTranspose(m, 0, normal, 0));
+			for(int r = 0; r < 3; r++) {
+				for(int c = 0; c < 3; c++) {
+					assertEquals(inv[c*4 + r], normal[r*4 + c], 1e-3f);
+				}
+				assertEquals(0, normal[r*4 + 3], 0);
+				assertEquals(0, normal[12 + r], 0);
+			}
+			assertEquals(1, normal[15], 0);
+		}
+	}
+
+	@Test
+	public void inPlace() {
+		final Matrix4x4 m = new Matrix4x4(), copy = new Matrix4x4();
+		randomTransform(m.matrix(), false);
+		System.arraycopy(m.matrix(), 0, copy.matrix(), 0, 16);
+		assertSame(m, Matrix4x4.invert(m, m));
+		assertIdentity(copy.matrix(), m.matrix());
+
+		System.arraycopy(copy.matrix(), 0, m.matrix(), 0, 16);
+		assertSame(m, Matrix4x4.invertAffine(m, m));
+		assertIdentity(copy.matrix(), m.matrix());
+
+		System.arraycopy(copy.matrix(), 0, m.matrix(), 0, 16);
+		assertSame(m, Matrix4x4.inverseTranspose(m, m));
+	}
+
+	@Test
+	public void singular() {
+		final float [] m = new float[16];
+		randomTransform(m, false);
+		// a zero scale flattens the first row of the basis
+		m[0] = m[1] = m[2] = 0;
+
+		final float [] out = new float[16];
+		final float [] before = {9, 9, 9, 9,  9, 9, 9, 9,  9, 9, 9, 9,  9, 9, 9, 9};
+		System.arraycopy(before, 0, out, 0, 16);
+		assertFalse(Matrix4x4.invert(m, 0, out, 0));
+		assertFalse(Matrix4x4.invertAffine(m, 0, out, 0));
+		assertFalse(Matrix4x4.inverseTranspose(m, 0, out, 0));
+		assertArrayEquals(before, out, 0);
+
+		final Matrix4x4 matrix = new Matrix4x4();
+		System.arraycopy(m, 0, matrix.matrix(), 0, 16);
+		assertNull(Matrix4x4.invert(matrix, new Matrix4x4()));
+		assertNull(Matrix4x4.invertAffine(matrix, new Matrix4x4()));
+		assertNull(Matrix4x4.inverseTranspose(matrix, new Matrix4x4()));
+	}
+
+	@Test
+	public void singularWorldGivesIdentity() {
+		final TransformStore store = new TransformStore(2);
+		final int id = store.create(null);
+		final int index = store.indexOf(id);
+		store.setLocalPosition(index, 1, 2, 3);
+		store.setLocalScale(index, 0, 1, 1);
+		store.updateAll();
+		final int o = store.inverseWorld(index);
+		final float [] inverse = new float[16];
+		System.arraycopy(store.inverseWorldMatrices(), o, inverse, 0, 16);
+		assertArrayEquals(IDENTITY, inverse, 0);
+
+		// and a real inverse once the scale is back
+		store.setLocalScale(index, 2, 2, 2);
+		store.markDirty(index);
+		store.updateAll();
+		final int p = store.inverseWorld(store.indexOf(id));
+		final float [] world = new float[16];
+		System.arraycopy(store.worldMatrices(), store.indexOf(id)*16, world, 0, 16);
+		System.arraycopy(store.inverseWorldMatrices(), p, inverse, 0, 16);
+		assertIdentity(world, inverse);
+	}
+
+	/** writes S*R*T with a random unit rotation, no scale for a rigid one */
+	private void randomTransform(float [] out, boolean rigid) {
+		float x = random.nextFloat()*2 - 1, y = random.nextFloat()*2 - 1, z = random.nextFloat()*2 - 1, w = random.nextFloat()*2 - 1;
+		final float inv = 1/(float)Math.sqrt(x*x + y*y + z*z + w*w);
+		x *= inv; y *= inv; z *= inv; w *= inv;
+		final float sx = rigid? 1 : 0.2f + random.nextFloat()*3;
+		final float sy = rigid? 1 : 0.2f + random.nextFloat()*3;
+		final float sz = rigid? 1 : 0.2f + random.nextFloat()*3;
+		Matrix4x4.createTransformMatrix(sx, sy, sz, x, y, z, w,
+				random.nextFloat()*20 - 10, random.nextFloat()*20 - 10, random.nextFloat()*20 - 10, out, 0);
+	}
+
+	private static void assertIdentity(float [] m, float [] inv) {
+		final float [] product = new float[16];
+		Matrix4x4.mult(m, 0, inv, 0, product, 0);
+		assertClose(IDENTITY, product, EPSILON);
+		Matrix4x4.mult(inv, 0, m, 0, product, 0);
+		assertClose(IDENTITY, product, EPSILON);
+	}
+
+	private static void assertClose(float [] expected, float [] actual, float epsilon) {
+		for(int k = 0; k < 16; k++) {
+			assertEquals("element " + k, expected[k], actual[k], epsilon*Math.max(1, Math.abs(expected[k])));
+		}
+	}
+}
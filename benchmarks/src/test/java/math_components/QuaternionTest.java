@@ -0,0 +1,188 @@
+package math_components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks nlerp and slerp, the object and the array versions: the endpoints,
+ * the shortest arc, the constant speed of slerp, the nlerp fallback for close
+ * rotations and writing the result over an input.
+ */
+public class QuaternionTest {
+
+	static final float EPSILON = 1e-4f;
+
+	final Random random = new Random(19);
+
+	@Test
+	public void endpoints() {
+		final Quaternion out = new Quaternion(0, 0, 0, 1);
+		for(int i = 0; i < 500; i++) {
+			final Quaternion a = randomUnit(), b = sameHemisphere(a, randomUnit());
+			assertRotation(a, Quaternion.slerp(a, b, 0, out));
+			assertRotation(b, Quaternion.slerp(a, b, 1, out));
+			assertRotation(a, Quaternion.nlerp(a, b, 0, out));
+			assertRotation(b, Quaternion.nlerp(a, b, 1, out));
+		}
+	}
+
+	@Test
+	public void shortestArc() {
+		final Quaternion out = new Quaternion(0, 0, 0, 1);
+		final Quaternion negated = new Quaternion(0, 0, 0, 1);
+		for(int i = 0; i < 500; i++) {
+			final Quaternion a = randomUnit(), b = randomUnit();
+			negated.set(-b.x, -b.y, -b.z, -b.w);
+			// -b is the same rotation, so the path must not change
+			for(float t = 0; t <= 1; t += 0.125f) {
+				final Quaternion expected = Quaternion.slerp(a, b, t, new Quaternion(0, 0, 0, 1));
+				assertRotation(expected, Quaternion.slerp(a, negated, t, out));
+				assertRotation(Quaternion.nlerp(a, b, t, new Quaternion(0, 0, 0, 1)), Quaternion.nlerp(a, negated, t, out));
+				// never farther from a than b is
+				assertTrue(angle(a, out) <= angle(a, b) + 1e-3f);
+			}
+		}
+	}
+
+	@Test
+	public void slerpHasConstantSpeed() {
+		final Quaternion out = new Quaternion(0, 0, 0, 1);
+		for(int i = 0; i < 500; i++) {
+			final Quaternion a = randomUnit(), b = randomUnit();
+			final float total = angle(a, b);
+			if(total < 0.1f) {
+				continue;
+			}
+			for(float t = 0; t <= 1; t += 0.125f) {
+				Quaternion.slerp(a, b, t, out);
+				assertEquals(1, length(out), EPSILON);
+				assertEquals(t*total, angle(a, out), 2e-3f);
+				assertEquals((1 - t)*total, angle(out, b), 2e-3f);
+			}
+		}
+	}
+
+	@Test
+	public void closeRotationsUseNlerp() {
+		final Quaternion a = new Quaternion(new Vector3(0, 1, 0), 0.3f).normalize();
+		// a few hundredths of a degree apart, the dot is above the threshold
+		final Quaternion b = new Quaternion(new Vector3(0, 1, 0), 0.3005f).normalize();
+		assertTrue(Quaternion.dot(a, b) > Quaternion.NLERP_THRESHOLD);
+		final Quaternion slerp = new Quaternion(0, 0, 0, 1), nlerp = new Quaternion(0, 0, 0, 1);
+		for(float t = 0; t <= 1; t += 0.25f) {
+			Quaternion.slerp(a, b, t, slerp);
+			Quaternion.nlerp(a, b, t, nlerp);
+			assertEquals(nlerp.x, slerp.x, 0);
+			assertEquals(nlerp.y, slerp.y, 0);
+			assertEquals(nlerp.z, slerp.z, 0);
+			assertEquals(nlerp.w, slerp.w, 0);
+			assertEquals(1, length(slerp), EPSILON);
+		}
+
+		// the same rotation twice, sin(angle) would be 0 without the fallback
+		Quaternion.slerp(a, a, 0.5f, slerp);
+		assertRotation(a, slerp);
+	}
+
+	@Test
+	public void outCanBeAnInput() {
+		for(int i = 0; i < 200; i++) {
+			final Quaternion a = randomUnit(), b = randomUnit();
+			final float t = random.nextFloat();
+			final Quaternion expected = Quaternion.slerp(a, b, t, new Quaternion(0, 0, 0, 1));
+			final Quaternion expectedN = Quaternion.nlerp(a, b, t, new Quaternion(0, 0, 0, 1));
+
+			final Quaternion outA = new Quaternion(a.x, a.y, a.z, a.w);
+			assertRotation(expected, Quaternion.slerp(outA, b, t, outA));
+			final Quaternion outB = new Quaternion(b.x, b.y, b.z, b.w);
+			assertRotation(expected, Quaternion.slerp(a, outB, t, outB));
+			outA.set(a);
+			assertRotation(expectedN, Quaternion.nlerp(outA, b, t, outA));
+			outB.set(b);
+			assertRotation(expectedN, Quaternion.nlerp(a, outB, t, outB));
+		}
+	}
+
+	@Test
+	public void arraysMatchObjects() {
+		final float [] data = new float[12];
+		for(int i = 0; i < 500; i++) {
+			final Quaternion a = randomUnit();
+			// every fourth pair is close enough for the nlerp fallback
+			final Quaternion b = i % 4 == 0? nearby(a) : randomUnit();
+			final float t = random.nextFloat();
+			final Quaternion slerp = Quaternion.slerp(a, b, t, new Quaternion(0, 0, 0, 1));
+			final Quaternion nlerp = Quaternion.nlerp(a, b, t, new Quaternion(0, 0, 0, 1));
+
+			store(a, data, 4);
+			store(b, data, 8);
+			Quaternion.slerp(data, 4, data, 8, t, data, 0);
+			assertSame(slerp, data, 0);
+			Quaternion.nlerp(data, 4, data, 8, t, data, 0);
+			assertSame(nlerp, data, 0);
+
+			// over a and over b
+			Quaternion.slerp(data, 4, data, 8, t, data, 4);
+			assertSame(slerp, data, 4);
+			store(a, data, 4);
+			Quaternion.slerp(data, 4, data, 8, t, data, 8);
+			assertSame(slerp, data, 8);
+			store(b, data, 8);
+			Quaternion.nlerp(data, 4, data, 8, t, data, 4);
+			assertSame(nlerp, data, 4);
+			store(a, data, 4);
+			Quaternion.nlerp(data, 4, data, 8, t, data, 8);
+			assertSame(nlerp, data, 8);
+		}
+	}
+
+	private Quaternion randomUnit() {
+		return new Quaternion(random.nextFloat()*2 - 1, random.nextFloat()*2 - 1,
+				random.nextFloat()*2 - 1, random.nextFloat()*2 - 1).normalize();
+	}
+
+	private Quaternion nearby(Quaternion q) {
+		return new Quaternion(q.x + 0.005f, q.y, q.z - 0.005f, q.w).normalize();
+	}
+
+	private static Quaternion sameHemisphere(Quaternion a, Quaternion b) {
+		return Quaternion.dot(a, b) < 0? b.set(-b.x, -b.y, -b.z, -b.w) : b;
+	}
+
+	/** the angle of the rotation from a to b, q and -q being the same rotation */
+	private static float angle(Quaternion a, Quaternion b) {
+		final float dot = Math.min(1, Math.abs(Quaternion.dot(a, b))/(length(a)*length(b)));
+		return 2*(float)Math.acos(dot);
+	}
+
+	private static float length(Quaternion q) {
+		return (float)Math.sqrt(Quaternion.dot(q, q));
+	}
+
+	/** q and -q are the same rotation */
+	private static void assertRotation(Quaternion expected, Quaternion actual) {
+		final float sign = Quaternion.dot(expected, actual) < 0? -1 : 1;
+		assertEquals(expected.x, actual.x*sign, EPSILON);
+		assertEquals(expected.y, actual.y*sign, EPSILON);
+		assertEquals(expected.z, actual.z*sign, EPSILON);
+		assertEquals(expected.w, actual.w*sign, EPSILON);
+	}
+
+	private static void assertSame(Quaternion expected, float [] data, int offset) {
+		assertEquals(expected.x, data[offset], EPSILON);
+		assertEquals(expected.y, data[offset + 1], EPSILON);
+		assertEquals(expected.z, data[offset + 2], EPSILON);
+		assertEquals(expected.w, data[offset + 3], EPSILON);
+	}
+
+	private static void store(Quaternion q, float [] data, int offset) {
+		data[offset] = q.x;
+		data[offset + 1] = q.y;
+		data[offset + 2] = q.z;
+		data[offset + 3] = q.w;
+	}
+}
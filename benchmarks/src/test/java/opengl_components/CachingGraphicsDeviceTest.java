@@ -0,0 +1,331 @@
+package opengl_components;
+
+import static opengl_components.HeadlessGraphicsDevice.*;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Drives a CachingGraphicsDevice over a HeadlessGraphicsDevice and checks in
+ * the recorded command stream which calls reach the device and which are
+ * dropped.
+ */
+public class CachingGraphicsDeviceTest {
+
+	/**
+	 * Hands out the names of deleted buffers again like GL does, the headless
+	 * device never reuses one
+	 */
+	static class ReusingDevice extends HeadlessGraphicsDevice {
+		final Map<Integer, Integer> m_Names = new HashMap<Integer, Integer>();
+		final List<Integer> m_Free = new ArrayList<Integer>();
+		int m_NextBuffer = 1000;
+
+		@Override
+		public void glGenBuffers(int n, int[] buffers, int offset) {
+			super.glGenBuffers(n, buffers, offset);
+			for(int i = 0; i < n; i++) {
+				final int name = m_Free.isEmpty() ? m_NextBuffer++ : m_Free.remove(m_Free.size() - 1);
+				m_Names.put(name, buffers[offset + i]);
+				buffers[offset + i] = name;
+			}
+		}
+
+		@Override
+		public void glDeleteBuffers(int n, int[] buffers, int offset) {
+			final int [] names = new int[n];
+			for(int i = 0; i < n; i++) {
+				names[i] = internal(buffers[offset + i]);
+				if(m_Names.remove(buffers[offset + i]) != null) {
+					m_Free.add(buffers[offset + i]);
+				}
+			}
+			super.glDeleteBuffers(n, names, 0);
+		}
+
+		@Override
+		public void glBindBuffer(int target, int buffer) {
+			super.glBindBuffer(target, internal(buffer));
+		}
+
+		private int internal(int buffer) {
+			final Integer name = m_Names.get(buffer);
+			return buffer == 0 || name == null ? buffer : name;
+		}
+	}
+
+	static final float [] A = {1, 0, 0, 0,  0, 1, 0, 0,  0, 0, 1, 0,  0, 0, 0, 1};
+	static final float [] B = {2, 0, 0, 0,  0, 2, 0, 0,  0, 0, 2, 0,  1, 2, 3, 1};
+
+	final ReusingDevice device = new ReusingDevice();
+	final CachingGraphicsDevice cache = new CachingGraphicsDevice(device);
+
+	@After
+	public void countersMatchTheDevice() {
+		assertEquals(device.getCallCount(), cache.getForwardedCalls());
+	}
+
+	@Test
+	public void dropsUnchangedState() {
+		final int program = cache.glCreateProgram();
+		forwarded(CMD_CREATE_PROGRAM);
+
+		cache.glUseProgram(program);
+		forwarded(CMD_USE_PROGRAM);
+		cache.glUseProgram(program);
+		dropped();
+
+		cache.glClearColor(0.5f, 0, 0, 1);
+		forwarded(CMD_CLEAR_COLOR);
+		cache.glClearColor(0.5f, 0, 0, 1);
+		dropped();
+		cache.glClearColor(0.5f, 0, 0, 0);
+		forwarded(CMD_CLEAR_COLOR);
+
+		cache.glViewport(0, 0, 640, 480);
+		forwarded(CMD_VIEWPORT);
+		cache.glViewport(0, 0, 640, 480);
+		dropped();
+		cache.glViewport(0, 0, 480, 640);
+		forwarded(CMD_VIEWPORT);
+
+		cache.glEnable(GL_BLEND);
+		forwarded(CMD_ENABLE);
+		cache.glEnable(GL_BLEND);
+		dropped();
+		cache.glEnable(GL_DEPTH_TEST);
+		forwarded(CMD_ENABLE);
+		cache.glDisable(GL_BLEND);
+		forwarded(CMD_DISABLE);
+		cache.glDisable(GL_BLEND);
+		dropped();
+
+		cache.glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+		forwarded(CMD_BLEND_FUNC);
+		cache.glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+		dropped();
+		cache.glBlendFunc(GL_SRC_ALPHA, GL_ONE);
+		forwarded(CMD_BLEND_FUNC);
+
+		cache.glEnableVertexAttribArray(2);
+		forwarded(CMD_ENABLE_VERTEX_ATTRIB_ARRAY);
+		cache.glEnableVertexAttribArray(2);
+		dropped();
+		cache.glDisableVertexAttribArray(2);
+		forwarded(CMD_DISABLE_VERTEX_ATTRIB_ARRAY);
+		cache.glDisableVertexAttribArray(2);
+		dropped();
+
+		// clears and draws always go through
+		cache.glClear(GL_COLOR_BUFFER_BIT);
+		forwarded(CMD_CLEAR);
+		cache.glClear(GL_COLOR_BUFFER_BIT);
+		forwarded(CMD_CLEAR);
+		cache.glDrawArrays(GL_TRIANGLES, 0, 3);
+		forwarded(CMD_DRAW_ARRAYS);
+		cache.glDrawArrays(GL_TRIANGLES, 0, 3);
+		forwarded(CMD_DRAW_ARRAYS);
+
+		// the device never saw a call that left the state as it was
+		assertEquals(0, device.getRedundantStateChanges());
+		assertEquals(8, cache.getSavedCalls());
+		assertEquals(0, cache.getSavedUniformUploads());
+
+		// after invalidate nothing is known any more
+		cache.invalidate();
+		cache.glUseProgram(program);
+		forwarded(CMD_USE_PROGRAM);
+		cache.glEnable(GL_DEPTH_TEST);
+		forwarded(CMD_ENABLE);
+		cache.glViewport(0, 0, 480, 640);
+		forwarded(CMD_VIEWPORT);
+	}
+
+	@Test
+	public void uniformsAreCachedPerProgram() {
+		final int first = cache.glCreateProgram(), second = cache.glCreateProgram();
+		cache.glUseProgram(first);
+		device.clearCommands();
+
+		cache.glUniformMatrix4fv(0, 1, false, A, 0);
+		forwarded(CMD_UNIFORM_MATRIX4FV);
+		cache.glUniformMatrix4fv(0, 1, false, A, 0);
+		dropped();
+		cache.glUniformMatrix4fv(1, 1, false, A, 0);
+		forwarded(CMD_UNIFORM_MATRIX4FV);
+		cache.glUniformMatrix4fv(0, 1, false, B, 0);
+		forwarded(CMD_UNIFORM_MATRIX4FV);
+		// the same values from another array are still the same
+		cache.glUniformMatrix4fv(0, 1, false, B.clone(), 0);
+		dropped();
+
+		// the other program has its own uniforms
+		cache.glUseProgram(second);
+		forwarded(CMD_USE_PROGRAM);
+		cache.glUniformMatrix4fv(0, 1, false, B, 0);
+		forwarded(CMD_UNIFORM_MATRIX4FV);
+		cache.glUniformMatrix4fv(0, 1, false, B, 0);
+		dropped();
+
+		// and switching back does not lose those of the first one
+		cache.glUseProgram(first);
+		forwarded(CMD_USE_PROGRAM);
+		cache.glUniformMatrix4fv(0, 1, false, B, 0);
+		dropped();
+		cache.glUniformMatrix4fv(1, 1, false, A, 0);
+		dropped();
+		assertEquals(5, cache.getSavedUniformUploads());
+
+		// never cached: no location, transposed
+		cache.glUniformMatrix4fv(-1, 1, false, A, 0);
+		forwarded(CMD_UNIFORM_MATRIX4FV);
+		cache.glUniformMatrix4fv(-1, 1, false, A, 0);
+		forwarded(CMD_UNIFORM_MATRIX4FV);
+		cache.glUniformMatrix4fv(1, 1, true, A, 0);
+		forwarded(CMD_UNIFORM_MATRIX4FV);
+		cache.glUniformMatrix4fv(1, 1, true, A, 0);
+		forwarded(CMD_UNIFORM_MATRIX4FV);
+
+		// linking resets the uniforms of the program
+		cache.glLinkProgram(first);
+		forwarded(CMD_LINK_PROGRAM);
+		cache.glUniformMatrix4fv(0, 1, false, B, 0);
+		forwarded(CMD_UNIFORM_MATRIX4FV);
+		cache.glUniformMatrix4fv(0, 1, false, B, 0);
+		dropped();
+
+		// deleting forgets them, a program created later may get the name again
+		cache.glDeleteProgram(second);
+		forwarded(CMD_DELETE_PROGRAM);
+		cache.glUseProgram(second);
+		forwarded(CMD_USE_PROGRAM);
+		cache.glUniformMatrix4fv(0, 1, false, B, 0);
+		forwarded(CMD_UNIFORM_MATRIX4FV);
+	}
+
+	@Test
+	public void deletedBuffersAreUnbound() {
+		final int [] buffers = new int[2];
+		cache.glGenBuffers(2, buffers, 0);
+		cache.glBindBuffer(GL_ARRAY_BUFFER, buffers[0]);
+		cache.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+		device.clearCommands();
+
+		cache.glBindBuffer(GL_ARRAY_BUFFER, buffers[0]);
+		dropped();
+		cache.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+		dropped();
+
+		cache.glDeleteBuffers(2, buffers, 0);
+		forwarded(CMD_DELETE_BUFFERS);
+		// GL bound 0 in their place
+		cache.glBindBuffer(GL_ARRAY_BUFFER, 0);
+		dropped();
+		cache.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+		dropped();
+	}
+
+	@Test
+	public void deletedBuffersClearThePointers() {
+		final int [] buffers = new int[2];
+		cache.glGenBuffers(2, buffers, 0);
+		final int deleted = buffers[0], kept = buffers[1];
+		cache.glBindBuffer(GL_ARRAY_BUFFER, deleted);
+		cache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 12, 0);
+		cache.glBindBuffer(GL_ARRAY_BUFFER, kept);
+		cache.glVertexAttribPointer(1, 3, GL_FLOAT, false, 12, 0);
+		device.clearCommands();
+
+		cache.glDeleteBuffers(1, buffers, 0);
+		forwarded(CMD_DELETE_BUFFERS);
+
+		// the new buffer has the name of the deleted one, the pointer into that was lost
+		cache.glGenBuffers(1, buffers, 0);
+		forwarded(CMD_GEN_BUFFERS);
+		assertEquals(deleted, buffers[0]);
+		cache.glBindBuffer(GL_ARRAY_BUFFER, deleted);
+		forwarded(CMD_BIND_BUFFER);
+		cache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 12, 0);
+		forwarded(CMD_VERTEX_ATTRIB_POINTER);
+		cache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 12, 0);
+		dropped();
+
+		// the one into the other buffer is still known
+		cache.glBindBuffer(GL_ARRAY_BUFFER, kept);
+		forwarded(CMD_BIND_BUFFER);
+		cache.glVertexAttribPointer(1, 3, GL_FLOAT, false, 12, 0);
+		dropped();
+		cache.glVertexAttribPointer(1, 3, GL_FLOAT, false, 12, 12);
+		forwarded(CMD_VERTEX_ATTRIB_POINTER);
+		cache.glVertexAttribPointer(1, 2, GL_FLOAT, false, 12, 12);
+		forwarded(CMD_VERTEX_ATTRIB_POINTER);
+	}
+
+	@Test
+	public void clientPointersAreKeyedOnThePosition() {
+		final FloatBuffer data = FloatBuffer.allocate(64), other = FloatBuffer.allocate(64);
+
+		// while the array buffer binding is unknown the pointer might read from it
+		cache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 24, data);
+		forwarded(CMD_VERTEX_ATTRIB_POINTER);
+		cache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 24, data);
+		forwarded(CMD_VERTEX_ATTRIB_POINTER);
+
+		cache.glBindBuffer(GL_ARRAY_BUFFER, 0);
+		forwarded(CMD_BIND_BUFFER);
+		cache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 24, data);
+		forwarded(CMD_VERTEX_ATTRIB_POINTER);
+		cache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 24, data);
+		dropped();
+
+		// interleaved arrays: same buffer, other start
+		data.position(3);
+		cache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 24, data);
+		forwarded(CMD_VERTEX_ATTRIB_POINTER);
+		cache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 24, data);
+		dropped();
+		data.position(0);
+		cache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 24, data);
+		forwarded(CMD_VERTEX_ATTRIB_POINTER);
+
+		// same position, other buffer
+		cache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 24, other);
+		forwarded(CMD_VERTEX_ATTRIB_POINTER);
+
+		// a bound buffer object makes the pointer an offset into it
+		final int [] buffers = new int[1];
+		cache.glGenBuffers(1, buffers, 0);
+		cache.glBindBuffer(GL_ARRAY_BUFFER, buffers[0]);
+		device.clearCommands();
+		cache.glVertexAttribPointer(0, 3, GL_FLOAT, false, 24, other);
+		forwarded(CMD_VERTEX_ATTRIB_POINTER);
+
+		// binding another buffer leaves the pointers as they were
+		cache.glBindBuffer(GL_ARRAY_BUFFER, 0);
+		forwarded(CMD_BIND_BUFFER);
+		cache.glVertexAttribPointer(1, 3, GL_FLOAT, false, 24, data);
+		forwarded(CMD_VERTEX_ATTRIB_POINTER);
+		cache.glBindBuffer(GL_ARRAY_BUFFER, buffers[0]);
+		cache.glBindBuffer(GL_ARRAY_BUFFER, 0);
+		device.clearCommands();
+		cache.glVertexAttribPointer(1, 3, GL_FLOAT, false, 24, data);
+		dropped();
+	}
+
+	private void forwarded(int command) {
+		assertEquals("calls reaching the device", 1, device.getCommandCount());
+		assertEquals(commandName(command), commandName(device.getCommand(0)));
+		device.clearCommands();
+	}
+
+	private void dropped() {
+		assertEquals("calls reaching the device", 0, device.getCommandCount());
+	}
+}
@@ -0,0 +1,194 @@
+package opengl_components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the per entity chains of the ComponentArrays against plain lists,
+ * after adds and swap-removes from the front, the middle and the end of the
+ * chains of several types and entities.
+ */
+public class ComponentStoreTest {
+
+	static class Script implements GraphicEntity.Scriptable {
+		@Override
+		public void Update() {
+		}
+
+		@Override
+		public void Start() {
+		}
+	}
+
+	static class Spin extends Script {
+	}
+
+	static class Health extends Script {
+	}
+
+	static class Score extends Health {
+	}
+
+	static final Class<?> [] TYPES = {Spin.class, Health.class, Score.class};
+	static final int ENTITIES = 40;
+
+	final ComponentStore store = new ComponentStore();
+	// model[type][entity], in chain order
+	final List<List<List<Script>>> model = new ArrayList<List<List<Script>>>();
+	final Random random = new Random(24);
+
+	public ComponentStoreTest() {
+		for(int type = 0; type < TYPES.length; type++) {
+			final List<List<Script>> lists = new ArrayList<List<Script>>();
+			for(int entity = 0; entity < ENTITIES; entity++) {
+				lists.add(new ArrayList<Script>());
+			}
+			model.add(lists);
+		}
+	}
+
+	@Test
+	public void removeFromEveryPlaceOfAChain() {
+		final Spin a = new Spin(), b = new Spin(), c = new Spin(), d = new Spin();
+		final Spin other = new Spin();
+		add(3, a);
+		add(5, other);
+		add(3, b);
+		add(3, c);
+		add(3, d);
+		check();
+
+		// middle, then end, then front
+		remove(3, b);
+		assertSame(a, store.get(ComponentType.of(Spin.class), 3));
+		check();
+		remove(3, d);
+		check();
+		remove(3, a);
+		assertSame(c, store.get(ComponentType.of(Spin.class), 3));
+		assertSame(other, store.get(ComponentType.of(Spin.class), 5));
+		check();
+
+		assertFalse(store.remove(3, a));
+		assertFalse(store.add(3, c));
+		check();
+	}
+
+	@Test
+	public void findsThroughSuperclasses() {
+		final Score score = new Score();
+		add(1, score);
+		assertSame(score, store.find(Score.class, 1));
+		assertSame(score, store.find(Health.class, 1));
+		assertSame(score, store.find(Script.class, 1));
+		assertNull(store.find(Spin.class, 1));
+		assertNull(store.find(Score.class, 2));
+
+		final Health health = new Health();
+		add(1, health);
+		// the exact class wins
+		assertSame(health, store.find(Health.class, 1));
+		check();
+	}
+
+	@Test
+	public void randomAddsAndRemoves() {
+		for(int round = 0; round < 200; round++) {
+			for(int i = 0; i < 20; i++) {
+				final int type = random.nextInt(TYPES.length);
+				final int entity = random.nextInt(ENTITIES);
+				final List<Script> list = model.get(type).get(entity);
+				if(list.isEmpty() || random.nextInt(3) != 0) {
+					add(entity, create(type));
+				} else {
+					remove(entity, list.get(random.nextInt(list.size())));
+				}
+			}
+			if(round % 50 == 49) {
+				// an entity that goes away takes all its components
+				final int entity = random.nextInt(ENTITIES);
+				int expected = 0;
+				for(int type = 0; type < TYPES.length; type++) {
+					expected += model.get(type).get(entity).size();
+					model.get(type).get(entity).clear();
+				}
+				assertEquals(expected, store.removeAll(entity));
+			}
+			check();
+		}
+	}
+
+	private Script create(int type) {
+		switch(type) {
+		case 0: return new Spin();
+		case 1: return new Health();
+		default: return new Score();
+		}
+	}
+
+	private void add(int entity, Script script) {
+		assertTrue(store.add(entity, script));
+		model.get(typeOf(script)).get(entity).add(script);
+	}
+
+	private void remove(int entity, Script script) {
+		assertTrue(store.remove(entity, script));
+		model.get(typeOf(script)).get(entity).remove(script);
+	}
+
+	private static int typeOf(Script script) {
+		for(int type = 0; type < TYPES.length; type++) {
+			if(TYPES[type] == script.getClass()) {
+				return type;
+			}
+		}
+		throw new IllegalArgumentException();
+	}
+
+	private void check() {
+		int total = 0;
+		for(int type = 0; type < TYPES.length; type++) {
+			final ComponentStore.ComponentArray array = store.getArray(TYPES[type]);
+			int size = 0;
+			for(int entity = 0; entity < ENTITIES; entity++) {
+				final List<Script> expected = model.get(type).get(entity);
+				size += expected.size();
+
+				// the chain holds the components in the order they were added
+				int slot = array.firstSlot(entity);
+				for(Script script : expected) {
+					assertTrue(slot >= 0 && slot < array.size());
+					assertSame(script, array.components()[slot]);
+					assertEquals(entity, array.owners()[slot]);
+					assertTrue(store.contains(entity, script));
+					slot = array.nextSlot(slot);
+				}
+				assertEquals(-1, slot);
+
+				final Script first = expected.isEmpty()? null : expected.get(0);
+				assertSame(first, array.get(entity));
+				assertSame(first, store.get(array.getType(), entity));
+				if(first != null) {
+					// without one of its own a subclass can answer for a class
+					assertSame(first, store.find(TYPES[type], entity));
+				}
+			}
+			assertEquals(size, array.size());
+			total += size;
+			// the packed part holds no stale entries behind it
+			for(int slot = array.size(); slot < array.components().length; slot++) {
+				assertNull(array.components()[slot]);
+			}
+		}
+		assertEquals(total, store.size());
+	}
+}
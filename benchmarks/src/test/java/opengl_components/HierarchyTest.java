@@ -0,0 +1,218 @@
+package opengl_components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import math_components.Vector3;
+
+import org.junit.Test;
+
+/**
+ * Checks the child lists, the depth first walk and the world positions of
+ * a TransformStore against a plain parent and child list model, after random
+ * creates, reparents and destroys.
+ */
+public class HierarchyTest {
+
+	static final float EPSILON = 1e-3f;
+
+	final Random random = new Random(25);
+	final TransformStore store = new TransformStore(8);
+
+	// Model
+	final List<GraphicEntity> entities = new ArrayList<GraphicEntity>();
+	final List<GraphicEntity> parents = new ArrayList<GraphicEntity>();
+	final List<List<GraphicEntity>> children = new ArrayList<List<GraphicEntity>>();
+	final List<Vector3> positions = new ArrayList<Vector3>();
+
+	@Test
+	public void linksMatchTheModel() {
+		for(int round = 0; round < 60; round++) {
+			for(int i = 0; i < 100; i++) {
+				edit();
+			}
+			check();
+		}
+	}
+
+	@Test
+	public void rejectsCycles() {
+		final GraphicEntity a = create(null), b = create(a), c = create(b);
+		assertRejected(a, a);
+		assertRejected(a, b);
+		assertRejected(a, c);
+		assertRejected(b, c);
+
+		// nothing changed
+		check();
+		c.setParent(null);
+		a.setParent(c);
+		reparent(c, null);
+		reparent(a, c);
+		check();
+	}
+
+	@Test
+	public void destroyReleasesTheSubtree() {
+		final GraphicEntity root = create(null);
+		GraphicEntity parent = root;
+		for(int i = 0; i < 2000; i++) {
+			parent = create(parent);
+		}
+		check();
+		destroy(root);
+		assertEquals(0, store.size());
+		assertEquals(0, store.getComponents().size());
+	}
+
+	private void edit() {
+		final int action = entities.isEmpty()? 0 : random.nextInt(10);
+		if(action < 4) {
+			create(entities.isEmpty() || random.nextInt(4) == 0? null : pick());
+		} else if(action < 8) {
+			final GraphicEntity entity = pick();
+			final GraphicEntity parent = random.nextInt(5) == 0? null : pick();
+			if(parent != null && isAncestorOrSelf(entity, parent)) {
+				assertRejected(entity, parent);
+			} else if(parent != entity.getParent()) {
+				entity.setParent(parent);
+				reparent(entity, parent);
+			}
+		} else if(action < 9) {
+			destroy(pick());
+		} else {
+			final GraphicEntity entity = pick();
+			final Vector3 position = positions.get(entities.indexOf(entity));
+			position.set(random.nextFloat(), random.nextFloat(), random.nextFloat());
+			entity.setLocalPosition(position);
+		}
+	}
+
+	private GraphicEntity create(GraphicEntity parent) {
+		final GraphicEntity entity = new GraphicEntity(store);
+		final Vector3 position = new Vector3(random.nextFloat(), random.nextFloat(), random.nextFloat());
+		entity.setLocalPosition(position);
+		entities.add(entity);
+		parents.add(null);
+		children.add(new ArrayList<GraphicEntity>());
+		positions.add(position);
+		if(parent != null) {
+			entity.setParent(parent);
+			reparent(entity, parent);
+		}
+		return entity;
+	}
+
+	private void destroy(GraphicEntity entity) {
+		final List<GraphicEntity> subtree = new ArrayList<GraphicEntity>();
+		collect(entity, subtree);
+		reparent(entity, null);
+		entity.destroy();
+		for(GraphicEntity removed : subtree) {
+			final int i = entities.indexOf(removed);
+			entities.remove(i);
+			parents.remove(i);
+			children.remove(i);
+			positions.remove(i);
+		}
+	}
+
+	private void reparent(GraphicEntity entity, GraphicEntity parent) {
+		final GraphicEntity old = parents.get(entities.indexOf(entity));
+		if(old != null) {
+			children.get(entities.indexOf(old)).remove(entity);
+		}
+		parents.set(entities.indexOf(entity), parent);
+		if(parent != null) {
+			children.get(entities.indexOf(parent)).add(entity);
+		}
+	}
+
+	private void assertRejected(GraphicEntity entity, GraphicEntity parent) {
+		final GraphicEntity old = entity.getParent();
+		try {
+			entity.setParent(parent);
+			fail("moved " + entity.getId() + " under " + parent.getId());
+		} catch(IllegalArgumentException e) {
+			assertSame(old, entity.getParent());
+		}
+	}
+
+	private boolean isAncestorOrSelf(GraphicEntity ancestor, GraphicEntity entity) {
+		for(GraphicEntity cur = entity; cur != null; cur = parents.get(entities.indexOf(cur))) {
+			if(cur == ancestor) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private GraphicEntity pick() {
+		return entities.get(random.nextInt(entities.size()));
+	}
+
+	private void collect(GraphicEntity entity, List<GraphicEntity> out) {
+		out.add(entity);
+		for(GraphicEntity child : children.get(entities.indexOf(entity))) {
+			collect(child, out);
+		}
+	}
+
+	private void check() {
+		assertEquals(entities.size(), store.size());
+		store.updateAll();
+		final float [] world = store.worldMatrices();
+		for(int i = 0; i < entities.size(); i++) {
+			final GraphicEntity entity = entities.get(i);
+			final GraphicEntity parent = parents.get(i);
+			final int id = entity.getId();
+			assertSame(entity, store.entityAt(store.indexOf(id)));
+			assertSame(parent, entity.getParent());
+			assertEquals(parent != null? parent.getId() : -1, store.parentIdOf(id));
+
+			// child list in both directions
+			final List<GraphicEntity> expected = children.get(i);
+			assertEquals(expected.size(), entity.getChildCount());
+			int child = store.firstChild(id), previous = -1;
+			for(GraphicEntity c : expected) {
+				assertEquals(c.getId(), child);
+				assertEquals(previous, store.previousSibling(child));
+				previous = child;
+				child = store.nextSibling(child);
+			}
+			assertEquals(-1, child);
+
+			// depth first order
+			if(parent == null) {
+				final List<GraphicEntity> order = new ArrayList<GraphicEntity>();
+				collect(entity, order);
+				int walked = 0;
+				for(int cur = id; cur >= 0; cur = store.nextDepthFirst(id, cur, false)) {
+					assertEquals(order.get(walked++).getId(), cur);
+				}
+				assertEquals(order.size(), walked);
+			}
+
+			// translations only, the world position is the sum along the chain
+			float x = 0, y = 0, z = 0;
+			for(GraphicEntity cur = entity; cur != null; cur = parents.get(entities.indexOf(cur))) {
+				final Vector3 p = positions.get(entities.indexOf(cur));
+				x += p.x;
+				y += p.y;
+				z += p.z;
+			}
+			final int m = store.indexOf(id)*TransformStore.MATRIX_SIZE;
+			// summed in another order than the store, long chains drift apart a little
+			assertEquals(x, world[m + 12], EPSILON*(1 + x));
+			assertEquals(y, world[m + 13], EPSILON*(1 + y));
+			assertEquals(z, world[m + 14], EPSILON*(1 + z));
+			assertTrue(!store.isDirty(store.indexOf(id)));
+		}
+	}
+}
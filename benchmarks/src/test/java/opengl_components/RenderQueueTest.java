@@ -0,0 +1,122 @@
+package opengl_components;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that sort() orders the keys as unsigned numbers and keeps the
+ * order of equal keys, on both sides of the insertion sort threshold.
+ */
+public class RenderQueueTest {
+
+	static class Command implements RenderQueue.RenderCommand {
+		final int order;
+		final long key;
+
+		Command(int order, long key) {
+			this.order = order;
+			this.key = key;
+		}
+
+		@Override
+		public void execute(GraphicsDevice device, float [] viewProjection) {
+		}
+	}
+
+	/** unsigned key order, Arrays.sort on objects is stable so equal keys keep their order */
+	static final Comparator<Command> UNSIGNED = new Comparator<Command>() {
+		@Override
+		public int compare(Command a, Command b) {
+			final long x = a.key ^ Long.MIN_VALUE, y = b.key ^ Long.MIN_VALUE;
+			return x < y? -1 : (x > y? 1 : 0);
+		}
+	};
+
+	final Random random = new Random(13);
+	final RenderQueue queue = new RenderQueue(16);
+
+	@Test
+	public void randomKeys() {
+		final int [] sizes = {0, 1, 2, 17, 32, 33, 64, 1000, 20000};
+		for(int size : sizes) {
+			for(int repeat = 0; repeat < 5; repeat++) {
+				// a small pool gives many equal keys, the full range sets the high bit
+				final long [] pool = new long[1 + random.nextInt(size + 1)];
+				for(int i = 0; i < pool.length; i++) {
+					pool[i] = random.nextLong();
+				}
+				check(size, pool);
+			}
+		}
+	}
+
+	@Test
+	public void madeKeys() {
+		final long [] pool = new long[200];
+		for(int i = 0; i < pool.length; i++) {
+			pool[i] = RenderQueue.makeKey(random.nextInt(16), random.nextBoolean(),
+					random.nextInt(8), random.nextInt(8), random.nextInt(1 << RenderQueue.DEPTH_BITS));
+		}
+		check(31, pool);
+		check(5000, pool);
+	}
+
+	@Test
+	public void sortedAndReversed() {
+		final long [] keys = new long[500];
+		for(int i = 0; i < keys.length; i++) {
+			keys[i] = (i - 250)*0x0101010101010101L;
+		}
+		check(keys);
+		final long [] reversed = new long[keys.length];
+		for(int i = 0; i < keys.length; i++) {
+			reversed[i] = keys[keys.length - 1 - i];
+		}
+		check(reversed);
+	}
+
+	private void check(int size, long [] pool) {
+		final long [] keys = new long[size];
+		for(int i = 0; i < size; i++) {
+			keys[i] = pool[random.nextInt(pool.length)];
+		}
+		check(keys);
+	}
+
+	private void check(long [] keys) {
+		final Command [] commands = new Command[keys.length];
+		queue.clear();
+		for(int i = 0; i < keys.length; i++) {
+			commands[i] = new Command(i, keys[i]);
+			queue.add(commands[i], keys[i]);
+		}
+		queue.sort();
+
+		// the keys match Arrays.sort on unsigned values
+		final long [] expected = new long[keys.length];
+		for(int i = 0; i < keys.length; i++) {
+			expected[i] = keys[i] ^ Long.MIN_VALUE;
+		}
+		Arrays.sort(expected);
+		final long [] actual = new long[keys.length];
+		for(int i = 0; i < keys.length; i++) {
+			expected[i] ^= Long.MIN_VALUE;
+			actual[i] = queue.getKey(i);
+		}
+		assertEquals(keys.length, queue.size());
+		assertArrayEquals(expected, actual);
+
+		// each key still has its command and equal keys kept their order
+		final Command [] sorted = commands.clone();
+		Arrays.sort(sorted, UNSIGNED);
+		for(int i = 0; i < keys.length; i++) {
+			assertEquals("at " + i, sorted[i].order, ((Command)queue.getCommand(i)).order);
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package opengl_components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import math_components.Vector3;
+
+import org.junit.Test;
+
+import engine_components.WorkerPool;
+
+/**
+ * Checks the split between the parallel and the serial phase: local scripts
+ * below an entity with local scripts must run serially after it, the others
+ * in parallel, and a parallel update must move everything exactly like a
+ * serial one. Children are created before their parents so only sort() puts
+ * the parents first.
+ */
+public class ScriptSystemTest {
+
+	static final int GROUPS = 200;
+	static final int UPDATES = 10;
+
+	/** Turns and moves its entity, so its subtree moves during the local phase */
+	static class Mover implements GraphicEntity.LocalScriptable {
+		final GraphicEntity entity;
+		final Vector3 position = new Vector3(0, 0, 0);
+		final Vector3 axis = new Vector3(0, 1, 0);
+
+		Mover(GraphicEntity entity) {
+			this.entity = entity;
+		}
+
+		@Override
+		public void Update() {
+			entity.getLocalPosition(position);
+			position.set(position.x + 1, position.y + 0.25f, position.z);
+			entity.setLocalPosition(position);
+			entity.rotateLocal(axis, 10);
+		}
+
+		@Override
+		public void Start() {
+		}
+	}
+
+	/** Reads its world position and sets it again further on, through the parent inverse */
+	static class Follower implements GraphicEntity.LocalScriptable {
+		final GraphicEntity entity;
+		final Vector3 position = new Vector3(0, 0, 0);
+		Thread thread;
+		float seen;
+
+		Follower(GraphicEntity entity) {
+			this.entity = entity;
+		}
+
+		@Override
+		public void Update() {
+			thread = Thread.currentThread();
+			entity.getPosition(position);
+			seen += position.x + position.y + position.z;
+			position.set(position.x + 0.5f, position.y, position.z - 0.5f);
+			entity.setPosition(position);
+		}
+
+		@Override
+		public void Start() {
+		}
+	}
+
+	static class Scene {
+		final TransformStore store = new TransformStore(16);
+		final GraphicEntity [] entities;
+		// below a Mover, directly or through an entity without scripts
+		final Follower [] demoted = new Follower[GROUPS*2];
+		// roots, or below an entity without local scripts
+		final Follower [] parallel = new Follower[GROUPS*2];
+
+		Scene() {
+			entities = new GraphicEntity[GROUPS*7];
+			for(int g = 0; g < GROUPS; g++) {
+				final GraphicEntity child = entity(g*7);
+				final GraphicEntity grandchild = entity(g*7 + 1);
+				final GraphicEntity middle = entity(g*7 + 2);
+				final GraphicEntity mover = entity(g*7 + 3);
+				final GraphicEntity root = entity(g*7 + 4);
+				final GraphicEntity inner = entity(g*7 + 5);
+				final GraphicEntity single = entity(g*7 + 6);
+
+				mover.addScript(new Mover(mover));
+				child.setParent(mover);
+				demoted[g*2] = follow(child);
+				middle.setParent(mover);
+				grandchild.setParent(middle);
+				demoted[g*2 + 1] = follow(grandchild);
+
+				inner.setParent(root);
+				parallel[g*2] = follow(inner);
+				parallel[g*2 + 1] = follow(single);
+			}
+		}
+
+		private GraphicEntity entity(int i) {
+			final GraphicEntity entity = entities[i] = new GraphicEntity(store);
+			entity.setLocalPosition(new Vector3(i % 7, i/7, 0));
+			return entity;
+		}
+
+		private static Follower follow(GraphicEntity entity) {
+			final Follower follower = new Follower(entity);
+			entity.addScript(follower);
+			return follower;
+		}
+	}
+
+	@Test
+	public void demotesLocalScriptsBelowMovingEntities() {
+		final WorkerPool pool = new WorkerPool(3);
+		final Scene scene = new Scene();
+		final ScriptSystem system = new ScriptSystem(scene.store, pool);
+		system.setParallelThreshold(1);
+		system.setGrain(8);
+
+		boolean worker = false;
+		for(int update = 0; update < UPDATES; update++) {
+			system.update();
+			assertEquals(GROUPS*3, system.getLocalCount());
+			assertEquals(GROUPS*2, system.getSharedCount());
+			for(Follower follower : scene.demoted) {
+				assertSame(Thread.currentThread(), follower.thread);
+			}
+			for(Follower follower : scene.parallel) {
+				assertNotNull(follower.thread);
+				worker |= follower.thread != Thread.currentThread();
+			}
+		}
+		assertTrue("nothing ran on a worker", worker);
+		pool.shutdown();
+	}
+
+	@Test
+	public void parallelMatchesSerial() {
+		final WorkerPool pool = new WorkerPool(3);
+		final Scene serial = new Scene(), parallel = new Scene();
+		final ScriptSystem serialSystem = new ScriptSystem(serial.store, null);
+		final ScriptSystem parallelSystem = new ScriptSystem(parallel.store, pool);
+		parallelSystem.setParallelThreshold(1);
+		parallelSystem.setGrain(8);
+
+		final Vector3 expected = new Vector3(0, 0, 0), actual = new Vector3(0, 0, 0);
+		for(int update = 0; update < UPDATES; update++) {
+			serialSystem.update();
+			parallelSystem.update();
+			for(int i = 0; i < serial.entities.length; i++) {
+				serial.entities[i].getPosition(expected);
+				parallel.entities[i].getPosition(actual);
+				assertEquals(expected.x, actual.x, 1e-4f);
+				assertEquals(expected.y, actual.y, 1e-4f);
+				assertEquals(expected.z, actual.z, 1e-4f);
+			}
+			for(int i = 0; i < serial.demoted.length; i++) {
+				// the demoted ones saw their parent already moved in this update
+				assertEquals(serial.demoted[i].seen, parallel.demoted[i].seen, 1e-3f);
+				assertEquals(serial.parallel[i].seen, parallel.parallel[i].seen, 1e-3f);
+			}
+		}
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,106 @@
+package opengl_components;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Runs a publishing and an acquiring thread against one SnapshotBuffer. The
+ * simulation captures with the publish number as its time, so the renderer
+ * can tell every snapshot apart: it must only see increasing numbers, end on
+ * the last one published, and the two it holds must not change under it.
+ */
+public class SnapshotBufferTest {
+
+	static final int PUBLISHES = 200000;
+
+	@Test
+	public void singleThreaded() {
+		final SnapshotBuffer buffer = new SnapshotBuffer();
+		final TransformStore store = new TransformStore(4);
+		store.create(null);
+		assertFalse(buffer.acquire());
+
+		for(int i = 1; i <= 3; i++) {
+			buffer.getBack().capture(store, i);
+			buffer.publish();
+		}
+		// only the newest one is handed over
+		assertTrue(buffer.acquire());
+		assertEquals(3, buffer.getCurrent().getTime());
+		assertFalse(buffer.acquire());
+
+		buffer.getBack().capture(store, 4);
+		buffer.publish();
+		assertTrue(buffer.acquire());
+		assertEquals(4, buffer.getCurrent().getTime());
+		assertEquals(3, buffer.getPrevious().getTime());
+		assertTrue(buffer.getCurrent().contains(0));
+		assertEquals(4, buffer.getPublishedCount());
+		assertEquals(2, buffer.getAcquiredCount());
+	}
+
+	@Test
+	public void handoffBetweenThreads() throws InterruptedException {
+		final SnapshotBuffer buffer = new SnapshotBuffer();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		final Thread simulation = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final TransformStore store = new TransformStore(16);
+				for(int i = 0; i < 8; i++) {
+					store.create(null);
+				}
+				for(int i = 1; i <= PUBLISHES; i++) {
+					buffer.getBack().capture(store, i);
+					buffer.publish();
+				}
+			}
+		});
+
+		final Thread renderer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					long last = 0;
+					while(last < PUBLISHES) {
+						if(!buffer.acquire()) {
+							Thread.yield();
+							continue;
+						}
+						final long current = buffer.getCurrent().getTime();
+						final long previous = buffer.getPrevious().getTime();
+						assertTrue("went back from " + last + " to " + current, current > last);
+						assertEquals(last, previous);
+
+						// held snapshots are not written until the next acquire
+						for(int spin = 0; spin < 50; spin++) {
+							assertEquals(current, buffer.getCurrent().getTime());
+							assertEquals(previous, buffer.getPrevious().getTime());
+						}
+						last = current;
+					}
+					assertFalse(buffer.acquire());
+				} catch(Throwable t) {
+					failure.set(t);
+				}
+			}
+		});
+
+		renderer.start();
+		simulation.start();
+		simulation.join(60000);
+		renderer.join(60000);
+		if(failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertFalse(renderer.isAlive());
+		assertEquals(PUBLISHES, buffer.getPublishedCount());
+		assertTrue(buffer.getAcquiredCount() > 0 && buffer.getAcquiredCount() <= PUBLISHES);
+	}
+}
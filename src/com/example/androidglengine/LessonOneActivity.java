@@ -1,16 +1,23 @@
 package com.example.androidglengine;
 
+import java.io.File;
+
 import android.app.Activity;
 import android.app.ActivityManager;
 import android.content.Context;
 import android.content.pm.ConfigurationInfo;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
+import android.view.MotionEvent;
+import android.view.View;
 
 public class LessonOneActivity extends Activity {
 	/** Hold a reference to our GLSurfaceView */
 	private GLSurfaceView mGLSurfaceView;
 
+	/** Restarts the simulation clock on resume */
+	private LessonOneRenderer mRenderer;
+
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -28,7 +35,30 @@ public class LessonOneActivity extends Activity {
 			mGLSurfaceView.setEGLContextClientVersion(2);
 
 			// Set the renderer to our demo renderer, defined below.
-			mGLSurfaceView.setRenderer(new LessonOneRenderer());
+			final LessonOneRenderer renderer = new LessonOneRenderer();
+			renderer.setProgramBinaryFile(new File(getCacheDir(), "program_binaries"));
+			mGLSurfaceView.setRenderer(renderer);
+			mRenderer = renderer;
+
+			// Picking reads the scene, so it runs on the GL thread.
+			// Touching the triangle selects it.
+			mGLSurfaceView.setOnTouchListener(new View.OnTouchListener() {
+				@Override
+				public boolean onTouch(View v, MotionEvent event) {
+					if (event.getAction() != MotionEvent.ACTION_DOWN) {
+						return false;
+					}
+					final float x = event.getX();
+					final float y = event.getY();
+					mGLSurfaceView.queueEvent(new Runnable() {
+						@Override
+						public void run() {
+							renderer.select(x, y);
+						}
+					});
+					return true;
+				}
+			});
 		} else {
 			// This is where you could create an OpenGL ES 1.x compatible
 			// renderer if you wanted to support both ES 1 and ES 2.
@@ -43,6 +73,11 @@ public class LessonOneActivity extends Activity {
 		// The activity must call the GL surface view's onResume() on activity
 		// onResume().
 		super.onResume();
+		// Before the GL thread resumes, so its first frame does not catch up
+		// on the time the activity was paused.
+		if (mRenderer != null) {
+			mRenderer.onResume();
+		}
 		mGLSurfaceView.onResume();
 	}
 
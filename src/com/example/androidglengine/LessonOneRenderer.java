@@ -1,27 +1,53 @@
 package com.example.androidglengine;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import engine_components.FixedStepScheduler;
+import engine_components.FrameArena;
+import math_components.Frustum;
+import math_components.Matrix4x4;
 import math_components.Quaternion;
 import math_components.Vector3;
 
+import opengl_components.BatchRenderer;
+import opengl_components.CachingGraphicsDevice;
 import opengl_components.GraphicEntity;
-import opengl_components.GraphicEntity.Scriptable;
+import opengl_components.GraphicEntity.LocalScriptable;
+import opengl_components.GLES20GraphicsDevice;
+import opengl_components.GLES30ProgramBinarySupport;
+import opengl_components.GraphicsDevice;
+import opengl_components.Picker;
+import opengl_components.ProgramBinarySupport;
+import opengl_components.SceneGraph;
+import opengl_components.SceneIndex;
+import opengl_components.ScriptSystem;
+import opengl_components.ShaderCache;
+import opengl_components.ShaderProgram;
+import opengl_components.SnapshotBuffer;
+import opengl_components.TransformSnapshot;
+import opengl_components.VertexLayout;
 
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
+import android.os.Build;
 import android.os.SystemClock;
 
 /**
  * This class implements our custom renderer. Note that the GL10 parameter
- * passed in is unused for OpenGL ES 2.0 renderers -- the static class GLES20 is
- * used instead.
+ * passed in is unused for OpenGL ES 2.0 renderers -- every call goes through a
+ * GraphicsDevice instead, GLES20 on a phone or a headless one for profiling.
  */
 public class LessonOneRenderer implements GLSurfaceView.Renderer {
 	/**
@@ -46,14 +72,45 @@ public class LessonOneRenderer implements GLSurfaceView.Renderer {
 
 	/**
 	 * Allocate storage for the final combined matrix. This will be passed into
-	 * the shader program.
+	 * the shader program. Batched vertices are already in world space so this
+	 * only holds view * projection.
 	 */
 	private float[] mMVPMatrix = new float[16];
 
-	/** Store our model data in a float buffer. */
-	private final FloatBuffer mTriangle1Vertices;
-	private final FloatBuffer mTriangle2Vertices;
-	private final FloatBuffer mTriangle3Vertices;
+	/** Store our model data, copied into the batch every frame. */
+	private final float[] mTriangle1Vertices;
+	private final float[] mTriangle2Vertices;
+	private final float[] mTriangle3Vertices;
+
+	/** The program every triangle is drawn with. */
+	private int mProgramHandle;
+
+	/** Collects the triangles of a frame into as few draw calls as possible. */
+	private BatchRenderer mBatch;
+
+	/** Largest number of vertices drawn in one call. */
+	private static final int BATCH_CAPACITY = 3 * 256;
+
+	/** Attributes of the program, bound to their index before linking. */
+	private static final String[] ATTRIBUTES = { "a_Position", "a_Color" };
+	private static final int ATTRIBUTE_POSITION = 0;
+	private static final int ATTRIBUTE_COLOR = 1;
+
+	/** Uniforms of the program, their locations are looked up once at link time. */
+	private static final String[] UNIFORMS = { "u_MVPMatrix" };
+	private static final int UNIFORM_MVP_MATRIX = 0;
+
+	/** Builds each program once and keeps them across context losses. */
+	private final ShaderCache mShaders;
+
+	/** True when drawing through GLES, binaries are then read with GLES 3.0 if the context has it. */
+	private final boolean mUsesGLES;
+
+	/** Where the program binaries are kept between launches, null to not keep them. */
+	private File mProgramBinaryFile;
+
+	/** Renderer and driver version of the binaries, null when the context can not read them. */
+	private String mProgramBinaryTag;
 
 	/** This will be used to pass in the transformation matrix. */
 	private int mMVPMatrixHandle;
@@ -82,6 +139,34 @@ public class LessonOneRenderer implements GLSurfaceView.Renderer {
 	/** Size of the color data in elements. */
 	private final int mColorDataSize = 4;
 
+	/** Receives every GL call and drops the ones that would not change the state. */
+	private final CachingGraphicsDevice mDevice;
+
+	/** Updates the world transforms once per frame before drawing. */
+	private final SceneGraph mSceneGraph = new SceneGraph();
+
+	/** Planes of the current view projection, entities outside are not drawn. */
+	private final Frustum mFrustum = new Frustum();
+
+	/** Finds the entity under a touch through the spatial index of the scene. */
+	private final Picker mPicker = new Picker(new SceneIndex());
+	private int mViewportWidth;
+	private int mViewportHeight;
+
+	/** Entity selected by the last touch, drawn in other colours. */
+	private GraphicEntity mSelected;
+
+	/** Runs the Update of every script of the scene. */
+	private final ScriptSystem mScripts = new ScriptSystem();
+
+	/** Runs the scripts 60 times a second whatever the frame rate. */
+	private final FixedStepScheduler mScheduler;
+
+	/** World transforms of the last steps, frames are drawn between them. */
+	private final SnapshotBuffer mSnapshots = new SnapshotBuffer();
+	private final Matrix4x4 mInterpolatedWorld = new Matrix4x4();
+	private float mRenderAlpha;
+
 	GraphicEntity primaryEntity;
 	GraphicEntity secondaryEntity;
 	
@@ -89,8 +174,25 @@ public class LessonOneRenderer implements GLSurfaceView.Renderer {
 	 * Initialize the model data.
 	 */
 	public LessonOneRenderer() {
+		this(new GLES20GraphicsDevice());
+	}
+
+	/**
+	 * Initialize the model data, drawing through the given device.
+	 */
+	public LessonOneRenderer(GraphicsDevice device) {
+		mDevice = new CachingGraphicsDevice(device);
+		mShaders = new ShaderCache(mDevice,
+				device instanceof ProgramBinarySupport ? (ProgramBinarySupport) device : null);
+		mUsesGLES = device instanceof GLES20GraphicsDevice;
 		primaryEntity = new GraphicEntity();
 		secondaryEntity = new GraphicEntity();
+		mScheduler = new FixedStepScheduler(new FixedStepScheduler.Simulation() {
+			@Override
+			public void step(float deltaTime) {
+				simulate();
+			}
+		}, 1 / 60.0f, FixedStepScheduler.DEFAULT_MAX_STEPS);
 		
 		android.util.Log.d("ARES", Quaternion.identity().toString());
 		Vector3 euler = new Vector3(0,91,0);
@@ -105,11 +207,12 @@ public class LessonOneRenderer implements GLSurfaceView.Renderer {
 		
 		final Vector3 delta = new Vector3(0,0,1);
 		secondaryEntity.setEulerAngles(delta);
-		secondaryEntity.addScript(new Scriptable() {
+		secondaryEntity.addScript(new LocalScriptable() {
 			
 			@Override
 			public void Update() {
-				secondaryEntity.setEulerAngles(Vector3.add(secondaryEntity.getEulerAngles(), delta));
+				// Adds to the stored quaternion, no Euler angles round trip.
+				secondaryEntity.rotateEuler(delta);
 				//android.util.Log.d("ARES", secondaryEntity.getEulerAngles().toString());
 			}
 			
@@ -120,6 +223,9 @@ public class LessonOneRenderer implements GLSurfaceView.Renderer {
 		});
 				
 		primaryEntity.setParent(secondaryEntity);
+
+		// Box around the triangle drawn by the secondary entity.
+		secondaryEntity.setLocalBounds(new Vector3(0.0f, 0.1545f, 0.0f), new Vector3(0.5f, 0.4045f, 0.0f));
 		
 		// Define points for equilateral triangles.
 
@@ -153,26 +259,19 @@ public class LessonOneRenderer implements GLSurfaceView.Renderer {
 
 				0.0f, 0.559016994f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f };
 
-		// Initialize the buffers.
-		mTriangle1Vertices = ByteBuffer
-				.allocateDirect(triangle1VerticesData.length * mBytesPerFloat)
-				.order(ByteOrder.nativeOrder()).asFloatBuffer();
-		mTriangle2Vertices = ByteBuffer
-				.allocateDirect(triangle2VerticesData.length * mBytesPerFloat)
-				.order(ByteOrder.nativeOrder()).asFloatBuffer();
-		mTriangle3Vertices = ByteBuffer
-				.allocateDirect(triangle3VerticesData.length * mBytesPerFloat)
-				.order(ByteOrder.nativeOrder()).asFloatBuffer();
-
-		mTriangle1Vertices.put(triangle1VerticesData).position(0);
-		mTriangle2Vertices.put(triangle2VerticesData).position(0);
-		mTriangle3Vertices.put(triangle3VerticesData).position(0);
+		mTriangle1Vertices = triangle1VerticesData;
+		mPicker.setGeometry(secondaryEntity, mTriangle1Vertices, 0, 7, 3, null);
+		mTriangle2Vertices = triangle2VerticesData;
+		mTriangle3Vertices = triangle3VerticesData;
 	}
 
 	@Override
 	public void onSurfaceCreated(GL10 glUnused, EGLConfig config) {
+		// The context is new, nothing the state cache knows is true anymore.
+		mDevice.invalidate();
+
 		// Set the background clear color to gray.
-		GLES20.glClearColor(0.5f, 0.5f, 0.5f, 0.5f);
+		mDevice.glClearColor(0.5f, 0.5f, 0.5f, 0.5f);
 
 		// Position the eye behind the origin.
 		final float eyeX = 0.0f;
@@ -268,108 +367,45 @@ public class LessonOneRenderer implements GLSurfaceView.Renderer {
 														// through the pipeline.
 				+ "}                              \n";
 
-		// Load in the vertex shader.
-		int vertexShaderHandle = GLES20.glCreateShader(GLES20.GL_VERTEX_SHADER);
-
-		if (vertexShaderHandle != 0) {
-			// Pass in the shader source.
-			GLES20.glShaderSource(vertexShaderHandle, vertexShader);
-
-			// Compile the shader.
-			GLES20.glCompileShader(vertexShaderHandle);
-
-			// Get the compilation status.
-			final int[] compileStatus = new int[1];
-			GLES20.glGetShaderiv(vertexShaderHandle, GLES20.GL_COMPILE_STATUS,
-					compileStatus, 0);
-
-			// If the compilation failed, delete the shader.
-			if (compileStatus[0] == 0) {
-				GLES20.glDeleteShader(vertexShaderHandle);
-				vertexShaderHandle = 0;
-			}
-		}
-
-		if (vertexShaderHandle == 0) {
-			throw new RuntimeException("Error creating vertex shader.");
-		}
-
-		// Load in the fragment shader shader.
-		int fragmentShaderHandle = GLES20
-				.glCreateShader(GLES20.GL_FRAGMENT_SHADER);
-
-		if (fragmentShaderHandle != 0) {
-			// Pass in the shader source.
-			GLES20.glShaderSource(fragmentShaderHandle, fragmentShader);
-
-			// Compile the shader.
-			GLES20.glCompileShader(fragmentShaderHandle);
-
-			// Get the compilation status.
-			final int[] compileStatus = new int[1];
-			GLES20.glGetShaderiv(fragmentShaderHandle,
-					GLES20.GL_COMPILE_STATUS, compileStatus, 0);
-
-			// If the compilation failed, delete the shader.
-			if (compileStatus[0] == 0) {
-				GLES20.glDeleteShader(fragmentShaderHandle);
-				fragmentShaderHandle = 0;
-			}
-		}
-
-		if (fragmentShaderHandle == 0) {
-			throw new RuntimeException("Error creating fragment shader.");
-		}
-
-		// Create a program object and store the handle to it.
-		int programHandle = GLES20.glCreateProgram();
-
-		if (programHandle != 0) {
-			// Bind the vertex shader to the program.
-			GLES20.glAttachShader(programHandle, vertexShaderHandle);
-
-			// Bind the fragment shader to the program.
-			GLES20.glAttachShader(programHandle, fragmentShaderHandle);
-
-			// Bind attributes
-			GLES20.glBindAttribLocation(programHandle, 0, "a_Position");
-			GLES20.glBindAttribLocation(programHandle, 1, "a_Color");
-
-			// Link the two shaders together into a program.
-			GLES20.glLinkProgram(programHandle);
-
-			// Get the link status.
-			final int[] linkStatus = new int[1];
-			GLES20.glGetProgramiv(programHandle, GLES20.GL_LINK_STATUS,
-					linkStatus, 0);
-
-			// If the link failed, delete the program.
-			if (linkStatus[0] == 0) {
-				GLES20.glDeleteProgram(programHandle);
-				programHandle = 0;
+		// Compiled on the first start, rebuilt from the cache after a context loss.
+		// Binaries of an earlier launch skip compiling when the driver has them.
+		mShaders.invalidate();
+		// GLES30 is only touched once the system and the context have it
+		if (mUsesGLES && mShaders.getBinarySupport() == null
+				&& Build.VERSION.SDK_INT >= 18 && isGLES3Context()) {
+			final GLES30ProgramBinarySupport binaries = GLES30ProgramBinarySupport.create();
+			if (binaries != null) {
+				mShaders.setBinarySupport(binaries);
+				mProgramBinaryTag = binaries.getTag();
+				readProgramBinaries(mProgramBinaryTag);
 			}
 		}
-
-		if (programHandle == 0) {
-			throw new RuntimeException("Error creating program.");
+		final ShaderProgram program = mShaders.get(vertexShader, fragmentShader,
+				ATTRIBUTES, UNIFORMS);
+		if (mProgramBinaryTag != null) {
+			writeProgramBinaries(mProgramBinaryTag);
 		}
 
 		// Set program handles. These will later be used to pass in values to
 		// the program.
-		mMVPMatrixHandle = GLES20.glGetUniformLocation(programHandle,
-				"u_MVPMatrix");
-		mPositionHandle = GLES20.glGetAttribLocation(programHandle,
-				"a_Position");
-		mColorHandle = GLES20.glGetAttribLocation(programHandle, "a_Color");
-
-		// Tell OpenGL to use this program when rendering.
-		GLES20.glUseProgram(programHandle);
+		mMVPMatrixHandle = program.getUniformLocation(UNIFORM_MVP_MATRIX);
+		mPositionHandle = program.getAttributeLocation(ATTRIBUTE_POSITION);
+		mColorHandle = program.getAttributeLocation(ATTRIBUTE_COLOR);
+
+		// The batch binds the program and the vertex data when it begins.
+		mProgramHandle = program.getHandle();
+		final VertexLayout layout = new VertexLayout(mStrideBytes / mBytesPerFloat)
+				.add(mPositionHandle, mPositionDataSize, mPositionOffset)
+				.add(mColorHandle, mColorDataSize, mColorOffset);
+		mBatch = new BatchRenderer(mDevice, layout, BATCH_CAPACITY);
 	}
 
 	@Override
 	public void onSurfaceChanged(GL10 glUnused, int width, int height) {
 		// Set the OpenGL viewport to the same size as the surface.
-		GLES20.glViewport(0, 0, width, height);
+		mDevice.glViewport(0, 0, width, height);
+		mViewportWidth = width;
+		mViewportHeight = height;
 
 		// Create a new perspective projection matrix. The height will stay the
 		// same
@@ -388,19 +424,35 @@ public class LessonOneRenderer implements GLSurfaceView.Renderer {
 
 	@Override
 	public void onDrawFrame(GL10 glUnused) {
-		GLES20.glClear(GLES20.GL_DEPTH_BUFFER_BIT | GLES20.GL_COLOR_BUFFER_BIT);
+		// Temporaries of the previous frame are not used anymore.
+		FrameArena.get().reset();
+
+		mDevice.glClear(GraphicsDevice.GL_DEPTH_BUFFER_BIT | GraphicsDevice.GL_COLOR_BUFFER_BIT);
 
-		secondaryEntity.update();
+		// Run the steps that are due and draw between the last two of them.
+		final long now = System.nanoTime();
+		mScheduler.advance(now);
+		mSnapshots.acquire();
+		mRenderAlpha = TransformSnapshot.getAlpha(mSnapshots.getPrevious(), mSnapshots.getCurrent(),
+				now - mScheduler.getStepNanos());
 		
 		// Do a complete rotation every 10 seconds.
 		long time = SystemClock.uptimeMillis() % 10000L;
 		float angleInDegrees = (360.0f / 10000.0f) * ((int) time);
 
+		// Every triangle shares the program and the view projection.
+		Matrix.multiplyMM(mMVPMatrix, 0, mProjectionMatrix, 0, mViewMatrix, 0);
+		mFrustum.set(mMVPMatrix, 0);
+		mPicker.setCamera(mMVPMatrix, 0, 0, 0, mViewportWidth, mViewportHeight);
+		mSceneGraph.cull(mFrustum);
+		mBatch.begin(mProgramHandle, mMVPMatrixHandle, mMVPMatrix, 0);
+
 		// Draw the triangle facing straight on.
 		Matrix.setIdentityM(mModelMatrix, 0);
 		Matrix.translateM(mModelMatrix, 0, 3.0f, 0.0f, 5.0f);
 		//Matrix.rotateM(mModelMatrix, 0, angleInDegrees, 0.0f, 0.0f, 1.0f);
-		drawTriangle(mTriangle1Vertices);
+		// Once selected it takes the colours of the second triangle.
+		drawTriangle(mSelected == secondaryEntity ? mTriangle2Vertices : mTriangle1Vertices);
 
 		// Draw one translated a bit down and rotated to be flat on the ground.
 		Matrix.setIdentityM(mModelMatrix, 0);
@@ -416,43 +468,142 @@ public class LessonOneRenderer implements GLSurfaceView.Renderer {
 		Matrix.rotateM(mModelMatrix, 0, 90.0f, 0.0f, 1.0f, 0.0f);
 		Matrix.rotateM(mModelMatrix, 0, angleInDegrees, 0.0f, 0.0f, 1.0f);
 		//drawTriangle(mTriangle3Vertices);
+
+		// Submit the batch.
+		mBatch.end();
+	}
+
+	/**
+	 * Keeps the program binaries in a file so later launches do not compile
+	 * the shaders, call it before the surface is created.
+	 * 
+	 * @param file
+	 *            Usually in the cache directory of the app, null to not keep them.
+	 */
+	public void setProgramBinaryFile(File file) {
+		mProgramBinaryFile = file;
+	}
+
+	private void readProgramBinaries(String tag) {
+		if (mProgramBinaryFile == null || !mProgramBinaryFile.exists()) {
+			return;
+		}
+		InputStream in = null;
+		try {
+			in = new BufferedInputStream(new FileInputStream(mProgramBinaryFile));
+			mShaders.readBinaries(in, tag);
+		} catch (IOException e) {
+			// a damaged file only costs a compile, it is replaced below
+			android.util.Log.w("ARES", "Could not read program binaries: " + e);
+		} finally {
+			close(in);
+		}
+	}
+
+	private void writeProgramBinaries(String tag) {
+		if (mProgramBinaryFile == null || !mShaders.hasNewBinaries()) {
+			return;
+		}
+		// written aside and renamed so a crash never leaves half a file
+		final File temp = new File(mProgramBinaryFile.getPath() + ".tmp");
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(temp));
+			mShaders.writeBinaries(out, tag);
+			out.close();
+			out = null;
+			if (!temp.renameTo(mProgramBinaryFile)) {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			android.util.Log.w("ARES", "Could not write program binaries: " + e);
+			temp.delete();
+		} finally {
+			close(out);
+		}
+	}
+
+	/**
+	 * Returns true if the current context is OpenGL ES 3.0 or later, an ES
+	 * 2.0 context on a 3.0 driver usually is.
+	 */
+	private static boolean isGLES3Context() {
+		final String version = GLES20.glGetString(GLES20.GL_VERSION);
+		return version != null && version.startsWith("OpenGL ES ")
+				&& !version.startsWith("OpenGL ES 2") && !version.startsWith("OpenGL ES 1");
+	}
+
+	private static void close(Closeable stream) {
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				// nothing left to do with it
+			}
+		}
+	}
+
+	/**
+	 * Restarts the simulation clock, the time the activity was paused is not
+	 * simulated. Can be called from any thread.
+	 */
+	public void onResume() {
+		mScheduler.resetClock();
+	}
+
+	/**
+	 * Finds the entity drawn under a screen point, must run on the GL thread.
+	 * 
+	 * @param x
+	 *            Window coordinates, y down like touch events.
+	 * @param y
+	 * @return The entity or null.
+	 */
+	public GraphicEntity pick(float x, float y) {
+		return mPicker.pick(x, y);
 	}
 
 	/**
-	 * Draws a triangle from the given vertex data.
+	 * Selects the entity drawn under a screen point, touching it again or
+	 * touching nothing clears the selection. Must run on the GL thread.
 	 * 
-	 * @param aTriangleBuffer
-	 *            The buffer containing the vertex data.
+	 * @param x
+	 *            Window coordinates, y down like touch events.
+	 * @param y
 	 */
-	private void drawTriangle(final FloatBuffer aTriangleBuffer) {
-		// Pass in the position information
-		aTriangleBuffer.position(mPositionOffset);
-		GLES20.glVertexAttribPointer(mPositionHandle, mPositionDataSize,
-				GLES20.GL_FLOAT, false, mStrideBytes, aTriangleBuffer);
-
-		GLES20.glEnableVertexAttribArray(mPositionHandle);
-
-		// Pass in the color information
-		aTriangleBuffer.position(mColorOffset);
-		GLES20.glVertexAttribPointer(mColorHandle, mColorDataSize,
-				GLES20.GL_FLOAT, false, mStrideBytes, aTriangleBuffer);
-
-		GLES20.glEnableVertexAttribArray(mColorHandle);
-
-		// This multiplies the view matrix by the model matrix, and stores the
-		// result in the MVP matrix
-		// (which currently contains model * view).
-		float [] test1 = secondaryEntity.getWorldTransformationMatrix().matrix();
-		float [] test2  = new float[16];
-		Matrix.multiplyMM(mMVPMatrix, 0, mViewMatrix, 0, test1, 0);
-		Matrix.multiplyMM(test2, 0, mViewMatrix, 0, mModelMatrix, 0);
-
-		// This multiplies the modelview matrix by the projection matrix, and
-		// stores the result in the MVP matrix
-		// (which now contains model * view * projection).
-		Matrix.multiplyMM(mMVPMatrix, 0, mProjectionMatrix, 0, mMVPMatrix, 0);
-
-		GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mMVPMatrix, 0);
-		GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 3);
+	public void select(float x, float y) {
+		final GraphicEntity picked = mPicker.pick(x, y);
+		mSelected = picked == mSelected ? null : picked;
+	}
+
+	/**
+	 * Adds a triangle to the frame batch, placed by the secondary entity.
+	 * 
+	 * @param aTriangleVertices
+	 *            The array containing the vertex data.
+	 */
+	private void drawTriangle(final float[] aTriangleVertices) {
+		if(!mSceneGraph.isVisible(secondaryEntity)) {
+			return;
+		}
+		if(TransformSnapshot.interpolate(mSnapshots.getPrevious(), mSnapshots.getCurrent(),
+				secondaryEntity.getId(), mRenderAlpha, mInterpolatedWorld)) {
+			mBatch.draw(mInterpolatedWorld, aTriangleVertices, 0, 3);
+		} else {
+			mBatch.draw(secondaryEntity, aTriangleVertices, 0, 3);
+		}
+	}
+
+	/**
+	 * One fixed step of the scene: runs the scripts, updates the transforms
+	 * and publishes them for drawing.
+	 */
+	private void simulate() {
+		mScripts.update();
+
+		// Every world matrix is up to date after this, culling only reads them.
+		mSceneGraph.updateTransforms();
+		mSnapshots.getBack().capture(secondaryEntity.getStore(), mScheduler.getSimulationTime());
+		mSnapshots.publish();
 	}
-}
\ No newline at end of file
+}
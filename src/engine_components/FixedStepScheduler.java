@@ -0,0 +1,246 @@
+package engine_components;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a simulation in fixed time steps, independent of the frame rate.
+ * advance() runs every step that became due since the last call, at most
+ * maxStepsPerAdvance of them: when the simulation can not keep up the extra
+ * time is dropped instead of being caught up, so a slow step can not cause
+ * ever longer frames. The renderer draws between the last two simulated
+ * states, getAlpha() tells how far it is past the last step.
+ * advance() can be called by the render thread once per frame, or start()
+ * runs it on a dedicated thread that sleeps until the next step is due. In
+ * that case the simulation must hand its results over with a SnapshotBuffer
+ * and the render thread must not touch the simulated objects.
+ */
+public class FixedStepScheduler {
+
+	public interface Simulation {
+		/**
+		 * Advances the simulation by one step
+		 * @param deltaTime the fixed step in seconds
+		 */
+		public void step(float deltaTime);
+	}
+
+	/** Default catch up limit, a few steps are run after a hitch, not seconds of them */
+	public static final int DEFAULT_MAX_STEPS = 5;
+
+	final Simulation m_Simulation;
+	final long m_StepNanos;
+	final float m_StepSeconds;
+	int m_MaxSteps;
+
+	// Time the simulation has reached, -1 before the first advance
+	private volatile long m_SimulationTime = -1;
+	// Set by resetClock, applied by the next advance on its own thread
+	private final AtomicBoolean m_ResetRequested = new AtomicBoolean();
+
+	private Thread m_Thread;
+	private volatile boolean m_bRunning;
+
+	// Stats
+	private volatile long m_StepCount;
+	private volatile long m_DroppedSteps;
+	private volatile int m_LastSteps;
+	private volatile long m_LastStepNanos;
+	private volatile long m_MaxStepNanos;
+	private long m_TotalStepNanos;
+
+	/**
+	 * @param simulation
+	 * @param stepSeconds length of a step, for example 1/60f
+	 * @param maxStepsPerAdvance catch up limit
+	 */
+	public FixedStepScheduler(Simulation simulation, float stepSeconds, int maxStepsPerAdvance) {
+		if(stepSeconds <= 0) {
+			throw new IllegalArgumentException("FixedStepScheduler step must be positive, got " + stepSeconds);
+		}
+		m_Simulation = simulation;
+		m_StepNanos = Math.round(stepSeconds*1e9);
+		m_StepSeconds = stepSeconds;
+		m_MaxSteps = Math.max(maxStepsPerAdvance, 1);
+	}
+
+	public void setMaxStepsPerAdvance(int maxSteps) {
+		m_MaxSteps = Math.max(maxSteps, 1);
+	}
+
+	public float getStepSeconds() {
+		return m_StepSeconds;
+	}
+
+	public long getStepNanos() {
+		return m_StepNanos;
+	}
+
+	/**
+	 * Runs the steps due at a time
+	 * @param nanoTime current System.nanoTime()
+	 * @return the number of steps run
+	 */
+	public int advance(long nanoTime) {
+		long time = m_SimulationTime;
+		if(time < 0 || m_ResetRequested.compareAndSet(true, false)) {
+			// the clock starts now
+			m_SimulationTime = nanoTime;
+			m_LastSteps = 0;
+			return 0;
+		}
+
+		long due = (nanoTime - time)/m_StepNanos;
+		if(due > m_MaxSteps) {
+			m_DroppedSteps += due - m_MaxSteps;
+			time += (due - m_MaxSteps)*m_StepNanos;
+			due = m_MaxSteps;
+		}
+		for(int i = 0; i < due; i++) {
+			// set first so what the step publishes is stamped with its end
+			time += m_StepNanos;
+			m_SimulationTime = time;
+			final long start = System.nanoTime();
+			m_Simulation.step(m_StepSeconds);
+
+			final long elapsed = System.nanoTime() - start;
+			m_LastStepNanos = elapsed;
+			m_TotalStepNanos += elapsed;
+			if(elapsed > m_MaxStepNanos) {
+				m_MaxStepNanos = elapsed;
+			}
+			m_StepCount++;
+		}
+		m_SimulationTime = time;
+		m_LastSteps = (int)due;
+		return (int)due;
+	}
+
+	/**
+	 * returns the time the simulation has reached, the time of the current
+	 * step while step() runs
+	 * @return System.nanoTime() based, -1 before the first advance
+	 */
+	public long getSimulationTime() {
+		return m_SimulationTime;
+	}
+
+	/**
+	 * returns how far a time is past the last simulated step, in steps, from 0 to 1
+	 * @param nanoTime
+	 * @return
+	 */
+	public float getAlpha(long nanoTime) {
+		final long time = m_SimulationTime;
+		if(time < 0) {
+			return 1;
+		}
+		final float alpha = (float)(nanoTime - time)/m_StepNanos;
+		return alpha < 0? 0 : alpha > 1? 1 : alpha;
+	}
+
+	/**
+	 * Restarts the clock, for example when the app resumes, so the time it was
+	 * paused is neither simulated nor counted as dropped. Can be called from
+	 * any thread, the next advance starts the clock again instead of running
+	 * steps, a reset during an advance applies to the one after it
+	 */
+	public void resetClock() {
+		m_ResetRequested.set(true);
+	}
+
+	/**
+	 * Starts running the simulation on its own thread
+	 * @param name thread name
+	 */
+	public synchronized void start(String name) {
+		if(m_Thread != null) {
+			return;
+		}
+		m_bRunning = true;
+		m_Thread = new Thread(name) {
+			@Override
+			public void run() {
+				runLoop();
+			}
+		};
+		m_Thread.start();
+	}
+
+	/**
+	 * Stops the simulation thread and waits for the current step to end
+	 */
+	public synchronized void stop() {
+		final Thread thread = m_Thread;
+		if(thread == null) {
+			return;
+		}
+		m_bRunning = false;
+		thread.interrupt();
+		boolean interrupted = false;
+		while(thread.isAlive()) {
+			try {
+				thread.join();
+			} catch(InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		m_Thread = null;
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public boolean isThreaded() {
+		return m_Thread != null;
+	}
+
+	private void runLoop() {
+		while(m_bRunning) {
+			advance(System.nanoTime());
+
+			final long wait = m_SimulationTime + m_StepNanos - System.nanoTime();
+			if(wait > 0) {
+				try {
+					Thread.sleep(wait/1000000, (int)(wait % 1000000));
+				} catch(InterruptedException e) {
+					// stop() interrupts the sleep
+				}
+			}
+		}
+	}
+
+	/** returns the number of steps simulated since the creation */
+	public long getStepCount() {
+		return m_StepCount;
+	}
+
+	/** returns the number of steps skipped because the simulation fell behind */
+	public long getDroppedSteps() {
+		return m_DroppedSteps;
+	}
+
+	/** returns the number of steps run by the last advance */
+	public int getLastSteps() {
+		return m_LastSteps;
+	}
+
+	public long getLastStepNanos() {
+		return m_LastStepNanos;
+	}
+
+	public long getMaxStepNanos() {
+		return m_MaxStepNanos;
+	}
+
+	public long getAverageStepNanos() {
+		final long steps = m_StepCount;
+		return steps == 0? 0 : m_TotalStepNanos/steps;
+	}
+
+	@Override
+	public String toString() {
+		return "FixedStepScheduler step: " + m_StepNanos/1000 + "us steps: " + m_StepCount
+				+ " dropped: " + m_DroppedSteps + " avg: " + getAverageStepNanos()/1000
+				+ "us max: " + m_MaxStepNanos/1000 + "us" + (isThreaded()? " threaded" : "");
+	}
+}
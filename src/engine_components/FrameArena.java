@@ -0,0 +1,275 @@
+package engine_components;
+
+import java.util.Arrays;
+
+import math_components.Matrix4x4;
+import math_components.Quaternion;
+import math_components.Vector3;
+
+/**
+ * Per thread scratch storage for math temporaries that only live during a
+ * frame. Objects are handed out from preallocated arrays and all taken back
+ * at once by reset(), so code that needs a few temporaries does not
+ * allocate. A temporary must not be kept after the reset, mark() and
+ * release() free a nested scope early, for example at the end of a worker task.
+ * In debug mode every released object is filled with NaN so code still reading
+ * it shows up quickly, and writes to it are counted as escapes when the
+ * object is handed out again.
+ */
+public class FrameArena {
+
+	private static final int DEFAULT_CAPACITY = 32;
+	private static final int MAX_MARKS = 16;
+
+	private static boolean s_bDefaultDebug = false;
+
+	private static final ThreadLocal<FrameArena> s_Arenas = new ThreadLocal<FrameArena>() {
+		@Override
+		protected FrameArena initialValue() {
+			return new FrameArena(DEFAULT_CAPACITY);
+		}
+	};
+
+	/**
+	 * returns the arena of the calling thread
+	 * @return
+	 */
+	public static FrameArena get() {
+		return s_Arenas.get();
+	}
+
+	/** Sets the debug mode of the arenas created from now on */
+	public static void setDefaultDebug(boolean debug) {
+		s_bDefaultDebug = debug;
+	}
+
+	private Vector3 [] m_Vectors;
+	private Quaternion [] m_Quaternions;
+	private Matrix4x4 [] m_Matrices;
+	private int m_VectorCount;
+	private int m_QuaternionCount;
+	private int m_MatrixCount;
+
+	// Saved counts of the open scopes, three per mark
+	private final int [] m_Marks = new int[MAX_MARKS*3];
+	private int m_MarkCount;
+
+	private boolean m_bDebug;
+
+	// Usage stats
+	private int m_VectorHighWater;
+	private int m_QuaternionHighWater;
+	private int m_MatrixHighWater;
+	private int m_Grows;
+	private int m_Escapes;
+	private int m_Frames;
+
+	public FrameArena(int capacity) {
+		capacity = Math.max(capacity, 1);
+		m_Vectors = new Vector3[capacity];
+		m_Quaternions = new Quaternion[capacity];
+		m_Matrices = new Matrix4x4[capacity];
+		m_bDebug = s_bDefaultDebug;
+	}
+
+	/**
+	 * Enables the poisoning of released objects and the escape count
+	 * @param debug
+	 */
+	public void setDebug(boolean debug) {
+		if(debug && !m_bDebug) {
+			// the free objects were never poisoned
+			poisonVectors(m_VectorCount, m_Vectors.length);
+			poisonQuaternions(m_QuaternionCount, m_Quaternions.length);
+			poisonMatrices(m_MatrixCount, m_Matrices.length);
+		}
+		m_bDebug = debug;
+	}
+
+	public boolean isDebug() {
+		return m_bDebug;
+	}
+
+	/**
+	 * returns a temporary vector set to 0, valid until the next reset
+	 * @return
+	 */
+	public Vector3 vector3() {
+		return vector3(0, 0, 0);
+	}
+
+	public Vector3 vector3(float x, float y, float z) {
+		if(m_VectorCount == m_Vectors.length) {
+			m_Vectors = Arrays.copyOf(m_Vectors, m_VectorCount*2);
+			m_Grows++;
+		}
+		Vector3 v = m_Vectors[m_VectorCount];
+		if(v == null) {
+			v = m_Vectors[m_VectorCount] = new Vector3(0, 0, 0);
+		} else if(m_bDebug && !(v.x != v.x && v.y != v.y && v.z != v.z)) {
+			m_Escapes++;
+		}
+		m_VectorCount++;
+		if(m_VectorCount > m_VectorHighWater) {
+			m_VectorHighWater = m_VectorCount;
+		}
+		v.set(x, y, z);
+		return v;
+	}
+
+	/**
+	 * returns a temporary identity quaternion, valid until the next reset
+	 * @return
+	 */
+	public Quaternion quaternion() {
+		if(m_QuaternionCount == m_Quaternions.length) {
+			m_Quaternions = Arrays.copyOf(m_Quaternions, m_QuaternionCount*2);
+			m_Grows++;
+		}
+		Quaternion q = m_Quaternions[m_QuaternionCount];
+		if(q == null) {
+			q = m_Quaternions[m_QuaternionCount] = new Quaternion(0, 0, 0, 1);
+		} else if(m_bDebug && !(q.x != q.x && q.y != q.y && q.z != q.z && q.w != q.w)) {
+			m_Escapes++;
+		}
+		m_QuaternionCount++;
+		if(m_QuaternionCount > m_QuaternionHighWater) {
+			m_QuaternionHighWater = m_QuaternionCount;
+		}
+		return q.set(0, 0, 0, 1);
+	}
+
+	/**
+	 * returns a temporary identity matrix, valid until the next reset
+	 * @return
+	 */
+	public Matrix4x4 matrix4x4() {
+		if(m_MatrixCount == m_Matrices.length) {
+			m_Matrices = Arrays.copyOf(m_Matrices, m_MatrixCount*2);
+			m_Grows++;
+		}
+		Matrix4x4 m = m_Matrices[m_MatrixCount];
+		if(m == null) {
+			m = m_Matrices[m_MatrixCount] = new Matrix4x4();
+		} else if(m_bDebug && !isPoisoned(m.matrix())) {
+			m_Escapes++;
+		}
+		m_MatrixCount++;
+		if(m_MatrixCount > m_MatrixHighWater) {
+			m_MatrixHighWater = m_MatrixCount;
+		}
+		return m.setIdentity();
+	}
+
+	/**
+	 * Saves the current use so release() can free what is taken after it
+	 */
+	public void mark() {
+		if(m_MarkCount == MAX_MARKS) {
+			throw new IllegalStateException("FrameArena marks nested more than " + MAX_MARKS + " deep");
+		}
+		final int o = m_MarkCount*3;
+		m_Marks[o] = m_VectorCount;
+		m_Marks[o + 1] = m_QuaternionCount;
+		m_Marks[o + 2] = m_MatrixCount;
+		m_MarkCount++;
+	}
+
+	/**
+	 * Frees every temporary taken since the matching mark()
+	 */
+	public void release() {
+		if(m_MarkCount == 0) {
+			throw new IllegalStateException("FrameArena release without mark");
+		}
+		m_MarkCount--;
+		final int o = m_MarkCount*3;
+		free(m_Marks[o], m_Marks[o + 1], m_Marks[o + 2]);
+	}
+
+	/**
+	 * Frees every temporary, called once per frame. Open marks are dropped
+	 */
+	public void reset() {
+		m_MarkCount = 0;
+		free(0, 0, 0);
+		m_Frames++;
+	}
+
+	private void free(int vectors, int quaternions, int matrices) {
+		if(m_bDebug) {
+			poisonVectors(vectors, m_VectorCount);
+			poisonQuaternions(quaternions, m_QuaternionCount);
+			poisonMatrices(matrices, m_MatrixCount);
+		}
+		m_VectorCount = vectors;
+		m_QuaternionCount = quaternions;
+		m_MatrixCount = matrices;
+	}
+
+	private void poisonVectors(int start, int end) {
+		for(int i = start; i < end; i++) {
+			if(m_Vectors[i] != null) {
+				m_Vectors[i].set(Float.NaN, Float.NaN, Float.NaN);
+			}
+		}
+	}
+
+	private void poisonQuaternions(int start, int end) {
+		for(int i = start; i < end; i++) {
+			if(m_Quaternions[i] != null) {
+				m_Quaternions[i].set(Float.NaN, Float.NaN, Float.NaN, Float.NaN);
+			}
+		}
+	}
+
+	private void poisonMatrices(int start, int end) {
+		for(int i = start; i < end; i++) {
+			if(m_Matrices[i] != null) {
+				Arrays.fill(m_Matrices[i].matrix(), Float.NaN);
+			}
+		}
+	}
+
+	private static boolean isPoisoned(float [] m) {
+		for(int i = 0; i < m.length; i++) {
+			if(m[i] == m[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** returns the number of temporaries in use */
+	public int getInUse() {
+		return m_VectorCount + m_QuaternionCount + m_MatrixCount;
+	}
+
+	/** returns the largest number of temporaries used at once */
+	public int getHighWater() {
+		return m_VectorHighWater + m_QuaternionHighWater + m_MatrixHighWater;
+	}
+
+	/** returns how many times an array had to grow, 0 once the frame sizes are known */
+	public int getGrowCount() {
+		return m_Grows;
+	}
+
+	/** returns the number of released temporaries found written to, debug mode only */
+	public int getEscapeCount() {
+		return m_Escapes;
+	}
+
+	public int getFrameCount() {
+		return m_Frames;
+	}
+
+	@Override
+	public String toString() {
+		return "FrameArena frames: " + m_Frames
+				+ " in use: " + m_VectorCount + "/" + m_QuaternionCount + "/" + m_MatrixCount
+				+ " high water: " + m_VectorHighWater + "/" + m_QuaternionHighWater + "/" + m_MatrixHighWater
+				+ " (vectors/quaternions/matrices) grows: " + m_Grows
+				+ (m_bDebug ? " escapes: " + m_Escapes : "");
+	}
+}
@@ -0,0 +1,139 @@
+package engine_components;
+
+/**
+ * Bounded pool for objects that live longer than a frame but are created and
+ * dropped often. At most capacity free objects are kept, objects freed past
+ * that are left to the garbage collector. A pool must only be used by one
+ * thread. In debug mode freeing the same object twice throws.
+ * @param <T>
+ */
+public class ObjectPool<T> {
+
+	public interface Factory<T> {
+		public T create();
+	}
+
+	/** Called on every object that goes back to the pool */
+	public interface Resetter<T> {
+		public void reset(T object);
+	}
+
+	final Factory<T> m_Factory;
+	final Resetter<T> m_Resetter;
+	private final Object [] m_Free;
+	private int m_FreeCount;
+	private boolean m_bDebug;
+
+	// Usage stats
+	private int m_Created;
+	private int m_Obtained;
+	private int m_InUse;
+	private int m_PeakInUse;
+	private int m_Dropped;
+
+	public ObjectPool(Factory<T> factory, int capacity) {
+		this(factory, null, capacity);
+	}
+
+	/**
+	 * @param factory creates the objects when the pool is empty
+	 * @param resetter clears freed objects, can be null
+	 * @param capacity maximum number of free objects kept
+	 */
+	public ObjectPool(Factory<T> factory, Resetter<T> resetter, int capacity) {
+		m_Factory = factory;
+		m_Resetter = resetter;
+		m_Free = new Object[Math.max(capacity, 0)];
+	}
+
+	public void setDebug(boolean debug) {
+		m_bDebug = debug;
+	}
+
+	/**
+	 * Fills the pool so the first obtains do not allocate
+	 * @param count
+	 */
+	public void preallocate(int count) {
+		while(m_FreeCount < Math.min(count, m_Free.length)) {
+			m_Free[m_FreeCount++] = m_Factory.create();
+			m_Created++;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public T obtain() {
+		final T object;
+		if(m_FreeCount > 0) {
+			object = (T)m_Free[--m_FreeCount];
+			m_Free[m_FreeCount] = null;
+		} else {
+			object = m_Factory.create();
+			m_Created++;
+		}
+		m_Obtained++;
+		if(++m_InUse > m_PeakInUse) {
+			m_PeakInUse = m_InUse;
+		}
+		return object;
+	}
+
+	/**
+	 * Gives an object back, it must not be used afterwards
+	 * @param object
+	 */
+	public void free(T object) {
+		if(object == null) {
+			throw new IllegalArgumentException("ObjectPool can not free null");
+		}
+		if(m_bDebug) {
+			for(int i = 0; i < m_FreeCount; i++) {
+				if(m_Free[i] == object) {
+					throw new IllegalStateException("ObjectPool object freed twice: " + object);
+				}
+			}
+		}
+		m_InUse--;
+		if(m_Resetter != null) {
+			m_Resetter.reset(object);
+		}
+		if(m_FreeCount < m_Free.length) {
+			m_Free[m_FreeCount++] = object;
+		} else {
+			m_Dropped++;
+		}
+	}
+
+	public int getFreeCount() {
+		return m_FreeCount;
+	}
+
+	public int getCapacity() {
+		return m_Free.length;
+	}
+
+	/** returns the number of objects obtained and not freed yet, leaks show up here */
+	public int getInUse() {
+		return m_InUse;
+	}
+
+	public int getPeakInUse() {
+		return m_PeakInUse;
+	}
+
+	/** returns the number of objects the pool had to create */
+	public int getCreatedCount() {
+		return m_Created;
+	}
+
+	/** returns the number of freed objects dropped because the pool was full */
+	public int getDroppedCount() {
+		return m_Dropped;
+	}
+
+	@Override
+	public String toString() {
+		return "ObjectPool in use: " + m_InUse + " (peak " + m_PeakInUse + ") free: " + m_FreeCount + "/" + m_Free.length
+				+ " obtained: " + m_Obtained + " created: " + m_Created + " dropped: " + m_Dropped;
+	}
+}
@@ -0,0 +1,188 @@
+package engine_components;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small fixed thread pool used to split data parallel work (ranges of
+ * entities, vertices, channels...) across cores. The calling thread takes
+ * part in the work and a call does not allocate, so it can be used every frame.
+ * ForkJoinPool is not available before API 21 so this is the engine's own.
+ */
+public class WorkerPool {
+
+	public interface RangeTask {
+		/**
+		 * Processes the items in [start, end)
+		 */
+		public void run(int start, int end);
+	}
+
+	private static WorkerPool s_Shared;
+
+	/**
+	 * returns a pool shared by the engine systems, sized to the device cores
+	 * @return
+	 */
+	public static synchronized WorkerPool getShared() {
+		if(s_Shared == null) {
+			s_Shared = new WorkerPool(Runtime.getRuntime().availableProcessors() - 1);
+		}
+		return s_Shared;
+	}
+
+	private class Worker extends Thread {
+		Worker(int i) {
+			super("WorkerPool-" + i);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			long seen = 0;
+			while(true) {
+				synchronized(m_Lock) {
+					while(m_Generation == seen && !m_bShutdown) {
+						try {
+							m_Lock.wait();
+						} catch (InterruptedException e) {
+							// only shutdown() ends a worker, a missing one would hang the next job
+						}
+					}
+					if(m_Generation == seen) {
+						// shut down, a job started before still gets its worker
+						return;
+					}
+					seen = m_Generation;
+				}
+
+				runChunks();
+
+				synchronized(m_Lock) {
+					if(--m_Active == 0) {
+						m_Lock.notifyAll();
+					}
+				}
+			}
+		}
+
+		WorkerPool pool() {
+			return WorkerPool.this;
+		}
+	}
+
+	private final Worker [] m_Workers;
+	private final Object m_Lock = new Object();
+	private final AtomicInteger m_Next = new AtomicInteger();
+
+	// Current job, published to the workers through m_Lock
+	private RangeTask m_Task;
+	private int m_Count;
+	private int m_Grain;
+	private long m_Generation;
+	private int m_Active;
+	private boolean m_bShutdown;
+	private volatile Throwable m_Error;
+
+	/**
+	 * @param threads number of extra threads, 0 runs everything on the caller
+	 */
+	public WorkerPool(int threads) {
+		m_Workers = new Worker[Math.max(threads, 0)];
+		for(int i = 0; i < m_Workers.length; i++) {
+			m_Workers[i] = new Worker(i);
+			m_Workers[i].start();
+		}
+	}
+
+	/**
+	 * returns the number of threads that work on a job, including the caller
+	 * @return
+	 */
+	public int getParallelism() {
+		return m_Workers.length + 1;
+	}
+
+	/**
+	 * Runs task over [0, count) in chunks of grain items and returns when every
+	 * chunk is done. Nested calls from a worker run serially
+	 * @param count
+	 * @param grain minimum number of items per chunk
+	 * @param task
+	 */
+	public synchronized void parallelFor(int count, int grain, RangeTask task) {
+		grain = Math.max(grain, 1);
+		if(count <= grain || m_Workers.length == 0 || isWorkerThread()) {
+			if(count > 0) {
+				task.run(0, count);
+			}
+			return;
+		}
+
+		m_Task = task;
+		m_Count = count;
+		m_Grain = grain;
+		m_Error = null;
+		m_Next.set(0);
+
+		synchronized(m_Lock) {
+			if(m_bShutdown) {
+				throw new IllegalStateException("WorkerPool was shut down");
+			}
+			m_Active = m_Workers.length;
+			m_Generation++;
+			m_Lock.notifyAll();
+		}
+
+		runChunks();
+
+		// the workers still hold this job until they are done with it, so an
+		// interrupt is only passed on once they are
+		boolean interrupted = false;
+		synchronized(m_Lock) {
+			while(m_Active > 0) {
+				try {
+					m_Lock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		m_Task = null;
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		final Throwable error = m_Error;
+		if(error != null) {
+			m_Error = null;
+			throw new RuntimeException("WorkerPool task failed", error);
+		}
+	}
+
+	public void shutdown() {
+		synchronized(m_Lock) {
+			m_bShutdown = true;
+			m_Lock.notifyAll();
+		}
+	}
+
+	private void runChunks() {
+		final RangeTask task = m_Task;
+		final int count = m_Count;
+		final int grain = m_Grain;
+
+		int start;
+		while((start = m_Next.getAndAdd(grain)) < count) {
+			try {
+				task.run(start, Math.min(count, start + grain));
+			} catch (Throwable t) {
+				m_Error = t;
+			}
+		}
+	}
+
+	private boolean isWorkerThread() {
+		final Thread current = Thread.currentThread();
+		return current instanceof Worker && ((Worker)current).pool() == this;
+	}
+}
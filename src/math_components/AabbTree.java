@@ -0,0 +1,853 @@
+package math_components;
+
+import java.util.Arrays;
+
+/**
+ * Dynamic bounding volume hierarchy over axis aligned boxes, answers spatial
+ * queries (frustum, ray, sphere, box, nearest) without visiting every object.
+ * Leaves keep the exact box of their object and a copy fattened by a margin,
+ * the tree is built from the fat boxes so small moves do not touch it. A leaf
+ * is only taken out and inserted again once its box leaves the fat one.
+ * Insertion picks the sibling with the smallest surface area increase and
+ * rotations keep the tree balanced, so an update is O(log n).
+ * Nodes live in flat arrays like the TransformStore, a proxy is the index of
+ * its leaf and stays valid until destroyed. Query results go to an internal
+ * list read with getResult, so queries do not allocate once it has grown.
+ * Boxes are stored as min xyz, max xyz.
+ */
+public class AabbTree {
+
+	public static final int NULL = -1;
+	public static final int BOUNDS_SIZE = 6;
+
+	/** Default growth of the fat boxes, in world units */
+	public static final float DEFAULT_MARGIN = 0.1f;
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	public interface RayCallback {
+		/**
+		 * Called for the leaves whose box the ray enters before maxDistance,
+		 * in no particular order. The direction is the one given to raycast
+		 * @param userData
+		 * @param boxDistance where the ray enters the box of the leaf
+		 * @param maxDistance closest hit found so far
+		 * @return the distance of the hit along the ray, negative if there is none
+		 */
+		public float hit(int userData, float ox, float oy, float oz,
+				float dx, float dy, float dz, float boxDistance, float maxDistance);
+	}
+
+	final float m_Margin;
+
+	// Per node data, a node is a leaf when m_Child1 is NULL and free when its height is -1
+	float [] m_Bounds;
+	float [] m_Tight;
+	int [] m_Parents;
+	int [] m_Child1;
+	int [] m_Child2;
+	int [] m_Heights;
+	int [] m_UserData;
+
+	int m_Root = NULL;
+	int m_NodeCount;
+	int m_ProxyCount;
+	int m_FreeList = NULL;
+
+	// Query scratch, grown on demand
+	private int [] m_Stack = new int[64];
+	private float [] m_StackDistances = new float[64];
+	private int [] m_Results = new int[64];
+	private float [] m_ResultDistances = new float[64];
+	private int m_ResultCount;
+
+	public AabbTree() {
+		this(DEFAULT_CAPACITY, DEFAULT_MARGIN);
+	}
+
+	/**
+	 * @param capacity initial number of proxies
+	 * @param margin growth of the fat boxes, larger values trade query
+	 * precision for fewer reinsertions of moving objects
+	 */
+	public AabbTree(int capacity, float margin) {
+		m_Margin = margin;
+		allocate(Math.max(capacity, 1)*2);
+	}
+
+	private void allocate(int nodes) {
+		final int old = m_Parents == null? 0 : m_Parents.length;
+		if(old == 0) {
+			m_Bounds = new float[nodes*BOUNDS_SIZE];
+			m_Tight = new float[nodes*BOUNDS_SIZE];
+			m_Parents = new int[nodes];
+			m_Child1 = new int[nodes];
+			m_Child2 = new int[nodes];
+			m_Heights = new int[nodes];
+			m_UserData = new int[nodes];
+		} else {
+			m_Bounds = Arrays.copyOf(m_Bounds, nodes*BOUNDS_SIZE);
+			m_Tight = Arrays.copyOf(m_Tight, nodes*BOUNDS_SIZE);
+			m_Parents = Arrays.copyOf(m_Parents, nodes);
+			m_Child1 = Arrays.copyOf(m_Child1, nodes);
+			m_Child2 = Arrays.copyOf(m_Child2, nodes);
+			m_Heights = Arrays.copyOf(m_Heights, nodes);
+			m_UserData = Arrays.copyOf(m_UserData, nodes);
+		}
+
+		// the new nodes go to the free list, the parent link is the next pointer
+		for(int i = nodes - 1; i >= old; i--) {
+			m_Parents[i] = m_FreeList;
+			m_Heights[i] = -1;
+			m_FreeList = i;
+		}
+	}
+
+	private int allocateNode() {
+		if(m_FreeList == NULL) {
+			allocate(m_Parents.length*2);
+		}
+		final int node = m_FreeList;
+		m_FreeList = m_Parents[node];
+		m_Parents[node] = NULL;
+		m_Child1[node] = NULL;
+		m_Child2[node] = NULL;
+		m_Heights[node] = 0;
+		m_UserData[node] = NULL;
+		m_NodeCount++;
+		return node;
+	}
+
+	private void freeNode(int node) {
+		m_Parents[node] = m_FreeList;
+		m_Heights[node] = -1;
+		m_FreeList = node;
+		m_NodeCount--;
+	}
+
+	/**
+	 * Adds an object to the tree
+	 * @param minX
+	 * @param minY
+	 * @param minZ
+	 * @param maxX
+	 * @param maxY
+	 * @param maxZ
+	 * @param userData value returned by the queries for this object
+	 * @return the proxy of the object
+	 */
+	public int createProxy(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int userData) {
+		final int proxy = allocateNode();
+		setTight(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+		fatten(proxy);
+		m_UserData[proxy] = userData;
+		insertLeaf(proxy);
+		m_ProxyCount++;
+		return proxy;
+	}
+
+	public void destroyProxy(int proxy) {
+		removeLeaf(proxy);
+		freeNode(proxy);
+		m_ProxyCount--;
+	}
+
+	/**
+	 * Sets the box of an object, the tree only changes if the box left the
+	 * fat one the object was inserted with
+	 * @return true if the proxy was reinserted
+	 */
+	public boolean moveProxy(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		setTight(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+
+		final float [] b = m_Bounds;
+		final int o = proxy*BOUNDS_SIZE;
+		if(b[o] <= minX && b[o + 1] <= minY && b[o + 2] <= minZ
+				&& b[o + 3] >= maxX && b[o + 4] >= maxY && b[o + 5] >= maxZ) {
+			return false;
+		}
+
+		removeLeaf(proxy);
+		fatten(proxy);
+		insertLeaf(proxy);
+		return true;
+	}
+
+	public int getUserData(int proxy) {
+		return m_UserData[proxy];
+	}
+
+	public void setUserData(int proxy, int userData) {
+		m_UserData[proxy] = userData;
+	}
+
+	/** returns the exact boxes of the proxies, indexed by proxy*BOUNDS_SIZE */
+	public float [] tightBounds() {
+		return m_Tight;
+	}
+
+	/** returns the fat boxes of the nodes, indexed by node*BOUNDS_SIZE */
+	public float [] fatBounds() {
+		return m_Bounds;
+	}
+
+	public int getProxyCount() {
+		return m_ProxyCount;
+	}
+
+	public int getNodeCount() {
+		return m_NodeCount;
+	}
+
+	/** returns the height of the tree, 0 for a single leaf and -1 when empty */
+	public int getHeight() {
+		return m_Root == NULL? -1 : m_Heights[m_Root];
+	}
+
+	/** Removes every proxy, the arrays are kept */
+	public void clear() {
+		m_Root = NULL;
+		m_NodeCount = 0;
+		m_ProxyCount = 0;
+		m_FreeList = NULL;
+		for(int i = m_Parents.length - 1; i >= 0; i--) {
+			m_Parents[i] = m_FreeList;
+			m_Heights[i] = -1;
+			m_FreeList = i;
+		}
+	}
+
+	private void setTight(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		final float [] t = m_Tight;
+		final int o = node*BOUNDS_SIZE;
+		t[o] = minX;
+		t[o + 1] = minY;
+		t[o + 2] = minZ;
+		t[o + 3] = maxX;
+		t[o + 4] = maxY;
+		t[o + 5] = maxZ;
+	}
+
+	private void fatten(int node) {
+		final float [] t = m_Tight, b = m_Bounds;
+		final float margin = m_Margin;
+		final int o = node*BOUNDS_SIZE;
+		b[o] = t[o] - margin;
+		b[o + 1] = t[o + 1] - margin;
+		b[o + 2] = t[o + 2] - margin;
+		b[o + 3] = t[o + 3] + margin;
+		b[o + 4] = t[o + 4] + margin;
+		b[o + 5] = t[o + 5] + margin;
+	}
+
+	/** half the surface area of a box, enough to compare costs */
+	private static float area(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		final float x = maxX - minX, y = maxY - minY, z = maxZ - minZ;
+		return x*y + y*z + z*x;
+	}
+
+	private float area(int node) {
+		final float [] b = m_Bounds;
+		final int o = node*BOUNDS_SIZE;
+		return area(b[o], b[o + 1], b[o + 2], b[o + 3], b[o + 4], b[o + 5]);
+	}
+
+	/** returns the area of the union of a node and a leaf */
+	private float unionArea(int node, int leaf) {
+		final float [] b = m_Bounds;
+		final int o = node*BOUNDS_SIZE, l = leaf*BOUNDS_SIZE;
+		return area(Math.min(b[o], b[l]), Math.min(b[o + 1], b[l + 1]), Math.min(b[o + 2], b[l + 2]),
+				Math.max(b[o + 3], b[l + 3]), Math.max(b[o + 4], b[l + 4]), Math.max(b[o + 5], b[l + 5]));
+	}
+
+	/** sets the box of a node to the union of two others */
+	private void union(int node, int a, int c) {
+		final float [] b = m_Bounds;
+		final int o = node*BOUNDS_SIZE, ao = a*BOUNDS_SIZE, co = c*BOUNDS_SIZE;
+		b[o] = Math.min(b[ao], b[co]);
+		b[o + 1] = Math.min(b[ao + 1], b[co + 1]);
+		b[o + 2] = Math.min(b[ao + 2], b[co + 2]);
+		b[o + 3] = Math.max(b[ao + 3], b[co + 3]);
+		b[o + 4] = Math.max(b[ao + 4], b[co + 4]);
+		b[o + 5] = Math.max(b[ao + 5], b[co + 5]);
+	}
+
+	private void insertLeaf(int leaf) {
+		if(m_Root == NULL) {
+			m_Root = leaf;
+			m_Parents[leaf] = NULL;
+			return;
+		}
+
+		// walk down to the sibling that makes the tree grow the least
+		int index = m_Root;
+		while(m_Child1[index] != NULL) {
+			final int child1 = m_Child1[index];
+			final int child2 = m_Child2[index];
+
+			final float area = area(index);
+			final float combinedArea = unionArea(index, leaf);
+
+			// cost of pairing the leaf with this node
+			final float cost = 2*combinedArea;
+			// cost every ancestor pays for going further down
+			final float inheritance = 2*(combinedArea - area);
+
+			float cost1 = unionArea(child1, leaf) + inheritance;
+			if(m_Child1[child1] != NULL) {
+				cost1 -= area(child1);
+			}
+			float cost2 = unionArea(child2, leaf) + inheritance;
+			if(m_Child1[child2] != NULL) {
+				cost2 -= area(child2);
+			}
+
+			if(cost < cost1 && cost < cost2) {
+				break;
+			}
+			index = cost1 < cost2? child1 : child2;
+		}
+		final int sibling = index;
+
+		final int oldParent = m_Parents[sibling];
+		final int newParent = allocateNode();
+		m_Parents[newParent] = oldParent;
+		m_Heights[newParent] = m_Heights[sibling] + 1;
+		union(newParent, leaf, sibling);
+		m_Child1[newParent] = sibling;
+		m_Child2[newParent] = leaf;
+		m_Parents[sibling] = newParent;
+		m_Parents[leaf] = newParent;
+
+		if(oldParent != NULL) {
+			if(m_Child1[oldParent] == sibling) {
+				m_Child1[oldParent] = newParent;
+			} else {
+				m_Child2[oldParent] = newParent;
+			}
+		} else {
+			m_Root = newParent;
+		}
+
+		refit(m_Parents[leaf]);
+	}
+
+	private void removeLeaf(int leaf) {
+		if(leaf == m_Root) {
+			m_Root = NULL;
+			return;
+		}
+
+		final int parent = m_Parents[leaf];
+		final int grandParent = m_Parents[parent];
+		final int sibling = m_Child1[parent] == leaf? m_Child2[parent] : m_Child1[parent];
+
+		if(grandParent != NULL) {
+			if(m_Child1[grandParent] == parent) {
+				m_Child1[grandParent] = sibling;
+			} else {
+				m_Child2[grandParent] = sibling;
+			}
+			m_Parents[sibling] = grandParent;
+			freeNode(parent);
+			refit(grandParent);
+		} else {
+			m_Root = sibling;
+			m_Parents[sibling] = NULL;
+			freeNode(parent);
+		}
+	}
+
+	/** rebalances and fixes the boxes and heights from a node up to the root */
+	private void refit(int index) {
+		while(index != NULL) {
+			index = balance(index);
+
+			final int child1 = m_Child1[index];
+			final int child2 = m_Child2[index];
+			m_Heights[index] = 1 + Math.max(m_Heights[child1], m_Heights[child2]);
+			union(index, child1, child2);
+
+			index = m_Parents[index];
+		}
+	}
+
+	/**
+	 * Rotates the taller child of a up if the children heights differ by more
+	 * than one
+	 * @return the node now at the place of a
+	 */
+	private int balance(int a) {
+		if(m_Child1[a] == NULL || m_Heights[a] < 2) {
+			return a;
+		}
+
+		final int b = m_Child1[a];
+		final int c = m_Child2[a];
+		final int difference = m_Heights[c] - m_Heights[b];
+
+		if(difference > 1) {
+			// c goes up, a takes the smaller of its children
+			final int f = m_Child1[c];
+			final int g = m_Child2[c];
+			m_Child1[c] = a;
+			m_Parents[c] = m_Parents[a];
+			m_Parents[a] = c;
+			replaceChild(m_Parents[c], a, c);
+
+			if(m_Heights[f] > m_Heights[g]) {
+				m_Child2[c] = f;
+				m_Child2[a] = g;
+				m_Parents[g] = a;
+				union(a, b, g);
+				union(c, a, f);
+				m_Heights[a] = 1 + Math.max(m_Heights[b], m_Heights[g]);
+				m_Heights[c] = 1 + Math.max(m_Heights[a], m_Heights[f]);
+			} else {
+				m_Child2[c] = g;
+				m_Child2[a] = f;
+				m_Parents[f] = a;
+				union(a, b, f);
+				union(c, a, g);
+				m_Heights[a] = 1 + Math.max(m_Heights[b], m_Heights[f]);
+				m_Heights[c] = 1 + Math.max(m_Heights[a], m_Heights[g]);
+			}
+			return c;
+		}
+
+		if(difference < -1) {
+			// b goes up, a takes the smaller of its children
+			final int d = m_Child1[b];
+			final int e = m_Child2[b];
+			m_Child1[b] = a;
+			m_Parents[b] = m_Parents[a];
+			m_Parents[a] = b;
+			replaceChild(m_Parents[b], a, b);
+
+			if(m_Heights[d] > m_Heights[e]) {
+				m_Child2[b] = d;
+				m_Child1[a] = e;
+				m_Parents[e] = a;
+				union(a, c, e);
+				union(b, a, d);
+				m_Heights[a] = 1 + Math.max(m_Heights[c], m_Heights[e]);
+				m_Heights[b] = 1 + Math.max(m_Heights[a], m_Heights[d]);
+			} else {
+				m_Child2[b] = e;
+				m_Child1[a] = d;
+				m_Parents[d] = a;
+				union(a, c, d);
+				union(b, a, e);
+				m_Heights[a] = 1 + Math.max(m_Heights[c], m_Heights[d]);
+				m_Heights[b] = 1 + Math.max(m_Heights[a], m_Heights[e]);
+			}
+			return b;
+		}
+		return a;
+	}
+
+	private void replaceChild(int parent, int oldChild, int newChild) {
+		if(parent == NULL) {
+			m_Root = newChild;
+		} else if(m_Child1[parent] == oldChild) {
+			m_Child1[parent] = newChild;
+		} else {
+			m_Child2[parent] = newChild;
+		}
+	}
+
+	// Queries
+
+	public int getResultCount() {
+		return m_ResultCount;
+	}
+
+	/** returns the user data of the i-th result of the last query */
+	public int getResult(int i) {
+		return m_Results[i];
+	}
+
+	/** returns the distance of the i-th result of the last queryNearest */
+	public float getResultDistance(int i) {
+		return m_ResultDistances[i];
+	}
+
+	private void addResult(int userData) {
+		if(m_ResultCount == m_Results.length) {
+			m_Results = Arrays.copyOf(m_Results, m_ResultCount*2);
+			m_ResultDistances = Arrays.copyOf(m_ResultDistances, m_ResultCount*2);
+		}
+		m_Results[m_ResultCount++] = userData;
+	}
+
+	private int [] stack(int size) {
+		if(size >= m_Stack.length - 2) {
+			m_Stack = Arrays.copyOf(m_Stack, m_Stack.length*2);
+			m_StackDistances = Arrays.copyOf(m_StackDistances, m_Stack.length);
+		}
+		return m_Stack;
+	}
+
+	/**
+	 * Finds the objects at least partly in the frustum, nodes fully inside
+	 * are accepted with all their leaves without further tests
+	 * @param frustum
+	 * @return the number of results
+	 */
+	public int queryFrustum(Frustum frustum) {
+		m_ResultCount = 0;
+		if(m_Root == NULL) {
+			return 0;
+		}
+
+		// nodes known to be inside are pushed complemented
+		int [] stack = m_Stack;
+		int size = 0;
+		stack[size++] = m_Root;
+		while(size > 0) {
+			int node = stack[--size];
+			boolean inside = node < 0;
+			if(inside) {
+				node = ~node;
+			} else {
+				final int state = frustum.testAabb(m_Bounds, node*BOUNDS_SIZE);
+				if(state == Frustum.OUTSIDE) {
+					continue;
+				}
+				inside = state == Frustum.INSIDE;
+			}
+
+			if(m_Child1[node] == NULL) {
+				if(inside || frustum.testAabb(m_Tight, node*BOUNDS_SIZE) != Frustum.OUTSIDE) {
+					addResult(m_UserData[node]);
+				}
+			} else {
+				stack = stack(size);
+				stack[size++] = inside? ~m_Child1[node] : m_Child1[node];
+				stack[size++] = inside? ~m_Child2[node] : m_Child2[node];
+			}
+		}
+		return m_ResultCount;
+	}
+
+	/**
+	 * Finds the objects whose box overlaps the given one
+	 * @return the number of results
+	 */
+	public int queryAabb(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		m_ResultCount = 0;
+		if(m_Root == NULL) {
+			return 0;
+		}
+
+		int [] stack = m_Stack;
+		int size = 0;
+		stack[size++] = m_Root;
+		while(size > 0) {
+			final int node = stack[--size];
+			final boolean leaf = m_Child1[node] == NULL;
+			final float [] b = leaf? m_Tight : m_Bounds;
+			final int o = node*BOUNDS_SIZE;
+			if(b[o] > maxX || b[o + 1] > maxY || b[o + 2] > maxZ
+					|| b[o + 3] < minX || b[o + 4] < minY || b[o + 5] < minZ) {
+				continue;
+			}
+
+			if(leaf) {
+				addResult(m_UserData[node]);
+			} else {
+				stack = stack(size);
+				stack[size++] = m_Child1[node];
+				stack[size++] = m_Child2[node];
+			}
+		}
+		return m_ResultCount;
+	}
+
+	/**
+	 * Finds the objects whose box overlaps a sphere
+	 * @return the number of results
+	 */
+	public int querySphere(float x, float y, float z, float radius) {
+		m_ResultCount = 0;
+		if(m_Root == NULL) {
+			return 0;
+		}
+
+		final float radiusSq = radius*radius;
+		int [] stack = m_Stack;
+		int size = 0;
+		stack[size++] = m_Root;
+		while(size > 0) {
+			final int node = stack[--size];
+			final boolean leaf = m_Child1[node] == NULL;
+			if(distanceSq(leaf? m_Tight : m_Bounds, node*BOUNDS_SIZE, x, y, z) > radiusSq) {
+				continue;
+			}
+
+			if(leaf) {
+				addResult(m_UserData[node]);
+			} else {
+				stack = stack(size);
+				stack[size++] = m_Child1[node];
+				stack[size++] = m_Child2[node];
+			}
+		}
+		return m_ResultCount;
+	}
+
+	/**
+	 * Finds the count objects whose boxes are closest to a point, nearest
+	 * first. Nodes are visited best first and the search stops once no node
+	 * can be closer than the farthest result
+	 * @param maxDistance objects farther than this are ignored
+	 * @return the number of results, less than count if there are not enough objects
+	 */
+	public int queryNearest(float x, float y, float z, int count, float maxDistance) {
+		m_ResultCount = 0;
+		if(m_Root == NULL || count <= 0) {
+			return 0;
+		}
+		if(m_Results.length < count) {
+			m_Results = new int[count];
+			m_ResultDistances = new float[count];
+		}
+		final int [] results = m_Results;
+		final float [] resultDistances = m_ResultDistances;
+		float limit = maxDistance*maxDistance;
+
+		// binary min heap of nodes keyed by their squared box distance
+		int [] heap = m_Stack;
+		float [] keys = m_StackDistances;
+		int size = 0;
+		heap[size] = m_Root;
+		keys[size++] = distanceSq(m_Bounds, m_Root*BOUNDS_SIZE, x, y, z);
+
+		int found = 0;
+		while(size > 0) {
+			final int node = heap[0];
+			final float key = keys[0];
+			if(key > limit) {
+				break;
+			}
+
+			// pop the root of the heap
+			size--;
+			siftDown(heap, keys, size, heap[size], keys[size]);
+
+			if(m_Child1[node] == NULL) {
+				final float distance = distanceSq(m_Tight, node*BOUNDS_SIZE, x, y, z);
+				if(distance > limit) {
+					continue;
+				}
+				// insertion into the sorted results, count is small
+				int i = found < count? found++ : count - 1;
+				while(i > 0 && resultDistances[i - 1] > distance) {
+					results[i] = results[i - 1];
+					resultDistances[i] = resultDistances[i - 1];
+					i--;
+				}
+				results[i] = m_UserData[node];
+				resultDistances[i] = distance;
+				if(found == count) {
+					limit = resultDistances[count - 1];
+				}
+			} else {
+				for(int c = 0; c < 2; c++) {
+					final int child = c == 0? m_Child1[node] : m_Child2[node];
+					final float distance = distanceSq(m_Bounds, child*BOUNDS_SIZE, x, y, z);
+					if(distance > limit) {
+						continue;
+					}
+					heap = stack(size);
+					keys = m_StackDistances;
+					siftUp(heap, keys, size++, child, distance);
+				}
+			}
+		}
+
+		for(int i = 0; i < found; i++) {
+			resultDistances[i] = (float)Math.sqrt(resultDistances[i]);
+		}
+		m_ResultCount = found;
+		return found;
+	}
+
+	private static void siftUp(int [] heap, float [] keys, int i, int node, float key) {
+		while(i > 0) {
+			final int parent = (i - 1) >> 1;
+			if(keys[parent] <= key) {
+				break;
+			}
+			heap[i] = heap[parent];
+			keys[i] = keys[parent];
+			i = parent;
+		}
+		heap[i] = node;
+		keys[i] = key;
+	}
+
+	private static void siftDown(int [] heap, float [] keys, int size, int node, float key) {
+		int i = 0;
+		while(true) {
+			int child = 2*i + 1;
+			if(child >= size) {
+				break;
+			}
+			if(child + 1 < size && keys[child + 1] < keys[child]) {
+				child++;
+			}
+			if(keys[child] >= key) {
+				break;
+			}
+			heap[i] = heap[child];
+			keys[i] = keys[child];
+			i = child;
+		}
+		heap[i] = node;
+		keys[i] = key;
+	}
+
+	/** returns the squared distance from a point to a box, 0 inside */
+	private static float distanceSq(float [] b, int o, float x, float y, float z) {
+		final float dx = x < b[o]? b[o] - x : (x > b[o + 3]? x - b[o + 3] : 0);
+		final float dy = y < b[o + 1]? b[o + 1] - y : (y > b[o + 4]? y - b[o + 4] : 0);
+		final float dz = z < b[o + 2]? b[o + 2] - z : (z > b[o + 5]? z - b[o + 5] : 0);
+		return dx*dx + dy*dy + dz*dz;
+	}
+
+	// Current ray, shared by the traversal and the box test
+	private float m_RayX, m_RayY, m_RayZ;
+	private float m_RayInvX, m_RayInvY, m_RayInvZ;
+	private float m_RayDistance;
+
+	/**
+	 * returns the distance along the ray where it enters a box, 0 if the
+	 * origin is inside and a negative value if it misses
+	 */
+	private float rayEnter(float [] b, int o, float maxDistance) {
+		float near = 0, far = maxDistance;
+
+		float t1 = (b[o] - m_RayX)*m_RayInvX, t2 = (b[o + 3] - m_RayX)*m_RayInvX;
+		if(t1 != t1 || t2 != t2) {
+			// parallel and on a slab plane
+			if(m_RayX < b[o] || m_RayX > b[o + 3]) return -1;
+		} else {
+			if(t1 > t2) { final float t = t1; t1 = t2; t2 = t; }
+			if(t1 > near) near = t1;
+			if(t2 < far) far = t2;
+			if(near > far) return -1;
+		}
+
+		t1 = (b[o + 1] - m_RayY)*m_RayInvY; t2 = (b[o + 4] - m_RayY)*m_RayInvY;
+		if(t1 != t1 || t2 != t2) {
+			if(m_RayY < b[o + 1] || m_RayY > b[o + 4]) return -1;
+		} else {
+			if(t1 > t2) { final float t = t1; t1 = t2; t2 = t; }
+			if(t1 > near) near = t1;
+			if(t2 < far) far = t2;
+			if(near > far) return -1;
+		}
+
+		t1 = (b[o + 2] - m_RayZ)*m_RayInvZ; t2 = (b[o + 5] - m_RayZ)*m_RayInvZ;
+		if(t1 != t1 || t2 != t2) {
+			if(m_RayZ < b[o + 2] || m_RayZ > b[o + 5]) return -1;
+		} else {
+			if(t1 > t2) { final float t = t1; t1 = t2; t2 = t; }
+			if(t1 > near) near = t1;
+			if(t2 < far) far = t2;
+			if(near > far) return -1;
+		}
+		return near;
+	}
+
+	/**
+	 * Finds the closest object hit by a ray. Nodes are visited nearest first
+	 * and skipped once they start past the closest hit. Without a callback the
+	 * hit is where the ray enters the object box, with one the callback
+	 * decides, so it can test the actual geometry
+	 * @param ox origin
+	 * @param oy
+	 * @param oz
+	 * @param dx direction, distances are in units of its length
+	 * @param dy
+	 * @param dz
+	 * @param maxDistance
+	 * @param callback exact test, can be null
+	 * @return the user data of the closest object or NULL
+	 */
+	public int raycast(float ox, float oy, float oz, float dx, float dy, float dz,
+			float maxDistance, RayCallback callback) {
+		m_RayDistance = maxDistance;
+		if(m_Root == NULL) {
+			return NULL;
+		}
+		m_RayX = ox;
+		m_RayY = oy;
+		m_RayZ = oz;
+		m_RayInvX = 1/dx;
+		m_RayInvY = 1/dy;
+		m_RayInvZ = 1/dz;
+
+		int closest = NULL;
+		float best = maxDistance;
+
+		int [] stack = m_Stack;
+		float [] distances = m_StackDistances;
+		int size = 0;
+		final float rootDistance = rayEnter(m_Bounds, m_Root*BOUNDS_SIZE, best);
+		if(rootDistance >= 0) {
+			stack[size] = m_Root;
+			distances[size++] = rootDistance;
+		}
+		while(size > 0) {
+			final int node = stack[--size];
+			if(distances[size] > best) {
+				continue;
+			}
+
+			if(m_Child1[node] == NULL) {
+				float distance = rayEnter(m_Tight, node*BOUNDS_SIZE, best);
+				if(distance < 0) {
+					continue;
+				}
+				if(callback != null) {
+					distance = callback.hit(m_UserData[node], ox, oy, oz, dx, dy, dz, distance, best);
+				}
+				if(distance >= 0 && distance <= best) {
+					best = distance;
+					closest = m_UserData[node];
+				}
+				continue;
+			}
+
+			final int child1 = m_Child1[node], child2 = m_Child2[node];
+			final float distance1 = rayEnter(m_Bounds, child1*BOUNDS_SIZE, best);
+			final float distance2 = rayEnter(m_Bounds, child2*BOUNDS_SIZE, best);
+			stack = stack(size);
+			distances = m_StackDistances;
+			// the nearer child is pushed last so it is visited first
+			if(distance1 >= 0 && distance2 >= 0) {
+				final boolean firstNearer = distance1 <= distance2;
+				stack[size] = firstNearer? child2 : child1;
+				distances[size++] = firstNearer? distance2 : distance1;
+				stack[size] = firstNearer? child1 : child2;
+				distances[size++] = firstNearer? distance1 : distance2;
+			} else if(distance1 >= 0) {
+				stack[size] = child1;
+				distances[size++] = distance1;
+			} else if(distance2 >= 0) {
+				stack[size] = child2;
+				distances[size++] = distance2;
+			}
+		}
+
+		m_RayDistance = best;
+		return closest;
+	}
+
+	/** returns the distance of the hit found by the last raycast, its maximum if there was none */
+	public float getRayDistance() {
+		return m_RayDistance;
+	}
+}
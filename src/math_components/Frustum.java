@@ -0,0 +1,130 @@
+package math_components;
+
+/**
+ * The six planes of a view frustum, extracted from a view projection matrix.
+ * Planes are stored as (a, b, c, d) with the normal pointing inside, a point
+ * p is inside a plane when a*x + b*y + c*z + d >= 0.
+ */
+public class Frustum {
+
+	/** Results of the intersection tests */
+	public static final int OUTSIDE = 0;
+	public static final int INTERSECTS = 1;
+	public static final int INSIDE = 2;
+
+	public static final int LEFT = 0;
+	public static final int RIGHT = 1;
+	public static final int BOTTOM = 2;
+	public static final int TOP = 3;
+	public static final int NEAR = 4;
+	public static final int FAR = 5;
+
+	final float [] m_Planes = new float[24];
+
+	public Frustum() {
+	}
+
+	public Frustum(Matrix4x4 viewProjection) {
+		set(viewProjection.matrix(), 0);
+	}
+
+	public float [] planes() {
+		return m_Planes;
+	}
+
+	/**
+	 * Extracts the planes from a view projection matrix, row vector layout
+	 * (p*m), which is the same memory as a GL column major projection * view
+	 * @param m
+	 * @param offset
+	 * @return this
+	 */
+	public Frustum set(float [] m, int offset) {
+		// column j of m gives clip coordinate j
+		final float x0 = m[offset],     x1 = m[offset + 4], x2 = m[offset + 8],  x3 = m[offset + 12];
+		final float y0 = m[offset + 1], y1 = m[offset + 5], y2 = m[offset + 9],  y3 = m[offset + 13];
+		final float z0 = m[offset + 2], z1 = m[offset + 6], z2 = m[offset + 10], z3 = m[offset + 14];
+		final float w0 = m[offset + 3], w1 = m[offset + 7], w2 = m[offset + 11], w3 = m[offset + 15];
+
+		setPlane(LEFT,   w0 + x0, w1 + x1, w2 + x2, w3 + x3);
+		setPlane(RIGHT,  w0 - x0, w1 - x1, w2 - x2, w3 - x3);
+		setPlane(BOTTOM, w0 + y0, w1 + y1, w2 + y2, w3 + y3);
+		setPlane(TOP,    w0 - y0, w1 - y1, w2 - y2, w3 - y3);
+		setPlane(NEAR,   w0 + z0, w1 + z1, w2 + z2, w3 + z3);
+		setPlane(FAR,    w0 - z0, w1 - z1, w2 - z2, w3 - z3);
+		return this;
+	}
+
+	private void setPlane(int plane, float a, float b, float c, float d) {
+		final float length = (float)Math.sqrt(a*a + b*b + c*c);
+		final int o = plane*4;
+		m_Planes[o] = a/length;
+		m_Planes[o + 1] = b/length;
+		m_Planes[o + 2] = c/length;
+		m_Planes[o + 3] = d/length;
+	}
+
+	/**
+	 * returns the signed distance from a point to a plane, positive inside
+	 */
+	public float distance(int plane, float x, float y, float z) {
+		final int o = plane*4;
+		return m_Planes[o]*x + m_Planes[o + 1]*y + m_Planes[o + 2]*z + m_Planes[o + 3];
+	}
+
+	/**
+	 * Tests a sphere against the frustum
+	 * @return OUTSIDE, INTERSECTS or INSIDE
+	 */
+	public int testSphere(float x, float y, float z, float radius) {
+		final float [] p = m_Planes;
+		int result = INSIDE;
+		for(int o = 0; o < 24; o += 4) {
+			final float d = p[o]*x + p[o + 1]*y + p[o + 2]*z + p[o + 3];
+			if(d < -radius) {
+				return OUTSIDE;
+			}
+			if(d < radius) {
+				result = INTERSECTS;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Tests an axis aligned box against the frustum. An empty box (min > max)
+	 * is outside
+	 * @return OUTSIDE, INTERSECTS or INSIDE
+	 */
+	public int testAabb(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		if(minX > maxX) {
+			return OUTSIDE;
+		}
+		final float [] p = m_Planes;
+		int result = INSIDE;
+		for(int o = 0; o < 24; o += 4) {
+			final float a = p[o], b = p[o + 1], c = p[o + 2], d = p[o + 3];
+			// the corner farthest along the normal, then the nearest one
+			final float far = a*(a >= 0 ? maxX : minX) + b*(b >= 0 ? maxY : minY) + c*(c >= 0 ? maxZ : minZ) + d;
+			if(far < 0) {
+				return OUTSIDE;
+			}
+			final float near = a*(a >= 0 ? minX : maxX) + b*(b >= 0 ? minY : maxY) + c*(c >= 0 ? minZ : maxZ) + d;
+			if(near < 0) {
+				result = INTERSECTS;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Tests a box stored as min xyz, max xyz
+	 * @param bounds
+	 * @param offset
+	 * @return OUTSIDE, INTERSECTS or INSIDE
+	 */
+	public int testAabb(float [] bounds, int offset) {
+		return testAabb(bounds[offset], bounds[offset + 1], bounds[offset + 2],
+				bounds[offset + 3], bounds[offset + 4], bounds[offset + 5]);
+	}
+}
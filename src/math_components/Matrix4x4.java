@@ -64,36 +64,377 @@ public class Matrix4x4 {
 	}
 	
 	public static Matrix4x4 mult(Matrix4x4 a, Matrix4x4 b) {
-		Matrix4x4 res = new Matrix4x4();
-		float sum;
-		for(int i = 0; i < 4; i++) {
-			for(int j = 0; j < 4; j++) {
-				sum = 0;
-				for(int k = 0; k < 4; k++) {
-					sum += a.get(i, k)*b.get(k, j);
-				}
-				res.set(i,j, sum);
-			}
+		return Matrix4x4.mult(a, b, new Matrix4x4());
+	}
+	
+	/**
+	 * Multiplies a*b and stores the result in out without allocating,
+	 * out can be a, b or both
+	 * @param a
+	 * @param b
+	 * @param out
+	 * @return out
+	 */
+	public static Matrix4x4 mult(Matrix4x4 a, Matrix4x4 b, Matrix4x4 out) {
+		Matrix4x4.mult(a.m_Matrix, 0, b.m_Matrix, 0, out.m_Matrix, 0);
+		return out;
+	}
+	
+	/**
+	 * Multiplies two matrices stored in float arrays. The loops are unrolled and
+	 * b is read completely before anything is written, so the result region can
+	 * be the a region, the b region or both
+	 * @param a
+	 * @param aOffset
+	 * @param b
+	 * @param bOffset
+	 * @param out
+	 * @param outOffset
+	 */
+	public static void mult(float [] a, int aOffset, float [] b, int bOffset, float [] out, int outOffset) {
+		final float b00 = b[bOffset],      b01 = b[bOffset + 1],  b02 = b[bOffset + 2],  b03 = b[bOffset + 3];
+		final float b10 = b[bOffset + 4],  b11 = b[bOffset + 5],  b12 = b[bOffset + 6],  b13 = b[bOffset + 7];
+		final float b20 = b[bOffset + 8],  b21 = b[bOffset + 9],  b22 = b[bOffset + 10], b23 = b[bOffset + 11];
+		final float b30 = b[bOffset + 12], b31 = b[bOffset + 13], b32 = b[bOffset + 14], b33 = b[bOffset + 15];
+		float c0, c1, c2, c3;
+		
+		// every row of a is cached before its output row is written
+		c0 = a[aOffset];      c1 = a[aOffset + 1];  c2 = a[aOffset + 2];  c3 = a[aOffset + 3];
+		out[outOffset]      = c0*b00 + c1*b10 + c2*b20 + c3*b30;
+		out[outOffset + 1]  = c0*b01 + c1*b11 + c2*b21 + c3*b31;
+		out[outOffset + 2]  = c0*b02 + c1*b12 + c2*b22 + c3*b32;
+		out[outOffset + 3]  = c0*b03 + c1*b13 + c2*b23 + c3*b33;
+		
+		c0 = a[aOffset + 4];  c1 = a[aOffset + 5];  c2 = a[aOffset + 6];  c3 = a[aOffset + 7];
+		out[outOffset + 4]  = c0*b00 + c1*b10 + c2*b20 + c3*b30;
+		out[outOffset + 5]  = c0*b01 + c1*b11 + c2*b21 + c3*b31;
+		out[outOffset + 6]  = c0*b02 + c1*b12 + c2*b22 + c3*b32;
+		out[outOffset + 7]  = c0*b03 + c1*b13 + c2*b23 + c3*b33;
+		
+		c0 = a[aOffset + 8];  c1 = a[aOffset + 9];  c2 = a[aOffset + 10]; c3 = a[aOffset + 11];
+		out[outOffset + 8]  = c0*b00 + c1*b10 + c2*b20 + c3*b30;
+		out[outOffset + 9]  = c0*b01 + c1*b11 + c2*b21 + c3*b31;
+		out[outOffset + 10] = c0*b02 + c1*b12 + c2*b22 + c3*b32;
+		out[outOffset + 11] = c0*b03 + c1*b13 + c2*b23 + c3*b33;
+		
+		c0 = a[aOffset + 12]; c1 = a[aOffset + 13]; c2 = a[aOffset + 14]; c3 = a[aOffset + 15];
+		out[outOffset + 12] = c0*b00 + c1*b10 + c2*b20 + c3*b30;
+		out[outOffset + 13] = c0*b01 + c1*b11 + c2*b21 + c3*b31;
+		out[outOffset + 14] = c0*b02 + c1*b12 + c2*b22 + c3*b32;
+		out[outOffset + 15] = c0*b03 + c1*b13 + c2*b23 + c3*b33;
+	}
+	
+	/**
+	 * Multiplies two affine matrices (last column 0,0,0,1 like every S*R*T
+	 * transform), skipping the terms that are known to be 0 or 1
+	 * @param a
+	 * @param b
+	 * @param out can be a, b or both
+	 * @return out
+	 */
+	public static Matrix4x4 multAffine(Matrix4x4 a, Matrix4x4 b, Matrix4x4 out) {
+		Matrix4x4.multAffine(a.m_Matrix, 0, b.m_Matrix, 0, out.m_Matrix, 0);
+		return out;
+	}
+	
+	/**
+	 * Array version of multAffine, the regions can overlap the same way as mult
+	 */
+	public static void multAffine(float [] a, int aOffset, float [] b, int bOffset, float [] out, int outOffset) {
+		final float b00 = b[bOffset],      b01 = b[bOffset + 1],  b02 = b[bOffset + 2];
+		final float b10 = b[bOffset + 4],  b11 = b[bOffset + 5],  b12 = b[bOffset + 6];
+		final float b20 = b[bOffset + 8],  b21 = b[bOffset + 9],  b22 = b[bOffset + 10];
+		final float b30 = b[bOffset + 12], b31 = b[bOffset + 13], b32 = b[bOffset + 14];
+		float c0, c1, c2;
+		
+		c0 = a[aOffset];      c1 = a[aOffset + 1];  c2 = a[aOffset + 2];
+		out[outOffset]      = c0*b00 + c1*b10 + c2*b20;
+		out[outOffset + 1]  = c0*b01 + c1*b11 + c2*b21;
+		out[outOffset + 2]  = c0*b02 + c1*b12 + c2*b22;
+		out[outOffset + 3]  = 0;
+		
+		c0 = a[aOffset + 4];  c1 = a[aOffset + 5];  c2 = a[aOffset + 6];
+		out[outOffset + 4]  = c0*b00 + c1*b10 + c2*b20;
+		out[outOffset + 5]  = c0*b01 + c1*b11 + c2*b21;
+		out[outOffset + 6]  = c0*b02 + c1*b12 + c2*b22;
+		out[outOffset + 7]  = 0;
+		
+		c0 = a[aOffset + 8];  c1 = a[aOffset + 9];  c2 = a[aOffset + 10];
+		out[outOffset + 8]  = c0*b00 + c1*b10 + c2*b20;
+		out[outOffset + 9]  = c0*b01 + c1*b11 + c2*b21;
+		out[outOffset + 10] = c0*b02 + c1*b12 + c2*b22;
+		out[outOffset + 11] = 0;
+		
+		// the translation row has an implicit 1 in the last column
+		c0 = a[aOffset + 12]; c1 = a[aOffset + 13]; c2 = a[aOffset + 14];
+		out[outOffset + 12] = c0*b00 + c1*b10 + c2*b20 + b30;
+		out[outOffset + 13] = c0*b01 + c1*b11 + c2*b21 + b31;
+		out[outOffset + 14] = c0*b02 + c1*b12 + c2*b22 + b32;
+		out[outOffset + 15] = 1;
+	}
+	
+	/**
+	 * Transforms count tightly packed xyz points as row vectors (p*m), this is the
+	 * batch version of multiplyVector3(v, m). src and dst can be the same region
+	 * @param m
+	 * @param src
+	 * @param srcOffset
+	 * @param dst
+	 * @param dstOffset
+	 * @param count number of points
+	 */
+	public static void transformPoints(Matrix4x4 m, float [] src, int srcOffset, float [] dst, int dstOffset, int count) {
+		final float [] a = m.m_Matrix;
+		final float m00 = a[0],  m01 = a[1],  m02 = a[2];
+		final float m10 = a[4],  m11 = a[5],  m12 = a[6];
+		final float m20 = a[8],  m21 = a[9],  m22 = a[10];
+		final float m30 = a[12], m31 = a[13], m32 = a[14];
+		
+		// a single induction variable keeps the bounds checks out of the loop
+		final int end = srcOffset + count*3;
+		final int shift = dstOffset - srcOffset;
+		for(int s = srcOffset; s < end; s += 3) {
+			final float x = src[s], y = src[s + 1], z = src[s + 2];
+			final int d = s + shift;
+			dst[d]     = x*m00 + y*m10 + z*m20 + m30;
+			dst[d + 1] = x*m01 + y*m11 + z*m21 + m31;
+			dst[d + 2] = x*m02 + y*m12 + z*m22 + m32;
+		}
+	}
+	
+	/**
+	 * Same as transformPoints but ignores the translation, for directions and normals
+	 */
+	public static void transformDirections(Matrix4x4 m, float [] src, int srcOffset, float [] dst, int dstOffset, int count) {
+		final float [] a = m.m_Matrix;
+		final float m00 = a[0],  m01 = a[1],  m02 = a[2];
+		final float m10 = a[4],  m11 = a[5],  m12 = a[6];
+		final float m20 = a[8],  m21 = a[9],  m22 = a[10];
+		
+		final int end = srcOffset + count*3;
+		final int shift = dstOffset - srcOffset;
+		for(int s = srcOffset; s < end; s += 3) {
+			final float x = src[s], y = src[s + 1], z = src[s + 2];
+			final int d = s + shift;
+			dst[d]     = x*m00 + y*m10 + z*m20;
+			dst[d + 1] = x*m01 + y*m11 + z*m21;
+			dst[d + 2] = x*m02 + y*m12 + z*m22;
 		}
-		return res;
 	}
 	
 	public static Matrix4x4 transpose(Matrix4x4 m) {
+		return Matrix4x4.transpose(m, new Matrix4x4());
+	}
+	
+	/**
+	 * Stores the transpose of m in out, out can be m
+	 * @param m
+	 * @param out
+	 * @return out
+	 */
+	public static Matrix4x4 transpose(Matrix4x4 m, Matrix4x4 out) {
+		final float [] src = m.m_Matrix;
+		final float [] res = out.m_Matrix;
+		float tmp;
 		
-		Matrix4x4 res = new Matrix4x4();
-		int oi, oj;
-		for(int i = 0; i < 4; i+=2) {
-			for(int j = 0; j < 4; j+=2) {
-				oi = i+1;
-				oj = j+1;
-				res.set(j,j, m.get(j, i));
-				res.set(oj,oj, m.get(oj, oi));
+		res[0] = src[0];
+		res[5] = src[5];
+		res[10] = src[10];
+		res[15] = src[15];
+		for(int i = 0; i < 4; i++) {
+			for(int j = i + 1; j < 4; j++) {
+				tmp = src[i*4 + j];
+				res[i*4 + j] = src[j*4 + i];
+				res[j*4 + i] = tmp;
 			}
 		}
 		
-		return res;
+		return out;
 	}
-	
+
+	/**
+	 * Inverts a general matrix, out can be m
+	 * @param m
+	 * @param out
+	 * @return out or null if m is singular, out is then unchanged
+	 */
+	public static Matrix4x4 invert(Matrix4x4 m, Matrix4x4 out) {
+		return invert(m.m_Matrix, 0, out.m_Matrix, 0)? out : null;
+	}
+
+	/**
+	 * Inverts a general matrix by cofactors, built from the 2x2 determinants
+	 * of the top and bottom row pairs. out can be the same range as m
+	 * @return false if m is singular, out is then unchanged
+	 */
+	public static boolean invert(float [] m, int mOffset, float [] out, int outOffset) {
+		final int o = mOffset;
+		final float a00 = m[o],      a01 = m[o + 1],  a02 = m[o + 2],  a03 = m[o + 3];
+		final float a10 = m[o + 4],  a11 = m[o + 5],  a12 = m[o + 6],  a13 = m[o + 7];
+		final float a20 = m[o + 8],  a21 = m[o + 9],  a22 = m[o + 10], a23 = m[o + 11];
+		final float a30 = m[o + 12], a31 = m[o + 13], a32 = m[o + 14], a33 = m[o + 15];
+
+		final float s0 = a00*a11 - a10*a01;
+		final float s1 = a00*a12 - a10*a02;
+		final float s2 = a00*a13 - a10*a03;
+		final float s3 = a01*a12 - a11*a02;
+		final float s4 = a01*a13 - a11*a03;
+		final float s5 = a02*a13 - a12*a03;
+
+		final float c5 = a22*a33 - a32*a23;
+		final float c4 = a21*a33 - a31*a23;
+		final float c3 = a21*a32 - a31*a22;
+		final float c2 = a20*a33 - a30*a23;
+		final float c1 = a20*a32 - a30*a22;
+		final float c0 = a20*a31 - a30*a21;
+
+		final float det = s0*c5 - s1*c4 + s2*c3 + s3*c2 - s4*c1 + s5*c0;
+		if(det == 0 || det != det) {
+			return false;
+		}
+		final float inv = 1/det;
+
+		final int r = outOffset;
+		out[r]      = ( a11*c5 - a12*c4 + a13*c3)*inv;
+		out[r + 1]  = (-a01*c5 + a02*c4 - a03*c3)*inv;
+		out[r + 2]  = ( a31*s5 - a32*s4 + a33*s3)*inv;
+		out[r + 3]  = (-a21*s5 + a22*s4 - a23*s3)*inv;
+
+		out[r + 4]  = (-a10*c5 + a12*c2 - a13*c1)*inv;
+		out[r + 5]  = ( a00*c5 - a02*c2 + a03*c1)*inv;
+		out[r + 6]  = (-a30*s5 + a32*s2 - a33*s1)*inv;
+		out[r + 7]  = ( a20*s5 - a22*s2 + a23*s1)*inv;
+
+		out[r + 8]  = ( a10*c4 - a11*c2 + a13*c0)*inv;
+		out[r + 9]  = (-a00*c4 + a01*c2 - a03*c0)*inv;
+		out[r + 10] = ( a30*s4 - a31*s2 + a33*s0)*inv;
+		out[r + 11] = (-a20*s4 + a21*s2 - a23*s0)*inv;
+
+		out[r + 12] = (-a10*c3 + a11*c1 - a12*c0)*inv;
+		out[r + 13] = ( a00*c3 - a01*c1 + a02*c0)*inv;
+		out[r + 14] = (-a30*s3 + a31*s1 - a32*s0)*inv;
+		out[r + 15] = ( a20*s3 - a21*s1 + a22*s0)*inv;
+		return true;
+	}
+
+	/**
+	 * Inverts an affine matrix (last column 0, 0, 0, 1) like every transform of
+	 * the scene graph, only the 3x3 part needs a real inverse. out can be m
+	 * @return out or null if m is singular, out is then unchanged
+	 */
+	public static Matrix4x4 invertAffine(Matrix4x4 m, Matrix4x4 out) {
+		return invertAffine(m.m_Matrix, 0, out.m_Matrix, 0)? out : null;
+	}
+
+	/**
+	 * Inverts an affine matrix, the rows are the basis and the last one the
+	 * translation so the inverse is [inverse(A) 0; -t*inverse(A) 1]
+	 * @return false if m is singular, out is then unchanged
+	 */
+	public static boolean invertAffine(float [] m, int mOffset, float [] out, int outOffset) {
+		final int o = mOffset;
+		final float a00 = m[o],     a01 = m[o + 1], a02 = m[o + 2];
+		final float a10 = m[o + 4], a11 = m[o + 5], a12 = m[o + 6];
+		final float a20 = m[o + 8], a21 = m[o + 9], a22 = m[o + 10];
+		final float tx = m[o + 12], ty = m[o + 13], tz = m[o + 14];
+
+		final float c00 = a11*a22 - a12*a21;
+		final float c10 = a12*a20 - a10*a22;
+		final float c20 = a10*a21 - a11*a20;
+		final float det = a00*c00 + a01*c10 + a02*c20;
+		if(det == 0 || det != det) {
+			return false;
+		}
+		final float inv = 1/det;
+
+		final float b00 = c00*inv, b01 = (a02*a21 - a01*a22)*inv, b02 = (a01*a12 - a02*a11)*inv;
+		final float b10 = c10*inv, b11 = (a00*a22 - a02*a20)*inv, b12 = (a02*a10 - a00*a12)*inv;
+		final float b20 = c20*inv, b21 = (a01*a20 - a00*a21)*inv, b22 = (a00*a11 - a01*a10)*inv;
+
+		final int r = outOffset;
+		out[r] = b00;      out[r + 1] = b01;  out[r + 2] = b02;  out[r + 3] = 0;
+		out[r + 4] = b10;  out[r + 5] = b11;  out[r + 6] = b12;  out[r + 7] = 0;
+		out[r + 8] = b20;  out[r + 9] = b21;  out[r + 10] = b22; out[r + 11] = 0;
+		out[r + 12] = -(tx*b00 + ty*b10 + tz*b20);
+		out[r + 13] = -(tx*b01 + ty*b11 + tz*b21);
+		out[r + 14] = -(tx*b02 + ty*b12 + tz*b22);
+		out[r + 15] = 1;
+		return true;
+	}
+
+	/**
+	 * Inverts a rotation and translation only matrix, the rotation is just
+	 * transposed. The result is wrong if m has any scale. out can be m
+	 * @return out
+	 */
+	public static Matrix4x4 invertRigid(Matrix4x4 m, Matrix4x4 out) {
+		invertRigid(m.m_Matrix, 0, out.m_Matrix, 0);
+		return out;
+	}
+
+	public static void invertRigid(float [] m, int mOffset, float [] out, int outOffset) {
+		final int o = mOffset;
+		final float a00 = m[o],     a01 = m[o + 1], a02 = m[o + 2];
+		final float a10 = m[o + 4], a11 = m[o + 5], a12 = m[o + 6];
+		final float a20 = m[o + 8], a21 = m[o + 9], a22 = m[o + 10];
+		final float tx = m[o + 12], ty = m[o + 13], tz = m[o + 14];
+
+		final int r = outOffset;
+		out[r] = a00;      out[r + 1] = a10;  out[r + 2] = a20;  out[r + 3] = 0;
+		out[r + 4] = a01;  out[r + 5] = a11;  out[r + 6] = a21;  out[r + 7] = 0;
+		out[r + 8] = a02;  out[r + 9] = a12;  out[r + 10] = a22; out[r + 11] = 0;
+		out[r + 12] = -(tx*a00 + ty*a01 + tz*a02);
+		out[r + 13] = -(tx*a10 + ty*a11 + tz*a12);
+		out[r + 14] = -(tx*a20 + ty*a21 + tz*a22);
+		out[r + 15] = 1;
+	}
+
+	/**
+	 * Builds the matrix that transforms normals for m, the transpose of the
+	 * inverse of its 3x3 part, without translation. out can be m
+	 * @return out or null if m is singular, out is then unchanged
+	 */
+	public static Matrix4x4 inverseTranspose(Matrix4x4 m, Matrix4x4 out) {
+		return inverseTranspose(m.m_Matrix, 0, out.m_Matrix, 0)? out : null;
+	}
+
+	/**
+	 * The transpose of the inverse is the cofactor matrix over the determinant
+	 * @return false if m is singular, out is then unchanged
+	 */
+	public static boolean inverseTranspose(float [] m, int mOffset, float [] out, int outOffset) {
+		final int o = mOffset;
+		final float a00 = m[o],     a01 = m[o + 1], a02 = m[o + 2];
+		final float a10 = m[o + 4], a11 = m[o + 5], a12 = m[o + 6];
+		final float a20 = m[o + 8], a21 = m[o + 9], a22 = m[o + 10];
+
+		final float c00 = a11*a22 - a12*a21, c01 = a12*a20 - a10*a22, c02 = a10*a21 - a11*a20;
+		final float det = a00*c00 + a01*c01 + a02*c02;
+		if(det == 0 || det != det) {
+			return false;
+		}
+		final float inv = 1/det;
+
+		final int r = outOffset;
+		out[r] = c00*inv;
+		out[r + 1] = c01*inv;
+		out[r + 2] = c02*inv;
+		out[r + 3] = 0;
+		out[r + 4] = (a02*a21 - a01*a22)*inv;
+		out[r + 5] = (a00*a22 - a02*a20)*inv;
+		out[r + 6] = (a01*a20 - a00*a21)*inv;
+		out[r + 7] = 0;
+		out[r + 8] = (a01*a12 - a02*a11)*inv;
+		out[r + 9] = (a02*a10 - a00*a12)*inv;
+		out[r + 10] = (a00*a11 - a01*a10)*inv;
+		out[r + 11] = 0;
+		out[r + 12] = 0;
+		out[r + 13] = 0;
+		out[r + 14] = 0;
+		out[r + 15] = 1;
+		return true;
+	}
+
 	/**
 	 * Creates a multiplied result of R*T
 	 * Based on http://www.youtube.com/watch?v=7CxKAtWqHC8#t=210
@@ -102,14 +443,70 @@ public class Matrix4x4 {
 	 * @return
 	 */
 	public static Matrix4x4 createRigidbodyMatrix(Quaternion r, Vector3 t) {
+		return Matrix4x4.createRigidbodyMatrix(r, t, new Matrix4x4());
+	}
+	
+	/**
+	 * Writes R*T in out without allocating
+	 * @param r Quaternion rotation
+	 * @param t Translation, null for no translation
+	 * @param out
+	 * @return out
+	 */
+	public static Matrix4x4 createRigidbodyMatrix(Quaternion r, Vector3 t, Matrix4x4 out) {
 		
 		float x = r.x, y = r.y, z = r.z, w = r.w;
 		float X = x*x, Y = y*y, Z = z*z;
 		
-		return new Matrix4x4(1 - 2*Y - 2*Z, 2*x*y - 2*z*w, 2*x*z + 2*y*w, 0,
-							 2*x*y + 2*z*w, 1 - 2*X - 2*Z, 2*y*z - 2*x*w, 0,
-							 2*x*z - 2*y*w, 2*y*z - 2*x*w, 1 - 2*X - 2*Y, 0,
-							 t.x,t.y,t.z,1);
+		return out.set(1 - 2*Y - 2*Z, 2*x*y - 2*z*w, 2*x*z + 2*y*w, 0,
+					   2*x*y + 2*z*w, 1 - 2*X - 2*Z, 2*y*z - 2*x*w, 0,
+					   2*x*z - 2*y*w, 2*y*z + 2*x*w, 1 - 2*X - 2*Y, 0,
+					   t != null? t.x : 0, t != null? t.y : 0, t != null? t.z : 0, 1);
+	}
+	
+	/**
+	 * Writes S*R*T in out without allocating, this is the local transform of an entity
+	 * @param s Scale
+	 * @param r Quaternion rotation
+	 * @param t Translation
+	 * @param out
+	 * @return out
+	 */
+	public static Matrix4x4 createTransformMatrix(Vector3 s, Quaternion r, Vector3 t, Matrix4x4 out) {
+		Matrix4x4.createTransformMatrix(s.x, s.y, s.z, r.x, r.y, r.z, r.w, t.x, t.y, t.z, out.m_Matrix, 0);
+		return out;
+	}
+	
+	/**
+	 * Writes S*R*T in a float array region, used by the flat transform storage
+	 * @param out
+	 * @param offset
+	 */
+	public static void createTransformMatrix(float sx, float sy, float sz,
+											float x, float y, float z, float w,
+											float tx, float ty, float tz,
+											float [] out, int offset) {
+		float X = x*x, Y = y*y, Z = z*z;
+		
+		out[offset] = (1 - 2*Y - 2*Z)*sx;
+		out[offset + 1] = (2*x*y - 2*z*w)*sx;
+		out[offset + 2] = (2*x*z + 2*y*w)*sx;
+		out[offset + 3] = 0;
+		
+		out[offset + 4] = (2*x*y + 2*z*w)*sy;
+		out[offset + 5] = (1 - 2*X - 2*Z)*sy;
+		out[offset + 6] = (2*y*z - 2*x*w)*sy;
+		out[offset + 7] = 0;
+		
+		out[offset + 8] = (2*x*z - 2*y*w)*sz;
+		out[offset + 9] = (2*y*z + 2*x*w)*sz;
+		out[offset + 10] = (1 - 2*X - 2*Y)*sz;
+		out[offset + 11] = 0;
+		
+		out[offset + 12] = tx;
+		out[offset + 13] = ty;
+		out[offset + 14] = tz;
+		out[offset + 15] = 1;
 	}
 	
 	/**
@@ -118,7 +515,11 @@ public class Matrix4x4 {
 	 * @return
 	 */
 	public static Matrix4x4 createRotationMatrix(Quaternion r) {
-		return Matrix4x4.createRigidbodyMatrix(r, Vector3.zero());
+		return Matrix4x4.createRigidbodyMatrix(r, null, new Matrix4x4());
+	}
+	
+	public static Matrix4x4 createRotationMatrix(Quaternion r, Matrix4x4 out) {
+		return Matrix4x4.createRigidbodyMatrix(r, null, out);
 	}
 	
 	/**
@@ -136,10 +537,14 @@ public class Matrix4x4 {
 	 * @return
 	 */
 	public static Matrix4x4 createTranslationMatrix(Vector3 t) {
-		return new Matrix4x4(0, 0, 0, t.x,
-				 			 0, 0, 0, t.y,
-			 				 0, 0, 0, t.z,
-			 				 0, 0, 0, 1);
+		return Matrix4x4.createTranslationMatrix(t, new Matrix4x4());
+	}
+	
+	public static Matrix4x4 createTranslationMatrix(Vector3 t, Matrix4x4 out) {
+		return out.set(1,   0,   0,   0,
+				 	   0,   1,   0,   0,
+			 		   0,   0,   1,   0,
+			 		   t.x, t.y, t.z, 1);
 	}
 	
 	/**
@@ -148,39 +553,121 @@ public class Matrix4x4 {
 	 * @return
 	 */
 	public static Matrix4x4 createScaleMatrix(Vector3 s) {
-		return new Matrix4x4(s.x, 0,   0,   0,
-				 			 0,   s.y, 0,   0,
-			 				 0,   0,   s.z, 0,
-			 				 0,   0,   0,   1);
+		return Matrix4x4.createScaleMatrix(s, new Matrix4x4());
+	}
+	
+	public static Matrix4x4 createScaleMatrix(Vector3 s, Matrix4x4 out) {
+		return out.set(s.x, 0,   0,   0,
+				 	   0,   s.y, 0,   0,
+			 		   0,   0,   s.z, 0,
+			 		   0,   0,   0,   1);
 	}
 	
 	public static Matrix4x4 identity() {
-		return new Matrix4x4(1,   0,   0,   0,
-				 			 0,   1,   0,   0,
-			 				 0,   0,   1,   0,
-			 				 0,   0,   0,   1);
+		return new Matrix4x4().setIdentity();
 	}
 	
 	public static Vector3 multiplyVector3(Matrix4x4 m, Vector3 v) {
-		return new Vector3(m.get(0, 0)*v.x + m.get(0, 1)*v.y + m.get(0, 2)*v.z + m.get(0, 3),
-							m.get(1, 0)*v.x + m.get(1, 1)*v.y + m.get(1, 2)*v.z + m.get(1, 3),
-							m.get(2, 0)*v.x + m.get(2, 1)*v.y + m.get(2, 2)*v.z + m.get(2, 3));		
+		return Matrix4x4.multiplyVector3(m, v, new Vector3(0,0,0));
+	}
+	
+	/**
+	 * Column vector multiplication m*v, out can be v
+	 * @param m
+	 * @param v
+	 * @param out
+	 * @return out
+	 */
+	public static Vector3 multiplyVector3(Matrix4x4 m, Vector3 v, Vector3 out) {
+		final float [] a = m.m_Matrix;
+		final float x = v.x, y = v.y, z = v.z;
+		out.set(a[0]*x + a[1]*y + a[2]*z + a[3],
+				a[4]*x + a[5]*y + a[6]*z + a[7],
+				a[8]*x + a[9]*y + a[10]*z + a[11]);
+		return out;
 	}
 	
 	public static Vector3 multiplyVector3(Vector3 v, Matrix4x4 m) {
-		return new Vector3(m.get(0, 0)*v.x + m.get(1, 0)*v.y + m.get(2, 0)*v.z + m.get(3, 0),
-							m.get(0, 1)*v.x + m.get(1, 1)*v.y + m.get(2, 1)*v.z + m.get(3, 1),
-							m.get(0, 2)*v.x + m.get(1, 2)*v.y + m.get(2, 2)*v.z + m.get(3, 2));		
+		return Matrix4x4.multiplyVector3(v, m, new Vector3(0,0,0));
+	}
+	
+	/**
+	 * Row vector multiplication v*m, out can be v
+	 * @param v
+	 * @param m
+	 * @param out
+	 * @return out
+	 */
+	public static Vector3 multiplyVector3(Vector3 v, Matrix4x4 m, Vector3 out) {
+		final float [] a = m.m_Matrix;
+		final float x = v.x, y = v.y, z = v.z;
+		out.set(a[0]*x + a[4]*y + a[8]*z + a[12],
+				a[1]*x + a[5]*y + a[9]*z + a[13],
+				a[2]*x + a[6]*y + a[10]*z + a[14]);
+		return out;
 	}
 	
 	public void mult(Matrix4x4 m) {
-		m_Matrix = Matrix4x4.mult(this, m).matrix();
+		Matrix4x4.mult(this, m, this);
 	}
 	
 	public Vector3 mult(Vector3 v) {
 		return Matrix4x4.multiplyVector3(this, v);
 	}
 	
+	public Vector3 mult(Vector3 v, Vector3 out) {
+		return Matrix4x4.multiplyVector3(this, v, out);
+	}
+	
+	public Matrix4x4 setIdentity() {
+		return set(1,   0,   0,   0,
+				   0,   1,   0,   0,
+				   0,   0,   1,   0,
+				   0,   0,   0,   1);
+	}
+	
+	public Matrix4x4 set(float a00, float a01, float a02, float a03,
+						float a10, float a11, float a12, float a13,
+						float a20, float a21, float a22, float a23,
+						float a30, float a31, float a32, float a33) {
+		final float [] m = m_Matrix;
+		m[0] = a00; m[1] = a01; m[2] = a02; m[3] = a03;
+		m[4] = a10; m[5] = a11; m[6] = a12; m[7] = a13;
+		m[8] = a20; m[9] = a21; m[10] = a22; m[11] = a23;
+		m[12] = a30; m[13] = a31; m[14] = a32; m[15] = a33;
+		return this;
+	}
+	
+	/**
+	 * Copies the values of m into this matrix
+	 * @param m
+	 * @return this
+	 */
+	public Matrix4x4 set(Matrix4x4 m) {
+		System.arraycopy(m.m_Matrix, 0, m_Matrix, 0, 16);
+		return this;
+	}
+	
+	/**
+	 * Copies 16 values from src starting at offset into this matrix
+	 * @param src
+	 * @param offset
+	 * @return this
+	 */
+	public Matrix4x4 set(float [] src, int offset) {
+		System.arraycopy(src, offset, m_Matrix, 0, 16);
+		return this;
+	}
+	
+	/**
+	 * Copies the values of this matrix into dst starting at offset
+	 * @param dst
+	 * @param offset
+	 */
+	public void get(float [] dst, int offset) {
+		System.arraycopy(m_Matrix, 0, dst, offset, 16);
+	}
+	
 	public void set(float []matrix) {
 		if(matrix.length > 16) {
 			return;
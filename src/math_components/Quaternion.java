@@ -4,6 +4,9 @@ public class Quaternion {
 
 	public static Quaternion identity(){return new Quaternion(0,0,0,1);}
 	
+	/** slerp uses nlerp above this cosine, where sin(angle) loses precision */
+	static final float NLERP_THRESHOLD = 0.9995f;
+	
 	public float x;
 	public float y;
 	public float z;
@@ -16,47 +19,23 @@ public class Quaternion {
 		this.w = w;
 	}
 	public Quaternion(Vector3 axis, float angle) {
-		
-		// normalize jic
-		axis = axis.normalize();
-		
-		float s = (float) Math.sin(angle * 0.5f);
-		x = axis.x * s;
-		y = axis.y * s;
-		z = axis.z * s;
-		w = (float) Math.cos(angle * 0.5f);
+		setAxisAngle(axis, angle);
 	}
 	public Quaternion(Vector3 eulerAngles) {
-		
-		float _x = eulerAngles.x;
-		float _y = eulerAngles.y;
-		float _z = eulerAngles.z;
-		
-		_x = _x > 180? _x - 360 : _x;
-		_y = _y > 180? _y - 360 : _y;
-		_z = _z > 180? _z - 360 : _z;
-		
-		float a = (float)(Math.toRadians(_x))*0.5f;
-		float b = (float)(Math.toRadians(_y))*0.5f;
-		float c = (float)(Math.toRadians(_z))*0.5f;
-		
-		float cosa = (float)Math.cos(a), sena = (float)Math.sin(a);
-		float cosb = (float)Math.cos(b), senb = (float)Math.sin(b);
-		float cosc = (float)Math.cos(c), senc = (float)Math.sin(c);
-		
-		x = sena*cosb*cosc - cosa*senb*senc;
-		y = cosa*senb*cosc + sena*cosb*senc;
-		z = cosa*cosb*senc - sena*senb*cosc;
-		w = cosa*cosb*cosc + sena*senb*senc;
-		
-		float size = lenght();
-		x = x/size;
-		y = y/size;
-		z = z/size;
-		w = w/size;
+		setEulerAngles(eulerAngles);
 	}
 	
 	public static Quaternion mult(Quaternion q1, Quaternion q2) {
+		return Quaternion.mult(q1, q2, new Quaternion(0,0,0,1));
+	}
+	/**
+	 * Multiplies q1*q2 into out without allocating, out can be q1 or q2
+	 * @param q1
+	 * @param q2
+	 * @param out
+	 * @return out
+	 */
+	public static Quaternion mult(Quaternion q1, Quaternion q2, Quaternion out) {
 		/* Math formula
 		a1 + b1i + c1j + d1k and a2 + b2i + c2j + d2k,
 			 a_1a_2 - b_1b_2 - c_1c_2 - d_1d_2
@@ -64,26 +43,111 @@ public class Quaternion {
 		{}+ (a_1c_2 - b_1d_2 + c_1a_2 + d_1b_2)j
 		{}+ (a_1d_2 + b_1c_2 - c_1b_2 + d_1a_2)k.
 		*/
-		return new Quaternion(
+		return out.set(
 				q1.w*q2.x + q1.x*q2.w + q1.y*q2.z - q1.z*q2.y,		// x
 				q1.w*q2.y - q1.x*q2.z + q1.y*q2.w + q1.z*q2.x,		// y
 				q1.w*q2.z + q1.x*q2.y - q1.y*q2.x + q1.z*q2.w,		// z
 				q1.w*q2.w - q1.x*q2.x - q1.y*q2.y - q1.z*q2.z);		// r
 	}
 	public static Quaternion add(Quaternion q1, Quaternion q2) {return new Quaternion(q1.x+q2.x, q1.y+q2.y, q1.z+q2.z, q1.w+q2.w);}
-	public static Quaternion normalize(Quaternion q) {
+	public static Quaternion normalize(Quaternion q) {return Quaternion.normalize(q, new Quaternion(0,0,0,1));}
+	public static Quaternion normalize(Quaternion q, Quaternion out) {
 		float size = q.lenght();
-		return new Quaternion(q.x/size,q.y/size,q.z/size,q.w/size);
+		return out.set(q.x/size,q.y/size,q.z/size,q.w/size);
 	}
-	public static Quaternion conjugate(Quaternion q) {
-		return new Quaternion(-q.x, -q.y, -q.z, q.w);
+	public static Quaternion conjugate(Quaternion q) {return Quaternion.conjugate(q, new Quaternion(0,0,0,1));}
+	public static Quaternion conjugate(Quaternion q, Quaternion out) {
+		return out.set(-q.x, -q.y, -q.z, q.w);
 	}
-	public static float dot(Quaternion q1, Quaternion q2) {return q1.x*q2.x + q1.y*q2.y + q1.z*q2.z;}
+	public static float dot(Quaternion q1, Quaternion q2) {return q1.x*q2.x + q1.y*q2.y + q1.z*q2.z + q1.w*q2.w;}
 	public static Quaternion scale(float scale, Quaternion q) {return new Quaternion(q.x*scale, q.y*scale, q.z*scale, q.w*scale);}
-	public static Quaternion invert(Quaternion q) {
-		Quaternion conjugated = q.conjugate();
-		conjugated.scale(1/(q.lenght()*q.lenght()));
-		return conjugated;
+	public static Quaternion invert(Quaternion q) {return Quaternion.invert(q, new Quaternion(0,0,0,1));}
+	public static Quaternion invert(Quaternion q, Quaternion out) {
+		float invSqrLenght = 1/(q.x*q.x + q.y*q.y + q.z*q.z + q.w*q.w);
+		return out.set(-q.x*invSqrLenght, -q.y*invSqrLenght, -q.z*invSqrLenght, q.w*invSqrLenght);
+	}
+	
+	// Interpolation
+	/**
+	 * Normalized linear interpolation from a to b along the shortest arc. Its
+	 * speed is not constant but between close keyframes it is almost slerp and
+	 * needs no trigonometry. out can be a or b
+	 * @param a
+	 * @param b
+	 * @param t 0 gives a, 1 gives b
+	 * @param out
+	 * @return out
+	 */
+	public static Quaternion nlerp(Quaternion a, Quaternion b, float t, Quaternion out) {
+		final float bs = a.x*b.x + a.y*b.y + a.z*b.z + a.w*b.w < 0? -t : t;
+		final float as = 1 - t;
+		final float x = a.x*as + b.x*bs, y = a.y*as + b.y*bs, z = a.z*as + b.z*bs, w = a.w*as + b.w*bs;
+		final float inv = 1/(float)Math.sqrt(x*x + y*y + z*z + w*w);
+		return out.set(x*inv, y*inv, z*inv, w*inv);
+	}
+	
+	/**
+	 * Spherical interpolation from a to b along the shortest arc at constant
+	 * speed, falls back to nlerp when they are almost the same. out can be a or b
+	 * @param a unit quaternion
+	 * @param b unit quaternion
+	 * @param t 0 gives a, 1 gives b
+	 * @param out
+	 * @return out
+	 */
+	public static Quaternion slerp(Quaternion a, Quaternion b, float t, Quaternion out) {
+		float cos = a.x*b.x + a.y*b.y + a.z*b.z + a.w*b.w;
+		float bs = 1;
+		if(cos < 0) {
+			cos = -cos;
+			bs = -1;
+		}
+		if(cos > NLERP_THRESHOLD) {
+			return nlerp(a, b, t, out);
+		}
+		final double angle = Math.acos(cos);
+		final double inv = 1/Math.sin(angle);
+		final float as = (float)(Math.sin((1 - t)*angle)*inv);
+		bs *= (float)(Math.sin(t*angle)*inv);
+		return out.set(a.x*as + b.x*bs, a.y*as + b.y*bs, a.z*as + b.z*bs, a.w*as + b.w*bs);
+	}
+	
+	/** Array version of nlerp for quaternions stored as xyzw, out can overlap a or b */
+	public static void nlerp(float [] a, int aOffset, float [] b, int bOffset, float t, float [] out, int outOffset) {
+		final float ax = a[aOffset], ay = a[aOffset + 1], az = a[aOffset + 2], aw = a[aOffset + 3];
+		final float bx = b[bOffset], by = b[bOffset + 1], bz = b[bOffset + 2], bw = b[bOffset + 3];
+		final float bs = ax*bx + ay*by + az*bz + aw*bw < 0? -t : t;
+		final float as = 1 - t;
+		final float x = ax*as + bx*bs, y = ay*as + by*bs, z = az*as + bz*bs, w = aw*as + bw*bs;
+		final float inv = 1/(float)Math.sqrt(x*x + y*y + z*z + w*w);
+		out[outOffset] = x*inv;
+		out[outOffset + 1] = y*inv;
+		out[outOffset + 2] = z*inv;
+		out[outOffset + 3] = w*inv;
+	}
+	
+	/** Array version of slerp for quaternions stored as xyzw, out can overlap a or b */
+	public static void slerp(float [] a, int aOffset, float [] b, int bOffset, float t, float [] out, int outOffset) {
+		final float ax = a[aOffset], ay = a[aOffset + 1], az = a[aOffset + 2], aw = a[aOffset + 3];
+		final float bx = b[bOffset], by = b[bOffset + 1], bz = b[bOffset + 2], bw = b[bOffset + 3];
+		float cos = ax*bx + ay*by + az*bz + aw*bw;
+		float bs = 1;
+		if(cos < 0) {
+			cos = -cos;
+			bs = -1;
+		}
+		if(cos > NLERP_THRESHOLD) {
+			nlerp(a, aOffset, b, bOffset, t, out, outOffset);
+			return;
+		}
+		final double angle = Math.acos(cos);
+		final double inv = 1/Math.sin(angle);
+		final float as = (float)(Math.sin((1 - t)*angle)*inv);
+		bs *= (float)(Math.sin(t*angle)*inv);
+		out[outOffset] = ax*as + bx*bs;
+		out[outOffset + 1] = ay*as + by*bs;
+		out[outOffset + 2] = az*as + bz*bs;
+		out[outOffset + 3] = aw*as + bw*bs;
 	}
 	
 	// Euler angles manipulation
@@ -91,9 +155,32 @@ public class Quaternion {
 		return q.toEulerAngles();
 	}
 	public static Vector3 rotateVectorByQuaternion(Vector3 base, Quaternion qr) {
-		Quaternion qOut = new Quaternion(base.x, base.y, base.z, 0);
-		Quaternion q = qr.normalize();
-		return Quaternion.mult(Quaternion.mult(q.conjugate(), qOut), q).getImaginary();
+		return Quaternion.rotateVectorByQuaternion(base, qr, new Vector3(0,0,0));
+	}
+	/**
+	 * Same as rotateVectorByQuaternion(base, qr) but writes the result in out, out can be base.
+	 * The conjugate(q)*v*q product is expanded so no temporary quaternions are needed
+	 * @param base
+	 * @param qr
+	 * @param out
+	 * @return out
+	 */
+	public static Vector3 rotateVectorByQuaternion(Vector3 base, Quaternion qr, Vector3 out) {
+		final float size = qr.lenght();
+		final float qx = qr.x/size, qy = qr.y/size, qz = qr.z/size, qw = qr.w/size;
+		final float vx = base.x, vy = base.y, vz = base.z;
+		
+		// t = conjugate(q)*v
+		final float tx = qw*vx - qy*vz + qz*vy;
+		final float ty = qw*vy - qz*vx + qx*vz;
+		final float tz = qw*vz - qx*vy + qy*vx;
+		final float tw = qx*vx + qy*vy + qz*vz;
+		
+		// t*q imaginary part
+		out.set(tw*qx + tx*qw + ty*qz - tz*qy,
+				tw*qy - tx*qz + ty*qw + tz*qx,
+				tw*qz + tx*qy - ty*qx + tz*qw);
+		return out;
 	}
 	public static Quaternion angleBetweenVectors(Vector3 v, Vector3 u) {
 		// Check for parallels
@@ -158,6 +245,73 @@ public class Quaternion {
 		return Quaternion.invert(this);
 	}
 	
+	public Quaternion set(float x, float y, float z, float w) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.w = w;
+		return this;
+	}
+	
+	public Quaternion set(Quaternion q) {
+		return set(q.x, q.y, q.z, q.w);
+	}
+	
+	/**
+	 * Sets this quaternion from an axis (does not need to be normalized) and an angle in radians
+	 * @param axis
+	 * @param angle
+	 * @return this
+	 */
+	public Quaternion setAxisAngle(Vector3 axis, float angle) {
+		
+		// normalize jic
+		float lenght = axis.lenght();
+		
+		float s = (float) Math.sin(angle * 0.5f) / lenght;
+		x = axis.x * s;
+		y = axis.y * s;
+		z = axis.z * s;
+		w = (float) Math.cos(angle * 0.5f);
+		return this;
+	}
+	
+	/**
+	 * Sets this quaternion from euler angles in degrees without allocating
+	 * @param eulerAngles
+	 * @return this
+	 */
+	public Quaternion setEulerAngles(Vector3 eulerAngles) {
+		
+		float _x = eulerAngles.x;
+		float _y = eulerAngles.y;
+		float _z = eulerAngles.z;
+		
+		_x = _x > 180? _x - 360 : _x;
+		_y = _y > 180? _y - 360 : _y;
+		_z = _z > 180? _z - 360 : _z;
+		
+		float a = (float)(Math.toRadians(_x))*0.5f;
+		float b = (float)(Math.toRadians(_y))*0.5f;
+		float c = (float)(Math.toRadians(_z))*0.5f;
+		
+		float cosa = (float)Math.cos(a), sena = (float)Math.sin(a);
+		float cosb = (float)Math.cos(b), senb = (float)Math.sin(b);
+		float cosc = (float)Math.cos(c), senc = (float)Math.sin(c);
+		
+		x = sena*cosb*cosc - cosa*senb*senc;
+		y = cosa*senb*cosc + sena*cosb*senc;
+		z = cosa*cosb*senc - sena*senb*cosc;
+		w = cosa*cosb*cosc + sena*senb*senc;
+		
+		float size = lenght();
+		x = x/size;
+		y = y/size;
+		z = z/size;
+		w = w/size;
+		return this;
+	}
+	
 	public float getReal() { // no seriously get real dude
 		return w;
 	}
@@ -167,28 +321,44 @@ public class Quaternion {
 	}
 	
 	public Vector3 toEulerAngles() {
-		Quaternion pQin = normalize();
+		return toEulerAngles(new Vector3(0,0,0));
+	}
+	
+	public Vector3 toEulerAngles(Vector3 out) {
+		final float size = lenght();
 
-		float q0 = pQin.x, 
-				q1 = pQin.y,
-				q2 = pQin.z,
-				q3 = pQin.w;
+		float q0 = x/size, 
+				q1 = y/size,
+				q2 = z/size,
+				q3 = w/size;
 		
 		float _x;
 		float _y;
 		float _z;
 		
 		_y = (float)Math.toDegrees(Math.atan2(2*(q1*q3 - q0*q2), 1 - 2*(q1*q1 + q2*q2)));
-		_z = (float)Math.toDegrees(Math.asin (2*(q0*q1 + q3*q2))); // there is an anomaly here that I have not been able to solve
+		// rounding can take the sine past 1 at 90 degrees, asin would return NaN
+		final float sinZ = Math.max(-1, Math.min(1, 2*(q0*q1 + q3*q2)));
+		_z = (float)Math.toDegrees(Math.asin(sinZ));
 		_x = (float)Math.toDegrees(Math.atan2(2*(q0*q3 - q1*q2), 1 - 2*(q2*q2 + q0*q0))); 
 		
-		return new Vector3(_x, _y, _z);
+		out.set(_x, _y, _z);
+		return out;
 	}
 	
 	public Vector3 rotateVector(Vector3 base) {
 		return Quaternion.rotateVectorByQuaternion(base, this);
 	}
 	
+	public Vector3 rotate(Vector3 base, Vector3 out) {
+		return Quaternion.rotateVectorByQuaternion(base, this, out);
+	}
+	
+	public Vector3 getImaginary(Vector3 out) {
+		out.set(x, y, z);
+		return out;
+	}
+	
 	public String toString(){
 		return "" + w + ", " + x + ", " + y + ", " + z;
 	}
@@ -25,12 +25,23 @@ public class Vector3 {
 	public static Vector3 add(Vector3 a, Vector3 b){return new Vector3(a.x + b.x, a.y + b.y, a.z + b.z);}
 	public static Vector3 subtract(Vector3 a, Vector3 b){return new Vector3(a.x - b.x, a.y - b.y, a.z - b.z);}
 	public static float dot(Vector3 a, Vector3 b){return a.x*b.x+a.y*b.y+a.z*b.z;}
-	public static Vector3 cross(Vector3 a, Vector3 b){return new Vector3(a.y*b.z, a.z*b.x, a.x*b.y);}
-	public static Vector3 normalize(Vector3 a) {
+	public static Vector3 cross(Vector3 a, Vector3 b){return Vector3.cross(a, b, new Vector3(0,0,0));}
+	public static Vector3 normalize(Vector3 a) {return Vector3.normalize(a, new Vector3(0,0,0));}
+	public static Vector3 scale(float scale, Vector3 a) {return new Vector3(a.x*scale, a.y*scale, a.z*scale);}
+	
+	// Basic arithmetic functions external, results are written to out (which can be one of the inputs)
+	public static Vector3 add(Vector3 a, Vector3 b, Vector3 out){out.set(a.x + b.x, a.y + b.y, a.z + b.z); return out;}
+	public static Vector3 subtract(Vector3 a, Vector3 b, Vector3 out){out.set(a.x - b.x, a.y - b.y, a.z - b.z); return out;}
+	public static Vector3 scale(float scale, Vector3 a, Vector3 out) {out.set(a.x*scale, a.y*scale, a.z*scale); return out;}
+	public static Vector3 cross(Vector3 a, Vector3 b, Vector3 out){
+		out.set(a.y*b.z - a.z*b.y, a.z*b.x - a.x*b.z, a.x*b.y - a.y*b.x);
+		return out;
+	}
+	public static Vector3 normalize(Vector3 a, Vector3 out) {
 		float lenght = a.lenght();
-		return new Vector3(a.x/lenght, a.y/lenght, a.z/lenght);
+		out.set(a.x/lenght, a.y/lenght, a.z/lenght);
+		return out;
 	}
-	public static Vector3 scale(float scale, Vector3 a) {return new Vector3(a.x*scale, a.y*scale, a.z*scale);}
 	public static float distance(Vector3 a, Vector3 b) {
 		float x = b.x - a.x;
 		float y = b.y - a.y;
@@ -73,7 +84,7 @@ public class Vector3 {
 	}
 	
 	public float dot(Vector3 b) {
-		return Vector3.distance(this, b);
+		return Vector3.dot(this, b);
 	}
 	
 	public Vector3 cross(Vector3 b) {
@@ -99,8 +110,7 @@ public class Vector3 {
 	}
 	
 	public void set(Vector3 v) {
-		float [] va = v.xyz();
-		set(va[X], va[Y], va[Z]);
+		set(v.x, v.y, v.z);
 	}
 	
 	public float[] xyz() {
@@ -109,7 +119,7 @@ public class Vector3 {
 	}
 	
 	public void mult(Matrix4x4 m) {
-		set(Matrix4x4.multiplyVector3(this, m));
+		Matrix4x4.multiplyVector3(this, m, this);
 	}
 	
 	public String toString(){
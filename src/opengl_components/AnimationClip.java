@@ -0,0 +1,59 @@
+package opengl_components;
+
+import java.util.Arrays;
+
+/**
+ * Tracks played together on one entity, for example a position and a
+ * rotation track. Like the tracks, a clip only holds data and can be played
+ * on many entities at once by an Animator.
+ */
+public class AnimationClip {
+
+	private AnimationTrack [] m_Tracks = new AnimationTrack[0];
+	private float m_Duration;
+	private boolean m_bLooping;
+
+	/**
+	 * @param looping true to start again after the last key, false to hold it
+	 */
+	public AnimationClip(boolean looping) {
+		m_bLooping = looping;
+	}
+
+	/**
+	 * Adds a track, the clip lasts as long as its longest track
+	 * @param track
+	 * @return this
+	 */
+	public AnimationClip addTrack(AnimationTrack track) {
+		m_Tracks = Arrays.copyOf(m_Tracks, m_Tracks.length + 1);
+		m_Tracks[m_Tracks.length - 1] = track;
+		m_Duration = Math.max(m_Duration, track.getDuration());
+		return this;
+	}
+
+	public int getTrackCount() {
+		return m_Tracks.length;
+	}
+
+	public AnimationTrack getTrack(int i) {
+		return m_Tracks[i];
+	}
+
+	public float getDuration() {
+		return m_Duration;
+	}
+
+	/** Overrides the duration, a looping clip can hold its last keys before it starts again */
+	public void setDuration(float duration) {
+		m_Duration = duration;
+	}
+
+	public boolean isLooping() {
+		return m_bLooping;
+	}
+
+	public void setLooping(boolean looping) {
+		m_bLooping = looping;
+	}
+}
@@ -0,0 +1,148 @@
+package opengl_components;
+
+import math_components.Quaternion;
+
+/**
+ * Keyframes of one local component of an entity: position, rotation or
+ * scale. Times and values are kept in flat arrays, values hold the size of
+ * the target (3 or 4 floats, rotations as xyzw) for every key. Sampling does
+ * not allocate and takes the key to start from, so a player that keeps the
+ * key of its last sample finds the next one in constant time.
+ * A track only holds data and can be shared by any number of players.
+ */
+public class AnimationTrack {
+
+	// Targets
+	public static final int POSITION = 0;
+	public static final int ROTATION = 1;
+	public static final int SCALE = 2;
+
+	// Interpolations
+	/** values are held until the next key */
+	public static final int STEP = 0;
+	/** componentwise lerp, nlerp for rotations */
+	public static final int LINEAR = 1;
+	/** constant angular speed for rotations, lerp for the others */
+	public static final int SPHERICAL = 2;
+
+	final int m_Target;
+	final int m_Interpolation;
+	final int m_Size;
+	final float [] m_Times;
+	final float [] m_Values;
+	final int m_KeyCount;
+
+	/**
+	 * @param target POSITION, ROTATION or SCALE
+	 * @param interpolation STEP, LINEAR or SPHERICAL
+	 * @param times key times in seconds, increasing, the array is kept
+	 * @param values size floats per key, the array is kept
+	 */
+	public AnimationTrack(int target, int interpolation, float [] times, float [] values) {
+		if(target < POSITION || target > SCALE) {
+			throw new IllegalArgumentException("AnimationTrack unknown target " + target);
+		}
+		if(interpolation < STEP || interpolation > SPHERICAL) {
+			throw new IllegalArgumentException("AnimationTrack unknown interpolation " + interpolation);
+		}
+		final int size = target == ROTATION? TransformStore.ROTATION_SIZE : TransformStore.POSITION_SIZE;
+		if(times.length == 0 || values.length != times.length*size) {
+			throw new IllegalArgumentException("AnimationTrack needs " + size + " values per key, got "
+					+ values.length + " for " + times.length + " keys");
+		}
+		for(int i = 1; i < times.length; i++) {
+			if(!(times[i] > times[i - 1])) {
+				throw new IllegalArgumentException("AnimationTrack key times must increase, key " + i);
+			}
+		}
+		m_Target = target;
+		m_Interpolation = interpolation;
+		m_Size = size;
+		m_Times = times;
+		m_Values = values;
+		m_KeyCount = times.length;
+	}
+
+	public int getTarget() {
+		return m_Target;
+	}
+
+	public int getInterpolation() {
+		return m_Interpolation;
+	}
+
+	public int getKeyCount() {
+		return m_KeyCount;
+	}
+
+	/** returns the time of the last key */
+	public float getDuration() {
+		return m_Times[m_KeyCount - 1];
+	}
+
+	/**
+	 * Finds the last key at or before a time, 0 before the first key
+	 * @param time
+	 * @param cursor key found by the previous call, any value works
+	 * @return
+	 */
+	public int findKey(float time, int cursor) {
+		final float [] times = m_Times;
+		final int last = m_KeyCount - 1;
+		if(cursor < 0 || cursor > last) {
+			cursor = 0;
+		}
+		// playing forward the key is the same or the next one
+		if(times[cursor] <= time) {
+			if(cursor == last || time < times[cursor + 1]) {
+				return cursor;
+			}
+			if(cursor + 1 == last || time < times[cursor + 2]) {
+				return cursor + 1;
+			}
+		} else if(cursor == 0) {
+			return 0;
+		}
+		// jumps and loops
+		int low = 0, high = last;
+		while(low < high) {
+			final int mid = (low + high + 1) >>> 1;
+			if(times[mid] <= time) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Writes the value at a time
+	 * @param time
+	 * @param key result of findKey for this time
+	 * @param out
+	 * @param offset
+	 */
+	public void sample(float time, int key, float [] out, int offset) {
+		final float [] values = m_Values;
+		final int size = m_Size;
+		final int o = key*size;
+		if(m_Interpolation == STEP || key == m_KeyCount - 1 || time <= m_Times[key]) {
+			System.arraycopy(values, o, out, offset, size);
+			return;
+		}
+		final float t = (time - m_Times[key])/(m_Times[key + 1] - m_Times[key]);
+		if(size == TransformStore.ROTATION_SIZE) {
+			if(m_Interpolation == SPHERICAL) {
+				Quaternion.slerp(values, o, values, o + size, t, out, offset);
+			} else {
+				Quaternion.nlerp(values, o, values, o + size, t, out, offset);
+			}
+			return;
+		}
+		final float s = 1 - t;
+		out[offset] = values[o]*s + values[o + 3]*t;
+		out[offset + 1] = values[o + 1]*s + values[o + 4]*t;
+		out[offset + 2] = values[o + 2]*s + values[o + 5]*t;
+	}
+}
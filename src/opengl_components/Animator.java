@@ -0,0 +1,276 @@
+package opengl_components;
+
+import java.util.Arrays;
+
+import engine_components.WorkerPool;
+
+/**
+ * Plays AnimationClips on the entities of a TransformStore. Every playing
+ * clip is a player with its own time, speed and one key cursor per track;
+ * update() advances all of them and samples the tracks straight into the
+ * local arrays of the store, without Euler angles and without allocating.
+ * Large numbers of players are sampled across a WorkerPool, each player only
+ * writes the components of its own entity. The entities are flagged dirty
+ * afterwards on the calling thread so their subtrees follow.
+ * An Animator must only be used by one thread.
+ */
+public class Animator {
+
+	/** Players below this are sampled on the calling thread */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 1024;
+
+	/** Players a worker takes at a time */
+	public static final int DEFAULT_GRAIN = 256;
+
+	final TransformStore m_Store;
+	final WorkerPool m_Pool;
+	int m_ParallelThreshold;
+	int m_Grain;
+
+	// Players, dense
+	private GraphicEntity [] m_Entities = new GraphicEntity[0];
+	private AnimationClip [] m_Clips = new AnimationClip[0];
+	private float [] m_Times = new float[0];
+	private float [] m_Speeds = new float[0];
+	private int [][] m_Cursors = new int[0][];
+	// Store index of every player, resolved before sampling
+	private int [] m_Indices = new int[0];
+	private int m_Count;
+
+	private int m_SampleCount;
+
+	private final WorkerPool.RangeTask m_SampleTask = new WorkerPool.RangeTask() {
+		@Override
+		public void run(int start, int end) {
+			sampleRange(start, end);
+		}
+	};
+
+	public Animator() {
+		this(TransformStore.getDefault(), null);
+	}
+
+	/**
+	 * @param store store of the animated entities
+	 * @param pool pool used for many players, null to always sample serially
+	 */
+	public Animator(TransformStore store, WorkerPool pool) {
+		m_Store = store;
+		m_Pool = pool;
+		m_ParallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+		m_Grain = DEFAULT_GRAIN;
+	}
+
+	public void setParallelThreshold(int threshold) {
+		m_ParallelThreshold = threshold;
+	}
+
+	public void setGrain(int grain) {
+		m_Grain = grain;
+	}
+
+	/**
+	 * Starts a clip on an entity from its beginning, replacing the clip the
+	 * entity was playing
+	 * @param entity
+	 * @param clip
+	 * @param speed 1 for normal speed, negative plays backwards
+	 */
+	public void play(GraphicEntity entity, AnimationClip clip, float speed) {
+		if(entity.getStore() != m_Store) {
+			throw new IllegalArgumentException("Animator entity belongs to another TransformStore");
+		}
+		int p = find(entity);
+		if(p < 0) {
+			if(m_Count == m_Entities.length) {
+				grow(Math.max(16, m_Count*2));
+			}
+			p = m_Count++;
+			m_Entities[p] = entity;
+		}
+		m_Clips[p] = clip;
+		m_Times[p] = speed < 0? clip.getDuration() : 0;
+		m_Speeds[p] = speed;
+		if(m_Cursors[p] == null || m_Cursors[p].length < clip.getTrackCount()) {
+			m_Cursors[p] = new int[clip.getTrackCount()];
+		} else {
+			Arrays.fill(m_Cursors[p], 0);
+		}
+	}
+
+	/**
+	 * Stops the clip of an entity, its components keep the last sampled values
+	 * @param entity
+	 * @return false if the entity was not playing
+	 */
+	public boolean stop(GraphicEntity entity) {
+		final int p = find(entity);
+		if(p < 0) {
+			return false;
+		}
+		remove(p);
+		return true;
+	}
+
+	public boolean isPlaying(GraphicEntity entity) {
+		return find(entity) >= 0;
+	}
+
+	/**
+	 * returns the time in the clip of an entity, -1 if it is not playing
+	 * @param entity
+	 * @return
+	 */
+	public float getTime(GraphicEntity entity) {
+		final int p = find(entity);
+		return p < 0? -1 : m_Times[p];
+	}
+
+	/**
+	 * Moves the clip of an entity to a time, it is sampled on the next update
+	 * @param entity
+	 * @param time
+	 */
+	public void setTime(GraphicEntity entity, float time) {
+		final int p = find(entity);
+		if(p >= 0) {
+			m_Times[p] = time;
+		}
+	}
+
+	public void setSpeed(GraphicEntity entity, float speed) {
+		final int p = find(entity);
+		if(p >= 0) {
+			m_Speeds[p] = speed;
+		}
+	}
+
+	public int getPlayerCount() {
+		return m_Count;
+	}
+
+	/** returns the number of tracks sampled by the last update */
+	public int getSampleCount() {
+		return m_SampleCount;
+	}
+
+	public void clear() {
+		Arrays.fill(m_Entities, 0, m_Count, null);
+		Arrays.fill(m_Clips, 0, m_Count, null);
+		m_Count = 0;
+	}
+
+	/**
+	 * Advances every player and writes the sampled components to the store.
+	 * Players of destroyed entities are dropped and clips that do not loop
+	 * stay on their last keys
+	 * @param deltaTime seconds
+	 */
+	public void update(float deltaTime) {
+		final TransformStore store = m_Store;
+		int samples = 0;
+		for(int p = 0; p < m_Count; p++) {
+			final GraphicEntity entity = m_Entities[p];
+			final int index = store.indexOf(entity.getId());
+			if(index < 0 || store.entityAt(index) != entity) {
+				remove(p--);
+				continue;
+			}
+			m_Indices[p] = index;
+
+			final AnimationClip clip = m_Clips[p];
+			final float duration = clip.getDuration();
+			float time = m_Times[p] + deltaTime*m_Speeds[p];
+			if(time < 0 || time > duration) {
+				if(clip.isLooping() && duration > 0) {
+					time %= duration;
+					if(time < 0) {
+						time += duration;
+					}
+				} else {
+					time = time < 0? 0 : duration;
+				}
+			}
+			m_Times[p] = time;
+			// tracks added to the clip after play
+			if(m_Cursors[p].length < clip.getTrackCount()) {
+				m_Cursors[p] = Arrays.copyOf(m_Cursors[p], clip.getTrackCount());
+			}
+			samples += clip.getTrackCount();
+		}
+		m_SampleCount = samples;
+
+		if(m_Pool != null && m_Count >= m_ParallelThreshold) {
+			m_Pool.parallelFor(m_Count, m_Grain, m_SampleTask);
+		} else {
+			sampleRange(0, m_Count);
+		}
+
+		for(int p = 0; p < m_Count; p++) {
+			m_Entities[p].markDirty();
+		}
+	}
+
+	/** Samples the players in [start, end), only touches their own entities */
+	void sampleRange(int start, int end) {
+		final TransformStore store = m_Store;
+		final float [] positions = store.localPositions();
+		final float [] rotations = store.localRotations();
+		final float [] scales = store.localScales();
+		for(int p = start; p < end; p++) {
+			final AnimationClip clip = m_Clips[p];
+			final int [] cursors = m_Cursors[p];
+			final int index = m_Indices[p];
+			final float time = m_Times[p];
+			for(int t = 0, count = clip.getTrackCount(); t < count; t++) {
+				final AnimationTrack track = clip.getTrack(t);
+				final int key = track.findKey(time, cursors[t]);
+				cursors[t] = key;
+				switch(track.m_Target) {
+				case AnimationTrack.POSITION:
+					track.sample(time, key, positions, index*TransformStore.POSITION_SIZE);
+					break;
+				case AnimationTrack.ROTATION:
+					track.sample(time, key, rotations, index*TransformStore.ROTATION_SIZE);
+					break;
+				default:
+					track.sample(time, key, scales, index*TransformStore.SCALE_SIZE);
+					break;
+				}
+			}
+		}
+	}
+
+	private int find(GraphicEntity entity) {
+		for(int p = 0; p < m_Count; p++) {
+			if(m_Entities[p] == entity) {
+				return p;
+			}
+		}
+		return -1;
+	}
+
+	/** Moves the last player into p, its cursors array is kept for reuse */
+	private void remove(int p) {
+		final int last = --m_Count;
+		final int [] cursors = m_Cursors[p];
+		m_Entities[p] = m_Entities[last];
+		m_Clips[p] = m_Clips[last];
+		m_Times[p] = m_Times[last];
+		m_Speeds[p] = m_Speeds[last];
+		m_Indices[p] = m_Indices[last];
+		m_Cursors[p] = m_Cursors[last];
+		m_Cursors[last] = cursors;
+		m_Entities[last] = null;
+		m_Clips[last] = null;
+	}
+
+	private void grow(int capacity) {
+		m_Entities = Arrays.copyOf(m_Entities, capacity);
+		m_Clips = Arrays.copyOf(m_Clips, capacity);
+		m_Times = Arrays.copyOf(m_Times, capacity);
+		m_Speeds = Arrays.copyOf(m_Speeds, capacity);
+		m_Cursors = Arrays.copyOf(m_Cursors, capacity);
+		m_Indices = Arrays.copyOf(m_Indices, capacity);
+	}
+}
@@ -0,0 +1,185 @@
+package opengl_components;
+
+import math_components.Matrix4x4;
+import engine_components.WorkerPool;
+
+/**
+ * Draws many small triangle lists that share a program and a VertexLayout in
+ * as few draw calls as possible. Every draw is copied into one staging array
+ * with its positions already transformed to world space, so the batch only
+ * needs the view projection matrix and a single glDrawArrays. The array is
+ * uploaded to a stream Mesh and drawn when it is full or on flush/end.
+ * Creates GL objects, so it has to be constructed on the GL thread.
+ *
+ * usage, once per frame:
+ * begin(program, matrixLocation, viewProjection, 0);
+ * draw(entity, vertices, 0, count); ...
+ * end();
+ *
+ * Best for small meshes (sprites, particles, debug shapes...), large static
+ * meshes are cheaper to draw on their own with their matrix as a uniform.
+ */
+public class BatchRenderer {
+
+	final GraphicsDevice m_Device;
+	final VertexLayout m_Layout;
+	final VertexTransformer m_Transformer;
+	final int m_Capacity;
+
+	// Staging copy of the batch and the mesh it is streamed through
+	final float [] m_Vertices;
+	final Mesh m_Mesh;
+	int m_VertexCount;
+
+	// Batch state, set by begin
+	int m_Program;
+	int m_MatrixLocation;
+	final float [] m_ViewProjection = new float[16];
+	boolean m_bDrawing;
+
+	private final Matrix4x4 m_World = new Matrix4x4();
+
+	// Stats
+	long m_DrawCount;
+	long m_BatchCount;
+
+	/**
+	 * @param device
+	 * @param layout layout of the vertices passed to draw
+	 * @param capacity vertices per batch
+	 */
+	public BatchRenderer(GraphicsDevice device, VertexLayout layout, int capacity) {
+		this(device, layout, capacity, null);
+	}
+
+	/**
+	 * @param device
+	 * @param layout layout of the vertices passed to draw
+	 * @param capacity vertices per batch
+	 * @param pool pool used to transform large draws, null to always run serially
+	 */
+	public BatchRenderer(GraphicsDevice device, VertexLayout layout, int capacity, WorkerPool pool) {
+		m_Device = device;
+		m_Layout = layout;
+		m_Capacity = capacity;
+		m_Transformer = new VertexTransformer(pool);
+		m_Vertices = new float[capacity*layout.getStride()];
+		m_Mesh = new Mesh(device, layout, GraphicsDevice.GL_STREAM_DRAW);
+	}
+
+	public VertexLayout getLayout() {
+		return m_Layout;
+	}
+
+	public int getCapacity() {
+		return m_Capacity;
+	}
+
+	/**
+	 * Starts a batch, binds the program and uploads the view projection matrix
+	 * @param program linked program to draw with
+	 * @param matrixLocation location of the mat4 uniform that takes the view projection
+	 * @param viewProjection column major view projection matrix
+	 * @param offset
+	 */
+	public void begin(int program, int matrixLocation, float [] viewProjection, int offset) {
+		if(m_bDrawing) {
+			throw new IllegalStateException("BatchRenderer.end must be called before begin");
+		}
+		m_bDrawing = true;
+		m_Program = program;
+		m_MatrixLocation = matrixLocation;
+		System.arraycopy(viewProjection, offset, m_ViewProjection, 0, 16);
+		m_VertexCount = 0;
+
+		m_Device.glUseProgram(program);
+		m_Device.glUniformMatrix4fv(matrixLocation, 1, false, m_ViewProjection, 0);
+	}
+
+	/**
+	 * Adds a triangle list drawn with the world transform of entity
+	 * @param entity
+	 * @param vertices vertex data in the batch layout
+	 * @param offset offset of the first vertex in floats
+	 * @param vertexCount number of vertices, a multiple of 3
+	 */
+	public void draw(GraphicEntity entity, float [] vertices, int offset, int vertexCount) {
+		draw(entity.getWorldTransformationMatrix(m_World), vertices, offset, vertexCount);
+	}
+
+	/**
+	 * Adds a triangle list transformed by world
+	 * @param world
+	 * @param vertices vertex data in the batch layout
+	 * @param offset offset of the first vertex in floats
+	 * @param vertexCount number of vertices, a multiple of 3
+	 */
+	public void draw(Matrix4x4 world, float [] vertices, int offset, int vertexCount) {
+		if(!m_bDrawing) {
+			throw new IllegalStateException("BatchRenderer.begin must be called before draw");
+		}
+		if(vertexCount > m_Capacity) {
+			throw new IllegalArgumentException("Draw of " + vertexCount + " vertices does not fit in a batch of " + m_Capacity);
+		}
+		if(m_VertexCount + vertexCount > m_Capacity) {
+			flush();
+		}
+
+		final int stride = m_Layout.getStride();
+		final int position = m_Layout.getPositionOffset();
+		final int dst = m_VertexCount*stride;
+		VertexTransformer.copyVertices(vertices, offset, stride, m_Vertices, dst, stride, stride, vertexCount);
+		m_Transformer.transform(world, m_Vertices, dst + position, stride, m_Vertices, dst + position, stride, vertexCount);
+
+		m_VertexCount += vertexCount;
+		m_DrawCount++;
+	}
+
+	/**
+	 * Submits the vertices collected so far in one draw call
+	 */
+	public void flush() {
+		if(m_VertexCount == 0) {
+			return;
+		}
+		m_Mesh.setVertices(m_Vertices, 0, m_VertexCount);
+		m_Mesh.bind();
+		m_Mesh.draw();
+		m_VertexCount = 0;
+		m_BatchCount++;
+	}
+
+	/**
+	 * Submits what is left and ends the batch
+	 */
+	public void end() {
+		if(!m_bDrawing) {
+			throw new IllegalStateException("BatchRenderer.begin must be called before end");
+		}
+		flush();
+		m_Mesh.unbind();
+		m_bDrawing = false;
+	}
+
+	/** returns the number of draw calls made through draw */
+	public long getDrawCount() {
+		return m_DrawCount;
+	}
+
+	/** returns the number of draw calls sent to the device */
+	public long getBatchCount() {
+		return m_BatchCount;
+	}
+
+	/**
+	 * Deletes the GL objects of the batch
+	 */
+	public void destroy() {
+		m_Mesh.destroy();
+	}
+
+	public void resetStats() {
+		m_DrawCount = 0;
+		m_BatchCount = 0;
+	}
+}
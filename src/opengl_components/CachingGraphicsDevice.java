@@ -0,0 +1,566 @@
+package opengl_components;
+
+import java.nio.Buffer;
+
+/**
+ * GraphicsDevice decorator that shadows the GL state and drops the calls that
+ * would not change it: program and buffer binds, attribute array enables and
+ * pointers, capabilities, blend function, viewport, clear colour and matrix
+ * uniforms whose value did not change since the last upload for that program.
+ * Everything else is forwarded as is.
+ * The shadow is only valid if every GL call goes through this device, call
+ * invalidate() after the context is recreated or other code touched GL.
+ */
+public class CachingGraphicsDevice implements GraphicsDevice {
+
+	/** Attribute slots shadowed, higher indices are always forwarded */
+	public static final int MAX_VERTEX_ATTRIBS = 16;
+
+	/** Last values uploaded to the uniforms of one program, indexed by location */
+	private static class ProgramState {
+		final int m_Program;
+		float [][] m_Uniforms = new float[8][];
+
+		ProgramState(int program) {
+			m_Program = program;
+		}
+
+		/**
+		 * returns true if value was already uploaded to location, if not it is
+		 * stored as the new value
+		 */
+		boolean sameUniform(int location, float [] value, int offset, int length) {
+			if(location >= m_Uniforms.length) {
+				float [][] uniforms = new float[Math.max(location + 1, m_Uniforms.length*2)][];
+				System.arraycopy(m_Uniforms, 0, uniforms, 0, m_Uniforms.length);
+				m_Uniforms = uniforms;
+			}
+			float [] last = m_Uniforms[location];
+			if(last != null && last.length == length) {
+				boolean same = true;
+				for(int i = 0; i < length; i++) {
+					if(last[i] != value[offset + i]) {
+						same = false;
+						break;
+					}
+				}
+				if(same) {
+					return true;
+				}
+			} else {
+				last = m_Uniforms[location] = new float[length];
+			}
+			System.arraycopy(value, offset, last, 0, length);
+			return false;
+		}
+
+		void clear() {
+			for(int i = 0; i < m_Uniforms.length; i++) {
+				m_Uniforms[i] = null;
+			}
+		}
+	}
+
+	final GraphicsDevice m_Device;
+
+	// Shadowed state, the m_b...Known flags are false until the first call after invalidate
+	private int m_Program;
+	private ProgramState m_ProgramState;
+	private ProgramState [] m_ProgramStates = new ProgramState[4];
+	private int m_ProgramStateCount;
+	private int m_ArrayBuffer, m_ElementBuffer;
+	private boolean m_bArrayBufferKnown, m_bElementBufferKnown;
+	private boolean m_bProgramKnown;
+	private final boolean [] m_AttribEnabled = new boolean[MAX_VERTEX_ATTRIBS];
+	private final boolean [] m_AttribKnown = new boolean[MAX_VERTEX_ATTRIBS];
+	private final boolean [] m_PointerKnown = new boolean[MAX_VERTEX_ATTRIBS];
+	private final int [] m_PointerSize = new int[MAX_VERTEX_ATTRIBS];
+	private final int [] m_PointerType = new int[MAX_VERTEX_ATTRIBS];
+	private final boolean [] m_PointerNormalized = new boolean[MAX_VERTEX_ATTRIBS];
+	private final int [] m_PointerStride = new int[MAX_VERTEX_ATTRIBS];
+	private final int [] m_PointerBuffer = new int[MAX_VERTEX_ATTRIBS];
+	private final int [] m_PointerOffset = new int[MAX_VERTEX_ATTRIBS];
+	private final Buffer [] m_PointerData = new Buffer[MAX_VERTEX_ATTRIBS];
+	// capabilities: 0 unknown, 1 disabled, 2 enabled
+	private int m_Blend, m_DepthTest, m_CullFace;
+	private int m_BlendSource = -1, m_BlendDestination = -1;
+	private final int [] m_Viewport = new int[4];
+	private boolean m_bViewportKnown;
+	private final float [] m_ClearColor = new float[4];
+	private boolean m_bClearColorKnown;
+
+	// Counters
+	private long m_SavedCalls;
+	private long m_SavedUniformUploads;
+	private long m_ForwardedCalls;
+
+	/**
+	 * @param device device the calls that change state are forwarded to
+	 */
+	public CachingGraphicsDevice(GraphicsDevice device) {
+		m_Device = device;
+	}
+
+	public GraphicsDevice getDevice() {
+		return m_Device;
+	}
+
+	/**
+	 * Forgets the shadowed state, the next call of every kind is forwarded.
+	 * Needed after the GL context is recreated or GL was used directly
+	 */
+	public void invalidate() {
+		m_bProgramKnown = false;
+		m_ProgramState = null;
+		for(int i = 0; i < m_ProgramStateCount; i++) {
+			m_ProgramStates[i] = null;
+		}
+		m_ProgramStateCount = 0;
+		m_bArrayBufferKnown = m_bElementBufferKnown = false;
+		for(int i = 0; i < MAX_VERTEX_ATTRIBS; i++) {
+			m_AttribKnown[i] = false;
+			m_PointerKnown[i] = false;
+			m_PointerData[i] = null;
+		}
+		m_Blend = m_DepthTest = m_CullFace = 0;
+		m_BlendSource = m_BlendDestination = -1;
+		m_bViewportKnown = false;
+		m_bClearColorKnown = false;
+	}
+
+	/** returns the number of calls dropped because they would not change the state */
+	public long getSavedCalls() {
+		return m_SavedCalls;
+	}
+
+	/** returns how many of the saved calls were uniform uploads */
+	public long getSavedUniformUploads() {
+		return m_SavedUniformUploads;
+	}
+
+	/** returns the number of calls forwarded to the device */
+	public long getForwardedCalls() {
+		return m_ForwardedCalls;
+	}
+
+	public void resetStats() {
+		m_SavedCalls = 0;
+		m_SavedUniformUploads = 0;
+		m_ForwardedCalls = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "forwarded: " + m_ForwardedCalls + " saved: " + m_SavedCalls
+				+ " (uniforms: " + m_SavedUniformUploads + ")";
+	}
+
+	private boolean skip(boolean same) {
+		if(same) {
+			m_SavedCalls++;
+		} else {
+			m_ForwardedCalls++;
+		}
+		return same;
+	}
+
+	private ProgramState programState(int program) {
+		for(int i = 0; i < m_ProgramStateCount; i++) {
+			if(m_ProgramStates[i].m_Program == program) {
+				return m_ProgramStates[i];
+			}
+		}
+		if(m_ProgramStateCount == m_ProgramStates.length) {
+			ProgramState [] states = new ProgramState[m_ProgramStates.length*2];
+			System.arraycopy(m_ProgramStates, 0, states, 0, m_ProgramStateCount);
+			m_ProgramStates = states;
+		}
+		final ProgramState state = new ProgramState(program);
+		m_ProgramStates[m_ProgramStateCount++] = state;
+		return state;
+	}
+
+	private void removeProgramState(int program) {
+		for(int i = 0; i < m_ProgramStateCount; i++) {
+			if(m_ProgramStates[i].m_Program == program) {
+				m_ProgramStates[i] = m_ProgramStates[--m_ProgramStateCount];
+				m_ProgramStates[m_ProgramStateCount] = null;
+				return;
+			}
+		}
+	}
+
+	private int setCapability(int state, int cap, boolean enabled) {
+		final int value = enabled ? 2 : 1;
+		if(!skip(state == value)) {
+			if(enabled) {
+				m_Device.glEnable(cap);
+			} else {
+				m_Device.glDisable(cap);
+			}
+		}
+		return value;
+	}
+
+	private void capability(int cap, boolean enabled) {
+		if(cap == GL_BLEND) {
+			m_Blend = setCapability(m_Blend, cap, enabled);
+		} else if(cap == GL_DEPTH_TEST) {
+			m_DepthTest = setCapability(m_DepthTest, cap, enabled);
+		} else if(cap == GL_CULL_FACE) {
+			m_CullFace = setCapability(m_CullFace, cap, enabled);
+		} else {
+			m_ForwardedCalls++;
+			if(enabled) {
+				m_Device.glEnable(cap);
+			} else {
+				m_Device.glDisable(cap);
+			}
+		}
+	}
+
+	private static boolean shadowed(int index) {
+		return index >= 0 && index < MAX_VERTEX_ATTRIBS;
+	}
+
+	// Frame
+
+	@Override
+	public void glClearColor(float red, float green, float blue, float alpha) {
+		final float [] c = m_ClearColor;
+		if(skip(m_bClearColorKnown && c[0] == red && c[1] == green && c[2] == blue && c[3] == alpha)) {
+			return;
+		}
+		c[0] = red;
+		c[1] = green;
+		c[2] = blue;
+		c[3] = alpha;
+		m_bClearColorKnown = true;
+		m_Device.glClearColor(red, green, blue, alpha);
+	}
+
+	@Override
+	public void glClear(int mask) {
+		m_ForwardedCalls++;
+		m_Device.glClear(mask);
+	}
+
+	@Override
+	public void glViewport(int x, int y, int width, int height) {
+		final int [] v = m_Viewport;
+		if(skip(m_bViewportKnown && v[0] == x && v[1] == y && v[2] == width && v[3] == height)) {
+			return;
+		}
+		v[0] = x;
+		v[1] = y;
+		v[2] = width;
+		v[3] = height;
+		m_bViewportKnown = true;
+		m_Device.glViewport(x, y, width, height);
+	}
+
+	@Override
+	public void glEnable(int cap) {
+		capability(cap, true);
+	}
+
+	@Override
+	public void glDisable(int cap) {
+		capability(cap, false);
+	}
+
+	@Override
+	public void glBlendFunc(int sfactor, int dfactor) {
+		if(skip(sfactor == m_BlendSource && dfactor == m_BlendDestination)) {
+			return;
+		}
+		m_BlendSource = sfactor;
+		m_BlendDestination = dfactor;
+		m_Device.glBlendFunc(sfactor, dfactor);
+	}
+
+	// Shaders and programs, forwarded
+
+	@Override
+	public int glCreateShader(int type) {
+		m_ForwardedCalls++;
+		return m_Device.glCreateShader(type);
+	}
+
+	@Override
+	public void glShaderSource(int shader, String source) {
+		m_ForwardedCalls++;
+		m_Device.glShaderSource(shader, source);
+	}
+
+	@Override
+	public void glCompileShader(int shader) {
+		m_ForwardedCalls++;
+		m_Device.glCompileShader(shader);
+	}
+
+	@Override
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+		m_ForwardedCalls++;
+		m_Device.glGetShaderiv(shader, pname, params, offset);
+	}
+
+	@Override
+	public String glGetShaderInfoLog(int shader) {
+		m_ForwardedCalls++;
+		return m_Device.glGetShaderInfoLog(shader);
+	}
+
+	@Override
+	public void glDeleteShader(int shader) {
+		m_ForwardedCalls++;
+		m_Device.glDeleteShader(shader);
+	}
+
+	@Override
+	public int glCreateProgram() {
+		m_ForwardedCalls++;
+		return m_Device.glCreateProgram();
+	}
+
+	@Override
+	public void glAttachShader(int program, int shader) {
+		m_ForwardedCalls++;
+		m_Device.glAttachShader(program, shader);
+	}
+
+	@Override
+	public void glBindAttribLocation(int program, int index, String name) {
+		m_ForwardedCalls++;
+		m_Device.glBindAttribLocation(program, index, name);
+	}
+
+	@Override
+	public void glLinkProgram(int program) {
+		m_ForwardedCalls++;
+		// linking resets the uniforms to 0
+		removeProgramState(program);
+		if(m_Program == program) {
+			m_ProgramState = null;
+		}
+		m_Device.glLinkProgram(program);
+	}
+
+	@Override
+	public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+		m_ForwardedCalls++;
+		m_Device.glGetProgramiv(program, pname, params, offset);
+	}
+
+	@Override
+	public String glGetProgramInfoLog(int program) {
+		m_ForwardedCalls++;
+		return m_Device.glGetProgramInfoLog(program);
+	}
+
+	@Override
+	public void glDeleteProgram(int program) {
+		m_ForwardedCalls++;
+		removeProgramState(program);
+		if(m_Program == program) {
+			m_ProgramState = null;
+		}
+		m_Device.glDeleteProgram(program);
+	}
+
+	@Override
+	public void glUseProgram(int program) {
+		if(skip(m_bProgramKnown && program == m_Program)) {
+			return;
+		}
+		m_Program = program;
+		m_bProgramKnown = true;
+		m_ProgramState = null;
+		m_Device.glUseProgram(program);
+	}
+
+	@Override
+	public int glGetUniformLocation(int program, String name) {
+		m_ForwardedCalls++;
+		return m_Device.glGetUniformLocation(program, name);
+	}
+
+	@Override
+	public int glGetAttribLocation(int program, String name) {
+		m_ForwardedCalls++;
+		return m_Device.glGetAttribLocation(program, name);
+	}
+
+	// Buffer objects
+
+	@Override
+	public void glGenBuffers(int n, int[] buffers, int offset) {
+		m_ForwardedCalls++;
+		m_Device.glGenBuffers(n, buffers, offset);
+	}
+
+	@Override
+	public void glDeleteBuffers(int n, int[] buffers, int offset) {
+		m_ForwardedCalls++;
+		// GL unbinds deleted buffers and the pointers into them become invalid
+		for(int i = 0; i < n; i++) {
+			final int buffer = buffers[offset + i];
+			if(buffer == 0) {
+				continue;
+			}
+			if(m_ArrayBuffer == buffer) {
+				m_ArrayBuffer = 0;
+			}
+			if(m_ElementBuffer == buffer) {
+				m_ElementBuffer = 0;
+			}
+			for(int j = 0; j < MAX_VERTEX_ATTRIBS; j++) {
+				if(m_PointerBuffer[j] == buffer) {
+					m_PointerKnown[j] = false;
+				}
+			}
+		}
+		m_Device.glDeleteBuffers(n, buffers, offset);
+	}
+
+	@Override
+	public void glBindBuffer(int target, int buffer) {
+		if(target == GL_ARRAY_BUFFER) {
+			if(skip(m_bArrayBufferKnown && m_ArrayBuffer == buffer)) {
+				return;
+			}
+			m_ArrayBuffer = buffer;
+			m_bArrayBufferKnown = true;
+		} else if(target == GL_ELEMENT_ARRAY_BUFFER) {
+			if(skip(m_bElementBufferKnown && m_ElementBuffer == buffer)) {
+				return;
+			}
+			m_ElementBuffer = buffer;
+			m_bElementBufferKnown = true;
+		} else {
+			m_ForwardedCalls++;
+		}
+		m_Device.glBindBuffer(target, buffer);
+	}
+
+	@Override
+	public void glBufferData(int target, int size, Buffer data, int usage) {
+		m_ForwardedCalls++;
+		m_Device.glBufferData(target, size, data, usage);
+	}
+
+	@Override
+	public void glBufferSubData(int target, int offset, int size, Buffer data) {
+		m_ForwardedCalls++;
+		m_Device.glBufferSubData(target, offset, size, data);
+	}
+
+	// Vertex input
+
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer data) {
+		if(shadowed(index)) {
+			// the buffer position is where GL starts reading so it is part of the pointer
+			final int position = data.position();
+			if(skip(m_PointerKnown[index] && m_PointerData[index] == data && m_PointerOffset[index] == position
+					&& m_PointerBuffer[index] == 0 && m_bArrayBufferKnown && m_ArrayBuffer == 0
+					&& samePointer(index, size, type, normalized, stride))) {
+				return;
+			}
+			setPointer(index, size, type, normalized, stride, m_bArrayBufferKnown && m_ArrayBuffer == 0 ? 0 : -1, position);
+			m_PointerData[index] = data;
+		} else {
+			m_ForwardedCalls++;
+		}
+		m_Device.glVertexAttribPointer(index, size, type, normalized, stride, data);
+	}
+
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+		if(shadowed(index)) {
+			if(skip(m_PointerKnown[index] && m_PointerData[index] == null && m_PointerOffset[index] == offset
+					&& m_bArrayBufferKnown && m_PointerBuffer[index] == m_ArrayBuffer
+					&& samePointer(index, size, type, normalized, stride))) {
+				return;
+			}
+			setPointer(index, size, type, normalized, stride, m_bArrayBufferKnown ? m_ArrayBuffer : -1, offset);
+			m_PointerData[index] = null;
+		} else {
+			m_ForwardedCalls++;
+		}
+		m_Device.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+	}
+
+	private boolean samePointer(int index, int size, int type, boolean normalized, int stride) {
+		return m_PointerSize[index] == size && m_PointerType[index] == type
+				&& m_PointerNormalized[index] == normalized && m_PointerStride[index] == stride;
+	}
+
+	private void setPointer(int index, int size, int type, boolean normalized, int stride, int buffer, int offset) {
+		m_PointerKnown[index] = buffer >= 0;
+		m_PointerSize[index] = size;
+		m_PointerType[index] = type;
+		m_PointerNormalized[index] = normalized;
+		m_PointerStride[index] = stride;
+		m_PointerBuffer[index] = buffer;
+		m_PointerOffset[index] = offset;
+	}
+
+	@Override
+	public void glEnableVertexAttribArray(int index) {
+		if(shadowed(index)) {
+			if(skip(m_AttribKnown[index] && m_AttribEnabled[index])) {
+				return;
+			}
+			m_AttribKnown[index] = true;
+			m_AttribEnabled[index] = true;
+		} else {
+			m_ForwardedCalls++;
+		}
+		m_Device.glEnableVertexAttribArray(index);
+	}
+
+	@Override
+	public void glDisableVertexAttribArray(int index) {
+		if(shadowed(index)) {
+			if(skip(m_AttribKnown[index] && !m_AttribEnabled[index])) {
+				return;
+			}
+			m_AttribKnown[index] = true;
+			m_AttribEnabled[index] = false;
+		} else {
+			m_ForwardedCalls++;
+		}
+		m_Device.glDisableVertexAttribArray(index);
+	}
+
+	// Uniforms and draws
+
+	@Override
+	public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+		if(location >= 0 && m_bProgramKnown && m_Program != 0 && !transpose) {
+			if(m_ProgramState == null) {
+				m_ProgramState = programState(m_Program);
+			}
+			if(skip(m_ProgramState.sameUniform(location, value, offset, count*16))) {
+				m_SavedUniformUploads++;
+				return;
+			}
+		} else {
+			m_ForwardedCalls++;
+		}
+		m_Device.glUniformMatrix4fv(location, count, transpose, value, offset);
+	}
+
+	@Override
+	public void glDrawArrays(int mode, int first, int count) {
+		m_ForwardedCalls++;
+		m_Device.glDrawArrays(mode, first, count);
+	}
+
+	@Override
+	public void glDrawElements(int mode, int count, int type, int offset) {
+		m_ForwardedCalls++;
+		m_Device.glDrawElements(mode, count, type, offset);
+	}
+}
@@ -0,0 +1,300 @@
+package opengl_components;
+
+import java.util.Arrays;
+
+/**
+ * Components of the entities of a TransformStore, one ComponentArray per
+ * ComponentType. An array keeps its components packed at the front, with
+ * the id of the owning entity next to each, so a system can walk every
+ * component of one type without touching the entities. An entity can have
+ * several components of a type, they are chained from the first one so the
+ * components of an entity are found in constant time per component.
+ * Removing a component moves the last one of its type into the hole, the
+ * order within a type is not kept, only the order of the components of one
+ * entity. Like the TransformStore it must only be changed by one thread at
+ * a time.
+ */
+public class ComponentStore {
+
+	/** The components of one type */
+	public static class ComponentArray {
+		final int m_Type;
+		final boolean m_bLocal;
+		GraphicEntity.Scriptable [] m_Components = new GraphicEntity.Scriptable[8];
+		int [] m_Owners = new int[8];
+		// Next slot with the same owner, -1 ends the chain
+		int [] m_Next = new int[8];
+		// First slot of every entity id, -1 for none
+		int [] m_First = new int[0];
+		int m_Count;
+
+		ComponentArray(int type) {
+			m_Type = type;
+			final Class<?> cls = ComponentType.classOf(type);
+			m_bLocal = cls != null && GraphicEntity.LocalScriptable.class.isAssignableFrom(cls);
+		}
+
+		public int getType() {
+			return m_Type;
+		}
+
+		/** returns true if the type is a GraphicEntity.LocalScriptable */
+		public boolean isLocal() {
+			return m_bLocal;
+		}
+
+		public int size() {
+			return m_Count;
+		}
+
+		/**
+		 * returns the components, the first size() are used
+		 * @return
+		 */
+		public GraphicEntity.Scriptable [] components() {
+			return m_Components;
+		}
+
+		/**
+		 * returns the entity id of every component, in the same order
+		 * @return
+		 */
+		public int [] owners() {
+			return m_Owners;
+		}
+
+		/**
+		 * returns the slot of the first component of an entity, the others
+		 * follow with nextSlot
+		 * @param entityId
+		 * @return -1 if it has none
+		 */
+		public int firstSlot(int entityId) {
+			return entityId >= 0 && entityId < m_First.length? m_First[entityId] : -1;
+		}
+
+		/**
+		 * returns the slot of the next component with the same owner
+		 * @param slot
+		 * @return -1 after the last one
+		 */
+		public int nextSlot(int slot) {
+			return m_Next[slot];
+		}
+
+		public GraphicEntity.Scriptable get(int entityId) {
+			final int slot = firstSlot(entityId);
+			return slot >= 0? m_Components[slot] : null;
+		}
+
+		int find(int entityId, GraphicEntity.Scriptable component) {
+			for(int slot = firstSlot(entityId); slot >= 0; slot = m_Next[slot]) {
+				if(m_Components[slot] == component) {
+					return slot;
+				}
+			}
+			return -1;
+		}
+
+		void add(int entityId, GraphicEntity.Scriptable component) {
+			if(entityId >= m_First.length) {
+				final int length = m_First.length;
+				m_First = Arrays.copyOf(m_First, Math.max(entityId + 1, Math.max(16, length*2)));
+				Arrays.fill(m_First, length, m_First.length, -1);
+			}
+			if(m_Count == m_Components.length) {
+				m_Components = Arrays.copyOf(m_Components, m_Count*2);
+				m_Owners = Arrays.copyOf(m_Owners, m_Count*2);
+				m_Next = Arrays.copyOf(m_Next, m_Count*2);
+			}
+			final int slot = m_Count++;
+			m_Components[slot] = component;
+			m_Owners[slot] = entityId;
+			m_Next[slot] = -1;
+
+			// appended to the chain so the components of an entity keep their order
+			int last = m_First[entityId];
+			if(last < 0) {
+				m_First[entityId] = slot;
+			} else {
+				while(m_Next[last] >= 0) {
+					last = m_Next[last];
+				}
+				m_Next[last] = slot;
+			}
+		}
+
+		void remove(int slot) {
+			unlink(slot);
+			final int last = --m_Count;
+			if(slot != last) {
+				// the last component moves into the hole, whatever pointed at it follows
+				final int owner = m_Owners[last];
+				if(m_First[owner] == last) {
+					m_First[owner] = slot;
+				} else {
+					int prev = m_First[owner];
+					while(m_Next[prev] != last) {
+						prev = m_Next[prev];
+					}
+					m_Next[prev] = slot;
+				}
+				m_Components[slot] = m_Components[last];
+				m_Owners[slot] = owner;
+				m_Next[slot] = m_Next[last];
+			}
+			m_Components[last] = null;
+		}
+
+		private void unlink(int slot) {
+			final int owner = m_Owners[slot];
+			if(m_First[owner] == slot) {
+				m_First[owner] = m_Next[slot];
+				return;
+			}
+			int prev = m_First[owner];
+			while(m_Next[prev] != slot) {
+				prev = m_Next[prev];
+			}
+			m_Next[prev] = m_Next[slot];
+		}
+	}
+
+	private ComponentArray [] m_Arrays = new ComponentArray[0];
+	private int m_Count;
+
+	/**
+	 * returns the array of a type, created empty the first time
+	 * @param type a ComponentType id
+	 * @return
+	 */
+	public ComponentArray getArray(int type) {
+		if(type >= m_Arrays.length) {
+			m_Arrays = Arrays.copyOf(m_Arrays, Math.max(type + 1, m_Arrays.length*2));
+		}
+		ComponentArray array = m_Arrays[type];
+		if(array == null) {
+			array = m_Arrays[type] = new ComponentArray(type);
+		}
+		return array;
+	}
+
+	public ComponentArray getArray(Class<?> cls) {
+		return getArray(ComponentType.of(cls));
+	}
+
+	/**
+	 * returns one more than the largest type with an array, arrays below it
+	 * can be null
+	 * @return
+	 */
+	public int arrayCount() {
+		return m_Arrays.length;
+	}
+
+	/**
+	 * returns the array of a type if it was created
+	 * @param type
+	 * @return
+	 */
+	public ComponentArray arrayAt(int type) {
+		return type >= 0 && type < m_Arrays.length? m_Arrays[type] : null;
+	}
+
+	/**
+	 * returns the first component of a type an entity has
+	 * @param type a ComponentType id
+	 * @param entityId
+	 * @return null if it has none
+	 */
+	public GraphicEntity.Scriptable get(int type, int entityId) {
+		final ComponentArray array = arrayAt(type);
+		return array != null? array.get(entityId) : null;
+	}
+
+	/**
+	 * returns the first component of an entity that is an instance of a
+	 * class, looked up directly when it is the exact class of a component
+	 * and through every type otherwise
+	 * @param cls
+	 * @param entityId
+	 * @return null if it has none
+	 */
+	public GraphicEntity.Scriptable find(Class<?> cls, int entityId) {
+		final GraphicEntity.Scriptable component = get(ComponentType.find(cls), entityId);
+		if(component != null) {
+			return component;
+		}
+		for(int type = 0; type < m_Arrays.length; type++) {
+			final ComponentArray array = m_Arrays[type];
+			if(array != null && array.firstSlot(entityId) >= 0 && cls.isAssignableFrom(ComponentType.classOf(type))) {
+				return array.get(entityId);
+			}
+		}
+		return null;
+	}
+
+	public boolean contains(int entityId, GraphicEntity.Scriptable component) {
+		final ComponentArray array = arrayAt(ComponentType.find(component.getClass()));
+		return array != null && array.find(entityId, component) >= 0;
+	}
+
+	/**
+	 * Adds a component to an entity, after the ones of the same type it has
+	 * @param entityId
+	 * @param component
+	 * @return false if the entity already has it
+	 */
+	public boolean add(int entityId, GraphicEntity.Scriptable component) {
+		final ComponentArray array = getArray(ComponentType.of(component.getClass()));
+		if(array.find(entityId, component) >= 0) {
+			return false;
+		}
+		array.add(entityId, component);
+		m_Count++;
+		return true;
+	}
+
+	/**
+	 * Removes a component of an entity
+	 * @param entityId
+	 * @param component
+	 * @return false if the entity does not have it
+	 */
+	public boolean remove(int entityId, GraphicEntity.Scriptable component) {
+		final ComponentArray array = arrayAt(ComponentType.find(component.getClass()));
+		final int slot = array != null? array.find(entityId, component) : -1;
+		if(slot < 0) {
+			return false;
+		}
+		array.remove(slot);
+		m_Count--;
+		return true;
+	}
+
+	/**
+	 * Removes every component of an entity
+	 * @param entityId
+	 * @return the number of removed components
+	 */
+	public int removeAll(int entityId) {
+		int removed = 0;
+		for(int type = 0; type < m_Arrays.length; type++) {
+			final ComponentArray array = m_Arrays[type];
+			if(array == null) {
+				continue;
+			}
+			for(int slot = array.firstSlot(entityId); slot >= 0; slot = array.firstSlot(entityId)) {
+				array.remove(slot);
+				removed++;
+			}
+		}
+		m_Count -= removed;
+		return removed;
+	}
+
+	/** returns the number of components of every type */
+	public int size() {
+		return m_Count;
+	}
+}
@@ -0,0 +1,68 @@
+package opengl_components;
+
+import java.util.HashMap;
+
+/**
+ * Registry handing out a small dense id per component class, the index of
+ * its ComponentArray in every ComponentStore. Ids are global and never
+ * reused. Systems can keep the id of the classes they iterate in a static
+ * field so looking them up costs nothing. Lookups read a copy of the map
+ * that is replaced on every registration, so they never lock; registering
+ * locks but only happens once per class.
+ */
+public final class ComponentType {
+
+	private static volatile HashMap<Class<?>, Integer> s_Ids = new HashMap<Class<?>, Integer>();
+	private static Class<?> [] s_Classes = new Class<?>[16];
+	private static int s_Count;
+
+	private ComponentType() {
+	}
+
+	/**
+	 * returns the id of a class, registering it the first time
+	 * @param cls
+	 * @return
+	 */
+	public static int of(Class<?> cls) {
+		final Integer id = s_Ids.get(cls);
+		return id != null? id : register(cls);
+	}
+
+	/**
+	 * returns the id of a class without registering it
+	 * @param cls
+	 * @return -1 if the class was never registered
+	 */
+	public static int find(Class<?> cls) {
+		final Integer id = s_Ids.get(cls);
+		return id != null? id : -1;
+	}
+
+	public static synchronized Class<?> classOf(int id) {
+		return id >= 0 && id < s_Count? s_Classes[id] : null;
+	}
+
+	/** returns the number of registered classes */
+	public static synchronized int count() {
+		return s_Count;
+	}
+
+	private static synchronized int register(Class<?> cls) {
+		final Integer existing = s_Ids.get(cls);
+		if(existing != null) {
+			return existing;
+		}
+		final int id = s_Count++;
+		if(id == s_Classes.length) {
+			final Class<?> [] classes = new Class<?>[id*2];
+			System.arraycopy(s_Classes, 0, classes, 0, id);
+			s_Classes = classes;
+		}
+		s_Classes[id] = cls;
+		final HashMap<Class<?>, Integer> ids = new HashMap<Class<?>, Integer>(s_Ids);
+		ids.put(cls, id);
+		s_Ids = ids;
+		return id;
+	}
+}
@@ -0,0 +1,75 @@
+package opengl_components;
+
+import java.nio.ByteBuffer;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+/**
+ * ProgramBinarySupport through glGetProgramBinary and glProgramBinary of
+ * GLES 3.0, bound since API 18. The class must not be loaded before the
+ * caller checked Build.VERSION.SDK_INT >= 18 and that the current context
+ * is ES 3.0 or later, an ES 2.0 context on a 3.0 driver usually is. Must be
+ * used on the GL thread.
+ */
+public class GLES30ProgramBinarySupport implements ProgramBinarySupport {
+
+	private final int [] m_Values = new int[1];
+	private final String m_Tag;
+
+	private GLES30ProgramBinarySupport(String tag) {
+		m_Tag = tag;
+	}
+
+	/**
+	 * returns the program binary support of the current context, only call
+	 * it on API 18 and later with an ES 3.0 context
+	 * @return null on drivers without binary formats
+	 */
+	public static GLES30ProgramBinarySupport create() {
+		final int [] formats = new int[1];
+		GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+		if(formats[0] <= 0) {
+			return null;
+		}
+		return new GLES30ProgramBinarySupport(GLES20.glGetString(GLES20.GL_RENDERER)
+				+ "\n" + GLES20.glGetString(GLES20.GL_VERSION));
+	}
+
+	/**
+	 * returns the renderer and driver version, binaries written with another
+	 * tag are not worth loading
+	 * @return
+	 */
+	public String getTag() {
+		return m_Tag;
+	}
+
+	@Override
+	public byte [] getProgramBinary(int program, int [] format) {
+		GLES20.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, m_Values, 0);
+		final int length = m_Values[0];
+		if(length <= 0) {
+			return null;
+		}
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+		GLES30.glGetProgramBinary(program, length, m_Values, 0, format, 0, buffer);
+		if(GLES20.glGetError() != GLES20.GL_NO_ERROR || m_Values[0] <= 0) {
+			return null;
+		}
+		final byte [] binary = new byte[m_Values[0]];
+		buffer.get(binary);
+		return binary;
+	}
+
+	@Override
+	public boolean loadProgramBinary(int program, int format, byte [] binary) {
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(binary.length);
+		buffer.put(binary).position(0);
+		GLES30.glProgramBinary(program, format, buffer, binary.length);
+		// a rejected binary only sets the link status, a bad format raises an error too
+		final boolean error = GLES20.glGetError() != GLES20.GL_NO_ERROR;
+		GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, m_Values, 0);
+		return !error && m_Values[0] != 0;
+	}
+}
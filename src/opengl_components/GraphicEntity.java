@@ -1,8 +1,5 @@
 package opengl_components;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import math_components.Matrix4x4;
 import math_components.Quaternion;
 import math_components.Vector3;
@@ -14,32 +11,115 @@ public class GraphicEntity {
 		public void Start();
 	}
 	
-	// Transformations
-	Vector3 m_LocalPosition;
-	Vector3 m_LocalScale;
-	Quaternion m_LocalRotation;
+	/**
+	 * A script that only reads and writes its own state and the transform of
+	 * its own entity, so a ScriptSystem can run it on a worker thread next to
+	 * the scripts of other entities. It must not read the world transforms of
+	 * entities that other scripts move, nor create, destroy or reparent
+	 * entities or add and remove scripts. Scripts that do are plain
+	 * Scriptables and run one at a time
+	 */
+	public interface LocalScriptable extends Scriptable {
+	}
+	
+	// Transformations, stored in a flat TransformStore. The id is a stable
+	// handle, the dense index it maps to changes when the store is sorted
+	final TransformStore m_Store;
+	final int m_Id;
+	boolean m_bDestroyed;
+	
+	// Scratch values so the transform math does not allocate
+	final Quaternion m_ScratchRotation = new Quaternion(0,0,0,1);
+	final Vector3 m_ScratchVector = new Vector3(0,0,0);
 	
-	// Scene graph Transformation matrix
-	Matrix4x4 m_AccumulatedMatrix;
-	boolean m_bMatrixIsDirty;
+	// Euler angles are only computed when asked for and kept with the rotation
+	// they belong to: the local rotation, and for the world ones also the
+	// world rotation of the parent. Any write to the store makes them stale
+	private Vector3 m_LocalEulerAngles;
+	private float [] m_LocalEulerKey;
+	private Vector3 m_WorldEulerAngles;
+	private float [] m_WorldEulerKey;
 	
-	// Scene graph hierarchy
-	boolean m_bLocked = false;
+	// Scene graph hierarchy, the children are linked in the store
 	GraphicEntity m_Parent;
-	List<GraphicEntity> m_Children;
 	
-	// "Game" Logic/Scripts
-	List<Scriptable> m_Scripts;
+	// "Game" Logic/Scripts live in the ComponentStore of the store, by class
 	
 	public GraphicEntity() {
-		m_LocalPosition = Vector3.zero();
-		m_LocalScale = Vector3.one();
-		m_LocalRotation = Quaternion.identity();
-		m_bMatrixIsDirty = true;
+		this(TransformStore.getDefault());
+	}
+	
+	public GraphicEntity(TransformStore store) {
+		m_Store = store;
+		m_Id = store.create(this);
+		m_bDestroyed = false;
 		
 		m_Parent = null;
-		m_Children = new ArrayList<GraphicEntity>();
-		m_Scripts = new ArrayList<GraphicEntity.Scriptable>();
+	}
+	
+	public TransformStore getStore() {
+		return m_Store;
+	}
+	
+	/**
+	 * returns the id of the transform of this entity, stable until it is destroyed
+	 * @return
+	 */
+	public int getId() {
+		return m_Id;
+	}
+	
+	/**
+	 * returns the current dense index of this entity in its store, only valid
+	 * until the store is sorted again
+	 * @return
+	 */
+	public int getIndex() {
+		return m_Store.indexOf(m_Id);
+	}
+	
+	/**
+	 * Releases the transform of this entity and destroys its children, the entity
+	 * must not be used afterwards
+	 */
+	public void destroy() {
+		if(m_bDestroyed) {
+			return;
+		}
+		
+		// children before their parents, walking the subtree instead of recursing
+		final TransformStore store = m_Store;
+		int id = firstLeaf(store, m_Id);
+		while(id != m_Id) {
+			final int sibling = store.nextSibling(id);
+			final int next = sibling >= 0? firstLeaf(store, sibling) : store.parentIdOf(id);
+			final GraphicEntity child = store.entityAt(store.indexOf(id));
+			if(child != null) {
+				child.release();
+			} else {
+				store.release(id);
+			}
+			id = next;
+		}
+		release();
+	}
+	
+	private static int firstLeaf(TransformStore store, int id) {
+		for(int child = store.firstChild(id); child >= 0; child = store.firstChild(id)) {
+			id = child;
+		}
+		return id;
+	}
+	
+	/** Releases the transform of this entity, which has no children anymore */
+	private void release() {
+		// the id is handed out again, its components must go with it
+		if(m_Store.m_Components.removeAll(m_Id) > 0) {
+			m_Store.scriptsChanged();
+		}
+		m_Store.release(m_Id);
+		m_Parent = null;
+		m_bDestroyed = true;
 	}
 	
 	/**
@@ -47,12 +127,29 @@ public class GraphicEntity {
 	 * or to the properties
 	 */
 	protected void recalculateMatrix() {
-		final Matrix4x4 rigidbodyMatrix = Matrix4x4.createRigidbodyMatrix(m_LocalRotation, m_LocalPosition);
-		final Matrix4x4 scaleMatrix = Matrix4x4.createScaleMatrix(m_LocalScale);
-		final Matrix4x4 parentMatrix = m_Parent != null? m_Parent.getWorldTransformationMatrix() : Matrix4x4.identity();
-		
-		m_AccumulatedMatrix = Matrix4x4.mult(parentMatrix, Matrix4x4.mult(rigidbodyMatrix,scaleMatrix));
-		m_bMatrixIsDirty = false;
+		m_Store.updateWorld(getIndex());
+	}
+	
+	/**
+	 * flags this entity and its whole subtree so the cached world transform is
+	 * recalculated the next time it is needed
+	 */
+	protected void markDirty() {
+		m_Store.markSubtreeDirty(m_Id);
+	}
+	
+	public boolean isDirty() {
+		return m_Store.isDirty(getIndex());
+	}
+	
+	/**
+	 * makes sure the world transform is up to date and returns the dense index
+	 * @return
+	 */
+	int updatedIndex() {
+		final int index = getIndex();
+		m_Store.updateWorld(index);
+		return index;
 	}
 	
 	/**
@@ -60,196 +157,502 @@ public class GraphicEntity {
 	 * @return
 	 */
 	public Matrix4x4 getWorldTransformationMatrix() {
-		if(m_bMatrixIsDirty) {
-			recalculateMatrix();
-		}
-		
-		Matrix4x4 copy = new Matrix4x4();
-		copy.set(m_AccumulatedMatrix.matrix());
-		return copy;
+		return getWorldTransformationMatrix(new Matrix4x4());
+	}
+	
+	/**
+	 * copies the world transformation matrix into out
+	 * @param out
+	 * @return out
+	 */
+	public Matrix4x4 getWorldTransformationMatrix(Matrix4x4 out) {
+		final int index = updatedIndex();
+		return out.set(m_Store.worldMatrices(), index*TransformStore.MATRIX_SIZE);
+	}
+	
+	/**
+	 * copies the inverse of the world transformation matrix into out, the
+	 * store caches it until the world transform changes
+	 * @param out
+	 * @return out
+	 */
+	public Matrix4x4 getInverseWorldTransformationMatrix(Matrix4x4 out) {
+		final int index = updatedIndex();
+		final int o = m_Store.inverseWorld(index);
+		return out.set(m_Store.inverseWorldMatrices(), o);
 	}
 	
-	// Local gets
+	/**
+	 * transforms a point from the local space of this entity to world space
+	 * @param point
+	 * @param out can be point
+	 * @return out
+	 */
+	public Vector3 transformPoint(Vector3 point, Vector3 out) {
+		final float [] m = m_Store.worldMatrices();
+		final int o = updatedIndex()*TransformStore.MATRIX_SIZE;
+		return transformPoint(m, o, point, out);
+	}
+	
+	/**
+	 * transforms a world point to the local space of this entity through the
+	 * cached inverse world matrix
+	 * @param point
+	 * @param out can be point
+	 * @return out
+	 */
+	public Vector3 inverseTransformPoint(Vector3 point, Vector3 out) {
+		final int o = m_Store.inverseWorld(updatedIndex());
+		return transformPoint(m_Store.inverseWorldMatrices(), o, point, out);
+	}
+	
+	private static Vector3 transformPoint(float [] m, int o, Vector3 point, Vector3 out) {
+		final float x = point.x, y = point.y, z = point.z;
+		out.set(x*m[o] + y*m[o + 4] + z*m[o + 8] + m[o + 12],
+				x*m[o + 1] + y*m[o + 5] + z*m[o + 9] + m[o + 13],
+				x*m[o + 2] + y*m[o + 6] + z*m[o + 10] + m[o + 14]);
+		return out;
+	}
+	
+	// Local gets, these return copies since the values live in the store
 	public Vector3 getLocalEulerAngles() {
-		return m_LocalRotation.toEulerAngles();
+		return getLocalEulerAngles(new Vector3(0,0,0));
+	}
+	
+	/**
+	 * returns the local rotation as Euler angles in degrees, the angles last
+	 * set are returned as they were given while the rotation is unchanged
+	 * @param out
+	 * @return out
+	 */
+	public Vector3 getLocalEulerAngles(Vector3 out) {
+		final float [] r = m_Store.localRotations();
+		final int o = getIndex()*TransformStore.ROTATION_SIZE;
+		if(m_LocalEulerKey == null) {
+			m_LocalEulerAngles = new Vector3(0,0,0);
+			m_LocalEulerKey = new float[4];
+		} else if(matches(m_LocalEulerKey, 0, r, o)) {
+			out.set(m_LocalEulerAngles);
+			return out;
+		}
+		m_ScratchRotation.set(r[o], r[o + 1], r[o + 2], r[o + 3]).toEulerAngles(m_LocalEulerAngles);
+		System.arraycopy(r, o, m_LocalEulerKey, 0, 4);
+		out.set(m_LocalEulerAngles);
+		return out;
 	}
 	
 	public Quaternion getLoacalRotation() {
-		return m_LocalRotation;
+		return getLocalRotation(new Quaternion(0,0,0,1));
+	}
+	
+	public Quaternion getLocalRotation(Quaternion out) {
+		final float [] r = m_Store.localRotations();
+		final int o = getIndex()*TransformStore.ROTATION_SIZE;
+		return out.set(r[o], r[o + 1], r[o + 2], r[o + 3]);
 	}
 	
 	public Vector3 getLocalPosition() {
-		return m_LocalPosition;
+		return getLocalPosition(new Vector3(0,0,0));
+	}
+	
+	public Vector3 getLocalPosition(Vector3 out) {
+		final float [] p = m_Store.localPositions();
+		final int o = getIndex()*TransformStore.POSITION_SIZE;
+		out.set(p[o], p[o + 1], p[o + 2]);
+		return out;
 	}
 	
 	public Vector3 getLocalScale() {
-		return m_LocalScale;
+		return getLocalScale(new Vector3(0,0,0));
+	}
+	
+	public Vector3 getLocalScale(Vector3 out) {
+		final float [] s = m_Store.localScales();
+		final int o = getIndex()*TransformStore.SCALE_SIZE;
+		out.set(s[o], s[o + 1], s[o + 2]);
+		return out;
 	}
 	
 	// Local sets
 	public void setLocalEulerAngles(Vector3 eulerAngles) {
-		m_LocalRotation = new Quaternion(eulerAngles);
-		m_bMatrixIsDirty = true;
+		final float x = eulerAngles.x, y = eulerAngles.y, z = eulerAngles.z;
+		setLocalRotation(m_ScratchRotation.setEulerAngles(eulerAngles));
+		if(m_LocalEulerKey == null) {
+			m_LocalEulerAngles = new Vector3(0,0,0);
+			m_LocalEulerKey = new float[4];
+		}
+		m_LocalEulerAngles.set(x, y, z);
+		System.arraycopy(m_Store.localRotations(), getIndex()*TransformStore.ROTATION_SIZE, m_LocalEulerKey, 0, 4);
 	}
 	
 	public void setLocalRotation(Quaternion rotation) {
-		m_LocalRotation = rotation;
-		m_bMatrixIsDirty = true;
+		m_Store.setLocalRotation(getIndex(), rotation.x, rotation.y, rotation.z, rotation.w);
+		markDirty();
 	}
 	
 	public void setLocalPosition(Vector3 position) {
-		m_LocalPosition = position;
-		m_bMatrixIsDirty = true;
+		m_Store.setLocalPosition(getIndex(), position.x, position.y, position.z);
+		markDirty();
 	}
 	
 	public void setLocalScale(Vector3 scale) {
-		m_LocalScale = scale;
-		m_bMatrixIsDirty = true;
+		m_Store.setLocalScale(getIndex(), scale.x, scale.y, scale.z);
+		markDirty();
 	}
 	
-	// get as global components
+	// get as global components, these are read from the cached world transform
 	public Quaternion getRotation() {
-		Quaternion p = m_Parent != null? m_Parent.getRotation().normalize() : Quaternion.identity();
-		return Quaternion.mult(p, m_LocalRotation.normalize());
+		return getRotation(new Quaternion(0,0,0,1));
+	}
+	
+	public Quaternion getRotation(Quaternion out) {
+		final float [] r = m_Store.worldRotations();
+		final int o = updatedIndex()*TransformStore.ROTATION_SIZE;
+		return out.set(r[o], r[o + 1], r[o + 2], r[o + 3]);
 	}
 	
 	public Vector3 getEulerAngles() {
-		return getRotation().toEulerAngles();
+		return getEulerAngles(new Vector3(0,0,0));
+	}
+	
+	/**
+	 * returns the world rotation as Euler angles in degrees, the angles last
+	 * set are returned as they were given while the rotation is unchanged
+	 * @param out
+	 * @return out
+	 */
+	public Vector3 getEulerAngles(Vector3 out) {
+		final int index = updatedIndex();
+		if(m_WorldEulerKey == null) {
+			m_WorldEulerAngles = new Vector3(0,0,0);
+			m_WorldEulerKey = new float[8];
+		} else if(matchesWorldKey(index)) {
+			out.set(m_WorldEulerAngles);
+			return out;
+		}
+		final float [] r = m_Store.worldRotations();
+		final int o = index*TransformStore.ROTATION_SIZE;
+		m_ScratchRotation.set(r[o], r[o + 1], r[o + 2], r[o + 3]).toEulerAngles(m_WorldEulerAngles);
+		storeWorldKey(index);
+		out.set(m_WorldEulerAngles);
+		return out;
 	}
 	
 	public Vector3 getPosition() {
-		Matrix4x4 pTransf = m_Parent != null? m_Parent.getWorldTransformationMatrix() : Matrix4x4.identity();
-		return Matrix4x4.multiplyVector3(m_LocalPosition, pTransf);
+		return getPosition(new Vector3(0,0,0));
+	}
+	
+	public Vector3 getPosition(Vector3 out) {
+		final float [] m = m_Store.worldMatrices();
+		final int o = updatedIndex()*TransformStore.MATRIX_SIZE;
+		out.set(m[o + 12], m[o + 13], m[o + 14]);
+		return out;
 	}
 	
 	public Vector3 getScale() {
-		Vector3 pSca = m_Parent != null? m_Parent.getScale() : Vector3.one();
-		return new Vector3(m_LocalScale.x*pSca.x, m_LocalScale.y*pSca.y, m_LocalScale.z*pSca.z);
+		return getScale(new Vector3(0,0,0));
+	}
+	
+	public Vector3 getScale(Vector3 out) {
+		final float [] s = m_Store.worldScales();
+		final int o = updatedIndex()*TransformStore.SCALE_SIZE;
+		out.set(s[o], s[o + 1], s[o + 2]);
+		return out;
 	}
 	
 	// set as global components 
-	// TODO Andres WARNING!! these are buggy as hell I still need to do the math for these
 	public void setEulerAngles(Vector3 eulerAngles) {
-		setRotation(new Quaternion(eulerAngles));
+		final float x = eulerAngles.x, y = eulerAngles.y, z = eulerAngles.z;
+		setRotation(m_ScratchRotation.setEulerAngles(eulerAngles));
+		if(m_WorldEulerKey == null) {
+			m_WorldEulerAngles = new Vector3(0,0,0);
+			m_WorldEulerKey = new float[8];
+		}
+		m_WorldEulerAngles.set(x, y, z);
+		// the parent world rotation is up to date, setRotation read it
+		storeWorldKey(getIndex());
 	}
 	
-	// I really don't know if this is the right math, I need to double check this but it kinda makes sense
-	// dunno though
 	public void setRotation(Quaternion rotation) {
-		Quaternion p = m_Parent != null? m_Parent.getRotation() : Quaternion.identity();
-		p = p.normalize();
-		// invert
-		p = p.invert();
+		float x = rotation.x, y = rotation.y, z = rotation.z, w = rotation.w;
 		
-		m_LocalRotation = Quaternion.normalize(Quaternion.mult(p,rotation));
-		m_bMatrixIsDirty = true;
+		if(m_Parent != null) {
+			// world = local*parent so local = world*conjugate(parent), read from
+			// the store so the parent's scratch values are not touched
+			final float [] r = m_Store.worldRotations();
+			final int o = m_Parent.updatedIndex()*TransformStore.ROTATION_SIZE;
+			final float px = -r[o], py = -r[o + 1], pz = -r[o + 2], pw = r[o + 3];
+			final float _x = w*px + x*pw + y*pz - z*py;
+			final float _y = w*py - x*pz + y*pw + z*px;
+			final float _z = w*pz + x*py - y*px + z*pw;
+			final float _w = w*pw - x*px - y*py - z*pz;
+			x = _x; y = _y; z = _z; w = _w;
+		}
+		
+		final float inv = 1/(float)Math.sqrt(x*x + y*y + z*z + w*w);
+		m_Store.setLocalRotation(getIndex(), x*inv, y*inv, z*inv, w*inv);
+		markDirty();
+	}
+	
+	/**
+	 * Rotates around an axis of this entity's own space, on top of its
+	 * current rotation, without going through Euler angles
+	 * @param axis does not need to be normalized
+	 * @param angle degrees, like the Euler angles
+	 */
+	public void rotateLocal(Vector3 axis, float angle) {
+		rotateLocal(m_ScratchRotation.setAxisAngle(axis, (float)Math.toRadians(angle)));
+	}
+	
+	/**
+	 * Rotates by Euler angles in this entity's own space, on top of its
+	 * current rotation, a frame step of a script that used to add to the angles
+	 * @param delta degrees
+	 */
+	public void rotateEuler(Vector3 delta) {
+		rotateLocal(m_ScratchRotation.setEulerAngles(delta));
+	}
+	
+	/**
+	 * Applies a rotation before the local one, so in this entity's own space
+	 * @param delta unit quaternion
+	 */
+	public void rotateLocal(Quaternion delta) {
+		final float [] r = m_Store.localRotations();
+		final int o = getIndex()*TransformStore.ROTATION_SIZE;
+		final float x = r[o], y = r[o + 1], z = r[o + 2], w = r[o + 3];
+		// delta*local
+		final float _x = delta.w*x + delta.x*w + delta.y*z - delta.z*y;
+		final float _y = delta.w*y - delta.x*z + delta.y*w + delta.z*x;
+		final float _z = delta.w*z + delta.x*y - delta.y*x + delta.z*w;
+		final float _w = delta.w*w - delta.x*x - delta.y*y - delta.z*z;
+		// renormalized so the steps do not drift
+		final float inv = 1/(float)Math.sqrt(_x*_x + _y*_y + _z*_z + _w*_w);
+		m_Store.setLocalRotation(getIndex(), _x*inv, _y*inv, _z*inv, _w*inv);
+		markDirty();
 	}
 	
 	public void setPosition(Vector3 position) {
+		final Vector3 local = m_ScratchVector;
+		local.set(position);
 		
-		final Matrix4x4 invTransl;
-		final Matrix4x4 invRotation;
-		final Matrix4x4 invScale;
+		if(m_Parent != null) {
+			// the local position is the world one in the parent space
+			m_Parent.inverseTransformPoint(local, local);
+		}
+		setLocalPosition(local);
+	}
+	
+	public void setScale(Vector3 scale) {
+		final Vector3 local = m_ScratchVector;
+		local.set(scale);
 		
 		if(m_Parent != null) {
-			invTransl = new Matrix4x4();
-			invTransl.setColumn(3, Vector3.scale(-1, m_Parent.getPosition()), 1);
-			
-			invRotation = Matrix4x4.transpose(Matrix4x4.createRotationMatrix(m_Parent.getRotation()));
-			
-			Vector3 scal = m_Parent.getScale();
-			invScale = Matrix4x4.createScaleMatrix(new Vector3(1/scal.x, 1/scal.y, 1/scal.z));
+			final float [] s = m_Store.worldScales();
+			final int o = m_Parent.updatedIndex()*TransformStore.SCALE_SIZE;
+			local.set(local.x/s[o], local.y/s[o + 1], local.z/s[o + 2]);
+		}
+		setLocalScale(local);
+	}
+	
+	private static boolean matches(float [] key, int keyOffset, float [] r, int o) {
+		return key[keyOffset] == r[o] && key[keyOffset + 1] == r[o + 1]
+				&& key[keyOffset + 2] == r[o + 2] && key[keyOffset + 3] == r[o + 3];
+	}
+	
+	/** the world Euler angles are valid while the local and parent rotations are the same */
+	private boolean matchesWorldKey(int index) {
+		if(!matches(m_WorldEulerKey, 0, m_Store.localRotations(), index*TransformStore.ROTATION_SIZE)) {
+			return false;
+		}
+		final int parent = m_Store.parentOf(index);
+		if(parent < 0) {
+			return m_WorldEulerKey[7] == 1 && m_WorldEulerKey[4] == 0 && m_WorldEulerKey[5] == 0 && m_WorldEulerKey[6] == 0;
+		}
+		return matches(m_WorldEulerKey, 4, m_Store.worldRotations(), parent*TransformStore.ROTATION_SIZE);
+	}
+	
+	private void storeWorldKey(int index) {
+		System.arraycopy(m_Store.localRotations(), index*TransformStore.ROTATION_SIZE, m_WorldEulerKey, 0, 4);
+		final int parent = m_Store.parentOf(index);
+		if(parent < 0) {
+			m_WorldEulerKey[4] = m_WorldEulerKey[5] = m_WorldEulerKey[6] = 0;
+			m_WorldEulerKey[7] = 1;
 		} else {
-			invTransl = Matrix4x4.identity();
-			invRotation = Matrix4x4.identity();
-			invScale = Matrix4x4.identity();
+			System.arraycopy(m_Store.worldRotations(), parent*TransformStore.ROTATION_SIZE, m_WorldEulerKey, 4, 4);
 		}
-		
-		m_LocalPosition = Matrix4x4.multiplyVector3(position, Matrix4x4.mult(Matrix4x4.mult(invTransl, invRotation), invScale));		
-		m_bMatrixIsDirty = true;
 	}
 	
-	public void setScale(Vector3 scale) {
-		Vector3 pSca = m_Parent != null? m_Parent.getScale() : Vector3.one();
-		m_LocalScale = new Vector3(scale.x/pSca.x, scale.y/pSca.y, scale.z/pSca.z);
-		m_bMatrixIsDirty = true;
+	// bounds, used for culling
+	/**
+	 * Sets the local axis aligned box of what this entity draws
+	 * @param center
+	 * @param extents half size on every axis
+	 */
+	public void setLocalBounds(Vector3 center, Vector3 extents) {
+		m_Store.setLocalBounds(getIndex(), center.x, center.y, center.z, extents.x, extents.y, extents.z);
+	}
+	
+	/**
+	 * Sets the local bounds to the box around a sphere
+	 * @param center
+	 * @param radius
+	 */
+	public void setLocalBoundingSphere(Vector3 center, float radius) {
+		m_Store.setLocalBounds(getIndex(), center.x, center.y, center.z, radius, radius, radius);
+	}
+	
+	/**
+	 * Removes the bounds, the entity is then never visible by itself but its
+	 * children still are
+	 */
+	public void clearLocalBounds() {
+		m_Store.clearLocalBounds(getIndex());
+	}
+	
+	public boolean hasBounds() {
+		return m_Store.hasBounds(getIndex());
+	}
+	
+	/**
+	 * copies the world box of this entity, empty (min > max) without bounds
+	 * @param min
+	 * @param max
+	 */
+	public void getWorldBounds(Vector3 min, Vector3 max) {
+		m_Store.updateBounds();
+		final float [] b = m_Store.worldBounds();
+		final int o = getIndex()*TransformStore.BOUNDS_SIZE;
+		min.set(b[o], b[o + 1], b[o + 2]);
+		max.set(b[o + 3], b[o + 4], b[o + 5]);
 	}
 	
 	// scene graph
-	public synchronized void setParent(GraphicEntity parent) {
-		if(parent == m_Parent || m_bLocked) {
+	/**
+	 * Moves this entity under a parent, null makes it a root. Like every
+	 * setter this is only called by the thread that owns the scene, other
+	 * threads read the transforms through a SnapshotBuffer
+	 * @param parent
+	 * @throws IllegalArgumentException if the parent is this entity, one of
+	 * its descendants or in another store
+	 */
+	public void setParent(GraphicEntity parent) {
+		if(parent == m_Parent) {
 			return;
 		}
-		m_bLocked = true;
-		
-		GraphicEntity curParent = m_Parent;
-		if(curParent != null) {
-			curParent.removeChildren(this);
+		if(parent != null && parent.m_Store != m_Store) {
+			throw new IllegalArgumentException("Parent belongs to a different TransformStore");
 		}
+		
+		// the store rejects cycles, relinks the child lists and flags the subtree
+		m_Store.setParent(m_Id, parent != null? parent.m_Id : -1);
 		m_Parent = parent;
-		if(m_Parent != null) {
-			m_Parent.addChildren(this);
-		}
-		m_bMatrixIsDirty = true;
-		m_bLocked = false;
+	}
+	
+	public GraphicEntity getParent() {
+		return m_Parent;
+	}
+	
+	public int getChildCount() {
+		return m_Store.childCount(m_Id);
+	}
+	
+	/**
+	 * returns the first child, the others follow with getNextSibling()
+	 * @return null without children
+	 */
+	public GraphicEntity getFirstChild() {
+		final int child = m_Store.firstChild(m_Id);
+		return child >= 0? m_Store.entityAt(m_Store.indexOf(child)) : null;
+	}
+	
+	/**
+	 * returns the next child of the parent of this entity
+	 * @return null for the last child and for roots
+	 */
+	public GraphicEntity getNextSibling() {
+		final int sibling = m_Store.nextSibling(m_Id);
+		return sibling >= 0? m_Store.entityAt(m_Store.indexOf(sibling)) : null;
 	}
 	
 	public void removeChildren(GraphicEntity children) {
-		if(children == null || !m_Children.contains(children)) {
-			return;
+		if(children != null && children.m_Parent == this) {
+			children.setParent(null);
 		}
-		
-		m_Children.remove(children);
-		children.setParent(null);
-		m_bLocked = false;
 	}
 	
 	public void addChildren(GraphicEntity children) {
-		if(children == null || m_Children.contains(children)) {
-			return;
+		if(children != null) {
+			children.setParent(this);
 		}
-		
-		m_Children.remove(children);
-		children.setParent(this);
 	}
 	
 	// Scripts management
+	/**
+	 * Adds a script, scripts of one class run in the order they were added
+	 * @param newScript
+	 */
 	public void addScript(Scriptable newScript) {
-		if(newScript == null || m_Scripts.contains(newScript)) {
-			return;
+		if(newScript != null && m_Store.m_Components.add(m_Id, newScript)) {
+			m_Store.scriptsChanged();
 		}
-		
-		m_Scripts.add(newScript);
 	}
 	
+	/**
+	 * returns the first script of a class, or the first one that is an
+	 * instance of it when cls is an interface or a base class
+	 * @param cls
+	 * @return null if there is none
+	 */
 	public Scriptable getScriptOfType(Class<?> cls) {
-		
-		for(Scriptable s : m_Scripts) {
-			if(cls.equals(s)) {
-				return s;
-			}
-		}
-		
-		return null;
+		return m_Store.m_Components.find(cls, m_Id);
+	}
+	
+	/**
+	 * Typed getScriptOfType
+	 * @param cls
+	 * @return null if there is none
+	 */
+	public <T> T getScript(Class<T> cls) {
+		return cls.cast(getScriptOfType(cls));
 	}
 	
 	public void removeScript(Scriptable s) {
-		if(s == null || !m_Scripts.contains(s)) {
-			return;
+		if(s != null && m_Store.m_Components.remove(m_Id, s)) {
+			m_Store.scriptsChanged();
 		}
-		
-		m_Scripts.remove(s);
 	}
 	
+	/**
+	 * Calls Start on every script, class by class in the order the classes
+	 * were first registered
+	 */
 	public void start() {
-		for(Scriptable s : m_Scripts) {
-			s.Start();
+		final ComponentStore components = m_Store.m_Components;
+		for(int type = 0, count = components.arrayCount(); type < count; type++) {
+			final ComponentStore.ComponentArray array = components.arrayAt(type);
+			if(array == null) {
+				continue;
+			}
+			for(int slot = array.firstSlot(m_Id); slot >= 0; slot = array.nextSlot(slot)) {
+				array.m_Components[slot].Start();
+			}
 		}
 	}
 	
+	/**
+	 * Calls Update on every script, in the same order as start()
+	 */
 	public void update() {
-		for(Scriptable s : m_Scripts) {
-			s.Update();
+		final ComponentStore components = m_Store.m_Components;
+		for(int type = 0, count = components.arrayCount(); type < count; type++) {
+			final ComponentStore.ComponentArray array = components.arrayAt(type);
+			if(array == null) {
+				continue;
+			}
+			for(int slot = array.firstSlot(m_Id); slot >= 0; slot = array.nextSlot(slot)) {
+				array.m_Components[slot].Update();
+			}
 		}
 	}
 }
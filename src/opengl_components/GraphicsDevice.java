@@ -0,0 +1,83 @@
+package opengl_components;
+
+import java.nio.Buffer;
+
+/**
+ * The subset of OpenGL ES 2.0 the engine uses. The renderer talks to this
+ * instead of the GLES20 statics so the render path can also run on the
+ * HeadlessGraphicsDevice, without a GPU. Methods and constants follow the
+ * GLES20 names and values.
+ */
+public interface GraphicsDevice {
+
+	// Enums, same values as GLES20
+	public static final int GL_ZERO = 0;
+	public static final int GL_ONE = 1;
+	public static final int GL_DEPTH_BUFFER_BIT = 0x00000100;
+	public static final int GL_COLOR_BUFFER_BIT = 0x00004000;
+	public static final int GL_TRIANGLES = 0x0004;
+	public static final int GL_SRC_ALPHA = 0x0302;
+	public static final int GL_ONE_MINUS_SRC_ALPHA = 0x0303;
+	public static final int GL_CULL_FACE = 0x0B44;
+	public static final int GL_DEPTH_TEST = 0x0B71;
+	public static final int GL_BLEND = 0x0BE2;
+	public static final int GL_UNSIGNED_SHORT = 0x1403;
+	public static final int GL_FLOAT = 0x1406;
+	public static final int GL_STREAM_DRAW = 0x88E0;
+	public static final int GL_STATIC_DRAW = 0x88E4;
+	public static final int GL_DYNAMIC_DRAW = 0x88E8;
+	public static final int GL_ARRAY_BUFFER = 0x8892;
+	public static final int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+	public static final int GL_FRAGMENT_SHADER = 0x8B30;
+	public static final int GL_VERTEX_SHADER = 0x8B31;
+	public static final int GL_COMPILE_STATUS = 0x8B81;
+	public static final int GL_LINK_STATUS = 0x8B82;
+
+	// Frame
+	public void glClearColor(float red, float green, float blue, float alpha);
+	public void glClear(int mask);
+	public void glViewport(int x, int y, int width, int height);
+
+	// Fixed function state
+	public void glEnable(int cap);
+	public void glDisable(int cap);
+	public void glBlendFunc(int sfactor, int dfactor);
+
+	// Shaders and programs
+	public int glCreateShader(int type);
+	public void glShaderSource(int shader, String source);
+	public void glCompileShader(int shader);
+	public void glGetShaderiv(int shader, int pname, int [] params, int offset);
+	public String glGetShaderInfoLog(int shader);
+	public void glDeleteShader(int shader);
+	public int glCreateProgram();
+	public void glAttachShader(int program, int shader);
+	public void glBindAttribLocation(int program, int index, String name);
+	public void glLinkProgram(int program);
+	public void glGetProgramiv(int program, int pname, int [] params, int offset);
+	public String glGetProgramInfoLog(int program);
+	public void glDeleteProgram(int program);
+	public void glUseProgram(int program);
+	public int glGetUniformLocation(int program, String name);
+	public int glGetAttribLocation(int program, String name);
+
+	// Buffer objects
+	public void glGenBuffers(int n, int [] buffers, int offset);
+	public void glDeleteBuffers(int n, int [] buffers, int offset);
+	public void glBindBuffer(int target, int buffer);
+	public void glBufferData(int target, int size, Buffer data, int usage);
+	public void glBufferSubData(int target, int offset, int size, Buffer data);
+
+	// Vertex input
+	public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer data);
+	/** Buffer object version, offset is in bytes into the bound GL_ARRAY_BUFFER */
+	public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+	public void glEnableVertexAttribArray(int index);
+	public void glDisableVertexAttribArray(int index);
+
+	// Uniforms and draws
+	public void glUniformMatrix4fv(int location, int count, boolean transpose, float [] value, int offset);
+	public void glDrawArrays(int mode, int first, int count);
+	/** offset is in bytes into the bound GL_ELEMENT_ARRAY_BUFFER */
+	public void glDrawElements(int mode, int count, int type, int offset);
+}
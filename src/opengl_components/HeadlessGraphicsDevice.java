@@ -0,0 +1,673 @@
+package opengl_components;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * GraphicsDevice that draws nothing. It hands out fake object names, records
+ * the calls it receives as a command stream and counts what a real driver
+ * would have to do: draw calls, vertices, state changes (and how many of them
+ * were redundant) and bytes sent from client memory. Used to run and measure
+ * the render path without a GPU. Program binaries are supported, they only
+ * remember the attribute bindings of the program they were read from.
+ * Not thread safe, like a GL context it belongs to one thread.
+ */
+public class HeadlessGraphicsDevice implements GraphicsDevice, ProgramBinarySupport {
+
+	/** Attribute slots available, the GLES20 minimum is 8 */
+	public static final int MAX_VERTEX_ATTRIBS = 16;
+
+	/** Format of the program binaries this device hands out */
+	public static final int PROGRAM_BINARY_FORMAT = 0x4845;
+
+	// Command stream opcodes
+	public static final int CMD_CLEAR_COLOR = 0;
+	public static final int CMD_CLEAR = 1;
+	public static final int CMD_VIEWPORT = 2;
+	public static final int CMD_CREATE_SHADER = 3;
+	public static final int CMD_SHADER_SOURCE = 4;
+	public static final int CMD_COMPILE_SHADER = 5;
+	public static final int CMD_DELETE_SHADER = 6;
+	public static final int CMD_CREATE_PROGRAM = 7;
+	public static final int CMD_ATTACH_SHADER = 8;
+	public static final int CMD_BIND_ATTRIB_LOCATION = 9;
+	public static final int CMD_LINK_PROGRAM = 10;
+	public static final int CMD_DELETE_PROGRAM = 11;
+	public static final int CMD_USE_PROGRAM = 12;
+	public static final int CMD_VERTEX_ATTRIB_POINTER = 13;
+	public static final int CMD_ENABLE_VERTEX_ATTRIB_ARRAY = 14;
+	public static final int CMD_DISABLE_VERTEX_ATTRIB_ARRAY = 15;
+	public static final int CMD_UNIFORM_MATRIX4FV = 16;
+	public static final int CMD_DRAW_ARRAYS = 17;
+	public static final int CMD_GEN_BUFFERS = 18;
+	public static final int CMD_DELETE_BUFFERS = 19;
+	public static final int CMD_BIND_BUFFER = 20;
+	public static final int CMD_BUFFER_DATA = 21;
+	public static final int CMD_BUFFER_SUB_DATA = 22;
+	public static final int CMD_DRAW_ELEMENTS = 23;
+	public static final int CMD_ENABLE = 24;
+	public static final int CMD_DISABLE = 25;
+	public static final int CMD_BLEND_FUNC = 26;
+	public static final int CMD_GET_PROGRAM_BINARY = 27;
+	public static final int CMD_PROGRAM_BINARY = 28;
+
+	private static final String [] s_CommandNames = {
+		"glClearColor", "glClear", "glViewport", "glCreateShader", "glShaderSource",
+		"glCompileShader", "glDeleteShader", "glCreateProgram", "glAttachShader",
+		"glBindAttribLocation", "glLinkProgram", "glDeleteProgram", "glUseProgram",
+		"glVertexAttribPointer", "glEnableVertexAttribArray", "glDisableVertexAttribArray",
+		"glUniformMatrix4fv", "glDrawArrays", "glGenBuffers", "glDeleteBuffers",
+		"glBindBuffer", "glBufferData", "glBufferSubData", "glDrawElements",
+		"glEnable", "glDisable", "glBlendFunc", "glGetProgramBinary", "glProgramBinary"
+	};
+
+	/**
+	 * returns the GL function name of a command opcode
+	 * @param command
+	 * @return
+	 */
+	public static String commandName(int command) {
+		return s_CommandNames[command];
+	}
+
+	private static class Shader {
+		final int m_Type;
+		String m_Source;
+		boolean m_bCompiled;
+
+		Shader(int type) {
+			m_Type = type;
+		}
+	}
+
+	private static class Program {
+		Shader m_Vertex, m_Fragment;
+		boolean m_bLinked;
+		final HashMap<String, Integer> m_Attributes = new HashMap<String, Integer>();
+		final HashMap<String, Integer> m_Uniforms = new HashMap<String, Integer>();
+	}
+
+	private final HashMap<Integer, Shader> m_Shaders = new HashMap<Integer, Shader>();
+	private final HashMap<Integer, Program> m_Programs = new HashMap<Integer, Program>();
+	// attribute bindings of the programs read back as binaries, the binary is the index
+	private final ArrayList<HashMap<String, Integer>> m_BinaryImages = new ArrayList<HashMap<String, Integer>>();
+	// buffer object sizes in bytes
+	private final HashMap<Integer, Integer> m_Buffers = new HashMap<Integer, Integer>();
+	private long m_BufferMemory;
+	private int m_NextName = 1;
+
+	// Bound state
+	private int m_CurrentProgram;
+	private int m_ArrayBuffer;
+	private int m_ElementBuffer;
+	private boolean m_bBlend, m_bDepthTest, m_bCullFace;
+	private int m_BlendSource = GL_ONE, m_BlendDestination = GL_ZERO;
+	private final boolean [] m_AttribEnabled = new boolean[MAX_VERTEX_ATTRIBS];
+	private final int [] m_AttribSize = new int[MAX_VERTEX_ATTRIBS];
+	private final int [] m_AttribType = new int[MAX_VERTEX_ATTRIBS];
+	private final Buffer [] m_AttribData = new Buffer[MAX_VERTEX_ATTRIBS];
+
+	// Command stream, pairs of (opcode, main argument)
+	private boolean m_bRecording = true;
+	private int [] m_Commands = new int[256];
+	private int m_CommandCount;
+
+	// Counters
+	private long m_Calls;
+	private long m_DrawCalls;
+	private long m_Vertices;
+	private long m_StateChanges;
+	private long m_RedundantStateChanges;
+	private long m_BytesUploaded;
+	private long m_CullCandidates;
+	private long m_Culled;
+
+	/**
+	 * Enables or disables the command stream, the counters are always kept.
+	 * Turn it off for long runs so the stream does not grow
+	 * @param recording
+	 */
+	public void setRecording(boolean recording) {
+		m_bRecording = recording;
+	}
+
+	/**
+	 * returns the number of recorded commands
+	 * @return
+	 */
+	public int getCommandCount() {
+		return m_CommandCount;
+	}
+
+	/**
+	 * returns the opcode of a recorded command, one of the CMD_ constants
+	 * @param index
+	 * @return
+	 */
+	public int getCommand(int index) {
+		return m_Commands[index*2];
+	}
+
+	/**
+	 * returns the main argument of a recorded command: the object name, the
+	 * location or attribute index, or the vertex count for draws
+	 * @param index
+	 * @return
+	 */
+	public int getCommandArgument(int index) {
+		return m_Commands[index*2 + 1];
+	}
+
+	public void clearCommands() {
+		m_CommandCount = 0;
+	}
+
+	/** returns the number of GL calls received */
+	public long getCallCount() {
+		return m_Calls;
+	}
+
+	public long getDrawCalls() {
+		return m_DrawCalls;
+	}
+
+	/** returns the number of vertices submitted by the draw calls */
+	public long getVertexCount() {
+		return m_Vertices;
+	}
+
+	/** returns the number of program, buffer, attribute, uniform, capability and viewport changes */
+	public long getStateChanges() {
+		return m_StateChanges;
+	}
+
+	/** returns the state changes that set a value that was already set */
+	public long getRedundantStateChanges() {
+		return m_RedundantStateChanges;
+	}
+
+	/**
+	 * returns the bytes of uniforms, shader sources, buffer object data and
+	 * client side vertex data sent
+	 */
+	public long getBytesUploaded() {
+		return m_BytesUploaded;
+	}
+
+	/**
+	 * Adds the result of a culling pass to the counters, the device can not see
+	 * what was not submitted so the renderer reports it
+	 * @param candidates entities tested
+	 * @param culled entities rejected
+	 */
+	public void recordCulling(int candidates, int culled) {
+		m_CullCandidates += candidates;
+		m_Culled += culled;
+	}
+
+	/** returns the part of the culling candidates that were rejected, 0 to 1 */
+	public float getCullRatio() {
+		return m_CullCandidates > 0 ? (float)m_Culled/m_CullCandidates : 0;
+	}
+
+	/** returns the bytes held by live buffer objects, not reset by resetStats */
+	public long getBufferMemory() {
+		return m_BufferMemory;
+	}
+
+	/**
+	 * Resets the counters, usually once per frame
+	 */
+	public void resetStats() {
+		m_Calls = 0;
+		m_DrawCalls = 0;
+		m_Vertices = 0;
+		m_StateChanges = 0;
+		m_RedundantStateChanges = 0;
+		m_BytesUploaded = 0;
+		m_CullCandidates = 0;
+		m_Culled = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "calls: " + m_Calls + " draws: " + m_DrawCalls + " vertices: " + m_Vertices
+				+ " state changes: " + m_StateChanges + " (redundant: " + m_RedundantStateChanges
+				+ ") bytes: " + m_BytesUploaded
+				+ (m_CullCandidates > 0 ? " culled: " + m_Culled + "/" + m_CullCandidates : "");
+	}
+
+	private void record(int command, int argument) {
+		m_Calls++;
+		if(!m_bRecording) {
+			return;
+		}
+		if(m_CommandCount*2 == m_Commands.length) {
+			int [] commands = new int[m_Commands.length*2];
+			System.arraycopy(m_Commands, 0, commands, 0, m_Commands.length);
+			m_Commands = commands;
+		}
+		m_Commands[m_CommandCount*2] = command;
+		m_Commands[m_CommandCount*2 + 1] = argument;
+		m_CommandCount++;
+	}
+
+	private void stateChange(boolean redundant) {
+		m_StateChanges++;
+		if(redundant) {
+			m_RedundantStateChanges++;
+		}
+	}
+
+	private static void checkAttrib(int index) {
+		if(index < 0 || index >= MAX_VERTEX_ATTRIBS) {
+			throw new IllegalArgumentException("Invalid vertex attribute " + index);
+		}
+	}
+
+	private int boundBuffer(int target) {
+		if(target == GL_ARRAY_BUFFER) {
+			return m_ArrayBuffer;
+		} else if(target == GL_ELEMENT_ARRAY_BUFFER) {
+			return m_ElementBuffer;
+		}
+		throw new IllegalArgumentException("Invalid buffer target " + target);
+	}
+
+	private static int typeSize(int type) {
+		return type == GL_FLOAT ? 4 : 1;
+	}
+
+	@Override
+	public void glClearColor(float red, float green, float blue, float alpha) {
+		record(CMD_CLEAR_COLOR, 0);
+		stateChange(false);
+	}
+
+	@Override
+	public void glClear(int mask) {
+		record(CMD_CLEAR, mask);
+	}
+
+	@Override
+	public void glViewport(int x, int y, int width, int height) {
+		record(CMD_VIEWPORT, 0);
+		stateChange(false);
+	}
+
+	@Override
+	public void glEnable(int cap) {
+		record(CMD_ENABLE, cap);
+		setCapability(cap, true);
+	}
+
+	@Override
+	public void glDisable(int cap) {
+		record(CMD_DISABLE, cap);
+		setCapability(cap, false);
+	}
+
+	private void setCapability(int cap, boolean enabled) {
+		final boolean previous;
+		if(cap == GL_BLEND) {
+			previous = m_bBlend;
+			m_bBlend = enabled;
+		} else if(cap == GL_DEPTH_TEST) {
+			previous = m_bDepthTest;
+			m_bDepthTest = enabled;
+		} else if(cap == GL_CULL_FACE) {
+			previous = m_bCullFace;
+			m_bCullFace = enabled;
+		} else {
+			throw new IllegalArgumentException("Unsupported capability " + cap);
+		}
+		stateChange(previous == enabled);
+	}
+
+	@Override
+	public void glBlendFunc(int sfactor, int dfactor) {
+		record(CMD_BLEND_FUNC, sfactor);
+		stateChange(sfactor == m_BlendSource && dfactor == m_BlendDestination);
+		m_BlendSource = sfactor;
+		m_BlendDestination = dfactor;
+	}
+
+	@Override
+	public int glCreateShader(int type) {
+		final int name = m_NextName++;
+		m_Shaders.put(name, new Shader(type));
+		record(CMD_CREATE_SHADER, name);
+		return name;
+	}
+
+	@Override
+	public void glShaderSource(int shader, String source) {
+		record(CMD_SHADER_SOURCE, shader);
+		final Shader s = m_Shaders.get(shader);
+		if(s != null) {
+			s.m_Source = source;
+			m_BytesUploaded += source.length();
+		}
+	}
+
+	@Override
+	public void glCompileShader(int shader) {
+		record(CMD_COMPILE_SHADER, shader);
+		final Shader s = m_Shaders.get(shader);
+		if(s != null) {
+			s.m_bCompiled = s.m_Source != null && s.m_Source.length() > 0;
+		}
+	}
+
+	@Override
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+		m_Calls++;
+		final Shader s = m_Shaders.get(shader);
+		params[offset] = (pname == GL_COMPILE_STATUS && s != null && s.m_bCompiled) ? 1 : 0;
+	}
+
+	@Override
+	public String glGetShaderInfoLog(int shader) {
+		m_Calls++;
+		final Shader s = m_Shaders.get(shader);
+		return s != null && !s.m_bCompiled ? "empty shader source" : "";
+	}
+
+	@Override
+	public void glDeleteShader(int shader) {
+		record(CMD_DELETE_SHADER, shader);
+		m_Shaders.remove(shader);
+	}
+
+	@Override
+	public int glCreateProgram() {
+		final int name = m_NextName++;
+		m_Programs.put(name, new Program());
+		record(CMD_CREATE_PROGRAM, name);
+		return name;
+	}
+
+	@Override
+	public void glAttachShader(int program, int shader) {
+		record(CMD_ATTACH_SHADER, program);
+		final Program p = m_Programs.get(program);
+		final Shader s = m_Shaders.get(shader);
+		if(p != null && s != null) {
+			if(s.m_Type == GL_VERTEX_SHADER) {
+				p.m_Vertex = s;
+			} else {
+				p.m_Fragment = s;
+			}
+		}
+	}
+
+	@Override
+	public void glBindAttribLocation(int program, int index, String name) {
+		record(CMD_BIND_ATTRIB_LOCATION, program);
+		checkAttrib(index);
+		final Program p = m_Programs.get(program);
+		if(p != null) {
+			p.m_Attributes.put(name, index);
+		}
+	}
+
+	@Override
+	public void glLinkProgram(int program) {
+		record(CMD_LINK_PROGRAM, program);
+		final Program p = m_Programs.get(program);
+		if(p != null) {
+			p.m_bLinked = p.m_Vertex != null && p.m_Vertex.m_bCompiled
+					&& p.m_Fragment != null && p.m_Fragment.m_bCompiled;
+		}
+	}
+
+	@Override
+	public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+		m_Calls++;
+		final Program p = m_Programs.get(program);
+		params[offset] = (pname == GL_LINK_STATUS && p != null && p.m_bLinked) ? 1 : 0;
+	}
+
+	@Override
+	public String glGetProgramInfoLog(int program) {
+		m_Calls++;
+		final Program p = m_Programs.get(program);
+		return p != null && !p.m_bLinked ? "missing or uncompiled shader" : "";
+	}
+
+	@Override
+	public byte [] getProgramBinary(int program, int [] format) {
+		record(CMD_GET_PROGRAM_BINARY, program);
+		final Program p = m_Programs.get(program);
+		if(p == null || !p.m_bLinked) {
+			return null;
+		}
+		final int image = m_BinaryImages.size();
+		m_BinaryImages.add(new HashMap<String, Integer>(p.m_Attributes));
+		format[0] = PROGRAM_BINARY_FORMAT;
+		return new byte[] { (byte)(image >>> 24), (byte)(image >>> 16), (byte)(image >>> 8), (byte)image };
+	}
+
+	@Override
+	public boolean loadProgramBinary(int program, int format, byte [] binary) {
+		record(CMD_PROGRAM_BINARY, program);
+		final Program p = m_Programs.get(program);
+		if(p == null) {
+			return false;
+		}
+		p.m_bLinked = false;
+		if(format != PROGRAM_BINARY_FORMAT || binary == null || binary.length != 4) {
+			return false;
+		}
+		final int image = ((binary[0] & 0xFF) << 24) | ((binary[1] & 0xFF) << 16) | ((binary[2] & 0xFF) << 8) | (binary[3] & 0xFF);
+		if(image < 0 || image >= m_BinaryImages.size()) {
+			return false;
+		}
+		m_BytesUploaded += binary.length;
+		p.m_Attributes.putAll(m_BinaryImages.get(image));
+		p.m_bLinked = true;
+		return true;
+	}
+
+	@Override
+	public void glDeleteProgram(int program) {
+		record(CMD_DELETE_PROGRAM, program);
+		m_Programs.remove(program);
+		if(m_CurrentProgram == program) {
+			m_CurrentProgram = 0;
+		}
+	}
+
+	@Override
+	public void glUseProgram(int program) {
+		record(CMD_USE_PROGRAM, program);
+		stateChange(program == m_CurrentProgram);
+		m_CurrentProgram = program;
+	}
+
+	@Override
+	public int glGetUniformLocation(int program, String name) {
+		m_Calls++;
+		final Program p = m_Programs.get(program);
+		if(p == null || !p.m_bLinked) {
+			return -1;
+		}
+		Integer location = p.m_Uniforms.get(name);
+		if(location == null) {
+			location = p.m_Uniforms.size();
+			p.m_Uniforms.put(name, location);
+		}
+		return location;
+	}
+
+	@Override
+	public int glGetAttribLocation(int program, String name) {
+		m_Calls++;
+		final Program p = m_Programs.get(program);
+		if(p == null || !p.m_bLinked) {
+			return -1;
+		}
+		Integer location = p.m_Attributes.get(name);
+		if(location == null) {
+			// first slot no other attribute is bound to
+			int index = 0;
+			while(p.m_Attributes.containsValue(index)) {
+				index++;
+			}
+			checkAttrib(index);
+			location = index;
+			p.m_Attributes.put(name, location);
+		}
+		return location;
+	}
+
+	@Override
+	public void glGenBuffers(int n, int[] buffers, int offset) {
+		record(CMD_GEN_BUFFERS, n);
+		for(int i = 0; i < n; i++) {
+			final int name = m_NextName++;
+			m_Buffers.put(name, 0);
+			buffers[offset + i] = name;
+		}
+	}
+
+	@Override
+	public void glDeleteBuffers(int n, int[] buffers, int offset) {
+		record(CMD_DELETE_BUFFERS, n);
+		for(int i = 0; i < n; i++) {
+			final int name = buffers[offset + i];
+			final Integer size = m_Buffers.remove(name);
+			if(size != null) {
+				m_BufferMemory -= size;
+			}
+			if(m_ArrayBuffer == name) {
+				m_ArrayBuffer = 0;
+			}
+			if(m_ElementBuffer == name) {
+				m_ElementBuffer = 0;
+			}
+		}
+	}
+
+	@Override
+	public void glBindBuffer(int target, int buffer) {
+		record(CMD_BIND_BUFFER, buffer);
+		if(buffer != 0 && !m_Buffers.containsKey(buffer)) {
+			throw new IllegalArgumentException("Unknown buffer " + buffer);
+		}
+		stateChange(boundBuffer(target) == buffer);
+		if(target == GL_ARRAY_BUFFER) {
+			m_ArrayBuffer = buffer;
+		} else {
+			m_ElementBuffer = buffer;
+		}
+	}
+
+	@Override
+	public void glBufferData(int target, int size, Buffer data, int usage) {
+		final int buffer = boundBuffer(target);
+		record(CMD_BUFFER_DATA, buffer);
+		if(buffer == 0) {
+			throw new IllegalStateException("glBufferData without a bound buffer");
+		}
+		m_BufferMemory += size - m_Buffers.put(buffer, size);
+		if(data != null) {
+			m_BytesUploaded += size;
+		}
+	}
+
+	@Override
+	public void glBufferSubData(int target, int offset, int size, Buffer data) {
+		final int buffer = boundBuffer(target);
+		record(CMD_BUFFER_SUB_DATA, buffer);
+		if(buffer == 0) {
+			throw new IllegalStateException("glBufferSubData without a bound buffer");
+		}
+		if(offset < 0 || offset + size > m_Buffers.get(buffer)) {
+			throw new IllegalArgumentException("glBufferSubData range outside of buffer " + buffer);
+		}
+		m_BytesUploaded += size;
+	}
+
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer data) {
+		record(CMD_VERTEX_ATTRIB_POINTER, index);
+		checkAttrib(index);
+		// the buffer position is part of the pointer so the same buffer is not redundant
+		stateChange(false);
+		m_AttribSize[index] = size;
+		m_AttribType[index] = type;
+		m_AttribData[index] = data;
+	}
+
+	@Override
+	public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+		record(CMD_VERTEX_ATTRIB_POINTER, index);
+		checkAttrib(index);
+		if(m_ArrayBuffer == 0) {
+			throw new IllegalStateException("glVertexAttribPointer with an offset but no bound GL_ARRAY_BUFFER");
+		}
+		stateChange(false);
+		m_AttribSize[index] = size;
+		m_AttribType[index] = type;
+		// read from the buffer object, nothing is sent at draw time
+		m_AttribData[index] = null;
+	}
+
+	@Override
+	public void glEnableVertexAttribArray(int index) {
+		record(CMD_ENABLE_VERTEX_ATTRIB_ARRAY, index);
+		checkAttrib(index);
+		stateChange(m_AttribEnabled[index]);
+		m_AttribEnabled[index] = true;
+	}
+
+	@Override
+	public void glDisableVertexAttribArray(int index) {
+		record(CMD_DISABLE_VERTEX_ATTRIB_ARRAY, index);
+		checkAttrib(index);
+		stateChange(!m_AttribEnabled[index]);
+		m_AttribEnabled[index] = false;
+	}
+
+	@Override
+	public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+		record(CMD_UNIFORM_MATRIX4FV, location);
+		stateChange(false);
+		m_BytesUploaded += count*16*4;
+	}
+
+	@Override
+	public void glDrawArrays(int mode, int first, int count) {
+		record(CMD_DRAW_ARRAYS, count);
+		if(m_CurrentProgram == 0) {
+			throw new IllegalStateException("glDrawArrays without a program");
+		}
+		draw(count);
+	}
+
+	@Override
+	public void glDrawElements(int mode, int count, int type, int offset) {
+		record(CMD_DRAW_ELEMENTS, count);
+		if(m_CurrentProgram == 0) {
+			throw new IllegalStateException("glDrawElements without a program");
+		}
+		if(m_ElementBuffer == 0) {
+			throw new IllegalStateException("glDrawElements without a bound GL_ELEMENT_ARRAY_BUFFER");
+		}
+		draw(count);
+	}
+
+	private void draw(int count) {
+		m_DrawCalls++;
+		m_Vertices += count;
+
+		// client side arrays are read again on every draw
+		for(int i = 0; i < MAX_VERTEX_ATTRIBS; i++) {
+			if(m_AttribEnabled[i] && m_AttribData[i] != null) {
+				m_BytesUploaded += (long)count*m_AttribSize[i]*typeSize(m_AttribType[i]);
+			}
+		}
+	}
+}
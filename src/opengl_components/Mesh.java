@@ -0,0 +1,214 @@
+package opengl_components;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Interleaved vertex data, and optional 16 bit indices, kept in GL buffer
+ * objects so drawing sends nothing from client memory. The usage decides how
+ * updates are uploaded:
+ * GL_STATIC_DRAW: uploaded once, the client copy is dropped after the upload.
+ * GL_DYNAMIC_DRAW: rewritten now and then, in place with glBufferSubData.
+ * GL_STREAM_DRAW: rewritten every frame. Updates are appended one after the
+ * other in a buffer that holds STREAM_SEGMENTS of them, and the buffer is
+ * orphaned when it wraps around, so an update never has to wait for the GPU
+ * to finish reading the data of a previous frame.
+ *
+ * usage: bind(), then draw() once per uniform change, then unbind().
+ * Buffer objects are lost with the GL context so meshes have to be created on
+ * the GL thread, in onSurfaceCreated or later.
+ */
+public class Mesh {
+
+	/** Updates a stream mesh buffer holds before it is orphaned */
+	public static final int STREAM_SEGMENTS = 3;
+
+	private static final int VERTEX_BUFFER = 0;
+	private static final int INDEX_BUFFER = 1;
+
+	final GraphicsDevice m_Device;
+	final VertexLayout m_Layout;
+	final int m_Usage;
+	int m_Mode = GraphicsDevice.GL_TRIANGLES;
+
+	// vertex and index buffer names, the index one is created by the first setIndices
+	final int [] m_Buffers = new int[2];
+	int m_VertexCapacity;
+	int m_VertexCount;
+	int m_FirstVertex;
+	int m_WriteVertex;
+	int m_IndexCapacity;
+	int m_IndexCount;
+
+	// Direct buffers the data goes through on its way to GL
+	FloatBuffer m_VertexStaging;
+	ShortBuffer m_IndexStaging;
+
+	/**
+	 * @param device
+	 * @param layout layout of the vertex data
+	 * @param usage GL_STATIC_DRAW, GL_DYNAMIC_DRAW or GL_STREAM_DRAW
+	 */
+	public Mesh(GraphicsDevice device, VertexLayout layout, int usage) {
+		if(usage != GraphicsDevice.GL_STATIC_DRAW && usage != GraphicsDevice.GL_DYNAMIC_DRAW
+				&& usage != GraphicsDevice.GL_STREAM_DRAW) {
+			throw new IllegalArgumentException("Invalid mesh usage " + usage);
+		}
+		m_Device = device;
+		m_Layout = layout;
+		m_Usage = usage;
+		device.glGenBuffers(1, m_Buffers, VERTEX_BUFFER);
+	}
+
+	public VertexLayout getLayout() {
+		return m_Layout;
+	}
+
+	public int getUsage() {
+		return m_Usage;
+	}
+
+	public int getVertexCount() {
+		return m_VertexCount;
+	}
+
+	public int getIndexCount() {
+		return m_IndexCount;
+	}
+
+	/**
+	 * Sets the primitive drawn, GL_TRIANGLES by default
+	 * @param mode
+	 */
+	public void setMode(int mode) {
+		m_Mode = mode;
+	}
+
+	/**
+	 * Uploads the vertex data, leaves the vertex buffer bound
+	 * @param vertices interleaved data in the mesh layout
+	 * @param offset offset of the first vertex in floats
+	 * @param vertexCount
+	 */
+	public void setVertices(float [] vertices, int offset, int vertexCount) {
+		final int floats = vertexCount*m_Layout.getStride();
+		final int strideBytes = m_Layout.getStrideBytes();
+		final int bytes = vertexCount*strideBytes;
+
+		if(m_VertexStaging == null || m_VertexStaging.capacity() < floats) {
+			m_VertexStaging = ByteBuffer.allocateDirect(floats*4)
+					.order(ByteOrder.nativeOrder()).asFloatBuffer();
+		}
+		final FloatBuffer staging = m_VertexStaging;
+		staging.position(0);
+		staging.put(vertices, offset, floats);
+		staging.position(0);
+
+		m_Device.glBindBuffer(GraphicsDevice.GL_ARRAY_BUFFER, m_Buffers[VERTEX_BUFFER]);
+		if(m_Usage == GraphicsDevice.GL_STREAM_DRAW) {
+			if(m_WriteVertex + vertexCount > m_VertexCapacity) {
+				m_VertexCapacity = Math.max(m_VertexCapacity, vertexCount*STREAM_SEGMENTS);
+				// orphan, the driver hands out new storage and frees the old one
+				// once the GPU is done with it
+				m_Device.glBufferData(GraphicsDevice.GL_ARRAY_BUFFER, m_VertexCapacity*strideBytes, null, m_Usage);
+				m_WriteVertex = 0;
+			}
+			m_Device.glBufferSubData(GraphicsDevice.GL_ARRAY_BUFFER, m_WriteVertex*strideBytes, bytes, staging);
+			m_FirstVertex = m_WriteVertex;
+			m_WriteVertex += vertexCount;
+		} else if(vertexCount > m_VertexCapacity) {
+			m_Device.glBufferData(GraphicsDevice.GL_ARRAY_BUFFER, bytes, staging, m_Usage);
+			m_VertexCapacity = vertexCount;
+		} else {
+			m_Device.glBufferSubData(GraphicsDevice.GL_ARRAY_BUFFER, 0, bytes, staging);
+		}
+		m_VertexCount = vertexCount;
+
+		if(m_Usage == GraphicsDevice.GL_STATIC_DRAW) {
+			m_VertexStaging = null;
+		}
+	}
+
+	/**
+	 * Uploads the indices, after this the mesh is drawn with glDrawElements.
+	 * Leaves the index buffer bound
+	 * @param indices
+	 * @param offset
+	 * @param indexCount
+	 */
+	public void setIndices(short [] indices, int offset, int indexCount) {
+		if(m_Buffers[INDEX_BUFFER] == 0) {
+			m_Device.glGenBuffers(1, m_Buffers, INDEX_BUFFER);
+		}
+		if(m_IndexStaging == null || m_IndexStaging.capacity() < indexCount) {
+			m_IndexStaging = ByteBuffer.allocateDirect(indexCount*2)
+					.order(ByteOrder.nativeOrder()).asShortBuffer();
+		}
+		final ShortBuffer staging = m_IndexStaging;
+		staging.position(0);
+		staging.put(indices, offset, indexCount);
+		staging.position(0);
+
+		final int bytes = indexCount*2;
+		m_Device.glBindBuffer(GraphicsDevice.GL_ELEMENT_ARRAY_BUFFER, m_Buffers[INDEX_BUFFER]);
+		if(indexCount > m_IndexCapacity || m_Usage == GraphicsDevice.GL_STREAM_DRAW) {
+			// stream indices are small next to the vertices, a plain re-specify orphans them
+			m_Device.glBufferData(GraphicsDevice.GL_ELEMENT_ARRAY_BUFFER, bytes, staging, m_Usage);
+			m_IndexCapacity = indexCount;
+		} else {
+			m_Device.glBufferSubData(GraphicsDevice.GL_ELEMENT_ARRAY_BUFFER, 0, bytes, staging);
+		}
+		m_IndexCount = indexCount;
+
+		if(m_Usage == GraphicsDevice.GL_STATIC_DRAW) {
+			m_IndexStaging = null;
+		}
+	}
+
+	/**
+	 * Binds the buffers and points the layout attributes at the current data
+	 */
+	public void bind() {
+		m_Device.glBindBuffer(GraphicsDevice.GL_ARRAY_BUFFER, m_Buffers[VERTEX_BUFFER]);
+		m_Layout.bind(m_Device, m_FirstVertex*m_Layout.getStrideBytes());
+		if(m_Buffers[INDEX_BUFFER] != 0) {
+			m_Device.glBindBuffer(GraphicsDevice.GL_ELEMENT_ARRAY_BUFFER, m_Buffers[INDEX_BUFFER]);
+		}
+	}
+
+	/**
+	 * Issues the draw call, the mesh must be bound
+	 */
+	public void draw() {
+		if(m_IndexCount > 0) {
+			m_Device.glDrawElements(m_Mode, m_IndexCount, GraphicsDevice.GL_UNSIGNED_SHORT, 0);
+		} else if(m_VertexCount > 0) {
+			m_Device.glDrawArrays(m_Mode, 0, m_VertexCount);
+		}
+	}
+
+	/**
+	 * Disables the layout attributes and unbinds the buffers so client side
+	 * arrays can be used again
+	 */
+	public void unbind() {
+		m_Layout.unbind(m_Device);
+		m_Device.glBindBuffer(GraphicsDevice.GL_ARRAY_BUFFER, 0);
+		if(m_Buffers[INDEX_BUFFER] != 0) {
+			m_Device.glBindBuffer(GraphicsDevice.GL_ELEMENT_ARRAY_BUFFER, 0);
+		}
+	}
+
+	/**
+	 * Deletes the buffer objects, the mesh can not be used after this
+	 */
+	public void destroy() {
+		m_Device.glDeleteBuffers(m_Buffers[INDEX_BUFFER] != 0 ? 2 : 1, m_Buffers, 0);
+		m_Buffers[VERTEX_BUFFER] = m_Buffers[INDEX_BUFFER] = 0;
+		m_VertexCount = m_IndexCount = 0;
+		m_VertexStaging = null;
+		m_IndexStaging = null;
+	}
+}
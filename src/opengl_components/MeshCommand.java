@@ -0,0 +1,57 @@
+package opengl_components;
+
+import math_components.Matrix4x4;
+
+/**
+ * RenderCommand that draws a Mesh with a ShaderProgram at the world
+ * transform of an entity. The program takes the model view projection matrix
+ * in one mat4 uniform. Commands are meant to be created once per entity and
+ * queued every frame, executing one does not allocate.
+ */
+public class MeshCommand implements RenderQueue.RenderCommand {
+
+	final GraphicEntity m_Entity;
+	final Mesh m_Mesh;
+	final ShaderProgram m_Program;
+	final int m_MatrixSlot;
+
+	private final Matrix4x4 m_World = new Matrix4x4();
+	private final float [] m_ModelViewProjection = new float[16];
+
+	/**
+	 * @param entity entity that places the mesh
+	 * @param mesh
+	 * @param program
+	 * @param matrixSlot uniform slot of the model view projection matrix in program
+	 */
+	public MeshCommand(GraphicEntity entity, Mesh mesh, ShaderProgram program, int matrixSlot) {
+		m_Entity = entity;
+		m_Mesh = mesh;
+		m_Program = program;
+		m_MatrixSlot = matrixSlot;
+	}
+
+	public GraphicEntity getEntity() {
+		return m_Entity;
+	}
+
+	public Mesh getMesh() {
+		return m_Mesh;
+	}
+
+	public ShaderProgram getProgram() {
+		return m_Program;
+	}
+
+	@Override
+	public void execute(GraphicsDevice device, float [] viewProjection) {
+		m_Program.use(device);
+		m_Mesh.bind();
+
+		// row vector world * view projection is the GL projection * view * model
+		Matrix4x4.mult(m_Entity.getWorldTransformationMatrix(m_World).matrix(), 0,
+				viewProjection, 0, m_ModelViewProjection, 0);
+		device.glUniformMatrix4fv(m_Program.getUniformLocation(m_MatrixSlot), 1, false, m_ModelViewProjection, 0);
+		m_Mesh.draw();
+	}
+}
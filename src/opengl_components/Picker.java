@@ -0,0 +1,283 @@
+package opengl_components;
+
+import java.util.Arrays;
+
+import math_components.AabbTree;
+import math_components.Matrix4x4;
+import math_components.Vector3;
+
+/**
+ * Finds the entity under a screen point. The point is unprojected through
+ * the inverse view projection into a world ray, the SceneIndex finds the
+ * entities whose boxes it crosses nearest first, and entities with pick
+ * geometry are then tested triangle by triangle in their local space, so
+ * only the few candidates the tree returns pay for the exact test.
+ * Entities without geometry are hit where the ray enters their box.
+ */
+public class Picker {
+
+	/** Triangles used to test an entity, positions are the first xyz of every vertex */
+	private static class Geometry {
+		GraphicEntity m_Owner;
+		float [] m_Vertices;
+		int m_Offset;
+		int m_Stride;
+		int m_VertexCount;
+		short [] m_Indices;
+	}
+
+	final SceneIndex m_Index;
+
+	private final float [] m_InverseViewProjection = new float[16];
+	private boolean m_bCameraValid;
+	private int m_ViewportX, m_ViewportY, m_ViewportWidth, m_ViewportHeight;
+
+	// Pick geometry by entity id, ids are reused so the owner is checked
+	private Geometry [] m_Geometries = new Geometry[0];
+
+	// Scratch of the current pick
+	private final Vector3 m_Origin = new Vector3(0, 0, 0);
+	private final Vector3 m_Direction = new Vector3(0, 0, 0);
+	private GraphicEntity m_Hit;
+	private float m_HitDistance;
+	private int m_HitTriangle;
+	private int m_CandidateTriangle;
+
+	private final AabbTree.RayCallback m_Callback = new AabbTree.RayCallback() {
+		@Override
+		public float hit(int userData, float ox, float oy, float oz,
+				float dx, float dy, float dz, float boxDistance, float maxDistance) {
+			return hitEntity(userData, ox, oy, oz, dx, dy, dz, boxDistance, maxDistance);
+		}
+	};
+
+	public Picker(SceneIndex index) {
+		m_Index = index;
+	}
+
+	/**
+	 * Sets the camera used to turn screen points into rays
+	 * @param viewProjection projection * view, as given to the shaders
+	 * @param offset
+	 * @param x viewport
+	 * @param y
+	 * @param width
+	 * @param height
+	 */
+	public void setCamera(float [] viewProjection, int offset, int x, int y, int width, int height) {
+		m_bCameraValid = Matrix4x4.invert(viewProjection, offset, m_InverseViewProjection, 0);
+		m_ViewportX = x;
+		m_ViewportY = y;
+		m_ViewportWidth = width;
+		m_ViewportHeight = height;
+	}
+
+	/**
+	 * Builds the world ray under a screen point
+	 * @param screenX window coordinates, y down like touch events
+	 * @param screenY
+	 * @param origin receives the point on the near plane
+	 * @param direction receives the unit direction towards the far plane
+	 * @return false if no valid camera was set
+	 */
+	public boolean getRay(float screenX, float screenY, Vector3 origin, Vector3 direction) {
+		if(!m_bCameraValid || m_ViewportWidth <= 0 || m_ViewportHeight <= 0) {
+			return false;
+		}
+		final float x = 2*(screenX - m_ViewportX)/m_ViewportWidth - 1;
+		final float y = 1 - 2*(screenY - m_ViewportY)/m_ViewportHeight;
+
+		final float [] m = m_InverseViewProjection;
+		// clip points (x, y, -1, 1) and (x, y, 1, 1) back to world space
+		final float bx = x*m[0] + y*m[4] + m[12], by = x*m[1] + y*m[5] + m[13];
+		final float bz = x*m[2] + y*m[6] + m[14], bw = x*m[3] + y*m[7] + m[15];
+		final float nw = 1/(bw - m[11]), fw = 1/(bw + m[11]);
+		final float nx = (bx - m[8])*nw, ny = (by - m[9])*nw, nz = (bz - m[10])*nw;
+		final float fx = (bx + m[8])*fw, fy = (by + m[9])*fw, fz = (bz + m[10])*fw;
+
+		origin.set(nx, ny, nz);
+		direction.set(fx - nx, fy - ny, fz - nz);
+		Vector3.normalize(direction, direction);
+		return true;
+	}
+
+	/**
+	 * Gives an entity triangles to be tested against instead of its box
+	 * @param entity
+	 * @param vertices local positions, xyz at the start of every vertex
+	 * @param offset of the first vertex in floats
+	 * @param stride in floats
+	 * @param vertexCount
+	 * @param indices triangle list, null for unindexed triangles
+	 */
+	public void setGeometry(GraphicEntity entity, float [] vertices, int offset, int stride, int vertexCount, short [] indices) {
+		final int id = entity.getId();
+		if(id >= m_Geometries.length) {
+			m_Geometries = Arrays.copyOf(m_Geometries, Math.max(id + 1, m_Geometries.length*2));
+		}
+		Geometry geometry = m_Geometries[id];
+		if(geometry == null) {
+			geometry = m_Geometries[id] = new Geometry();
+		}
+		geometry.m_Owner = entity;
+		geometry.m_Vertices = vertices;
+		geometry.m_Offset = offset;
+		geometry.m_Stride = stride;
+		geometry.m_VertexCount = vertexCount;
+		geometry.m_Indices = indices;
+	}
+
+	public void clearGeometry(GraphicEntity entity) {
+		final int id = entity.getId();
+		if(id < m_Geometries.length && m_Geometries[id] != null && m_Geometries[id].m_Owner == entity) {
+			m_Geometries[id].m_Owner = null;
+			m_Geometries[id].m_Vertices = null;
+			m_Geometries[id].m_Indices = null;
+		}
+	}
+
+	/**
+	 * Finds the entity under a screen point
+	 * @param screenX window coordinates, y down like touch events
+	 * @param screenY
+	 * @return the nearest entity hit or null
+	 */
+	public GraphicEntity pick(float screenX, float screenY) {
+		if(!getRay(screenX, screenY, m_Origin, m_Direction)) {
+			m_Hit = null;
+			return null;
+		}
+		return pick(m_Origin, m_Direction, Float.MAX_VALUE);
+	}
+
+	/**
+	 * Finds the first entity hit by a world ray
+	 * @param origin
+	 * @param direction distances are in units of its length
+	 * @param maxDistance
+	 * @return the nearest entity hit or null
+	 */
+	public GraphicEntity pick(Vector3 origin, Vector3 direction, float maxDistance) {
+		final SceneIndex index = m_Index;
+		index.update();
+
+		m_HitTriangle = -1;
+		final int id = index.getTree().raycast(origin.x, origin.y, origin.z,
+				direction.x, direction.y, direction.z, maxDistance, m_Callback);
+		m_HitDistance = index.getTree().getRayDistance();
+		m_Hit = id == AabbTree.NULL? null : index.getStore().entityAt(index.getStore().indexOf(id));
+		if(m_Hit == null) {
+			m_HitTriangle = -1;
+		}
+		return m_Hit;
+	}
+
+	/** returns the entity found by the last pick, or null */
+	public GraphicEntity getHit() {
+		return m_Hit;
+	}
+
+	/** returns the distance along the ray of the last hit */
+	public float getHitDistance() {
+		return m_HitDistance;
+	}
+
+	/** returns the triangle of the pick geometry that was hit, -1 if the box was hit */
+	public int getHitTriangle() {
+		return m_HitTriangle;
+	}
+
+	/**
+	 * returns the world point of the last hit of pick(screenX, screenY)
+	 * @param out
+	 * @return
+	 */
+	public Vector3 getHitPoint(Vector3 out) {
+		out.set(m_Origin.x + m_Direction.x*m_HitDistance,
+				m_Origin.y + m_Direction.y*m_HitDistance,
+				m_Origin.z + m_Direction.z*m_HitDistance);
+		return out;
+	}
+
+	private float hitEntity(int id, float ox, float oy, float oz,
+			float dx, float dy, float dz, float boxDistance, float maxDistance) {
+		final Geometry geometry = id < m_Geometries.length? m_Geometries[id] : null;
+		final TransformStore store = m_Index.getStore();
+		final int index = store.indexOf(id);
+		if(geometry == null || geometry.m_Owner != store.entityAt(index)) {
+			m_HitTriangle = -1;
+			return boxDistance;
+		}
+
+		// the ray goes to local space, its parameter is the same in both spaces
+		final int o = store.inverseWorld(index);
+		final float [] m = store.inverseWorldMatrices();
+		final float lox = ox*m[o] + oy*m[o + 4] + oz*m[o + 8] + m[o + 12];
+		final float loy = ox*m[o + 1] + oy*m[o + 5] + oz*m[o + 9] + m[o + 13];
+		final float loz = ox*m[o + 2] + oy*m[o + 6] + oz*m[o + 10] + m[o + 14];
+		final float ldx = dx*m[o] + dy*m[o + 4] + dz*m[o + 8];
+		final float ldy = dx*m[o + 1] + dy*m[o + 5] + dz*m[o + 9];
+		final float ldz = dx*m[o + 2] + dy*m[o + 6] + dz*m[o + 10];
+
+		final float distance = intersectTriangles(geometry, lox, loy, loz, ldx, ldy, ldz, maxDistance);
+		if(distance >= 0) {
+			// the tree keeps every hit closer than maxDistance
+			m_HitTriangle = m_CandidateTriangle;
+		}
+		return distance;
+	}
+
+	/**
+	 * Moller-Trumbore against every triangle, both faces count
+	 * @return the closest distance below maxDistance or -1
+	 */
+	private float intersectTriangles(Geometry geometry, float ox, float oy, float oz,
+			float dx, float dy, float dz, float maxDistance) {
+		final float [] v = geometry.m_Vertices;
+		final short [] indices = geometry.m_Indices;
+		final int offset = geometry.m_Offset, stride = geometry.m_Stride;
+		final int triangles = (indices != null? indices.length : geometry.m_VertexCount)/3;
+
+		float best = maxDistance;
+		int bestTriangle = -1;
+		for(int t = 0; t < triangles; t++) {
+			final int i0, i1, i2;
+			if(indices != null) {
+				i0 = offset + (indices[t*3] & 0xffff)*stride;
+				i1 = offset + (indices[t*3 + 1] & 0xffff)*stride;
+				i2 = offset + (indices[t*3 + 2] & 0xffff)*stride;
+			} else {
+				i0 = offset + t*3*stride;
+				i1 = i0 + stride;
+				i2 = i1 + stride;
+			}
+			final float ax = v[i0], ay = v[i0 + 1], az = v[i0 + 2];
+			final float e1x = v[i1] - ax, e1y = v[i1 + 1] - ay, e1z = v[i1 + 2] - az;
+			final float e2x = v[i2] - ax, e2y = v[i2 + 1] - ay, e2z = v[i2 + 2] - az;
+
+			final float px = dy*e2z - dz*e2y, py = dz*e2x - dx*e2z, pz = dx*e2y - dy*e2x;
+			final float det = e1x*px + e1y*py + e1z*pz;
+			if(det > -1e-12f && det < 1e-12f) {
+				continue;
+			}
+			final float inv = 1/det;
+			final float sx = ox - ax, sy = oy - ay, sz = oz - az;
+			final float u = (sx*px + sy*py + sz*pz)*inv;
+			if(u < 0 || u > 1) {
+				continue;
+			}
+			final float qx = sy*e1z - sz*e1y, qy = sz*e1x - sx*e1z, qz = sx*e1y - sy*e1x;
+			final float w = (dx*qx + dy*qy + dz*qz)*inv;
+			if(w < 0 || u + w > 1) {
+				continue;
+			}
+			final float distance = (e2x*qx + e2y*qy + e2z*qz)*inv;
+			if(distance >= 0 && distance < best) {
+				best = distance;
+				bestTriangle = t;
+			}
+		}
+		m_CandidateTriangle = bestTriangle;
+		return bestTriangle >= 0? best : -1;
+	}
+}
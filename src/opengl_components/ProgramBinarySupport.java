@@ -0,0 +1,30 @@
+package opengl_components;
+
+/**
+ * Optional device capability: reading a linked program back as a driver
+ * specific binary and loading it again later, which skips compiling and
+ * linking. GLES20 on API 14 has no binding for OES_get_program_binary so the
+ * GLES20 device does not implement it, a GLES 3.0 device or an extension
+ * loader can.
+ */
+public interface ProgramBinarySupport {
+
+	/**
+	 * returns the binary of a linked program, or null if it can not be read
+	 * @param program
+	 * @param format receives the binary format in format[0]
+	 * @return
+	 */
+	public byte [] getProgramBinary(int program, int [] format);
+
+	/**
+	 * Loads a binary returned by getProgramBinary into a new program. The
+	 * driver may reject binaries from an older version, the program is then
+	 * left unlinked
+	 * @param program
+	 * @param format
+	 * @param binary
+	 * @return true if the program is linked
+	 */
+	public boolean loadProgramBinary(int program, int format, byte [] binary);
+}
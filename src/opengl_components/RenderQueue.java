@@ -0,0 +1,339 @@
+package opengl_components;
+
+/**
+ * Collects the draws of a frame with a 64 bit sort key each, sorts them with
+ * a radix sort and submits them in key order. Keys are packed from the high
+ * bits down so the order is: layer, then opaque before translucent, then
+ * opaque draws by program, material and front to back depth, translucent
+ * draws back to front and then by program and material. Neighbouring draws
+ * end up sharing their state, which a CachingGraphicsDevice turns into
+ * dropped calls, and opaque draws hide what is behind them early.
+ *
+ * usage, once per frame:
+ * clear(); add(...) for every visible draw; submit(device, viewProjection);
+ */
+public class RenderQueue {
+
+	/** A draw in the queue, usually reused from frame to frame */
+	public interface RenderCommand {
+		/**
+		 * Issues the draw, the program, blending and mesh state is up to the command
+		 * @param device
+		 * @param viewProjection column major view projection matrix of the frame
+		 */
+		public void execute(GraphicsDevice device, float [] viewProjection);
+	}
+
+	public static final int LAYER_BITS = 4;
+	public static final int PROGRAM_BITS = 12;
+	public static final int MATERIAL_BITS = 16;
+	public static final int DEPTH_BITS = 24;
+
+	private static final int TRANSLUCENT_SHIFT = 63 - LAYER_BITS;
+	private static final int LAYER_SHIFT = TRANSLUCENT_SHIFT + 1;
+	private static final long PROGRAM_MASK = (1L << PROGRAM_BITS) - 1;
+	private static final long MATERIAL_MASK = (1L << MATERIAL_BITS) - 1;
+	private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1;
+	private static final long STATE_MASK = (PROGRAM_MASK << MATERIAL_BITS) | MATERIAL_MASK;
+
+	/** Queues at or below this size are insertion sorted */
+	private static final int INSERTION_SORT_THRESHOLD = 32;
+
+	/**
+	 * Packs a sort key
+	 * @param layer 0 is drawn first
+	 * @param translucent translucent draws come after the opaque ones of their layer
+	 * @param program program id, see ShaderProgram.getId
+	 * @param material texture or material id
+	 * @param depth quantized distance from the camera, see quantizeDepth
+	 * @return
+	 */
+	public static long makeKey(int layer, boolean translucent, int program, int material, int depth) {
+		final long state = ((program & PROGRAM_MASK) << MATERIAL_BITS) | (material & MATERIAL_MASK);
+		long key = ((long)layer & ((1L << LAYER_BITS) - 1)) << LAYER_SHIFT;
+		if(translucent) {
+			// back to front: the farthest draw gets the smallest key
+			key |= 1L << TRANSLUCENT_SHIFT;
+			key |= ((DEPTH_MASK - (depth & DEPTH_MASK)) << (PROGRAM_BITS + MATERIAL_BITS)) | state;
+		} else {
+			key |= (state << DEPTH_BITS) | (depth & DEPTH_MASK);
+		}
+		return key;
+	}
+
+	/** returns true if the key belongs to a translucent draw */
+	public static boolean isTranslucent(long key) {
+		return ((key >>> TRANSLUCENT_SHIFT) & 1) != 0;
+	}
+
+	/** returns the program and material bits of a key, equal for draws that share their state */
+	public static long stateOf(long key) {
+		return isTranslucent(key) ? key & STATE_MASK : (key >>> DEPTH_BITS) & STATE_MASK;
+	}
+
+	private long [] m_Keys;
+	private int [] m_Items;
+	private RenderCommand [] m_Commands;
+	private int m_Count;
+	private boolean m_bSorted;
+
+	// radix sort scratch
+	private long [] m_SortKeys;
+	private int [] m_SortItems;
+	private final int [] m_Histogram = new int[8*256];
+
+	private float m_Near = 0.1f;
+	private float m_DepthScale = DEPTH_MASK/(100.0f - 0.1f);
+
+	// Stats of the last submit
+	private int m_StateChanges;
+	private int m_BlendChanges;
+
+	/**
+	 * @param capacity initial number of draws, the queue grows as needed
+	 */
+	public RenderQueue(int capacity) {
+		capacity = Math.max(capacity, 16);
+		m_Keys = new long[capacity];
+		m_Items = new int[capacity];
+		m_Commands = new RenderCommand[capacity];
+		m_SortKeys = new long[capacity];
+		m_SortItems = new int[capacity];
+	}
+
+	/**
+	 * Sets the depth range quantizeDepth maps to the key depth bits, usually
+	 * the near and far planes
+	 * @param near
+	 * @param far
+	 */
+	public void setDepthRange(float near, float far) {
+		m_Near = near;
+		m_DepthScale = DEPTH_MASK/(far - near);
+	}
+
+	/**
+	 * returns depth, a distance from the camera, as key depth bits clamped to the depth range
+	 * @param depth
+	 * @return
+	 */
+	public int quantizeDepth(float depth) {
+		final float d = (depth - m_Near)*m_DepthScale;
+		if(d <= 0) {
+			return 0;
+		}
+		return d >= DEPTH_MASK ? (int)DEPTH_MASK : (int)d;
+	}
+
+	public int size() {
+		return m_Count;
+	}
+
+	/**
+	 * Empties the queue, commands are released
+	 */
+	public void clear() {
+		for(int i = 0; i < m_Count; i++) {
+			m_Commands[i] = null;
+		}
+		m_Count = 0;
+		m_bSorted = true;
+	}
+
+	/**
+	 * Queues a draw
+	 * @param command
+	 * @param layer
+	 * @param translucent
+	 * @param program
+	 * @param material
+	 * @param depth distance from the camera, quantized with the depth range
+	 */
+	public void add(RenderCommand command, int layer, boolean translucent, int program, int material, float depth) {
+		add(command, makeKey(layer, translucent, program, material, quantizeDepth(depth)));
+	}
+
+	/**
+	 * Queues a draw with a key made by makeKey
+	 * @param command
+	 * @param key
+	 */
+	public void add(RenderCommand command, long key) {
+		if(m_Count == m_Keys.length) {
+			grow();
+		}
+		m_Keys[m_Count] = key;
+		m_Items[m_Count] = m_Count;
+		m_Commands[m_Count] = command;
+		m_Count++;
+		m_bSorted = false;
+	}
+
+	/**
+	 * returns the key of the i-th draw, in submit order once sorted
+	 */
+	public long getKey(int i) {
+		return m_Keys[i];
+	}
+
+	/**
+	 * returns the command of the i-th draw, in submit order once sorted
+	 */
+	public RenderCommand getCommand(int i) {
+		return m_Commands[m_Items[i]];
+	}
+
+	/**
+	 * Sorts the draws by key, the order of draws with equal keys is kept
+	 */
+	public void sort() {
+		if(m_bSorted) {
+			return;
+		}
+		if(m_Count <= INSERTION_SORT_THRESHOLD) {
+			insertionSort();
+		} else {
+			radixSort();
+		}
+		m_bSorted = true;
+	}
+
+	/**
+	 * Sorts the queue and executes every draw in order. Blending is switched
+	 * on for the translucent draws (alpha blending) and off for the opaque ones
+	 * @param device
+	 * @param viewProjection
+	 */
+	public void submit(GraphicsDevice device, float [] viewProjection) {
+		sort();
+		m_StateChanges = 0;
+		m_BlendChanges = 0;
+
+		boolean blending = false;
+		device.glDisable(GraphicsDevice.GL_BLEND);
+		long state = -1;
+		for(int i = 0; i < m_Count; i++) {
+			final long key = m_Keys[i];
+			final boolean translucent = isTranslucent(key);
+			if(translucent != blending) {
+				blending = translucent;
+				m_BlendChanges++;
+				if(translucent) {
+					device.glEnable(GraphicsDevice.GL_BLEND);
+					device.glBlendFunc(GraphicsDevice.GL_SRC_ALPHA, GraphicsDevice.GL_ONE_MINUS_SRC_ALPHA);
+				} else {
+					device.glDisable(GraphicsDevice.GL_BLEND);
+				}
+			}
+			final long drawState = stateOf(key);
+			if(drawState != state) {
+				state = drawState;
+				m_StateChanges++;
+			}
+			m_Commands[m_Items[i]].execute(device, viewProjection);
+		}
+		if(blending) {
+			device.glDisable(GraphicsDevice.GL_BLEND);
+		}
+	}
+
+	/** returns the number of program/material changes of the last submit */
+	public int getStateChanges() {
+		return m_StateChanges;
+	}
+
+	/** returns the number of blending changes of the last submit */
+	public int getBlendChanges() {
+		return m_BlendChanges;
+	}
+
+	private void grow() {
+		final int capacity = m_Keys.length*2;
+		long [] keys = new long[capacity];
+		int [] items = new int[capacity];
+		RenderCommand [] commands = new RenderCommand[capacity];
+		System.arraycopy(m_Keys, 0, keys, 0, m_Count);
+		System.arraycopy(m_Items, 0, items, 0, m_Count);
+		System.arraycopy(m_Commands, 0, commands, 0, m_Count);
+		m_Keys = keys;
+		m_Items = items;
+		m_Commands = commands;
+		m_SortKeys = new long[capacity];
+		m_SortItems = new int[capacity];
+	}
+
+	private void insertionSort() {
+		final long [] keys = m_Keys;
+		final int [] items = m_Items;
+		for(int i = 1; i < m_Count; i++) {
+			final long key = keys[i];
+			final int item = items[i];
+			int j = i - 1;
+			// keys compare unsigned, the layer uses the sign bit
+			while(j >= 0 && (keys[j] ^ Long.MIN_VALUE) > (key ^ Long.MIN_VALUE)) {
+				keys[j + 1] = keys[j];
+				items[j + 1] = items[j];
+				j--;
+			}
+			keys[j + 1] = key;
+			items[j + 1] = item;
+		}
+	}
+
+	/**
+	 * LSD radix sort on bytes, stable. The histograms of every byte are built
+	 * in one pass and passes where every key has the same byte are skipped
+	 * (most of the high bytes in a typical frame)
+	 */
+	private void radixSort() {
+		final int count = m_Count;
+		final int [] histogram = m_Histogram;
+		long [] keys = m_Keys, sortKeys = m_SortKeys;
+		int [] items = m_Items, sortItems = m_SortItems;
+
+		for(int i = 0; i < histogram.length; i++) {
+			histogram[i] = 0;
+		}
+		for(int i = 0; i < count; i++) {
+			final long key = keys[i];
+			histogram[(int)key & 0xFF]++;
+			histogram[256 + ((int)(key >>> 8) & 0xFF)]++;
+			histogram[512 + ((int)(key >>> 16) & 0xFF)]++;
+			histogram[768 + ((int)(key >>> 24) & 0xFF)]++;
+			histogram[1024 + ((int)(key >>> 32) & 0xFF)]++;
+			histogram[1280 + ((int)(key >>> 40) & 0xFF)]++;
+			histogram[1536 + ((int)(key >>> 48) & 0xFF)]++;
+			histogram[1792 + ((int)(key >>> 56) & 0xFF)]++;
+		}
+
+		for(int pass = 0; pass < 8; pass++) {
+			final int shift = pass*8;
+			final int base = pass*256;
+			if(histogram[base + ((int)(keys[0] >>> shift) & 0xFF)] == count) {
+				continue;
+			}
+
+			int offset = 0;
+			for(int i = base; i < base + 256; i++) {
+				final int c = histogram[i];
+				histogram[i] = offset;
+				offset += c;
+			}
+			for(int i = 0; i < count; i++) {
+				final long key = keys[i];
+				final int slot = histogram[base + ((int)(key >>> shift) & 0xFF)]++;
+				sortKeys[slot] = key;
+				sortItems[slot] = items[i];
+			}
+
+			long [] tk = keys; keys = sortKeys; sortKeys = tk;
+			int [] ti = items; items = sortItems; sortItems = ti;
+		}
+
+		// the sorted data can end up in the scratch arrays, swap them in
+		m_Keys = keys;
+		m_SortKeys = sortKeys;
+		m_Items = items;
+		m_SortItems = sortItems;
+	}
+}
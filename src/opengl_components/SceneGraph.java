@@ -0,0 +1,198 @@
+package opengl_components;
+
+import math_components.Frustum;
+import engine_components.WorkerPool;
+
+/**
+ * Runs the per frame stages over the entities of a TransformStore.
+ * updateTransforms() should be called once per frame before rendering, after
+ * it every world matrix is up to date and draw code can read them directly.
+ * cull() then finds the entities whose bounds are in the view frustum.
+ */
+public class SceneGraph {
+
+	/** Levels with fewer entities than this are updated on the calling thread */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+
+	/** Number of entities a worker takes at a time */
+	public static final int DEFAULT_GRAIN = 1024;
+
+	final TransformStore m_Store;
+	final WorkerPool m_Pool;
+	int m_ParallelThreshold;
+	int m_Grain;
+
+	// Culling results, indexed like the store until it is sorted again
+	private byte [] m_CullStates = new byte[0];
+	private boolean [] m_Visible = new boolean[0];
+	private int [] m_VisibleIndices = new int[0];
+	private int m_VisibleCount;
+	private int m_BoundedCount;
+	private int m_TestCount;
+
+	// Reused task so the update does not allocate
+	private final LevelTask m_LevelTask = new LevelTask();
+
+	private class LevelTask implements WorkerPool.RangeTask {
+		int m_Offset;
+
+		@Override
+		public void run(int start, int end) {
+			m_Store.updateRange(m_Offset + start, m_Offset + end);
+		}
+	}
+
+	public SceneGraph() {
+		this(TransformStore.getDefault(), null);
+	}
+
+	/**
+	 * @param store
+	 * @param pool pool used for large levels, null to always update serially
+	 */
+	public SceneGraph(TransformStore store, WorkerPool pool) {
+		m_Store = store;
+		m_Pool = pool;
+		m_ParallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+		m_Grain = DEFAULT_GRAIN;
+	}
+
+	public TransformStore getStore() {
+		return m_Store;
+	}
+
+	public void setParallelThreshold(int threshold) {
+		m_ParallelThreshold = threshold;
+	}
+
+	public void setGrain(int grain) {
+		m_Grain = grain;
+	}
+
+	/**
+	 * Recalculates every dirty world transform level by level. The entities of
+	 * a level only depend on the previous levels so large levels are split
+	 * across the worker pool
+	 */
+	public void updateTransforms() {
+		final TransformStore store = m_Store;
+		if(!store.hasDirty()) {
+			return;
+		}
+		store.sort();
+
+		for(int level = 0, levels = store.levelCount(); level < levels; level++) {
+			final int start = store.levelStart(level);
+			final int end = store.levelEnd(level);
+
+			if(m_Pool != null && end - start >= m_ParallelThreshold) {
+				m_LevelTask.m_Offset = start;
+				m_Pool.parallelFor(end - start, m_Grain, m_LevelTask);
+			} else {
+				store.updateRange(start, end);
+			}
+		}
+		store.clearAnyDirty();
+	}
+
+	/**
+	 * Finds the entities with bounds that are at least partly in the frustum.
+	 * The hierarchy is walked top down with the subtree boxes, a subtree fully
+	 * outside is rejected and a subtree fully inside is accepted without
+	 * testing its entities. Call after updateTransforms, the results are valid
+	 * until the hierarchy changes
+	 * @param frustum
+	 * @return the number of visible entities
+	 */
+	public int cull(Frustum frustum) {
+		final TransformStore store = m_Store;
+		store.updateBounds();
+
+		final int count = store.size();
+		if(m_CullStates.length < count) {
+			final int capacity = store.capacity();
+			m_CullStates = new byte[capacity];
+			m_Visible = new boolean[capacity];
+			m_VisibleIndices = new int[capacity];
+		}
+		final byte [] states = m_CullStates;
+		final boolean [] visible = m_Visible;
+		final int [] visibleIndices = m_VisibleIndices;
+		final int [] parents = store.m_Parents;
+		final float [] subtreeBounds = store.subtreeBounds();
+		final float [] worldBounds = store.worldBounds();
+
+		int visibleCount = 0, bounded = 0, tests = 0;
+		for(int i = 0; i < count; i++) {
+			final int parent = parents[i];
+			int state;
+			if(parent >= 0 && states[parent] != Frustum.INTERSECTS) {
+				// parents come first, their subtree result holds for the children
+				state = states[parent];
+			} else {
+				state = frustum.testAabb(subtreeBounds, i*TransformStore.BOUNDS_SIZE);
+				tests++;
+			}
+			states[i] = (byte)state;
+
+			boolean isVisible = false;
+			if(store.hasBounds(i)) {
+				bounded++;
+				if(state == Frustum.INSIDE) {
+					isVisible = true;
+				} else if(state == Frustum.INTERSECTS) {
+					isVisible = frustum.testAabb(worldBounds, i*TransformStore.BOUNDS_SIZE) != Frustum.OUTSIDE;
+					tests++;
+				}
+			}
+			visible[i] = isVisible;
+			if(isVisible) {
+				visibleIndices[visibleCount++] = i;
+			}
+		}
+
+		m_VisibleCount = visibleCount;
+		m_BoundedCount = bounded;
+		m_TestCount = tests;
+		return visibleCount;
+	}
+
+	/** returns the number of entities found by the last cull */
+	public int getVisibleCount() {
+		return m_VisibleCount;
+	}
+
+	/** returns the store index of the i-th visible entity */
+	public int getVisibleIndex(int i) {
+		return m_VisibleIndices[i];
+	}
+
+	public GraphicEntity getVisibleEntity(int i) {
+		return m_Store.entityAt(m_VisibleIndices[i]);
+	}
+
+	/**
+	 * returns true if the entity was found by the last cull
+	 * @param entity
+	 * @return
+	 */
+	public boolean isVisible(GraphicEntity entity) {
+		final int index = entity.getIndex();
+		return index < m_Visible.length && m_Visible[index];
+	}
+
+	/** returns the number of entities with bounds seen by the last cull */
+	public int getBoundedCount() {
+		return m_BoundedCount;
+	}
+
+	/** returns the number of entities with bounds the last cull rejected */
+	public int getCulledCount() {
+		return m_BoundedCount - m_VisibleCount;
+	}
+
+	/** returns the number of box tests the last cull needed */
+	public int getTestCount() {
+		return m_TestCount;
+	}
+}
@@ -0,0 +1,171 @@
+package opengl_components;
+
+import java.util.Arrays;
+
+import math_components.AabbTree;
+import math_components.Frustum;
+import math_components.Vector3;
+
+/**
+ * Spatial index over the world boxes of the entities of a TransformStore,
+ * so questions like "what is near this point" do not walk every entity.
+ * update() brings the underlying AabbTree up to date with the store, only
+ * entities whose box left their fat box in the tree are reinserted.
+ * Entities without bounds are not indexed. Query results are read with
+ * getResult until the next query.
+ */
+public class SceneIndex {
+
+	final TransformStore m_Store;
+	final AabbTree m_Tree;
+
+	// Tree proxy of every entity id, NULL when the entity is not indexed
+	private int [] m_Proxies = new int[0];
+	// Update stamp of every id, finds the proxies of released entities
+	private int [] m_Seen = new int[0];
+	private int m_Stamp;
+	private int m_BoundsVersion = -1;
+	private int m_Reinserted;
+
+	public SceneIndex() {
+		this(TransformStore.getDefault(), AabbTree.DEFAULT_MARGIN);
+	}
+
+	/**
+	 * @param store
+	 * @param margin growth of the boxes in the tree, see AabbTree
+	 */
+	public SceneIndex(TransformStore store, float margin) {
+		m_Store = store;
+		m_Tree = new AabbTree(store.capacity(), margin);
+	}
+
+	public TransformStore getStore() {
+		return m_Store;
+	}
+
+	public AabbTree getTree() {
+		return m_Tree;
+	}
+
+	/**
+	 * Updates the world boxes of the store and moves the changed ones in the
+	 * tree. Does nothing if no box was recomputed since the last call
+	 */
+	public void update() {
+		final TransformStore store = m_Store;
+		store.updateBounds();
+		if(store.getBoundsVersion() == m_BoundsVersion) {
+			return;
+		}
+		m_BoundsVersion = store.getBoundsVersion();
+
+		final int ids = store.idCount();
+		if(m_Proxies.length < ids) {
+			final int old = m_Proxies.length;
+			m_Proxies = Arrays.copyOf(m_Proxies, store.capacity());
+			m_Seen = Arrays.copyOf(m_Seen, store.capacity());
+			Arrays.fill(m_Proxies, old, m_Proxies.length, AabbTree.NULL);
+		}
+
+		final AabbTree tree = m_Tree;
+		final int [] proxies = m_Proxies;
+		final int [] seen = m_Seen;
+		final float [] wb = store.worldBounds();
+		final int stamp = ++m_Stamp;
+		int indexed = 0, reinserted = 0;
+		for(int i = 0, count = store.size(); i < count; i++) {
+			final int id = store.idOf(i);
+			final int proxy = proxies[id];
+			if(store.hasBounds(i)) {
+				final int b = i*TransformStore.BOUNDS_SIZE;
+				if(proxy == AabbTree.NULL) {
+					proxies[id] = tree.createProxy(wb[b], wb[b + 1], wb[b + 2], wb[b + 3], wb[b + 4], wb[b + 5], id);
+					reinserted++;
+				} else if(tree.moveProxy(proxy, wb[b], wb[b + 1], wb[b + 2], wb[b + 3], wb[b + 4], wb[b + 5])) {
+					reinserted++;
+				}
+				seen[id] = stamp;
+				indexed++;
+			} else if(proxy != AabbTree.NULL) {
+				tree.destroyProxy(proxy);
+				proxies[id] = AabbTree.NULL;
+			}
+		}
+
+		// entities released since the last update still have a proxy
+		if(tree.getProxyCount() > indexed) {
+			for(int id = 0; id < ids; id++) {
+				if(proxies[id] != AabbTree.NULL && seen[id] != stamp) {
+					tree.destroyProxy(proxies[id]);
+					proxies[id] = AabbTree.NULL;
+				}
+			}
+		}
+		m_Reinserted = reinserted;
+	}
+
+	/** returns the number of entities inserted or reinserted in the tree by the last update */
+	public int getReinsertedCount() {
+		return m_Reinserted;
+	}
+
+	public int queryFrustum(Frustum frustum) {
+		return m_Tree.queryFrustum(frustum);
+	}
+
+	public int queryAabb(Vector3 min, Vector3 max) {
+		return m_Tree.queryAabb(min.x, min.y, min.z, max.x, max.y, max.z);
+	}
+
+	public int querySphere(Vector3 center, float radius) {
+		return m_Tree.querySphere(center.x, center.y, center.z, radius);
+	}
+
+	/**
+	 * Finds the count entities closest to a point, nearest first
+	 * @param point
+	 * @param count
+	 * @param maxDistance
+	 * @return the number of results
+	 */
+	public int queryNearest(Vector3 point, int count, float maxDistance) {
+		return m_Tree.queryNearest(point.x, point.y, point.z, count, maxDistance);
+	}
+
+	/**
+	 * Finds the entity whose box is hit first by a ray
+	 * @param origin
+	 * @param direction distances are in units of its length
+	 * @param maxDistance
+	 * @return the entity or null, the distance is given by getRayDistance
+	 */
+	public GraphicEntity raycast(Vector3 origin, Vector3 direction, float maxDistance) {
+		final int id = m_Tree.raycast(origin.x, origin.y, origin.z,
+				direction.x, direction.y, direction.z, maxDistance, null);
+		return id == AabbTree.NULL? null : m_Store.entityAt(m_Store.indexOf(id));
+	}
+
+	public float getRayDistance() {
+		return m_Tree.getRayDistance();
+	}
+
+	public int getResultCount() {
+		return m_Tree.getResultCount();
+	}
+
+	/** returns the entity of the i-th result of the last query */
+	public GraphicEntity getResult(int i) {
+		return m_Store.entityAt(m_Store.indexOf(m_Tree.getResult(i)));
+	}
+
+	/** returns the store id of the i-th result of the last query */
+	public int getResultId(int i) {
+		return m_Tree.getResult(i);
+	}
+
+	/** returns the distance of the i-th result of the last queryNearest */
+	public float getResultDistance(int i) {
+		return m_Tree.getResultDistance(i);
+	}
+}
@@ -0,0 +1,444 @@
+package opengl_components;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import engine_components.FrameArena;
+import engine_components.WorkerPool;
+
+/**
+ * Runs the Update of every script of every entity in a TransformStore,
+ * walking the ComponentArrays of the store class by class in the order the
+ * classes were registered, without going through the entities.
+ * LocalScriptables only touch their own entity, so their classes run first,
+ * each array split across a WorkerPool, the scripts of one class of one
+ * entity in order on one thread. Moving an entity flags its subtree and
+ * reading a world transform recalculates dirty ancestors, so an entity below
+ * one with local scripts runs its local scripts with the shared ones
+ * instead. The other scripts may touch anything and run afterwards one at a
+ * time on the calling thread; a script they add may already run in the same
+ * update and removing one can make another of its class skip it. Before a
+ * parallel run the world transforms are brought up to date, and the inverse
+ * world matrices of the parents are computed so setting a world transform
+ * from a local script only reads them.
+ * With profiling on every Update is timed and the times are summed by script
+ * class, getProfiles() lists the classes that cost the most first.
+ * A ScriptSystem must only be used by one thread.
+ */
+public class ScriptSystem {
+
+	/** Local scripts of a class below this run on the calling thread */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 256;
+
+	/** Slots of an array a worker takes at a time */
+	public static final int DEFAULT_GRAIN = 32;
+
+	/** Time spent in the scripts of one class */
+	public static class ScriptProfile {
+		final Class<?> m_Class;
+		final boolean m_bLocal;
+		long m_Calls;
+		long m_TotalNanos;
+		long m_MaxNanos;
+
+		ScriptProfile(Class<?> cls, boolean local) {
+			m_Class = cls;
+			m_bLocal = local;
+		}
+
+		public Class<?> getScriptClass() {
+			return m_Class;
+		}
+
+		public boolean isLocal() {
+			return m_bLocal;
+		}
+
+		public long getCalls() {
+			return m_Calls;
+		}
+
+		public long getTotalNanos() {
+			return m_TotalNanos;
+		}
+
+		public long getMaxNanos() {
+			return m_MaxNanos;
+		}
+
+		void add(long nanos) {
+			m_Calls++;
+			m_TotalNanos += nanos;
+			if(nanos > m_MaxNanos) {
+				m_MaxNanos = nanos;
+			}
+		}
+
+		@Override
+		public String toString() {
+			return m_Class.getName() + (m_bLocal? " local" : " shared") + " calls: " + m_Calls
+					+ " total: " + m_TotalNanos/1000 + "us avg: " + (m_Calls == 0? 0 : m_TotalNanos/m_Calls)
+					+ "ns max: " + m_MaxNanos + "ns";
+		}
+	}
+
+	final TransformStore m_Store;
+	final WorkerPool m_Pool;
+	int m_ParallelThreshold;
+	int m_Grain;
+
+	// Arrays of the script types, kept until entities, the hierarchy or scripts change
+	private ComponentStore.ComponentArray [] m_LocalArrays = new ComponentStore.ComponentArray[0];
+	private int m_LocalArrayCount;
+	private ComponentStore.ComponentArray [] m_SharedArrays = new ComponentStore.ComponentArray[0];
+	private int m_SharedArrayCount;
+	// By id, set when an ancestor of an entity has local scripts
+	private boolean [] m_Demoted = new boolean[0];
+	// By index, set when an entity or one of its ancestors has local scripts
+	private boolean [] m_Moving = new boolean[0];
+	private int m_StructureVersion;
+	private boolean m_bGathered;
+	private int m_LocalCount;
+	private int m_SharedCount;
+
+	// Profiling, by type. Local scripts time into one slot each so the workers never share one
+	private boolean m_bProfiling;
+	private long [][] m_LocalNanos = new long[0][];
+	private ScriptProfile [] m_Profiles = new ScriptProfile[0];
+
+	// Stats of the last update
+	private long m_LocalPhaseNanos;
+	private long m_SharedPhaseNanos;
+
+	// Array the workers run
+	private ComponentStore.ComponentArray m_TaskArray;
+	private final WorkerPool.RangeTask m_LocalTask = new WorkerPool.RangeTask() {
+		@Override
+		public void run(int start, int end) {
+			// temporaries taken by the scripts on a worker are freed with the chunk
+			final FrameArena arena = FrameArena.get();
+			arena.mark();
+			try {
+				runLocal(m_TaskArray, start, end);
+			} finally {
+				arena.release();
+			}
+		}
+	};
+
+	public ScriptSystem() {
+		this(TransformStore.getDefault(), null);
+	}
+
+	/**
+	 * @param store store whose entities are updated
+	 * @param pool pool used for the local scripts, null to always run serially
+	 */
+	public ScriptSystem(TransformStore store, WorkerPool pool) {
+		m_Store = store;
+		m_Pool = pool;
+		m_ParallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+		m_Grain = DEFAULT_GRAIN;
+	}
+
+	public void setParallelThreshold(int threshold) {
+		m_ParallelThreshold = threshold;
+	}
+
+	public void setGrain(int grain) {
+		m_Grain = grain;
+	}
+
+	/**
+	 * Times every Update, a System.nanoTime pair per script
+	 * @param profiling
+	 */
+	public void setProfiling(boolean profiling) {
+		m_bProfiling = profiling;
+	}
+
+	public boolean isProfiling() {
+		return m_bProfiling;
+	}
+
+	/**
+	 * Runs the Update of every script once
+	 */
+	public void update() {
+		if(!m_bGathered || m_StructureVersion != m_Store.getStructureVersion()) {
+			gather();
+		}
+		final boolean profiling = m_bProfiling;
+
+		long start = System.nanoTime();
+		boolean updated = false;
+		for(int i = 0; i < m_LocalArrayCount; i++) {
+			final ComponentStore.ComponentArray array = m_LocalArrays[i];
+			final int count = array.size();
+			if(profiling) {
+				localNanos(array.getType(), count);
+			}
+			if(m_Pool != null && count >= m_ParallelThreshold) {
+				if(!updated) {
+					// no ancestor of a parallel entity moves during the phase, so once
+					// clean a script reading a world transform only recalculates its
+					// own entity and only flags its own subtree, which runs later
+					m_Store.updateAll();
+					updated = true;
+				}
+				prepareParents(array);
+				m_TaskArray = array;
+				m_Pool.parallelFor(count, m_Grain, m_LocalTask);
+				m_TaskArray = null;
+			} else {
+				runLocal(array, 0, count);
+			}
+		}
+		long end = System.nanoTime();
+		m_LocalPhaseNanos = end - start;
+
+		start = end;
+		final boolean [] demoted = m_Demoted;
+		for(int i = 0; i < m_LocalArrayCount; i++) {
+			final ComponentStore.ComponentArray array = m_LocalArrays[i];
+			final int [] owners = array.m_Owners, first = array.m_First, next = array.m_Next;
+			for(int slot = 0; slot < array.m_Count; slot++) {
+				final int owner = owners[slot];
+				if(demoted[owner] && first[owner] == slot) {
+					for(int s = slot; s >= 0; s = next[s]) {
+						runShared(array, s, profiling);
+					}
+				}
+			}
+		}
+		for(int i = 0; i < m_SharedArrayCount; i++) {
+			final ComponentStore.ComponentArray array = m_SharedArrays[i];
+			// scripts may add or remove others here, the count is read every time
+			for(int slot = 0; slot < array.m_Count; slot++) {
+				runShared(array, slot, profiling);
+			}
+		}
+		m_SharedPhaseNanos = System.nanoTime() - start;
+
+		if(profiling) {
+			for(int i = 0; i < m_LocalArrayCount; i++) {
+				final ComponentStore.ComponentArray array = m_LocalArrays[i];
+				final ScriptProfile profile = profile(array);
+				final long [] nanos = m_LocalNanos[array.getType()];
+				for(int slot = 0, count = array.size(); slot < count; slot++) {
+					if(nanos[slot] >= 0) {
+						profile.add(nanos[slot]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the local scripts in the slots [start, end) of an array, each
+	 * entity from its first slot, skipping the demoted ones
+	 */
+	void runLocal(ComponentStore.ComponentArray array, int start, int end) {
+		final GraphicEntity.Scriptable [] scripts = array.m_Components;
+		final int [] owners = array.m_Owners, first = array.m_First, next = array.m_Next;
+		final boolean [] demoted = m_Demoted;
+		final long [] nanos = m_bProfiling? m_LocalNanos[array.getType()] : null;
+		for(int slot = start; slot < end; slot++) {
+			final int owner = owners[slot];
+			if(demoted[owner] || first[owner] != slot) {
+				continue;
+			}
+			for(int s = slot; s >= 0; s = next[s]) {
+				if(nanos != null) {
+					final long t = System.nanoTime();
+					scripts[s].Update();
+					nanos[s] = System.nanoTime() - t;
+				} else {
+					scripts[s].Update();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes the inverse world matrices of the parents of the entities run
+	 * in parallel. Siblings setting their world position read the inverse of
+	 * their shared parent, which must not be computed by two workers at once.
+	 * The parents have no local scripts, so nothing moves them during the phase
+	 */
+	private void prepareParents(ComponentStore.ComponentArray array) {
+		final TransformStore store = m_Store;
+		final int [] owners = array.m_Owners;
+		final boolean [] demoted = m_Demoted;
+		for(int slot = 0, count = array.m_Count; slot < count; slot++) {
+			final int owner = owners[slot];
+			if(demoted[owner]) {
+				continue;
+			}
+			final int parent = store.parentOf(store.indexOf(owner));
+			if(parent >= 0) {
+				store.inverseWorld(parent);
+			}
+		}
+	}
+
+	private void runShared(ComponentStore.ComponentArray array, int slot, boolean profiling) {
+		if(profiling) {
+			final long t = System.nanoTime();
+			array.m_Components[slot].Update();
+			profile(array).add(System.nanoTime() - t);
+		} else {
+			array.m_Components[slot].Update();
+		}
+	}
+
+	/**
+	 * Splits the script arrays of the store into local and shared ones and
+	 * finds the entities below entities with local scripts
+	 */
+	private void gather() {
+		final TransformStore store = m_Store;
+		final ComponentStore components = store.getComponents();
+		// parents come before their children once sorted
+		store.sort();
+
+		final int ids = store.idCount();
+		if(m_Demoted.length < ids) {
+			m_Demoted = new boolean[Math.max(ids, m_Demoted.length*2)];
+		}
+		final boolean [] demoted = m_Demoted;
+		Arrays.fill(demoted, 0, ids, false);
+
+		m_LocalArrayCount = 0;
+		m_SharedArrayCount = 0;
+		for(int type = 0, count = components.arrayCount(); type < count; type++) {
+			final ComponentStore.ComponentArray array = components.arrayAt(type);
+			if(array == null || array.size() == 0) {
+				continue;
+			}
+			if(array.isLocal()) {
+				if(m_LocalArrayCount == m_LocalArrays.length) {
+					m_LocalArrays = Arrays.copyOf(m_LocalArrays, Math.max(4, m_LocalArrayCount*2));
+				}
+				m_LocalArrays[m_LocalArrayCount++] = array;
+				// flag the owners for now, cleared again below
+				for(int slot = 0, n = array.size(); slot < n; slot++) {
+					demoted[array.m_Owners[slot]] = true;
+				}
+			} else {
+				if(m_SharedArrayCount == m_SharedArrays.length) {
+					m_SharedArrays = Arrays.copyOf(m_SharedArrays, Math.max(4, m_SharedArrayCount*2));
+				}
+				m_SharedArrays[m_SharedArrayCount++] = array;
+			}
+		}
+
+		final int count = store.size();
+		if(m_Moving.length < count) {
+			m_Moving = new boolean[Math.max(count, m_Moving.length*2)];
+		}
+		final boolean [] moving = m_Moving;
+		for(int i = 0; i < count; i++) {
+			final int id = store.idOf(i);
+			final int parent = store.parentOf(i);
+			final boolean underMoving = parent >= 0 && moving[parent];
+			moving[i] = underMoving || demoted[id];
+			demoted[id] = underMoving;
+		}
+
+		int local = 0, shared = 0;
+		for(int i = 0; i < m_LocalArrayCount; i++) {
+			final ComponentStore.ComponentArray array = m_LocalArrays[i];
+			for(int slot = 0, n = array.size(); slot < n; slot++) {
+				if(demoted[array.m_Owners[slot]]) {
+					shared++;
+				} else {
+					local++;
+				}
+			}
+		}
+		for(int i = 0; i < m_SharedArrayCount; i++) {
+			shared += m_SharedArrays[i].size();
+		}
+		m_LocalCount = local;
+		m_SharedCount = shared;
+		m_StructureVersion = store.getStructureVersion();
+		m_bGathered = true;
+	}
+
+	/** Sizes the local timings of a type and marks them as not run */
+	private void localNanos(int type, int count) {
+		if(type >= m_LocalNanos.length) {
+			m_LocalNanos = Arrays.copyOf(m_LocalNanos, Math.max(type + 1, m_LocalNanos.length*2));
+		}
+		long [] nanos = m_LocalNanos[type];
+		if(nanos == null || nanos.length < count) {
+			nanos = m_LocalNanos[type] = new long[Math.max(count, 16)];
+		}
+		Arrays.fill(nanos, 0, count, -1);
+	}
+
+	private ScriptProfile profile(ComponentStore.ComponentArray array) {
+		final int type = array.getType();
+		if(type >= m_Profiles.length) {
+			m_Profiles = Arrays.copyOf(m_Profiles, Math.max(type + 1, m_Profiles.length*2));
+		}
+		ScriptProfile profile = m_Profiles[type];
+		if(profile == null) {
+			profile = m_Profiles[type] = new ScriptProfile(ComponentType.classOf(type), array.isLocal());
+		}
+		return profile;
+	}
+
+	/**
+	 * returns the profile of every script class, the most expensive first
+	 * @return a new list
+	 */
+	public List<ScriptProfile> getProfiles() {
+		final List<ScriptProfile> profiles = new ArrayList<ScriptProfile>();
+		for(ScriptProfile profile : m_Profiles) {
+			if(profile != null) {
+				profiles.add(profile);
+			}
+		}
+		Collections.sort(profiles, new Comparator<ScriptProfile>() {
+			@Override
+			public int compare(ScriptProfile a, ScriptProfile b) {
+				return a.m_TotalNanos < b.m_TotalNanos? 1 : a.m_TotalNanos > b.m_TotalNanos? -1 : 0;
+			}
+		});
+		return profiles;
+	}
+
+	public void clearProfiles() {
+		Arrays.fill(m_Profiles, null);
+	}
+
+	/** returns the number of local scripts run in parallel by the last update */
+	public int getLocalCount() {
+		return m_LocalCount;
+	}
+
+	/** returns the number of scripts run serially by the last update */
+	public int getSharedCount() {
+		return m_SharedCount;
+	}
+
+	public long getLocalPhaseNanos() {
+		return m_LocalPhaseNanos;
+	}
+
+	public long getSharedPhaseNanos() {
+		return m_SharedPhaseNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "ScriptSystem local: " + m_LocalCount + " scripts of " + m_LocalArrayCount + " classes in "
+				+ m_LocalPhaseNanos/1000 + "us shared: " + m_SharedCount + " of " + m_SharedArrayCount + " classes in "
+				+ m_SharedPhaseNanos/1000 + "us";
+	}
+}
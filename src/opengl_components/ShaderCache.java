@@ -0,0 +1,397 @@
+package opengl_components;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of ShaderPrograms. Every (vertex, fragment, defines, attributes,
+ * uniforms) variant is compiled and linked once, later requests for the same
+ * variant return the same object. When the device supports program binaries
+ * the binary of every linked program is kept, so rebuilding after a context
+ * loss loads binaries instead of compiling. writeBinaries saves them by
+ * variant and readBinaries loads them on the next launch, so the first
+ * build of a variant skips compiling too. The driver can reject binaries
+ * after an update, the program is then compiled again.
+ * Hits, misses, binary loads and the time spent building are counted.
+ * Must be used on the GL thread.
+ */
+public class ShaderCache {
+
+	private static class Binary {
+		final int m_Format;
+		final byte [] m_Data;
+
+		Binary(int format, byte [] data) {
+			m_Format = format;
+			m_Data = data;
+		}
+	}
+
+	/** Start of a binary file, followed by FILE_VERSION */
+	private static final int FILE_MAGIC = 0x53484243;
+	private static final int FILE_VERSION = 1;
+
+	final GraphicsDevice m_Device;
+	ProgramBinarySupport m_Binaries;
+	private final HashMap<String, ShaderProgram> m_Programs = new HashMap<String, ShaderProgram>();
+	// Binaries by variant key, also of variants not requested yet
+	private final HashMap<String, Binary> m_ProgramBinaries = new HashMap<String, Binary>();
+	private final ArrayList<ShaderProgram> m_ProgramList = new ArrayList<ShaderProgram>();
+	private final ArrayList<String> m_Keys = new ArrayList<String>();
+	private boolean m_bBinariesChanged;
+	private final int [] m_Status = new int[1];
+
+	// Metrics
+	private int m_Hits;
+	private int m_Misses;
+	private int m_Compiles;
+	private int m_BinaryLoads;
+	private int m_BinaryRejects;
+	private long m_BuildNanos;
+
+	/**
+	 * @param device
+	 */
+	public ShaderCache(GraphicsDevice device) {
+		this(device, null);
+	}
+
+	/**
+	 * @param device
+	 * @param binaries program binary support of the device, null if it has none
+	 */
+	public ShaderCache(GraphicsDevice device, ProgramBinarySupport binaries) {
+		m_Device = device;
+		m_Binaries = binaries;
+	}
+
+	/**
+	 * Sets the program binary support, for devices that only know once a
+	 * context exists
+	 * @param binaries null to stop using binaries
+	 */
+	public void setBinarySupport(ProgramBinarySupport binaries) {
+		m_Binaries = binaries;
+	}
+
+	public ProgramBinarySupport getBinarySupport() {
+		return m_Binaries;
+	}
+
+	/**
+	 * Saves the binary of every variant built or read so far
+	 * @param out left open
+	 * @param tag identifies the driver, see GLES30ProgramBinarySupport.getTag
+	 * @throws IOException
+	 */
+	public void writeBinaries(OutputStream out, String tag) throws IOException {
+		final DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(FILE_MAGIC);
+		data.writeInt(FILE_VERSION);
+		data.writeUTF(tag);
+		data.writeInt(m_ProgramBinaries.size());
+		for(Map.Entry<String, Binary> entry : m_ProgramBinaries.entrySet()) {
+			// sources can be longer than writeUTF allows
+			final byte [] key = entry.getKey().getBytes("UTF-8");
+			data.writeInt(key.length);
+			data.write(key);
+			data.writeInt(entry.getValue().m_Format);
+			data.writeInt(entry.getValue().m_Data.length);
+			data.write(entry.getValue().m_Data);
+		}
+		data.flush();
+		m_bBinariesChanged = false;
+	}
+
+	/**
+	 * Loads binaries saved by writeBinaries, they are used when their
+	 * variant is built. A file of another version or tag is ignored
+	 * @param in left open
+	 * @param tag identifies the driver, see GLES30ProgramBinarySupport.getTag
+	 * @return the number of binaries loaded
+	 * @throws IOException if the file is truncated
+	 */
+	public int readBinaries(InputStream in, String tag) throws IOException {
+		final DataInputStream data = new DataInputStream(in);
+		if(data.readInt() != FILE_MAGIC || data.readInt() != FILE_VERSION || !data.readUTF().equals(tag)) {
+			return 0;
+		}
+		final int count = data.readInt();
+		for(int i = 0; i < count; i++) {
+			final byte [] key = new byte[data.readInt()];
+			data.readFully(key);
+			final int format = data.readInt();
+			final byte [] binary = new byte[data.readInt()];
+			data.readFully(binary);
+			final String variant = new String(key, "UTF-8");
+			if(!m_ProgramBinaries.containsKey(variant)) {
+				m_ProgramBinaries.put(variant, new Binary(format, binary));
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * returns true if binaries were added or dropped since they were last written
+	 * @return
+	 */
+	public boolean hasNewBinaries() {
+		return m_bBinariesChanged;
+	}
+
+	public int getBinaryCount() {
+		return m_ProgramBinaries.size();
+	}
+
+	/**
+	 * returns the program for a variant, building it on the first request.
+	 * Meant for setup code, keep the returned object instead of calling this
+	 * every frame
+	 * @param vertexSource
+	 * @param fragmentSource
+	 * @param attributes attribute names, bound to their index in the array
+	 * @param uniforms uniform names whose locations are cached
+	 * @param defines names (optionally followed by a value) declared with #define in both stages
+	 * @return
+	 */
+	public ShaderProgram get(String vertexSource, String fragmentSource, String [] attributes, String [] uniforms, String... defines) {
+		final String key = key(vertexSource, fragmentSource, attributes, uniforms, defines);
+		ShaderProgram program = m_Programs.get(key);
+		if(program != null) {
+			m_Hits++;
+			if(program.m_Handle == 0) {
+				build(program);
+			}
+			return program;
+		}
+
+		m_Misses++;
+		program = new ShaderProgram(m_ProgramList.size(), vertexSource, fragmentSource, defines.clone(), attributes.clone(), uniforms.clone());
+		m_Keys.add(key);
+		try {
+			build(program);
+		} catch(RuntimeException e) {
+			m_Keys.remove(m_Keys.size() - 1);
+			throw e;
+		}
+		m_Programs.put(key, program);
+		m_ProgramList.add(program);
+		return program;
+	}
+
+	/**
+	 * Forgets the GL names of every program without deleting them, call it when
+	 * the context was lost. Programs are rebuilt by restore or by the next get
+	 */
+	public void invalidate() {
+		for(int i = 0; i < m_ProgramList.size(); i++) {
+			m_ProgramList.get(i).m_Handle = 0;
+		}
+	}
+
+	/**
+	 * Rebuilds every program that has no GL name, from its binary when there is one
+	 */
+	public void restore() {
+		for(int i = 0; i < m_ProgramList.size(); i++) {
+			final ShaderProgram program = m_ProgramList.get(i);
+			if(program.m_Handle == 0) {
+				build(program);
+			}
+		}
+	}
+
+	/**
+	 * Deletes every program and empties the cache
+	 */
+	public void destroy() {
+		for(int i = 0; i < m_ProgramList.size(); i++) {
+			final ShaderProgram program = m_ProgramList.get(i);
+			if(program.m_Handle != 0) {
+				m_Device.glDeleteProgram(program.m_Handle);
+				program.m_Handle = 0;
+			}
+		}
+		m_Programs.clear();
+		m_ProgramBinaries.clear();
+		m_ProgramList.clear();
+		m_Keys.clear();
+	}
+
+	public int getProgramCount() {
+		return m_ProgramList.size();
+	}
+
+	/** returns the number of get calls that found their variant */
+	public int getHits() {
+		return m_Hits;
+	}
+
+	/** returns the number of get calls that created a variant */
+	public int getMisses() {
+		return m_Misses;
+	}
+
+	/** returns the number of programs built by compiling and linking */
+	public int getCompiles() {
+		return m_Compiles;
+	}
+
+	/** returns the number of programs built from a binary */
+	public int getBinaryLoads() {
+		return m_BinaryLoads;
+	}
+
+	/** returns the number of binaries the driver rejected */
+	public int getBinaryRejects() {
+		return m_BinaryRejects;
+	}
+
+	/** returns the total time spent building programs, in nanoseconds */
+	public long getBuildNanos() {
+		return m_BuildNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "programs: " + m_ProgramList.size() + " hits: " + m_Hits + " misses: " + m_Misses
+				+ " compiles: " + m_Compiles + " binary loads: " + m_BinaryLoads
+				+ " (rejected: " + m_BinaryRejects + ") build ms: " + m_BuildNanos/1000000.0;
+	}
+
+	private static String key(String vertexSource, String fragmentSource, String [] attributes, String [] uniforms, String [] defines) {
+		final StringBuilder key = new StringBuilder(vertexSource.length() + fragmentSource.length() + 64);
+		key.append(vertexSource).append('\0').append(fragmentSource).append('\0');
+		for(int i = 0; i < defines.length; i++) {
+			key.append(defines[i]).append(';');
+		}
+		key.append('\0');
+		for(int i = 0; i < attributes.length; i++) {
+			key.append(attributes[i]).append(';');
+		}
+		key.append('\0');
+		for(int i = 0; i < uniforms.length; i++) {
+			key.append(uniforms[i]).append(';');
+		}
+		return key.toString();
+	}
+
+	/**
+	 * returns source with the defines inserted after its #version line, if any
+	 */
+	private static String withDefines(String source, String [] defines) {
+		if(defines.length == 0) {
+			return source;
+		}
+		final StringBuilder header = new StringBuilder();
+		for(int i = 0; i < defines.length; i++) {
+			header.append("#define ").append(defines[i]).append('\n');
+		}
+		if(source.trim().startsWith("#version")) {
+			final int end = source.indexOf('\n') + 1;
+			return source.substring(0, end) + header + source.substring(end);
+		}
+		return header + source;
+	}
+
+	private void build(ShaderProgram program) {
+		final long start = System.nanoTime();
+		int handle = 0;
+		program.m_bFromBinary = false;
+
+		final String key = m_Keys.get(program.m_Id);
+		final Binary binary = m_Binaries != null ? m_ProgramBinaries.get(key) : null;
+		if(binary != null) {
+			handle = m_Device.glCreateProgram();
+			if(m_Binaries.loadProgramBinary(handle, binary.m_Format, binary.m_Data)) {
+				m_BinaryLoads++;
+				program.m_bFromBinary = true;
+			} else {
+				m_BinaryRejects++;
+				m_ProgramBinaries.remove(key);
+				m_bBinariesChanged = true;
+				m_Device.glDeleteProgram(handle);
+				handle = 0;
+			}
+		}
+
+		if(handle == 0) {
+			handle = compile(program);
+			m_Compiles++;
+			if(m_Binaries != null) {
+				final byte [] data = m_Binaries.getProgramBinary(handle, m_Status);
+				if(data != null) {
+					m_ProgramBinaries.put(key, new Binary(m_Status[0], data));
+					m_bBinariesChanged = true;
+				}
+			}
+		}
+
+		program.m_Handle = handle;
+		for(int i = 0; i < program.m_Attributes.length; i++) {
+			program.m_AttributeLocations[i] = m_Device.glGetAttribLocation(handle, program.m_Attributes[i]);
+		}
+		for(int i = 0; i < program.m_Uniforms.length; i++) {
+			program.m_UniformLocations[i] = m_Device.glGetUniformLocation(handle, program.m_Uniforms[i]);
+		}
+		m_BuildNanos += System.nanoTime() - start;
+	}
+
+	private int compile(ShaderProgram program) {
+		final int vertexShader = compileShader(GraphicsDevice.GL_VERTEX_SHADER, withDefines(program.m_VertexSource, program.m_Defines));
+		final int fragmentShader;
+		try {
+			fragmentShader = compileShader(GraphicsDevice.GL_FRAGMENT_SHADER, withDefines(program.m_FragmentSource, program.m_Defines));
+		} catch (RuntimeException e) {
+			m_Device.glDeleteShader(vertexShader);
+			throw e;
+		}
+
+		final int handle = m_Device.glCreateProgram();
+		if(handle == 0) {
+			m_Device.glDeleteShader(vertexShader);
+			m_Device.glDeleteShader(fragmentShader);
+			throw new RuntimeException("Error creating program.");
+		}
+		m_Device.glAttachShader(handle, vertexShader);
+		m_Device.glAttachShader(handle, fragmentShader);
+		for(int i = 0; i < program.m_Attributes.length; i++) {
+			m_Device.glBindAttribLocation(handle, i, program.m_Attributes[i]);
+		}
+		m_Device.glLinkProgram(handle);
+
+		// the program keeps the shaders alive as long as it needs them
+		m_Device.glDeleteShader(vertexShader);
+		m_Device.glDeleteShader(fragmentShader);
+
+		m_Device.glGetProgramiv(handle, GraphicsDevice.GL_LINK_STATUS, m_Status, 0);
+		if(m_Status[0] == 0) {
+			final String log = m_Device.glGetProgramInfoLog(handle);
+			m_Device.glDeleteProgram(handle);
+			throw new RuntimeException("Error linking program: " + log);
+		}
+		return handle;
+	}
+
+	private int compileShader(int type, String source) {
+		final int shader = m_Device.glCreateShader(type);
+		if(shader == 0) {
+			throw new RuntimeException("Error creating " + (type == GraphicsDevice.GL_VERTEX_SHADER ? "vertex" : "fragment") + " shader.");
+		}
+		m_Device.glShaderSource(shader, source);
+		m_Device.glCompileShader(shader);
+		m_Device.glGetShaderiv(shader, GraphicsDevice.GL_COMPILE_STATUS, m_Status, 0);
+		if(m_Status[0] == 0) {
+			final String log = m_Device.glGetShaderInfoLog(shader);
+			m_Device.glDeleteShader(shader);
+			throw new RuntimeException("Error compiling " + (type == GraphicsDevice.GL_VERTEX_SHADER ? "vertex" : "fragment") + " shader: " + log);
+		}
+		return shader;
+	}
+}
@@ -0,0 +1,119 @@
+package opengl_components;
+
+/**
+ * A linked program variant owned by a ShaderCache. The attribute and uniform
+ * names given when it was requested are resolved once at link time, draw code
+ * reads the locations from the tables by slot (the index of the name in the
+ * array it passed) instead of looking them up by string.
+ * After a context loss the cache rebuilds the program in place, the object
+ * and its slots stay valid, only the handle and locations change.
+ */
+public class ShaderProgram {
+
+	final int m_Id;
+	final String m_VertexSource;
+	final String m_FragmentSource;
+	final String [] m_Defines;
+	final String [] m_Attributes;
+	final String [] m_Uniforms;
+	final int [] m_AttributeLocations;
+	final int [] m_UniformLocations;
+	int m_Handle;
+	boolean m_bFromBinary;
+
+	ShaderProgram(int id, String vertexSource, String fragmentSource, String [] defines, String [] attributes, String [] uniforms) {
+		m_Id = id;
+		m_VertexSource = vertexSource;
+		m_FragmentSource = fragmentSource;
+		m_Defines = defines;
+		m_Attributes = attributes;
+		m_Uniforms = uniforms;
+		m_AttributeLocations = new int[attributes.length];
+		m_UniformLocations = new int[uniforms.length];
+	}
+
+	/**
+	 * returns the index of the program in its cache, small and stable so it
+	 * can be packed in sort keys
+	 * @return
+	 */
+	public int getId() {
+		return m_Id;
+	}
+
+	/**
+	 * returns the GL program name, 0 while the program is not built
+	 * @return
+	 */
+	public int getHandle() {
+		return m_Handle;
+	}
+
+	public boolean isValid() {
+		return m_Handle != 0;
+	}
+
+	/**
+	 * returns true if the last build loaded a program binary instead of compiling
+	 * @return
+	 */
+	public boolean isFromBinary() {
+		return m_bFromBinary;
+	}
+
+	/**
+	 * Makes this the current program
+	 * @param device
+	 */
+	public void use(GraphicsDevice device) {
+		device.glUseProgram(m_Handle);
+	}
+
+	/**
+	 * returns the location of the attribute in the given slot, attributes are
+	 * bound to their slot index before linking so the two are the same
+	 * @param slot
+	 * @return
+	 */
+	public int getAttributeLocation(int slot) {
+		return m_AttributeLocations[slot];
+	}
+
+	/**
+	 * returns the location of the uniform in the given slot, -1 if the
+	 * compiler removed it
+	 * @param slot
+	 * @return
+	 */
+	public int getUniformLocation(int slot) {
+		return m_UniformLocations[slot];
+	}
+
+	/**
+	 * returns the slot of a uniform name or -1, for setup code only
+	 * @param name
+	 * @return
+	 */
+	public int findUniform(String name) {
+		for(int i = 0; i < m_Uniforms.length; i++) {
+			if(m_Uniforms[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * returns the slot of an attribute name or -1, for setup code only
+	 * @param name
+	 * @return
+	 */
+	public int findAttribute(String name) {
+		for(int i = 0; i < m_Attributes.length; i++) {
+			if(m_Attributes[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,95 @@
+package opengl_components;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands TransformSnapshots from the simulation thread to the render thread
+ * without locks. The simulation captures into getBack() and publishes it;
+ * the renderer calls acquire() once per frame and draws between
+ * getPrevious() and getCurrent(), which stay untouched until its next
+ * acquire. Of the four snapshots the simulation owns one, the renderer two
+ * and the last one is the newest published, kept in an atomic that both
+ * sides only ever exchange, so neither side waits for the other and a
+ * publish or an acquire does not allocate. The exchange also makes
+ * everything written to a snapshot before publish() visible to the
+ * renderer after acquire().
+ * Only one thread may publish and one thread may acquire.
+ */
+public class SnapshotBuffer {
+
+	/** set in the shared slot when it holds a snapshot the renderer has not taken */
+	private static final int FRESH = 4;
+	private static final int INDEX_MASK = 3;
+
+	private final TransformSnapshot [] m_Snapshots = {
+		new TransformSnapshot(), new TransformSnapshot(), new TransformSnapshot(), new TransformSnapshot() };
+
+	// Index of the shared snapshot and the FRESH flag
+	private final AtomicInteger m_Shared = new AtomicInteger(1);
+
+	// Owned by the simulation thread
+	private int m_Back = 0;
+
+	// Owned by the render thread
+	private int m_Current = 2;
+	private int m_Previous = 3;
+
+	// Stats
+	private volatile int m_Published;
+	private int m_Acquired;
+
+	/**
+	 * returns the snapshot the simulation writes, only valid until publish()
+	 * @return
+	 */
+	public TransformSnapshot getBack() {
+		return m_Snapshots[m_Back];
+	}
+
+	/**
+	 * Makes the back snapshot the newest one, an unread one is recycled as
+	 * the next back snapshot
+	 */
+	public void publish() {
+		m_Back = m_Shared.getAndSet(m_Back | FRESH) & INDEX_MASK;
+		m_Published++;
+	}
+
+	/**
+	 * Takes the newest published snapshot if there is one, the current one
+	 * becomes the previous one
+	 * @return false if nothing was published since the last call
+	 */
+	public boolean acquire() {
+		if((m_Shared.get() & FRESH) == 0) {
+			return false;
+		}
+		// only the renderer clears FRESH so the slot is still fresh here
+		final int ready = m_Shared.getAndSet(m_Previous) & INDEX_MASK;
+		m_Previous = m_Current;
+		m_Current = ready;
+		m_Acquired++;
+		return true;
+	}
+
+	public TransformSnapshot getCurrent() {
+		return m_Snapshots[m_Current];
+	}
+
+	public TransformSnapshot getPrevious() {
+		return m_Snapshots[m_Previous];
+	}
+
+	/** returns the number of snapshots published */
+	public int getPublishedCount() {
+		return m_Published;
+	}
+
+	/**
+	 * returns the number of snapshots the renderer took, published ones it
+	 * never saw were replaced by newer ones before its frame
+	 */
+	public int getAcquiredCount() {
+		return m_Acquired;
+	}
+}
@@ -0,0 +1,176 @@
+package opengl_components;
+
+import java.util.Arrays;
+
+import math_components.Frustum;
+import math_components.Matrix4x4;
+import math_components.Quaternion;
+
+/**
+ * Copy of the world transforms of a TransformStore at one simulation time,
+ * stored by entity id so two snapshots taken around a store sort still line
+ * up. Transforms are kept as position, rotation and scale so the renderer
+ * can draw between two snapshots: positions and scales are lerped and
+ * rotations nlerped. Rebuilt matrices do not keep the shear that non
+ * uniform scales under rotated parents give, like the world scales of the
+ * store. The world boxes are copied too so a render thread can cull without
+ * reading the store.
+ */
+public class TransformSnapshot {
+
+	/** floats per id: position xyz, rotation xyzw, scale xyz */
+	public static final int TRANSFORM_SIZE = 10;
+
+	private float [] m_Transforms = new float[0];
+	private float [] m_Bounds = new float[0];
+	// Capture number every id was last written in, ids not in this capture are absent
+	private int [] m_Stamps = new int[0];
+	private int m_Stamp;
+	private int m_IdCount;
+	private long m_Time;
+
+	/**
+	 * Copies the world transforms and boxes of every entity, updating dirty
+	 * ones first
+	 * @param store
+	 * @param time simulation time of the state, see FixedStepScheduler.getSimulationTime
+	 */
+	public void capture(TransformStore store, long time) {
+		store.updateBounds();
+		final int ids = store.idCount();
+		if(ids > m_Stamps.length) {
+			final int capacity = Math.max(ids, m_Stamps.length*2);
+			m_Transforms = Arrays.copyOf(m_Transforms, capacity*TRANSFORM_SIZE);
+			m_Bounds = Arrays.copyOf(m_Bounds, capacity*TransformStore.BOUNDS_SIZE);
+			m_Stamps = Arrays.copyOf(m_Stamps, capacity);
+		}
+		final int stamp = ++m_Stamp;
+		final float [] t = m_Transforms;
+		final float [] wm = store.worldMatrices(), wr = store.worldRotations(), ws = store.worldScales();
+		final float [] wb = store.worldBounds();
+		for(int i = 0, count = store.size(); i < count; i++) {
+			final int id = store.idOf(i);
+			final int o = id*TRANSFORM_SIZE;
+			final int m16 = i*TransformStore.MATRIX_SIZE;
+			t[o] = wm[m16 + 12];
+			t[o + 1] = wm[m16 + 13];
+			t[o + 2] = wm[m16 + 14];
+			System.arraycopy(wr, i*TransformStore.ROTATION_SIZE, t, o + 3, TransformStore.ROTATION_SIZE);
+			System.arraycopy(ws, i*TransformStore.SCALE_SIZE, t, o + 7, TransformStore.SCALE_SIZE);
+			System.arraycopy(wb, i*TransformStore.BOUNDS_SIZE, m_Bounds, id*TransformStore.BOUNDS_SIZE, TransformStore.BOUNDS_SIZE);
+			m_Stamps[id] = stamp;
+		}
+		m_IdCount = ids;
+		m_Time = time;
+	}
+
+	public long getTime() {
+		return m_Time;
+	}
+
+	public boolean contains(int id) {
+		return id >= 0 && id < m_IdCount && m_Stamps[id] == m_Stamp && m_Stamp != 0;
+	}
+
+	/**
+	 * returns the captured transforms, TRANSFORM_SIZE floats at id*TRANSFORM_SIZE
+	 * @return
+	 */
+	public float [] transforms() {
+		return m_Transforms;
+	}
+
+	/**
+	 * returns the captured world boxes as min xyz, max xyz at
+	 * id*TransformStore.BOUNDS_SIZE, empty for entities without bounds
+	 * @return
+	 */
+	public float [] bounds() {
+		return m_Bounds;
+	}
+
+	/**
+	 * Tests the captured world box of an entity
+	 * @param id
+	 * @param frustum
+	 * @return Frustum.OUTSIDE if the entity is not in the snapshot,
+	 * Frustum.INTERSECTS if it has no bounds
+	 */
+	public int testFrustum(int id, Frustum frustum) {
+		if(!contains(id)) {
+			return Frustum.OUTSIDE;
+		}
+		final int o = id*TransformStore.BOUNDS_SIZE;
+		if(m_Bounds[o] > m_Bounds[o + 3]) {
+			return Frustum.INTERSECTS;
+		}
+		return frustum.testAabb(m_Bounds, o);
+	}
+
+	/**
+	 * Builds the captured world matrix of an entity
+	 * @param id
+	 * @param out
+	 * @return false if the entity is not in the snapshot
+	 */
+	public boolean getMatrix(int id, Matrix4x4 out) {
+		if(!contains(id)) {
+			return false;
+		}
+		final float [] t = m_Transforms;
+		final int o = id*TRANSFORM_SIZE;
+		Matrix4x4.createTransformMatrix(t[o + 7], t[o + 8], t[o + 9],
+				t[o + 3], t[o + 4], t[o + 5], t[o + 6],
+				t[o], t[o + 1], t[o + 2],
+				out.matrix(), 0);
+		return true;
+	}
+
+	/**
+	 * returns where a render time falls between two snapshots, from 0 to 1
+	 * @param previous
+	 * @param current
+	 * @param renderTime usually the current time minus a step, so that the
+	 * newest snapshot is reached as the next one arrives
+	 * @return
+	 */
+	public static float getAlpha(TransformSnapshot previous, TransformSnapshot current, long renderTime) {
+		final long span = current.m_Time - previous.m_Time;
+		if(span <= 0) {
+			return 1;
+		}
+		final float alpha = (float)(renderTime - previous.m_Time)/span;
+		return alpha < 0? 0 : alpha > 1? 1 : alpha;
+	}
+
+	/**
+	 * Builds the world matrix of an entity between two snapshots. An entity
+	 * only in the current snapshot is drawn where it is in it
+	 * @param previous
+	 * @param current
+	 * @param id
+	 * @param alpha 0 gives previous, 1 gives current
+	 * @param out
+	 * @return false if the entity is not in the current snapshot
+	 */
+	public static boolean interpolate(TransformSnapshot previous, TransformSnapshot current,
+			int id, float alpha, Matrix4x4 out) {
+		if(!current.contains(id)) {
+			return false;
+		}
+		if(alpha >= 1 || !previous.contains(id)) {
+			return current.getMatrix(id, out);
+		}
+		final float [] a = previous.m_Transforms, b = current.m_Transforms;
+		final int o = id*TRANSFORM_SIZE;
+		final float s = 1 - alpha;
+		// the rotation is nlerped in place in out, its array is overwritten right after
+		final float [] m = out.matrix();
+		Quaternion.nlerp(a, o + 3, b, o + 3, alpha, m, 0);
+		Matrix4x4.createTransformMatrix(a[o + 7]*s + b[o + 7]*alpha, a[o + 8]*s + b[o + 8]*alpha, a[o + 9]*s + b[o + 9]*alpha,
+				m[0], m[1], m[2], m[3],
+				a[o]*s + b[o]*alpha, a[o + 1]*s + b[o + 1]*alpha, a[o + 2]*s + b[o + 2]*alpha,
+				m, 0);
+		return true;
+	}
+}
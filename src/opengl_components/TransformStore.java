@@ -0,0 +1,922 @@
+package opengl_components;
+
+import java.util.Arrays;
+
+import math_components.Matrix4x4;
+
+/**
+ * Flat structure of arrays storage for the transforms of a scene graph.
+ * Every component lives in one contiguous float array, entities are referenced
+ * by a stable id and the dense index of an id changes when the store is sorted.
+ * Once sorted the entities are ordered by depth so parents always come before
+ * their children and the world matrices can be updated in one linear pass.
+ * Entities can also have a local axis aligned box, world boxes of the
+ * entities and of their whole subtrees are derived from it by updateBounds.
+ * The children of an id are linked through it, so attaching and detaching
+ * are constant time and subtrees are walked with nextDepthFirst, without
+ * recursion or allocation.
+ */
+public class TransformStore {
+
+	public static final int POSITION_SIZE = 3;
+	public static final int ROTATION_SIZE = 4;
+	public static final int SCALE_SIZE = 3;
+	public static final int MATRIX_SIZE = 16;
+	/** local bounds are center xyz, half extents xyz, world bounds min xyz, max xyz */
+	public static final int BOUNDS_SIZE = 6;
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private static TransformStore s_Default;
+
+	// Dirty chain stack of every thread calling updateWorld
+	private static final ThreadLocal<int [][]> s_Chains = new ThreadLocal<int [][]>() {
+		@Override
+		protected int [][] initialValue() {
+			return new int[][] {new int[64]};
+		}
+	};
+
+	/**
+	 * returns the store used by entities created without an explicit store
+	 * @return
+	 */
+	public static synchronized TransformStore getDefault() {
+		if(s_Default == null) {
+			s_Default = new TransformStore();
+		}
+		return s_Default;
+	}
+
+	// Local components
+	float [] m_LocalPositions;
+	float [] m_LocalRotations;
+	float [] m_LocalScales;
+
+	// Cached world components
+	float [] m_WorldMatrices;
+	float [] m_WorldRotations;
+	float [] m_WorldScales;
+
+	// Bounds, a negative local extent means the entity has none
+	float [] m_LocalBounds;
+	float [] m_WorldBounds;
+	float [] m_SubtreeBounds;
+
+	// Hierarchy, parent index or -1 for roots
+	int [] m_Parents;
+	int [] m_Depths;
+	boolean [] m_Dirty;
+	GraphicEntity [] m_Entities;
+
+	// Child lists by id, -1 ends a list. Unlike the parent indices they do
+	// not move when the store is sorted
+	int [] m_FirstChild;
+	int [] m_LastChild;
+	int [] m_NextSibling;
+	int [] m_PrevSibling;
+	int [] m_ChildCounts;
+
+	// id <-> index indirection
+	int [] m_IndexToId;
+	int [] m_IdToIndex;
+	int [] m_FreeIds;
+	int m_FreeIdCount;
+	int m_IdCount;
+
+	int m_Count;
+	boolean m_bOrderDirty;
+	boolean m_bAnyDirty;
+	boolean m_bBoundsDirty;
+	// Incremented every time the world boxes are recomputed
+	int m_BoundsVersion;
+	// Incremented when entities are created, released, reparented or reordered, or their scripts change
+	int m_StructureVersion;
+
+	// Inverse world matrices, computed on demand
+	float [] m_InverseWorldMatrices;
+	boolean [] m_InverseValid;
+
+	// Level d spans [m_LevelStarts[d], m_LevelStarts[d + 1]) once sorted
+	int [] m_LevelStarts;
+	int m_LevelCount;
+
+	// Scratch space for sorting and lazy updates
+	int [] m_ScratchInts;
+	boolean [] m_Visited;
+
+	// Scripts of the entities, by entity id
+	final ComponentStore m_Components = new ComponentStore();
+
+	public TransformStore() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public TransformStore(int capacity) {
+		capacity = Math.max(capacity, 1);
+		m_LocalPositions = new float[capacity*POSITION_SIZE];
+		m_LocalRotations = new float[capacity*ROTATION_SIZE];
+		m_LocalScales = new float[capacity*SCALE_SIZE];
+		m_WorldMatrices = new float[capacity*MATRIX_SIZE];
+		m_WorldRotations = new float[capacity*ROTATION_SIZE];
+		m_WorldScales = new float[capacity*SCALE_SIZE];
+		m_LocalBounds = new float[capacity*BOUNDS_SIZE];
+		m_WorldBounds = new float[capacity*BOUNDS_SIZE];
+		m_SubtreeBounds = new float[capacity*BOUNDS_SIZE];
+		m_Parents = new int[capacity];
+		m_Depths = new int[capacity];
+		m_Dirty = new boolean[capacity];
+		m_Entities = new GraphicEntity[capacity];
+		m_FirstChild = new int[capacity];
+		m_LastChild = new int[capacity];
+		m_NextSibling = new int[capacity];
+		m_PrevSibling = new int[capacity];
+		m_ChildCounts = new int[capacity];
+		m_IndexToId = new int[capacity];
+		m_IdToIndex = new int[capacity];
+		m_FreeIds = new int[capacity];
+		m_ScratchInts = new int[capacity];
+		m_Visited = new boolean[capacity];
+		m_InverseWorldMatrices = new float[capacity*MATRIX_SIZE];
+		m_InverseValid = new boolean[capacity];
+		m_LevelStarts = new int[16];
+		m_LevelCount = 0;
+		m_Count = 0;
+		m_IdCount = 0;
+		m_FreeIdCount = 0;
+		m_bOrderDirty = false;
+		m_bAnyDirty = false;
+		m_bBoundsDirty = false;
+	}
+
+	public int size() {
+		return m_Count;
+	}
+
+	public int capacity() {
+		return m_Parents.length;
+	}
+
+	/**
+	 * Creates a new root transform with identity values
+	 * @param entity the entity that owns the transform, can be null
+	 * @return the id of the new transform
+	 */
+	public int create(GraphicEntity entity) {
+		if(m_Count == capacity()) {
+			grow(capacity()*2);
+		}
+
+		final int id = m_FreeIdCount > 0? m_FreeIds[--m_FreeIdCount] : m_IdCount++;
+		final int index = m_Count++;
+
+		m_IdToIndex[id] = index;
+		m_IndexToId[index] = id;
+		m_Entities[index] = entity;
+		m_Parents[index] = -1;
+		m_Depths[index] = 0;
+		m_Dirty[index] = true;
+		m_InverseValid[index] = false;
+		m_FirstChild[id] = -1;
+		m_LastChild[id] = -1;
+		m_NextSibling[id] = -1;
+		m_PrevSibling[id] = -1;
+		m_ChildCounts[id] = 0;
+
+		setLocalPosition(index, 0, 0, 0);
+		setLocalRotation(index, 0, 0, 0, 1);
+		setLocalScale(index, 1, 1, 1);
+		clearLocalBounds(index);
+
+		// the level ranges need to be rebuilt
+		m_bOrderDirty = true;
+		m_bAnyDirty = true;
+		m_StructureVersion++;
+		return id;
+	}
+
+	/**
+	 * Releases a transform, it must not have children anymore
+	 * @param id
+	 */
+	public void release(int id) {
+		final int index = indexOf(id);
+		final int last = m_Count - 1;
+
+		unlink(id, index);
+		if(index != last) {
+			moveIndex(last, index);
+
+			// the children of the moved transform point to its old index
+			for(int child = m_FirstChild[m_IndexToId[index]]; child >= 0; child = m_NextSibling[child]) {
+				m_Parents[m_IdToIndex[child]] = index;
+			}
+		}
+		m_bOrderDirty = true;
+		m_bBoundsDirty = true;
+
+		m_Entities[last] = null;
+		m_IdToIndex[id] = -1;
+		m_FreeIds[m_FreeIdCount++] = id;
+		m_Count--;
+		m_StructureVersion++;
+	}
+
+	public int indexOf(int id) {
+		return m_IdToIndex[id];
+	}
+
+	public int idOf(int index) {
+		return m_IndexToId[index];
+	}
+
+	/** returns one more than the largest id handed out so far */
+	public int idCount() {
+		return m_IdCount;
+	}
+
+	/**
+	 * returns the components of the entities of this store, indexed by entity id
+	 * @return
+	 */
+	public ComponentStore getComponents() {
+		return m_Components;
+	}
+
+	public GraphicEntity entityAt(int index) {
+		return m_Entities[index];
+	}
+
+	public int parentOf(int index) {
+		return m_Parents[index];
+	}
+
+	public int depthOf(int index) {
+		return m_Depths[index];
+	}
+
+	/**
+	 * returns the id of the parent of an id
+	 * @param id
+	 * @return -1 for roots
+	 */
+	public int parentIdOf(int id) {
+		final int parent = m_Parents[m_IdToIndex[id]];
+		return parent >= 0? m_IndexToId[parent] : -1;
+	}
+
+	/** returns the id of the first child of an id, -1 if it has none */
+	public int firstChild(int id) {
+		return m_FirstChild[id];
+	}
+
+	/** returns the id of the next child of the parent of an id, -1 after the last one */
+	public int nextSibling(int id) {
+		return m_NextSibling[id];
+	}
+
+	/** returns the id of the previous child of the parent of an id, -1 before the first one */
+	public int previousSibling(int id) {
+		return m_PrevSibling[id];
+	}
+
+	public int childCount(int id) {
+		return m_ChildCounts[id];
+	}
+
+	/**
+	 * Walks the subtree of root depth first, parents before their children
+	 * and children in the order they were added. The parent links take the
+	 * place of a stack, so any depth can be walked and nothing is allocated.
+	 * The subtree must not change during the walk.
+	 * <pre>
+	 * for(int id = root; id >= 0; id = store.nextDepthFirst(root, id, false))
+	 * </pre>
+	 * @param root id the walk started from
+	 * @param id current id
+	 * @param skipChildren true to continue after the subtree of id
+	 * @return the next id, -1 once the subtree of root is done
+	 */
+	public int nextDepthFirst(int root, int id, boolean skipChildren) {
+		if(!skipChildren && m_FirstChild[id] >= 0) {
+			return m_FirstChild[id];
+		}
+		while(id != root) {
+			if(m_NextSibling[id] >= 0) {
+				return m_NextSibling[id];
+			}
+			id = m_IndexToId[m_Parents[m_IdToIndex[id]]];
+		}
+		return -1;
+	}
+
+	/**
+	 * Changes the parent of a transform, it becomes the last child of the
+	 * new parent. The transform and its subtree are flagged as dirty
+	 * @param id
+	 * @param parentId parent transform id or -1
+	 * @throws IllegalArgumentException if the parent is the transform itself
+	 * or one of its descendants
+	 */
+	public void setParent(int id, int parentId) {
+		final int index = indexOf(id);
+		final int parentIndex = parentId >= 0? indexOf(parentId) : -1;
+		for(int ancestor = parentIndex; ancestor >= 0; ancestor = m_Parents[ancestor]) {
+			if(ancestor == index) {
+				throw new IllegalArgumentException("Transform " + id + " can not be moved under "
+						+ (parentId == id? "itself" : "its descendant " + parentId));
+			}
+		}
+
+		unlink(id, index);
+		m_Parents[index] = parentIndex;
+		if(parentId >= 0) {
+			final int last = m_LastChild[parentId];
+			m_PrevSibling[id] = last;
+			if(last >= 0) {
+				m_NextSibling[last] = id;
+			} else {
+				m_FirstChild[parentId] = id;
+			}
+			m_LastChild[parentId] = id;
+			m_ChildCounts[parentId]++;
+		}
+
+		for(int child = m_FirstChild[id]; child >= 0; child = m_NextSibling[child]) {
+			markSubtreeDirty(child);
+		}
+		m_Dirty[index] = true;
+		m_StructureVersion++;
+		m_bOrderDirty = true;
+		m_bAnyDirty = true;
+		m_bBoundsDirty = true;
+	}
+
+	/**
+	 * Removes an id from the child list of its parent, its parent index is left as is
+	 */
+	private void unlink(int id, int index) {
+		final int parent = m_Parents[index];
+		if(parent < 0) {
+			return;
+		}
+		final int parentId = m_IndexToId[parent];
+		final int prev = m_PrevSibling[id], next = m_NextSibling[id];
+		if(prev >= 0) {
+			m_NextSibling[prev] = next;
+		} else {
+			m_FirstChild[parentId] = next;
+		}
+		if(next >= 0) {
+			m_PrevSibling[next] = prev;
+		} else {
+			m_LastChild[parentId] = prev;
+		}
+		m_PrevSibling[id] = -1;
+		m_NextSibling[id] = -1;
+		m_ChildCounts[parentId]--;
+	}
+
+	// Local components access
+	public void setLocalPosition(int index, float x, float y, float z) {
+		final int o = index*POSITION_SIZE;
+		m_LocalPositions[o] = x;
+		m_LocalPositions[o + 1] = y;
+		m_LocalPositions[o + 2] = z;
+	}
+
+	public void setLocalRotation(int index, float x, float y, float z, float w) {
+		final int o = index*ROTATION_SIZE;
+		m_LocalRotations[o] = x;
+		m_LocalRotations[o + 1] = y;
+		m_LocalRotations[o + 2] = z;
+		m_LocalRotations[o + 3] = w;
+	}
+
+	public void setLocalScale(int index, float x, float y, float z) {
+		final int o = index*SCALE_SIZE;
+		m_LocalScales[o] = x;
+		m_LocalScales[o + 1] = y;
+		m_LocalScales[o + 2] = z;
+	}
+
+	/**
+	 * Sets the local axis aligned box of an index
+	 * @param index
+	 * @param cx center
+	 * @param cy
+	 * @param cz
+	 * @param ex half extents, not negative
+	 * @param ey
+	 * @param ez
+	 */
+	public void setLocalBounds(int index, float cx, float cy, float cz, float ex, float ey, float ez) {
+		final int o = index*BOUNDS_SIZE;
+		m_LocalBounds[o] = cx;
+		m_LocalBounds[o + 1] = cy;
+		m_LocalBounds[o + 2] = cz;
+		m_LocalBounds[o + 3] = ex;
+		m_LocalBounds[o + 4] = ey;
+		m_LocalBounds[o + 5] = ez;
+		m_bBoundsDirty = true;
+	}
+
+	/**
+	 * Removes the bounds of an index, it then only counts for its children
+	 * @param index
+	 */
+	public void clearLocalBounds(int index) {
+		setLocalBounds(index, 0, 0, 0, -1, -1, -1);
+	}
+
+	public boolean hasBounds(int index) {
+		return m_LocalBounds[index*BOUNDS_SIZE + 3] >= 0;
+	}
+
+	public void markDirty(int index) {
+		m_Dirty[index] = true;
+		m_bAnyDirty = true;
+	}
+
+	/**
+	 * Flags a transform and its subtree as dirty. The subtree of a dirty
+	 * transform is always dirty too, so flagged branches are skipped
+	 * @param id
+	 */
+	public void markSubtreeDirty(int id) {
+		final boolean [] dirty = m_Dirty;
+		for(int cur = id; cur >= 0; ) {
+			final int index = m_IdToIndex[cur];
+			final boolean skip = dirty[index];
+			dirty[index] = true;
+			cur = nextDepthFirst(id, cur, skip);
+		}
+		m_bAnyDirty = true;
+	}
+
+	/**
+	 * returns false if nothing was flagged since the last full update
+	 * @return
+	 */
+	public boolean hasDirty() {
+		return m_bAnyDirty;
+	}
+
+	/**
+	 * returns the number of depth levels, only valid after sort()
+	 * @return
+	 */
+	public int levelCount() {
+		return m_LevelCount;
+	}
+
+	public int levelStart(int level) {
+		return m_LevelStarts[level];
+	}
+
+	public int levelEnd(int level) {
+		return m_LevelStarts[level + 1];
+	}
+
+	public boolean isDirty(int index) {
+		return m_Dirty[index];
+	}
+
+	// Raw arrays, indexed by dense index times the component size
+	public float [] localPositions() {return m_LocalPositions;}
+	public float [] localRotations() {return m_LocalRotations;}
+	public float [] localScales() {return m_LocalScales;}
+	public float [] worldMatrices() {return m_WorldMatrices;}
+	public float [] worldRotations() {return m_WorldRotations;}
+	public float [] worldScales() {return m_WorldScales;}
+	public float [] localBounds() {return m_LocalBounds;}
+	/** world boxes, valid after updateBounds, empty (min > max) without bounds */
+	public float [] worldBounds() {return m_WorldBounds;}
+	/** world boxes holding an entity and all its descendants, valid after updateBounds */
+	public float [] subtreeBounds() {return m_SubtreeBounds;}
+
+	/**
+	 * returns the inverse world matrices, an entry is only valid after
+	 * inverseWorld was called for its index
+	 */
+	public float [] inverseWorldMatrices() {return m_InverseWorldMatrices;}
+
+	/**
+	 * Makes sure the inverse of the world matrix of an index is cached, it is
+	 * computed on first use and kept until the world matrix changes. The world
+	 * matrix must be up to date. A singular matrix (a zero scale) gives the identity.
+	 * Computing an inverse writes the cache, so threads may only share an
+	 * index whose inverse was made valid before they started
+	 * @param index
+	 * @return the offset of the inverse in inverseWorldMatrices()
+	 */
+	public int inverseWorld(int index) {
+		final int o = index*MATRIX_SIZE;
+		if(!m_InverseValid[index]) {
+			if(!Matrix4x4.invertAffine(m_WorldMatrices, o, m_InverseWorldMatrices, o)) {
+				Arrays.fill(m_InverseWorldMatrices, o, o + MATRIX_SIZE, 0);
+				m_InverseWorldMatrices[o] = m_InverseWorldMatrices[o + 5] = 1;
+				m_InverseWorldMatrices[o + 10] = m_InverseWorldMatrices[o + 15] = 1;
+			}
+			m_InverseValid[index] = true;
+		}
+		return o;
+	}
+
+	/**
+	 * Makes sure the world transform of the given index is up to date, only the
+	 * dirty ancestors are recalculated. Uses no shared scratch, so threads can
+	 * update entities whose dirty chains do not overlap at the same time
+	 * @param index
+	 */
+	public void updateWorld(int index) {
+		if(!m_Dirty[index]) {
+			return;
+		}
+		final int parent = m_Parents[index];
+		if(parent < 0 || !m_Dirty[parent]) {
+			recalculate(index);
+			return;
+		}
+
+		// collect the dirty chain up to the first clean ancestor on a stack of
+		// the calling thread, then recalculate it top down
+		final int [][] holder = s_Chains.get();
+		int [] chain = holder[0];
+		int length = 0;
+		for(int i = index; i >= 0 && m_Dirty[i]; i = m_Parents[i]) {
+			if(length == chain.length) {
+				chain = holder[0] = Arrays.copyOf(chain, length*2);
+			}
+			chain[length++] = i;
+		}
+
+		for(int i = length - 1; i >= 0; i--) {
+			recalculate(chain[i]);
+		}
+	}
+
+	/**
+	 * Updates every dirty world transform in one linear pass
+	 */
+	public void updateAll() {
+		if(!m_bAnyDirty) {
+			return;
+		}
+		sort();
+		updateRange(0, m_Count);
+		m_bAnyDirty = false;
+	}
+
+	/**
+	 * Updates the dirty world transforms in [start, end), every parent of the
+	 * range must be up to date. Ranges that do not overlap can run in parallel
+	 * @param start
+	 * @param end
+	 */
+	public void updateRange(int start, int end) {
+		final boolean [] dirty = m_Dirty;
+		for(int i = start; i < end; i++) {
+			if(dirty[i]) {
+				recalculate(i);
+			}
+		}
+	}
+
+	/**
+	 * Called once a full pass over every level is done
+	 */
+	void clearAnyDirty() {
+		m_bAnyDirty = false;
+	}
+
+	/**
+	 * Recalculates the world transform of an index, the parent must be up to date
+	 * @param index
+	 */
+	void recalculate(int index) {
+		final float [] lp = m_LocalPositions, lr = m_LocalRotations, ls = m_LocalScales;
+		final float [] wm = m_WorldMatrices, wr = m_WorldRotations, ws = m_WorldScales;
+		final int p3 = index*POSITION_SIZE, r4 = index*ROTATION_SIZE, s3 = index*SCALE_SIZE;
+		final int m16 = index*MATRIX_SIZE;
+		final int parent = m_Parents[index];
+
+		Matrix4x4.createTransformMatrix(ls[s3], ls[s3 + 1], ls[s3 + 2],
+				lr[r4], lr[r4 + 1], lr[r4 + 2], lr[r4 + 3],
+				lp[p3], lp[p3 + 1], lp[p3 + 2],
+				wm, m16);
+
+		float x = lr[r4], y = lr[r4 + 1], z = lr[r4 + 2], w = lr[r4 + 3];
+		if(parent >= 0) {
+			Matrix4x4.multAffine(wm, m16, wm, parent*MATRIX_SIZE, wm, m16);
+
+			// local*parent
+			final int pr = parent*ROTATION_SIZE;
+			final float px = wr[pr], py = wr[pr + 1], pz = wr[pr + 2], pw = wr[pr + 3];
+			final float _x = w*px + x*pw + y*pz - z*py;
+			final float _y = w*py - x*pz + y*pw + z*px;
+			final float _z = w*pz + x*py - y*px + z*pw;
+			final float _w = w*pw - x*px - y*py - z*pz;
+			x = _x; y = _y; z = _z; w = _w;
+
+			final int ps = parent*SCALE_SIZE;
+			ws[s3] = ls[s3]*ws[ps];
+			ws[s3 + 1] = ls[s3 + 1]*ws[ps + 1];
+			ws[s3 + 2] = ls[s3 + 2]*ws[ps + 2];
+		} else {
+			ws[s3] = ls[s3];
+			ws[s3 + 1] = ls[s3 + 1];
+			ws[s3 + 2] = ls[s3 + 2];
+		}
+
+		final float size = (float)Math.sqrt(x*x + y*y + z*z + w*w);
+		wr[r4] = x/size;
+		wr[r4 + 1] = y/size;
+		wr[r4 + 2] = z/size;
+		wr[r4 + 3] = w/size;
+
+		m_Dirty[index] = false;
+		m_bBoundsDirty = true;
+		m_InverseValid[index] = false;
+	}
+
+	/**
+	 * Recomputes the world and subtree boxes if a transform or a bound changed.
+	 * Dirty world transforms are updated first
+	 */
+	public void updateBounds() {
+		updateAll();
+		if(!m_bBoundsDirty) {
+			return;
+		}
+		sort();
+
+		final int count = m_Count;
+		final float [] lb = m_LocalBounds, wb = m_WorldBounds, sb = m_SubtreeBounds, wm = m_WorldMatrices;
+		for(int i = 0; i < count; i++) {
+			final int b = i*BOUNDS_SIZE;
+			final float ex = lb[b + 3], ey = lb[b + 4], ez = lb[b + 5];
+			if(ex < 0) {
+				wb[b] = wb[b + 1] = wb[b + 2] = Float.POSITIVE_INFINITY;
+				wb[b + 3] = wb[b + 4] = wb[b + 5] = Float.NEGATIVE_INFINITY;
+			} else {
+				// the center is transformed as a point, the extents by the absolute matrix
+				final int m = i*MATRIX_SIZE;
+				final float cx = lb[b], cy = lb[b + 1], cz = lb[b + 2];
+				final float m00 = wm[m],     m01 = wm[m + 1], m02 = wm[m + 2];
+				final float m10 = wm[m + 4], m11 = wm[m + 5], m12 = wm[m + 6];
+				final float m20 = wm[m + 8], m21 = wm[m + 9], m22 = wm[m + 10];
+				final float wx = cx*m00 + cy*m10 + cz*m20 + wm[m + 12];
+				final float wy = cx*m01 + cy*m11 + cz*m21 + wm[m + 13];
+				final float wz = cx*m02 + cy*m12 + cz*m22 + wm[m + 14];
+				final float hx = ex*Math.abs(m00) + ey*Math.abs(m10) + ez*Math.abs(m20);
+				final float hy = ex*Math.abs(m01) + ey*Math.abs(m11) + ez*Math.abs(m21);
+				final float hz = ex*Math.abs(m02) + ey*Math.abs(m12) + ez*Math.abs(m22);
+				wb[b] = wx - hx;
+				wb[b + 1] = wy - hy;
+				wb[b + 2] = wz - hz;
+				wb[b + 3] = wx + hx;
+				wb[b + 4] = wy + hy;
+				wb[b + 5] = wz + hz;
+			}
+		}
+		System.arraycopy(wb, 0, sb, 0, count*BOUNDS_SIZE);
+
+		// children come after their parents, so walking backwards merges
+		// every subtree before it is merged into its own parent
+		final int [] parents = m_Parents;
+		for(int i = count - 1; i >= 0; i--) {
+			final int parent = parents[i];
+			if(parent < 0) {
+				continue;
+			}
+			final int b = i*BOUNDS_SIZE, p = parent*BOUNDS_SIZE;
+			if(sb[b] < sb[p]) sb[p] = sb[b];
+			if(sb[b + 1] < sb[p + 1]) sb[p + 1] = sb[b + 1];
+			if(sb[b + 2] < sb[p + 2]) sb[p + 2] = sb[b + 2];
+			if(sb[b + 3] > sb[p + 3]) sb[p + 3] = sb[b + 3];
+			if(sb[b + 4] > sb[p + 4]) sb[p + 4] = sb[b + 4];
+			if(sb[b + 5] > sb[p + 5]) sb[p + 5] = sb[b + 5];
+		}
+		m_bBoundsDirty = false;
+		m_BoundsVersion++;
+	}
+
+	/** returns a counter that changes every time updateBounds recomputes the boxes */
+	public int getBoundsVersion() {
+		return m_BoundsVersion;
+	}
+
+	/**
+	 * returns a counter that changes when entities are created, released,
+	 * reparented or reordered, or when the scripts of an entity change
+	 */
+	public int getStructureVersion() {
+		return m_StructureVersion;
+	}
+
+	/** Called by the entities when their scripts change */
+	void scriptsChanged() {
+		m_StructureVersion++;
+	}
+
+	/**
+	 * Sorts the transforms by depth if the hierarchy changed, parents end up
+	 * before their children and every level is contiguous
+	 */
+	public void sort() {
+		if(!m_bOrderDirty) {
+			return;
+		}
+
+		final int count = m_Count;
+		final int [] depths = m_Depths;
+		final int [] parents = m_Parents;
+		final int [] stack = m_ScratchInts;
+
+		// resolve the depths, parents are not sorted yet so walk up until a known depth
+		Arrays.fill(depths, 0, count, -1);
+		int maxDepth = 0;
+		for(int i = 0; i < count; i++) {
+			int length = 0;
+			int cur = i;
+			while(cur >= 0 && depths[cur] < 0) {
+				stack[length++] = cur;
+				cur = parents[cur];
+			}
+			int depth = cur >= 0? depths[cur] : -1;
+			while(length > 0) {
+				depths[stack[--length]] = ++depth;
+			}
+			maxDepth = Math.max(maxDepth, depths[i]);
+		}
+
+		// counting sort by depth, the order inside a level is kept
+		if(m_LevelStarts.length < maxDepth + 2) {
+			m_LevelStarts = new int[(maxDepth + 2)*2];
+		}
+		final int [] starts = m_LevelStarts;
+		Arrays.fill(starts, 0, maxDepth + 2, 0);
+		for(int i = 0; i < count; i++) {
+			starts[depths[i] + 1]++;
+		}
+		for(int d = 1; d <= maxDepth + 1; d++) {
+			starts[d] += starts[d - 1];
+		}
+		m_LevelCount = count > 0? maxDepth + 1 : 0;
+
+		// stack now holds old index -> new index, starts is shifted by one level
+		for(int i = 0; i < count; i++) {
+			stack[i] = starts[depths[i]]++;
+		}
+		for(int d = maxDepth + 1; d > 0; d--) {
+			starts[d] = starts[d - 1];
+		}
+		starts[0] = 0;
+		permute(stack);
+		m_StructureVersion++;
+
+		// cheaper to recompute the few used inverses than to move them all
+		Arrays.fill(m_InverseValid, 0, count, false);
+
+		m_bOrderDirty = false;
+	}
+
+	/**
+	 * Moves every entry from index i to newIndex[i] in place by following the
+	 * cycles of the permutation, so sorting does not allocate
+	 * @param newIndex
+	 */
+	private void permute(int [] newIndex) {
+		final int count = m_Count;
+		final int [] parents = m_Parents;
+		final boolean [] visited = m_Visited;
+
+		// values first, the parent indices and the id table point to new indices
+		for(int i = 0; i < count; i++) {
+			final int parent = parents[i];
+			parents[i] = parent >= 0? newIndex[parent] : -1;
+			m_IdToIndex[m_IndexToId[i]] = newIndex[i];
+		}
+
+		Arrays.fill(visited, 0, count, false);
+		for(int i = 0; i < count; i++) {
+			if(visited[i] || newIndex[i] == i) {
+				continue;
+			}
+
+			// the temp record travels along the cycle
+			int cur = i;
+			storeTemp(i);
+			do {
+				final int next = newIndex[cur];
+				swapTemp(next);
+				visited[next] = true;
+				cur = next;
+			} while(cur != i);
+		}
+	}
+
+	// Temporary record used while permuting
+	private int m_TempParent, m_TempDepth, m_TempId;
+	private boolean m_bTempDirty;
+	private GraphicEntity m_TempEntity;
+	private final float [] m_TempLocal = new float[POSITION_SIZE + ROTATION_SIZE + SCALE_SIZE];
+	private final float [] m_TempMatrix = new float[MATRIX_SIZE];
+	private final float [] m_TempWorld = new float[ROTATION_SIZE + SCALE_SIZE];
+	private final float [] m_TempBounds = new float[BOUNDS_SIZE*3];
+
+	private void storeTemp(int index) {
+		System.arraycopy(m_LocalPositions, index*POSITION_SIZE, m_TempLocal, 0, POSITION_SIZE);
+		System.arraycopy(m_LocalRotations, index*ROTATION_SIZE, m_TempLocal, POSITION_SIZE, ROTATION_SIZE);
+		System.arraycopy(m_LocalScales, index*SCALE_SIZE, m_TempLocal, POSITION_SIZE + ROTATION_SIZE, SCALE_SIZE);
+		System.arraycopy(m_WorldMatrices, index*MATRIX_SIZE, m_TempMatrix, 0, MATRIX_SIZE);
+		System.arraycopy(m_WorldRotations, index*ROTATION_SIZE, m_TempWorld, 0, ROTATION_SIZE);
+		System.arraycopy(m_WorldScales, index*SCALE_SIZE, m_TempWorld, ROTATION_SIZE, SCALE_SIZE);
+		System.arraycopy(m_LocalBounds, index*BOUNDS_SIZE, m_TempBounds, 0, BOUNDS_SIZE);
+		System.arraycopy(m_WorldBounds, index*BOUNDS_SIZE, m_TempBounds, BOUNDS_SIZE, BOUNDS_SIZE);
+		System.arraycopy(m_SubtreeBounds, index*BOUNDS_SIZE, m_TempBounds, BOUNDS_SIZE*2, BOUNDS_SIZE);
+		m_TempParent = m_Parents[index];
+		m_TempDepth = m_Depths[index];
+		m_TempId = m_IndexToId[index];
+		m_bTempDirty = m_Dirty[index];
+		m_TempEntity = m_Entities[index];
+	}
+
+	private void swapTemp(int index) {
+		swap(m_LocalPositions, index*POSITION_SIZE, m_TempLocal, 0, POSITION_SIZE);
+		swap(m_LocalRotations, index*ROTATION_SIZE, m_TempLocal, POSITION_SIZE, ROTATION_SIZE);
+		swap(m_LocalScales, index*SCALE_SIZE, m_TempLocal, POSITION_SIZE + ROTATION_SIZE, SCALE_SIZE);
+		swap(m_WorldMatrices, index*MATRIX_SIZE, m_TempMatrix, 0, MATRIX_SIZE);
+		swap(m_WorldRotations, index*ROTATION_SIZE, m_TempWorld, 0, ROTATION_SIZE);
+		swap(m_WorldScales, index*SCALE_SIZE, m_TempWorld, ROTATION_SIZE, SCALE_SIZE);
+		swap(m_LocalBounds, index*BOUNDS_SIZE, m_TempBounds, 0, BOUNDS_SIZE);
+		swap(m_WorldBounds, index*BOUNDS_SIZE, m_TempBounds, BOUNDS_SIZE, BOUNDS_SIZE);
+		swap(m_SubtreeBounds, index*BOUNDS_SIZE, m_TempBounds, BOUNDS_SIZE*2, BOUNDS_SIZE);
+
+		int tmp = m_Parents[index]; m_Parents[index] = m_TempParent; m_TempParent = tmp;
+		tmp = m_Depths[index]; m_Depths[index] = m_TempDepth; m_TempDepth = tmp;
+		tmp = m_IndexToId[index]; m_IndexToId[index] = m_TempId; m_TempId = tmp;
+		boolean dirty = m_Dirty[index]; m_Dirty[index] = m_bTempDirty; m_bTempDirty = dirty;
+		GraphicEntity entity = m_Entities[index]; m_Entities[index] = m_TempEntity; m_TempEntity = entity;
+	}
+
+	private static void swap(float [] a, int aOffset, float [] b, int bOffset, int size) {
+		for(int i = 0; i < size; i++) {
+			final float tmp = a[aOffset + i];
+			a[aOffset + i] = b[bOffset + i];
+			b[bOffset + i] = tmp;
+		}
+	}
+
+	/**
+	 * Copies every component from index src to index dst
+	 */
+	private void moveIndex(int src, int dst) {
+		System.arraycopy(m_LocalPositions, src*POSITION_SIZE, m_LocalPositions, dst*POSITION_SIZE, POSITION_SIZE);
+		System.arraycopy(m_LocalRotations, src*ROTATION_SIZE, m_LocalRotations, dst*ROTATION_SIZE, ROTATION_SIZE);
+		System.arraycopy(m_LocalScales, src*SCALE_SIZE, m_LocalScales, dst*SCALE_SIZE, SCALE_SIZE);
+		System.arraycopy(m_WorldMatrices, src*MATRIX_SIZE, m_WorldMatrices, dst*MATRIX_SIZE, MATRIX_SIZE);
+		System.arraycopy(m_WorldRotations, src*ROTATION_SIZE, m_WorldRotations, dst*ROTATION_SIZE, ROTATION_SIZE);
+		System.arraycopy(m_WorldScales, src*SCALE_SIZE, m_WorldScales, dst*SCALE_SIZE, SCALE_SIZE);
+		System.arraycopy(m_LocalBounds, src*BOUNDS_SIZE, m_LocalBounds, dst*BOUNDS_SIZE, BOUNDS_SIZE);
+		System.arraycopy(m_WorldBounds, src*BOUNDS_SIZE, m_WorldBounds, dst*BOUNDS_SIZE, BOUNDS_SIZE);
+		System.arraycopy(m_SubtreeBounds, src*BOUNDS_SIZE, m_SubtreeBounds, dst*BOUNDS_SIZE, BOUNDS_SIZE);
+
+		m_Parents[dst] = m_Parents[src];
+		m_Depths[dst] = m_Depths[src];
+		m_Dirty[dst] = m_Dirty[src];
+		m_Entities[dst] = m_Entities[src];
+		m_IndexToId[dst] = m_IndexToId[src];
+		m_IdToIndex[m_IndexToId[dst]] = dst;
+		m_InverseValid[dst] = false;
+	}
+
+	private void grow(int capacity) {
+		m_LocalPositions = Arrays.copyOf(m_LocalPositions, capacity*POSITION_SIZE);
+		m_LocalRotations = Arrays.copyOf(m_LocalRotations, capacity*ROTATION_SIZE);
+		m_LocalScales = Arrays.copyOf(m_LocalScales, capacity*SCALE_SIZE);
+		m_WorldMatrices = Arrays.copyOf(m_WorldMatrices, capacity*MATRIX_SIZE);
+		m_WorldRotations = Arrays.copyOf(m_WorldRotations, capacity*ROTATION_SIZE);
+		m_WorldScales = Arrays.copyOf(m_WorldScales, capacity*SCALE_SIZE);
+		m_LocalBounds = Arrays.copyOf(m_LocalBounds, capacity*BOUNDS_SIZE);
+		m_WorldBounds = Arrays.copyOf(m_WorldBounds, capacity*BOUNDS_SIZE);
+		m_SubtreeBounds = Arrays.copyOf(m_SubtreeBounds, capacity*BOUNDS_SIZE);
+		m_Parents = Arrays.copyOf(m_Parents, capacity);
+		m_Depths = Arrays.copyOf(m_Depths, capacity);
+		m_Dirty = Arrays.copyOf(m_Dirty, capacity);
+		m_Entities = Arrays.copyOf(m_Entities, capacity);
+		m_FirstChild = Arrays.copyOf(m_FirstChild, capacity);
+		m_LastChild = Arrays.copyOf(m_LastChild, capacity);
+		m_NextSibling = Arrays.copyOf(m_NextSibling, capacity);
+		m_PrevSibling = Arrays.copyOf(m_PrevSibling, capacity);
+		m_ChildCounts = Arrays.copyOf(m_ChildCounts, capacity);
+		m_IndexToId = Arrays.copyOf(m_IndexToId, capacity);
+		m_IdToIndex = Arrays.copyOf(m_IdToIndex, capacity);
+		m_FreeIds = Arrays.copyOf(m_FreeIds, capacity);
+		m_ScratchInts = new int[capacity];
+		m_Visited = new boolean[capacity];
+		m_InverseWorldMatrices = Arrays.copyOf(m_InverseWorldMatrices, capacity*MATRIX_SIZE);
+		m_InverseValid = Arrays.copyOf(m_InverseValid, capacity);
+	}
+}
@@ -0,0 +1,115 @@
+package opengl_components;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Describes an interleaved float vertex: the stride and, for every attribute,
+ * its shader index, component count and offset, all in floats. Meshes and
+ * batches that share a layout and a program can be drawn together.
+ */
+public class VertexLayout {
+
+	/** Attributes a layout can hold */
+	public static final int MAX_ATTRIBUTES = 8;
+
+	final int m_Stride;
+	final int [] m_Index = new int[MAX_ATTRIBUTES];
+	final int [] m_Size = new int[MAX_ATTRIBUTES];
+	final int [] m_Offset = new int[MAX_ATTRIBUTES];
+	int m_AttributeCount;
+	int m_PositionOffset;
+
+	/**
+	 * @param stride floats per vertex
+	 */
+	public VertexLayout(int stride) {
+		m_Stride = stride;
+	}
+
+	/**
+	 * Adds an attribute
+	 * @param index shader attribute index
+	 * @param size number of floats
+	 * @param offset offset in floats from the start of the vertex
+	 * @return this, so calls can be chained
+	 */
+	public VertexLayout add(int index, int size, int offset) {
+		if(m_AttributeCount == MAX_ATTRIBUTES) {
+			throw new IllegalStateException("VertexLayout supports " + MAX_ATTRIBUTES + " attributes");
+		}
+		if(offset + size > m_Stride) {
+			throw new IllegalArgumentException("Attribute does not fit in the vertex");
+		}
+		m_Index[m_AttributeCount] = index;
+		m_Size[m_AttributeCount] = size;
+		m_Offset[m_AttributeCount] = offset;
+		m_AttributeCount++;
+		return this;
+	}
+
+	/**
+	 * Sets the offset of the xyz position, the floats transformed by batching.
+	 * Defaults to 0
+	 * @param offset
+	 * @return this
+	 */
+	public VertexLayout setPositionOffset(int offset) {
+		m_PositionOffset = offset;
+		return this;
+	}
+
+	public int getStride() {
+		return m_Stride;
+	}
+
+	public int getStrideBytes() {
+		return m_Stride*4;
+	}
+
+	public int getPositionOffset() {
+		return m_PositionOffset;
+	}
+
+	public int getAttributeCount() {
+		return m_AttributeCount;
+	}
+
+	/**
+	 * Points every attribute at data, a client side array, and enables it.
+	 * The buffer position is left at 0
+	 * @param device
+	 * @param data
+	 */
+	public void bind(GraphicsDevice device, FloatBuffer data) {
+		final int strideBytes = getStrideBytes();
+		for(int i = 0; i < m_AttributeCount; i++) {
+			data.position(m_Offset[i]);
+			device.glVertexAttribPointer(m_Index[i], m_Size[i], GraphicsDevice.GL_FLOAT, false, strideBytes, data);
+			device.glEnableVertexAttribArray(m_Index[i]);
+		}
+		data.position(0);
+	}
+
+	/**
+	 * Points every attribute into the bound GL_ARRAY_BUFFER and enables it
+	 * @param device
+	 * @param byteOffset offset of the first vertex in the buffer, in bytes
+	 */
+	public void bind(GraphicsDevice device, int byteOffset) {
+		final int strideBytes = getStrideBytes();
+		for(int i = 0; i < m_AttributeCount; i++) {
+			device.glVertexAttribPointer(m_Index[i], m_Size[i], GraphicsDevice.GL_FLOAT, false, strideBytes, byteOffset + m_Offset[i]*4);
+			device.glEnableVertexAttribArray(m_Index[i]);
+		}
+	}
+
+	/**
+	 * Disables every attribute of the layout
+	 * @param device
+	 */
+	public void unbind(GraphicsDevice device) {
+		for(int i = 0; i < m_AttributeCount; i++) {
+			device.glDisableVertexAttribArray(m_Index[i]);
+		}
+	}
+}
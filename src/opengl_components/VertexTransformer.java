@@ -0,0 +1,197 @@
+package opengl_components;
+
+import java.nio.FloatBuffer;
+
+import math_components.Matrix4x4;
+import engine_components.WorkerPool;
+
+/**
+ * Transforms ranges of vertex positions by a matrix (as row vectors, p*m)
+ * without allocating. Sources and destinations are float arrays or
+ * FloatBuffers with a stride in floats, so interleaved layouts like the
+ * position/colour one used by LessonOneRenderer (stride 7) work directly and
+ * only the xyz of each vertex is touched.
+ * The static methods run on the calling thread, an instance splits large
+ * batches across a WorkerPool. An instance must only be used by one thread.
+ */
+public class VertexTransformer {
+
+	/** Batches smaller than this are not worth splitting */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 16384;
+
+	/** Vertices a worker takes at a time */
+	public static final int DEFAULT_GRAIN = 4096;
+
+	/**
+	 * Transforms count positions from src to dst, src and dst can be the same
+	 * range. Strides are in floats
+	 * @param m
+	 * @param src
+	 * @param srcOffset offset of the first x in floats
+	 * @param srcStride
+	 * @param dst
+	 * @param dstOffset
+	 * @param dstStride
+	 * @param count number of vertices
+	 */
+	public static void transformPoints(Matrix4x4 m, float [] src, int srcOffset, int srcStride,
+			float [] dst, int dstOffset, int dstStride, int count) {
+		final float [] a = m.matrix();
+		final float m00 = a[0],  m01 = a[1],  m02 = a[2];
+		final float m10 = a[4],  m11 = a[5],  m12 = a[6];
+		final float m20 = a[8],  m21 = a[9],  m22 = a[10];
+		final float m30 = a[12], m31 = a[13], m32 = a[14];
+
+		int s = srcOffset, d = dstOffset;
+		for(int i = 0; i < count; i++, s += srcStride, d += dstStride) {
+			final float x = src[s], y = src[s + 1], z = src[s + 2];
+			dst[d]     = x*m00 + y*m10 + z*m20 + m30;
+			dst[d + 1] = x*m01 + y*m11 + z*m21 + m31;
+			dst[d + 2] = x*m02 + y*m12 + z*m22 + m32;
+		}
+	}
+
+	/**
+	 * FloatBuffer version of transformPoints, offsets are absolute indices so the
+	 * buffer positions are not changed. Heap buffers go through their arrays
+	 */
+	public static void transformPoints(Matrix4x4 m, FloatBuffer src, int srcOffset, int srcStride,
+			FloatBuffer dst, int dstOffset, int dstStride, int count) {
+		if(src.hasArray() && dst.hasArray()) {
+			transformPoints(m, src.array(), src.arrayOffset() + srcOffset, srcStride,
+					dst.array(), dst.arrayOffset() + dstOffset, dstStride, count);
+			return;
+		}
+
+		final float [] a = m.matrix();
+		final float m00 = a[0],  m01 = a[1],  m02 = a[2];
+		final float m10 = a[4],  m11 = a[5],  m12 = a[6];
+		final float m20 = a[8],  m21 = a[9],  m22 = a[10];
+		final float m30 = a[12], m31 = a[13], m32 = a[14];
+
+		int s = srcOffset, d = dstOffset;
+		for(int i = 0; i < count; i++, s += srcStride, d += dstStride) {
+			final float x = src.get(s), y = src.get(s + 1), z = src.get(s + 2);
+			dst.put(d,     x*m00 + y*m10 + z*m20 + m30);
+			dst.put(d + 1, x*m01 + y*m11 + z*m21 + m31);
+			dst.put(d + 2, x*m02 + y*m12 + z*m22 + m32);
+		}
+	}
+
+	/**
+	 * Copies count vertices of vertexSize floats from src to dst, used to move
+	 * the attributes that are not transformed (colours, uvs...)
+	 */
+	public static void copyVertices(float [] src, int srcOffset, int srcStride,
+			float [] dst, int dstOffset, int dstStride, int vertexSize, int count) {
+		if(srcStride == vertexSize && dstStride == vertexSize) {
+			System.arraycopy(src, srcOffset, dst, dstOffset, count*vertexSize);
+			return;
+		}
+		for(int i = 0, s = srcOffset, d = dstOffset; i < count; i++, s += srcStride, d += dstStride) {
+			System.arraycopy(src, s, dst, d, vertexSize);
+		}
+	}
+
+	final WorkerPool m_Pool;
+	int m_ParallelThreshold;
+	int m_Grain;
+
+	// Current job, the task object is reused so parallel calls do not allocate
+	private final PointsTask m_Task = new PointsTask();
+
+	private static class PointsTask implements WorkerPool.RangeTask {
+		Matrix4x4 m_Matrix;
+		float [] m_SrcArray, m_DstArray;
+		FloatBuffer m_SrcBuffer, m_DstBuffer;
+		int m_SrcOffset, m_SrcStride, m_DstOffset, m_DstStride;
+
+		@Override
+		public void run(int start, int end) {
+			final int srcOffset = m_SrcOffset + start*m_SrcStride;
+			final int dstOffset = m_DstOffset + start*m_DstStride;
+			if(m_SrcArray != null) {
+				transformPoints(m_Matrix, m_SrcArray, srcOffset, m_SrcStride, m_DstArray, dstOffset, m_DstStride, end - start);
+			} else {
+				transformPoints(m_Matrix, m_SrcBuffer, srcOffset, m_SrcStride, m_DstBuffer, dstOffset, m_DstStride, end - start);
+			}
+		}
+
+		void clear() {
+			m_Matrix = null;
+			m_SrcArray = m_DstArray = null;
+			m_SrcBuffer = m_DstBuffer = null;
+		}
+	}
+
+	/**
+	 * @param pool pool used for large batches, null to always run serially
+	 */
+	public VertexTransformer(WorkerPool pool) {
+		m_Pool = pool;
+		m_ParallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+		m_Grain = DEFAULT_GRAIN;
+	}
+
+	public void setParallelThreshold(int threshold) {
+		m_ParallelThreshold = threshold;
+	}
+
+	public void setGrain(int grain) {
+		m_Grain = grain;
+	}
+
+	/**
+	 * Same as the static transformPoints but large batches are split across the pool
+	 */
+	public void transform(Matrix4x4 m, float [] src, int srcOffset, int srcStride,
+			float [] dst, int dstOffset, int dstStride, int count) {
+		if(m_Pool == null || count < m_ParallelThreshold) {
+			transformPoints(m, src, srcOffset, srcStride, dst, dstOffset, dstStride, count);
+			return;
+		}
+
+		final PointsTask task = m_Task;
+		task.m_Matrix = m;
+		task.m_SrcArray = src;
+		task.m_DstArray = dst;
+		run(srcOffset, srcStride, dstOffset, dstStride, count);
+	}
+
+	/**
+	 * Same as the static FloatBuffer transformPoints but large batches are split across the pool
+	 */
+	public void transform(Matrix4x4 m, FloatBuffer src, int srcOffset, int srcStride,
+			FloatBuffer dst, int dstOffset, int dstStride, int count) {
+		if(m_Pool == null || count < m_ParallelThreshold) {
+			transformPoints(m, src, srcOffset, srcStride, dst, dstOffset, dstStride, count);
+			return;
+		}
+
+		final PointsTask task = m_Task;
+		task.m_Matrix = m;
+		if(src.hasArray() && dst.hasArray()) {
+			task.m_SrcArray = src.array();
+			task.m_DstArray = dst.array();
+			srcOffset += src.arrayOffset();
+			dstOffset += dst.arrayOffset();
+		} else {
+			task.m_SrcBuffer = src;
+			task.m_DstBuffer = dst;
+		}
+		run(srcOffset, srcStride, dstOffset, dstStride, count);
+	}
+
+	private void run(int srcOffset, int srcStride, int dstOffset, int dstStride, int count) {
+		final PointsTask task = m_Task;
+		task.m_SrcOffset = srcOffset;
+		task.m_SrcStride = srcStride;
+		task.m_DstOffset = dstOffset;
+		task.m_DstStride = dstStride;
+		try {
+			m_Pool.parallelFor(count, m_Grain, task);
+		} finally {
+			task.clear();
+		}
+	}
+}